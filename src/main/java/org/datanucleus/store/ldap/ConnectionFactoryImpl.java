@@ -20,6 +20,7 @@ package org.datanucleus.store.ldap;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
@@ -28,28 +29,60 @@ import javax.naming.Context;
 import javax.naming.NamingException;
 import javax.naming.ldap.InitialLdapContext;
 import javax.naming.ldap.LdapContext;
+import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
 
 import org.datanucleus.ExecutionContext;
 import org.datanucleus.PropertyNames;
+import org.datanucleus.exceptions.NucleusDataStoreException;
 import org.datanucleus.exceptions.NucleusException;
 import org.datanucleus.metadata.AbstractClassMetaData;
 import org.datanucleus.metadata.AbstractMemberMetaData;
 import org.datanucleus.metadata.MetaDataManager;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.AbstractConnectionFactory;
+import org.datanucleus.store.connection.AbstractEmulatedXAResource;
 import org.datanucleus.store.connection.AbstractManagedConnection;
 import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.ldap.backend.BatchingBackend;
+import org.datanucleus.store.ldap.backend.DirectoryBackend;
+import org.datanucleus.store.ldap.backend.InMemoryBackend;
+import org.datanucleus.store.ldap.backend.JNDIBackend;
+import org.datanucleus.store.ldap.backend.LDAPTransaction;
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
 
 /**
  * Implementation of a ConnectionFactory for LDAP.
  * Transactional : Holds a "connection" for the duration of the transaction.
  * Non-transactional : Obtains the "connection" and closes it after the operation.
+ * Supports connection pooling types "JNDI" (the JDK LDAP pool, sized JVM-wide), "None", and "builtin"
+ * (an {@link LDAPConnectionPool} owned by this factory). When no pooling type is specified "builtin" is used,
+ * so that non-transactional operations don't pay a connection and bind per operation.
  */
 public class ConnectionFactoryImpl extends AbstractConnectionFactory
 {
+    public static final String POOLING_TYPE_JNDI = "JNDI";
+
+    public static final String POOLING_TYPE_BUILTIN = "builtin";
+
+    public static final String POOLING_TYPE_NONE = "None";
+
     Hashtable ldapEnv = null;
 
+    /** Pool of contexts when using "builtin" pooling. */
+    LDAPConnectionPool pool = null;
+
+    /** Read-only replicas that reads are load-balanced across (if any). */
+    LDAPReplicaSet replicas = null;
+
+    /** Whether reads within a transaction can use the replicas. */
+    boolean readFromReplicasInTxn = false;
+
+    /** In-memory backend of the store manager, when using "datanucleus.ldap.backend" of "memory". */
+    InMemoryBackend inMemoryBackend = null;
+
     /**
      * Constructor.
      * @param storeMgr Store Manager
@@ -59,13 +92,21 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
     {
         super(storeMgr, resourceType);
 
+        if (LDAPStoreManager.BACKEND_MEMORY.equalsIgnoreCase(storeMgr.getStringProperty(LDAPStoreManager.PROPERTY_BACKEND)))
+        {
+            // All operations go to the in-memory directory, so no LDAP connections needed
+            inMemoryBackend = ((LDAPStoreManager) storeMgr).getInMemoryBackend();
+            return;
+        }
+
         // Build up LDAP properties for obtaining connections
         ldapEnv = new Hashtable();
         ldapEnv.put(Context.INITIAL_CONTEXT_FACTORY, storeMgr.getConnectionDriverName());
         ldapEnv.put(Context.PROVIDER_URL, storeMgr.getConnectionURL());
         ldapEnv.put(Context.SECURITY_PRINCIPAL, storeMgr.getConnectionUserName());
         ldapEnv.put(Context.SECURITY_CREDENTIALS, storeMgr.getConnectionPassword());
-        if ("JNDI".equalsIgnoreCase(storeMgr.getStringProperty(PropertyNames.PROPERTY_CONNECTION_POOLINGTYPE)))
+        String poolingType = storeMgr.getStringProperty(PropertyNames.PROPERTY_CONNECTION_POOLINGTYPE);
+        if (POOLING_TYPE_JNDI.equalsIgnoreCase(poolingType))
         {
             ldapEnv.put("com.sun.jndi.ldap.connect.pool", "true");
             // System.setProperty("com.sun.jndi.ldap.connect.pool.debug", "fine");
@@ -108,6 +149,121 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
         {
             ldapEnv.put("java.naming.ldap.attributes.binary", sb.toString());
         }
+
+        boolean builtinPooling = poolingType == null || POOLING_TYPE_BUILTIN.equalsIgnoreCase(poolingType);
+        if (builtinPooling)
+        {
+            pool = createConnectionPool(storeMgr.getConnectionURL(), ldapEnv);
+        }
+
+        String replicaURLs = storeMgr.getStringProperty(LDAPStoreManager.PROPERTY_REPLICA_URLS);
+        if (replicaURLs != null && replicaURLs.trim().length() > 0)
+        {
+            // Reads are load-balanced across the replicas, using the same credentials and settings as the primary
+            List<LDAPReplicaSet.Endpoint> endpoints = new ArrayList<LDAPReplicaSet.Endpoint>();
+            for (String replicaURL : replicaURLs.split(","))
+            {
+                replicaURL = replicaURL.trim();
+                if (replicaURL.length() > 0)
+                {
+                    Hashtable replicaEnv = (Hashtable) ldapEnv.clone();
+                    replicaEnv.put(Context.PROVIDER_URL, replicaURL);
+                    endpoints.add(new LDAPReplicaSet.Endpoint(replicaURL, replicaEnv, builtinPooling ? createConnectionPool(replicaURL, replicaEnv) : null));
+                }
+            }
+            replicas = new LDAPReplicaSet(endpoints, storeMgr.getIntProperty(LDAPStoreManager.PROPERTY_REPLICA_RETRY_INTERVAL));
+            readFromReplicasInTxn = storeMgr.getBooleanProperty(LDAPStoreManager.PROPERTY_READ_FROM_REPLICAS_IN_TXN);
+        }
+    }
+
+    private LDAPConnectionPool createConnectionPool(String url, Hashtable env)
+    {
+        int maxSize = getPoolProperty("datanucleus.connectionPool.maxPoolSize", 10);
+        return new LDAPConnectionPool(url, env,
+            getPoolProperty("datanucleus.connectionPool.initialPoolSize", 0),
+            getPoolProperty("datanucleus.connectionPool.minIdle", 0),
+            getPoolProperty("datanucleus.connectionPool.maxIdle", maxSize),
+            maxSize,
+            getPoolProperty("datanucleus.connectionPool.maxWait", 30000),
+            getPoolProperty("datanucleus.connectionPool.timeBetweenEvictionRunsMillis", 30000),
+            getPoolProperty("datanucleus.connectionPool.minEvictableIdleTimeMillis", 300000));
+    }
+
+    private int getPoolProperty(String name, int defaultValue)
+    {
+        if (storeMgr.hasProperty(name))
+        {
+            return storeMgr.getIntProperty(name);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Accessor for the builtin connection pool of this factory (if any), for example to inspect its metrics.
+     * @return The pool, or null when not using "builtin" pooling
+     */
+    public LDAPConnectionPool getConnectionPool()
+    {
+        return pool;
+    }
+
+    /**
+     * Accessor for the read replicas of this factory (if any).
+     * @return The replicas, or null when all reads go to the primary
+     */
+    public LDAPReplicaSet getReplicaSet()
+    {
+        return replicas;
+    }
+
+    /**
+     * Close the ConnectionFactory, releasing any pooled connections.
+     */
+    @Override
+    public void close()
+    {
+        if (pool != null)
+        {
+            pool.close();
+            pool = null;
+        }
+        if (replicas != null)
+        {
+            replicas.close();
+            replicas = null;
+        }
+        super.close();
+    }
+
+    /**
+     * Obtain a new context, from the pool when using "builtin" pooling.
+     * @return The context
+     * @throws NamingException if the context couldn't be created
+     */
+    protected LdapContext obtainContext() throws NamingException
+    {
+        if (pool != null)
+        {
+            return pool.borrowContext();
+        }
+        return new InitialLdapContext(ldapEnv, null);
+    }
+
+    /**
+     * Release a context obtained from {@link #obtainContext()}, back to the pool when using "builtin" pooling.
+     * @param ctx The context
+     * @throws NamingException if an error occurs closing the context
+     */
+    protected void releaseContext(LdapContext ctx) throws NamingException
+    {
+        if (pool != null)
+        {
+            pool.returnContext(ctx);
+        }
+        else
+        {
+            ctx.close();
+        }
     }
 
     /**
@@ -123,26 +279,71 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
     }
 
     /**
-     * Implementation of a ManagedConnection for LDAP.
+     * Implementation of a ManagedConnection for LDAP, providing a {@link DirectoryBackend} as its connection.
+     * When using the in-memory backend all connections share the backend of the store manager.
+     * Otherwise holds a single context for its lifetime, obtained from the pool on first use and returned to it when released
+     * (non-transactional) or closed (transactional). The context is confined to the thread that first used it; any other
+     * thread using this connection (multithreaded ExecutionContext) gets its own context derived from it, sharing the
+     * same underlying LDAP connection, and reused for the lifetime of this connection.
+     * When read replicas are configured, {@link #getReadConnection()} provides a (separate) context to a replica for
+     * read operations, whereas {@link #getConnection()} always connects to the primary.
+     * When "datanucleus.ldap.useLDAPTransactions" is enabled and the server supports LDAP transactions, the writes of a
+     * transactional connection (on all of its contexts) are made in an {@link LDAPTransaction}, ended by its XAResource.
      */
     public class ManagedConnectionImpl extends AbstractManagedConnection
     {
-        LdapContext mainContext;
+        /** Backend for the context used by the thread that first obtained this connection. */
+        JNDIBackend mainContext;
+
+        /** Thread that owns the main context. */
+        Thread ownerThread;
+
+        /** Backends for contexts derived from the main context for use by other threads. */
+        Map<Thread, JNDIBackend> threadContexts;
+
+        /** Backend for the context to a read replica (if any), confined to the thread that first obtained it. */
+        JNDIBackend readContext;
+
+        /** Replica endpoint of the read context. */
+        LDAPReplicaSet.Endpoint readEndpoint;
 
-        List<LdapContext> subContexts;
+        /** Thread that owns the read context. */
+        Thread readOwnerThread;
+
+        /** Batch of deferred binds while flushing (if batching). */
+        BatchingBackend batch;
+
+        /** Thread that performs the flush being batched. */
+        Thread batchThread;
+
+        /** LDAP transaction that the writes are made in (if using LDAP transactions). */
+        LDAPTransaction transaction;
+
+        /** XAResource ending the LDAP transaction (if using LDAP transactions). */
+        EmulatedXAResource xaRes;
 
         public ManagedConnectionImpl()
         {
         }
 
+        /**
+         * Accessor for the connection, being the {@link DirectoryBackend} to perform operations with.
+         * @return The backend
+         */
         public Object getConnection()
         {
-            if (conn == null)
+            if (inMemoryBackend != null)
+            {
+                conn = inMemoryBackend;
+                return inMemoryBackend;
+            }
+
+            if (mainContext == null)
             {
                 try
                 {
-                    mainContext = new InitialLdapContext(ldapEnv, null);
-                    subContexts = new ArrayList<LdapContext>();
+                    mainContext = new JNDIBackend(obtainContext());
+                    ownerThread = Thread.currentThread();
                     conn = mainContext;
                 }
                 catch (NamingException e)
@@ -151,34 +352,187 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
                 }
             }
 
-            try
+            Thread thread = Thread.currentThread();
+            if (batch != null && thread == batchThread && !batch.isDraining())
             {
-                // create a new instance of the main context to ensure thread safety
-                LdapContext subContext = mainContext.newInstance(null);
-                subContexts.add(subContext);
-                return subContext;
+                return batch;
             }
-            catch (NamingException e)
+            if (thread == ownerThread)
             {
-                throw new NucleusException(e.getMessage(), e);
+                return mainContext;
+            }
+
+            // LdapContext is not thread-safe, so give other threads their own context on the same connection
+            synchronized (this)
+            {
+                if (threadContexts == null)
+                {
+                    threadContexts = new HashMap<Thread, JNDIBackend>();
+                }
+                JNDIBackend threadContext = threadContexts.get(thread);
+                if (threadContext == null)
+                {
+                    try
+                    {
+                        threadContext = new JNDIBackend(mainContext.getContext().newInstance(null));
+                        threadContext.setTransaction(transaction);
+                    }
+                    catch (NamingException e)
+                    {
+                        throw new NucleusException(e.getMessage(), e);
+                    }
+                    threadContexts.put(thread, threadContext);
+                }
+                return threadContext;
             }
         }
 
-        public void release()
+        /**
+         * Accessor for the backend to use for read operations (fetch, locate, search). When read replicas are configured
+         * this is for a context to a healthy replica (selected round-robin), else the primary connection.
+         * Reads within a transaction use the primary unless "datanucleus.ldap.readFromReplicasInTransaction" is set,
+         * so that the transaction sees its own writes.
+         * @return The backend to use for reads
+         */
+        public Object getReadConnection()
         {
-            if (commitOnRelease)
+            if (replicas == null || inMemoryBackend != null || batch != null || (!commitOnRelease && !readFromReplicasInTxn))
+            {
+                return getConnection();
+            }
+
+            synchronized (this)
+            {
+                if (readContext != null)
+                {
+                    return (Thread.currentThread() == readOwnerThread) ? readContext : getConnection();
+                }
+            }
+
+            // Borrow outside of the monitor, since it may wait for a busy replica. Busy replicas are not marked down, so only
+            // try as many times as there are replicas
+            LDAPReplicaSet.Endpoint endpoint;
+            for (int i = 0; i < replicas.getEndpoints().size() && (endpoint = replicas.selectEndpoint()) != null; i++)
             {
-                // Non-transactional operation end : write to LDAP and close context(s)
+                LdapContext ctx;
                 try
                 {
-                    for (LdapContext subContext : subContexts)
+                    ctx = replicas.obtainContext(endpoint);
+                }
+                catch (NamingException ne)
+                {
+                    // Endpoint marked as down, so try the next
+                    continue;
+                }
+                if (ctx == null)
+                {
+                    // Endpoint busy, so try the next
+                    continue;
+                }
+
+                synchronized (this)
+                {
+                    if (readContext == null)
                     {
-                        subContext.close();
+                        readContext = new JNDIBackend(ctx);
+                        readEndpoint = endpoint;
+                        readOwnerThread = Thread.currentThread();
+                        return readContext;
                     }
-                    mainContext.close();
-                    subContexts = null;
-                    mainContext = null;
-                    conn = null;
+                }
+
+                // Another thread obtained the read context meanwhile, so read from the primary as other threads do
+                replicas.releaseContext(endpoint, ctx, false);
+                return getConnection();
+            }
+
+            // No replica available, so failover to the primary
+            return getConnection();
+        }
+
+        /**
+         * Method to notify that a read using the context from {@link #getReadConnection()} failed with a communication
+         * error. If the context was to a replica then that replica is marked as down and the context discarded,
+         * so that the read can be retried (on another replica, or the primary).
+         * @param ne The failure
+         * @return Whether the read can be retried
+         */
+        public synchronized boolean readFailed(NamingException ne)
+        {
+            if (readContext == null || Thread.currentThread() != readOwnerThread)
+            {
+                return false;
+            }
+
+            replicas.markFailure(readEndpoint, ne);
+            replicas.releaseContext(readEndpoint, readContext.getContext(), true);
+            readContext = null;
+            readEndpoint = null;
+            readOwnerThread = null;
+            return true;
+        }
+
+        /**
+         * Starts deferring the binds issued by the current thread, so that they can be sent as a pipelined batch.
+         * Any other operation sends the pending binds first.
+         * @param pipeline Pipeline to send the binds with
+         * @return Whether batching was started (false if already batching, or not supported by the backend)
+         */
+        public synchronized boolean startBatch(LDAPPipeline pipeline)
+        {
+            if (batch != null || inMemoryBackend != null)
+            {
+                return false;
+            }
+            batch = new BatchingBackend((DirectoryBackend) getConnection(), pipeline);
+            batchThread = Thread.currentThread();
+            return true;
+        }
+
+        /**
+         * Sends any pending binds and stops batching.
+         * @throws NucleusDataStoreException if any bind failed
+         */
+        public void endBatch()
+        {
+            if (batch != null)
+            {
+                try
+                {
+                    batch.flush();
+                }
+                finally
+                {
+                    discardBatch();
+                }
+            }
+        }
+
+        /**
+         * Stops batching, discarding any pending binds.
+         */
+        public synchronized void discardBatch()
+        {
+            if (batch != null)
+            {
+                batch.discard();
+                batch = null;
+                batchThread = null;
+            }
+        }
+
+        public void release()
+        {
+            if (commitOnRelease && inMemoryBackend != null)
+            {
+                conn = null;
+            }
+            else if (commitOnRelease)
+            {
+                // Non-transactional operation end : write to LDAP and return context(s)
+                try
+                {
+                    releaseContexts();
                 }
                 catch (Exception e)
                 {
@@ -190,7 +544,7 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
 
         public void close()
         {
-            if (mainContext == null)
+            if (mainContext == null && readContext == null && conn == null)
             {
                 return;
             }
@@ -204,24 +558,15 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
             {
                 try
                 {
-                    for (LdapContext subContext : subContexts)
-                    {
-                        subContext.close();
-                    }
-                    mainContext.close();
+                    releaseContexts();
                 }
                 catch (Exception e)
                 {
                     throw new NucleusException(e.getMessage(), e);
                 }
-
             }
             finally
             {
-                subContexts = null;
-                mainContext = null;
-                conn = null;
-
                 for (int i=0; i<listeners.size(); i++)
                 {
                     listeners.get(i).managedConnectionPostClose();
@@ -229,9 +574,141 @@ public class ConnectionFactoryImpl extends AbstractConnectionFactory
             }
         }
 
+        /**
+         * Closes any thread contexts and returns the main context to the pool (or closes it when not pooling).
+         * @throws NamingException if an error occurs closing a context
+         */
+        private synchronized void releaseContexts() throws NamingException
+        {
+            discardBatch();
+            if (transaction != null)
+            {
+                // Connection closed without the transaction being ended, so abort any writes
+                LDAPTransaction txn = transaction;
+                transaction = null;
+                xaRes = null;
+                try
+                {
+                    txn.end(false);
+                }
+                catch (NamingException ne)
+                {
+                    NucleusLogger.DATASTORE.warn(Localiser.msg("LDAP.Transaction.EndFailed", ne.getMessage()));
+                }
+            }
+            if (readContext != null)
+            {
+                replicas.markSuccess(readEndpoint);
+                replicas.releaseContext(readEndpoint, readContext.getContext(), false);
+                readContext = null;
+                readEndpoint = null;
+                readOwnerThread = null;
+            }
+            if (mainContext == null)
+            {
+                conn = null;
+                return;
+            }
+
+            LdapContext ctx = mainContext.getContext();
+            Map<Thread, JNDIBackend> derivedContexts = threadContexts;
+            mainContext = null;
+            ownerThread = null;
+            threadContexts = null;
+            conn = null;
+
+            try
+            {
+                if (derivedContexts != null)
+                {
+                    for (JNDIBackend threadContext : derivedContexts.values())
+                    {
+                        threadContext.getContext().close();
+                    }
+                }
+            }
+            finally
+            {
+                releaseContext(ctx);
+            }
+        }
+
         public XAResource getXAResource()
         {
-            return null;
+            if (inMemoryBackend != null)
+            {
+                return null;
+            }
+            if (xaRes == null)
+            {
+                getConnection();
+                if (!((LDAPStoreManager) storeMgr).isUsingLDAPTransactions(mainContext))
+                {
+                    return null;
+                }
+                synchronized (this)
+                {
+                    transaction = new LDAPTransaction(mainContext.getContext());
+                    mainContext.setTransaction(transaction);
+                    if (threadContexts != null)
+                    {
+                        for (JNDIBackend threadContext : threadContexts.values())
+                        {
+                            threadContext.setTransaction(transaction);
+                        }
+                    }
+                    xaRes = new EmulatedXAResource(this);
+                }
+            }
+            return xaRes;
+        }
+
+        /**
+         * Ends the LDAP transaction (if started), committing or aborting its writes.
+         * @param commit Whether to commit
+         * @throws XAException if the transaction could not be ended (for a commit, the writes have not been applied)
+         */
+        void endTransaction(boolean commit) throws XAException
+        {
+            LDAPTransaction txn = transaction;
+            if (txn == null)
+            {
+                return;
+            }
+            try
+            {
+                txn.end(commit);
+            }
+            catch (NamingException ne)
+            {
+                NucleusLogger.DATASTORE.warn(Localiser.msg("LDAP.Transaction.EndFailed", ne.getMessage()));
+                XAException xe = new XAException(commit ? XAException.XA_RBROLLBACK : XAException.XAER_RMERR);
+                xe.initCause(ne);
+                throw xe;
+            }
+        }
+    }
+
+    /**
+     * Emulated XAResource for a connection using an LDAP transaction, ending the transaction on commit/rollback.
+     */
+    static class EmulatedXAResource extends AbstractEmulatedXAResource
+    {
+        EmulatedXAResource(ManagedConnectionImpl mconn)
+        {
+            super(mconn);
+        }
+
+        public void commit(Xid xid, boolean onePhase) throws XAException
+        {
+            super.commit(xid, onePhase);
+            ((ManagedConnectionImpl) mconn).endTransaction(true);
+        }
+
+        public void rollback(Xid xid) throws XAException
+        {
+            super.rollback(xid);
+            ((ManagedConnectionImpl) mconn).endTransaction(false);
         }
     }
-}
\ No newline at end of file
+}
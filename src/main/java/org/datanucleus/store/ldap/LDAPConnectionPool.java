@@ -0,0 +1,559 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.util.Hashtable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.datanucleus.exceptions.NucleusDataStoreException;
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Bounded pool of LDAP contexts, one per connection factory (so per store manager).
+ * Each pooled context owns its own physical connection to the directory server. The pool provides
+ * <ul>
+ * <li>min/max idle and max total sizing</li>
+ * <li>warm-up of the initial number of connections at startup</li>
+ * <li>fair (FIFO) bounded acquisition with a timeout</li>
+ * <li>a background keep-alive/health check that validates idle connections, evicts the ones idle
+ * for too long, and tops the pool back up to the minimum idle size</li>
+ * <li>metrics about usage of the pool</li>
+ * </ul>
+ * Contrary to the JDK JNDI pool the sizing is per pool and not JVM-global.
+ */
+public class LDAPConnectionPool
+{
+    /** Name of the pool, for logging. */
+    private final String name;
+
+    /** Environment used to create new contexts. */
+    private final Hashtable env;
+
+    private final int maxSize;
+
+    private final int minIdle;
+
+    private final int maxIdle;
+
+    /** Max time to wait for a connection (millisecs), or negative to wait forever. */
+    private final long maxWait;
+
+    /** Interval between runs of the keep-alive/eviction task (millisecs). */
+    private final long timeBetweenEvictionRuns;
+
+    /** Min time that a connection can be idle before being evicted (millisecs). */
+    private final long minEvictableIdleTime;
+
+    /** Permits for borrowing a connection; fair so that waiting threads are served in order. */
+    private final Semaphore permits;
+
+    /** Idle connections, most recently returned at the head. */
+    private final LinkedBlockingDeque<PooledContext> idle = new LinkedBlockingDeque<PooledContext>();
+
+    private ScheduledExecutorService maintenanceExecutor;
+
+    private volatile boolean closed = false;
+
+    private final AtomicInteger numActive = new AtomicInteger();
+
+    /** Number of open connections (idle, active, or being created), never more than the max size. */
+    private final AtomicInteger numOpen = new AtomicInteger();
+
+    private final AtomicLong numCreated = new AtomicLong();
+
+    private final AtomicLong numDestroyed = new AtomicLong();
+
+    private final AtomicLong numBorrowed = new AtomicLong();
+
+    private final AtomicLong numTimeouts = new AtomicLong();
+
+    private final AtomicLong numValidationFailures = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param name Name of the pool (normally the URL)
+     * @param env Environment for creating contexts
+     * @param initialSize Number of connections to create at startup
+     * @param minIdle Min number of idle connections to keep
+     * @param maxIdle Max number of idle connections to keep
+     * @param maxSize Max number of connections (idle + active)
+     * @param maxWait Max time to wait for a connection (millisecs), negative to wait forever
+     * @param timeBetweenEvictionRuns Interval of the keep-alive/eviction task (millisecs), 0 or negative to disable
+     * @param minEvictableIdleTime Min time a connection can be idle before being evicted (millisecs)
+     */
+    public LDAPConnectionPool(String name, Hashtable env, int initialSize, int minIdle, int maxIdle, int maxSize, long maxWait,
+            long timeBetweenEvictionRuns, long minEvictableIdleTime)
+    {
+        this.name = name;
+        this.env = env;
+        this.maxSize = maxSize > 0 ? maxSize : 1;
+        this.maxIdle = Math.max(0, Math.min(maxIdle, this.maxSize));
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxIdle));
+        this.maxWait = maxWait;
+        this.timeBetweenEvictionRuns = timeBetweenEvictionRuns;
+        this.minEvictableIdleTime = minEvictableIdleTime;
+        this.permits = new Semaphore(this.maxSize, true);
+
+        // Warm up the pool
+        int warmUp = Math.min(Math.max(initialSize, this.minIdle), this.maxIdle);
+        for (int i = 0; i < warmUp; i++)
+        {
+            try
+            {
+                idle.addLast(new PooledContext(openContext()));
+            }
+            catch (NamingException ne)
+            {
+                NucleusLogger.CONNECTION.warn(Localiser.msg("LDAP.Pool.WarmUpFailed", name, ne.getMessage()));
+                break;
+            }
+        }
+
+        if (timeBetweenEvictionRuns > 0)
+        {
+            maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "DataNucleus-LDAP-Pool-Maintenance");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            maintenanceExecutor.scheduleWithFixedDelay(new Runnable()
+            {
+                public void run()
+                {
+                    maintain();
+                }
+            }, timeBetweenEvictionRuns, timeBetweenEvictionRuns, TimeUnit.MILLISECONDS);
+        }
+
+        if (NucleusLogger.CONNECTION.isDebugEnabled())
+        {
+            NucleusLogger.CONNECTION.debug(Localiser.msg("LDAP.Pool.Created", name, idle.size(), this.minIdle, this.maxIdle, this.maxSize));
+        }
+    }
+
+    /**
+     * Accessor for the name of this pool.
+     * @return The name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Borrows a context from the pool, creating a new connection when there is no idle one.
+     * Blocks (fairly) until a connection is available when the pool is exhausted.
+     * @return The context
+     * @throws NamingException if a new connection couldn't be created
+     * @throws NucleusDataStoreException if no connection was available within the max wait time
+     */
+    public LdapContext borrowContext() throws NamingException
+    {
+        if (closed)
+        {
+            throw new NucleusDataStoreException(Localiser.msg("LDAP.Pool.Closed", name));
+        }
+
+        long startTime = System.nanoTime();
+        boolean acquired;
+        try
+        {
+            if (maxWait < 0)
+            {
+                permits.acquire();
+                acquired = true;
+            }
+            else
+            {
+                acquired = permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new NucleusDataStoreException(Localiser.msg("LDAP.Pool.Interrupted", name), ie);
+        }
+        long waited = System.nanoTime() - startTime;
+        totalWaitNanos.addAndGet(waited);
+        if (waited > maxWaitNanos.get())
+        {
+            maxWaitNanos.set(waited);
+        }
+        if (!acquired)
+        {
+            numTimeouts.incrementAndGet();
+            throw new NucleusDataStoreException(Localiser.msg("LDAP.Pool.Timeout", name, maxWait, numActive.get(), maxSize));
+        }
+
+        try
+        {
+            LdapContext ctx = null;
+            while (ctx == null)
+            {
+                PooledContext pooled = idle.pollFirst();
+                if (pooled == null)
+                {
+                    ctx = openContext();
+                    if (ctx == null)
+                    {
+                        // All connections are open, yet not all are borrowed : one is being returned to the pool or created for it
+                        pooled = idle.pollFirst(10, TimeUnit.MILLISECONDS);
+                    }
+                }
+                if (pooled != null)
+                {
+                    // Validate when the connection has been idle longer than a keep-alive interval
+                    if (timeBetweenEvictionRuns <= 0 || System.currentTimeMillis() - pooled.lastUsed < timeBetweenEvictionRuns || validate(pooled.ctx))
+                    {
+                        ctx = pooled.ctx;
+                    }
+                    else
+                    {
+                        destroy(pooled.ctx);
+                    }
+                }
+            }
+
+            numActive.incrementAndGet();
+            numBorrowed.incrementAndGet();
+            return ctx;
+        }
+        catch (InterruptedException ie)
+        {
+            permits.release();
+            Thread.currentThread().interrupt();
+            throw new NucleusDataStoreException(Localiser.msg("LDAP.Pool.Interrupted", name), ie);
+        }
+        catch (NamingException | RuntimeException e)
+        {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a context to the pool, making it available for other users.
+     * @param ctx The context previously obtained from {@link #borrowContext()}
+     */
+    public void returnContext(LdapContext ctx)
+    {
+        numActive.decrementAndGet();
+        try
+        {
+            if (closed || idle.size() >= maxIdle)
+            {
+                destroy(ctx);
+            }
+            else
+            {
+                idle.addFirst(new PooledContext(ctx));
+            }
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    /**
+     * Removes a context from the pool, for example when its connection is known to be broken.
+     * @param ctx The context previously obtained from {@link #borrowContext()}
+     */
+    public void invalidateContext(LdapContext ctx)
+    {
+        numActive.decrementAndGet();
+        try
+        {
+            destroy(ctx);
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the pool, closing all idle connections. Active connections are closed when returned.
+     */
+    public void close()
+    {
+        closed = true;
+        if (maintenanceExecutor != null)
+        {
+            maintenanceExecutor.shutdownNow();
+            maintenanceExecutor = null;
+        }
+
+        PooledContext pooled;
+        while ((pooled = idle.pollFirst()) != null)
+        {
+            destroy(pooled.ctx);
+        }
+
+        if (NucleusLogger.CONNECTION.isDebugEnabled())
+        {
+            NucleusLogger.CONNECTION.debug(Localiser.msg("LDAP.Pool.Closed", name) + " : " + toString());
+        }
+    }
+
+    /**
+     * Keep-alive and health check of the idle connections. Evicts connections that have been idle for too long
+     * (retaining the min idle), validates the rest, and creates new connections up to the min idle.
+     */
+    protected void maintain()
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        // Check the connections one at a time, leaving the others available to borrowers meanwhile
+        long now = System.currentTimeMillis();
+        int numToCheck = idle.size();
+        int retained = 0;
+        for (int i = 0; i < numToCheck; i++)
+        {
+            PooledContext pooled = idle.pollFirst();
+            if (pooled == null)
+            {
+                break;
+            }
+            boolean evictable = minEvictableIdleTime > 0 && now - pooled.lastUsed > minEvictableIdleTime;
+            if (closed || (evictable && retained >= minIdle) || !validate(pooled.ctx))
+            {
+                destroy(pooled.ctx);
+            }
+            else
+            {
+                // Connection validated (so kept alive) : still keep the last-used time for the eviction
+                retained++;
+                idle.addLast(pooled);
+            }
+        }
+
+        // Top up to the min number of idle connections, within the max number of open connections
+        while (!closed && idle.size() < minIdle)
+        {
+            try
+            {
+                LdapContext ctx = openContext();
+                if (ctx == null)
+                {
+                    break;
+                }
+                idle.addLast(new PooledContext(ctx));
+            }
+            catch (NamingException ne)
+            {
+                NucleusLogger.CONNECTION.warn(Localiser.msg("LDAP.Pool.CreateFailed", name, ne.getMessage()));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Validates the connection of the context by reading the entry of the provider URL without attributes.
+     * @param ctx The context
+     * @return Whether the connection is usable
+     */
+    protected boolean validate(LdapContext ctx)
+    {
+        try
+        {
+            ctx.getAttributes("", LDAPUtils.NO_ATTRIBUTES);
+            return true;
+        }
+        catch (NamingException ne)
+        {
+            numValidationFailures.incrementAndGet();
+            if (NucleusLogger.CONNECTION.isDebugEnabled())
+            {
+                NucleusLogger.CONNECTION.debug(Localiser.msg("LDAP.Pool.ValidationFailed", name, ne.getMessage()));
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Opens a new connection, unless the max number of connections are already open. The connection is counted as open
+     * before being created, so that concurrent borrowers and the keep-alive task never exceed the max size.
+     * @return The context, or null if the max number of connections are open
+     * @throws NamingException if the connection couldn't be created
+     */
+    private LdapContext openContext() throws NamingException
+    {
+        int open;
+        do
+        {
+            open = numOpen.get();
+            if (open >= maxSize)
+            {
+                return null;
+            }
+        }
+        while (!numOpen.compareAndSet(open, open + 1));
+
+        try
+        {
+            LdapContext ctx = createContext();
+            numCreated.incrementAndGet();
+            return ctx;
+        }
+        catch (NamingException | RuntimeException e)
+        {
+            numOpen.decrementAndGet();
+            throw e;
+        }
+    }
+
+    protected LdapContext createContext() throws NamingException
+    {
+        return new InitialLdapContext(env, null);
+    }
+
+    protected void destroy(LdapContext ctx)
+    {
+        numOpen.decrementAndGet();
+        numDestroyed.incrementAndGet();
+        try
+        {
+            ctx.close();
+        }
+        catch (NamingException ne)
+        {
+            // Ignore, connection is being thrown away
+        }
+    }
+
+    /** @return Number of connections currently borrowed */
+    public int getNumActive()
+    {
+        return numActive.get();
+    }
+
+    /** @return Number of connections currently idle in the pool */
+    public int getNumIdle()
+    {
+        return idle.size();
+    }
+
+    /** @return Number of connections currently open (idle or active) */
+    public int getNumOpen()
+    {
+        return numOpen.get();
+    }
+
+    /** @return Max number of connections of the pool */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /** @return Number of connections created since startup */
+    public long getNumCreated()
+    {
+        return numCreated.get();
+    }
+
+    /** @return Number of connections closed since startup */
+    public long getNumDestroyed()
+    {
+        return numDestroyed.get();
+    }
+
+    /** @return Number of borrow requests served since startup */
+    public long getNumBorrowed()
+    {
+        return numBorrowed.get();
+    }
+
+    /** @return Number of borrow requests that timed out since startup */
+    public long getNumTimeouts()
+    {
+        return numTimeouts.get();
+    }
+
+    /** @return Number of failed validations of idle connections since startup */
+    public long getNumValidationFailures()
+    {
+        return numValidationFailures.get();
+    }
+
+    /** @return Number of threads currently waiting for a connection */
+    public int getNumWaiting()
+    {
+        return permits.getQueueLength();
+    }
+
+    /** @return Average time waited for a connection (millisecs) */
+    public double getAverageWaitTime()
+    {
+        long borrowed = numBorrowed.get() + numTimeouts.get();
+        return borrowed > 0 ? (totalWaitNanos.get() / (double) borrowed) / 1000000.0 : 0.0;
+    }
+
+    /** @return Max time waited for a connection (millisecs) */
+    public long getMaxWaitTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public String toString()
+    {
+        return "LDAPConnectionPool[" + name + "] active=" + getNumActive() + " idle=" + getNumIdle() + " waiting=" + getNumWaiting() +
+            " max=" + maxSize + " created=" + getNumCreated() + " destroyed=" + getNumDestroyed() + " borrowed=" + getNumBorrowed() +
+            " timeouts=" + getNumTimeouts() + " validationFailures=" + getNumValidationFailures() +
+            " avgWait=" + getAverageWaitTime() + "ms maxWait=" + getMaxWaitTime() + "ms";
+    }
+
+    /**
+     * Idle context with the time it was returned to the pool.
+     */
+    private static class PooledContext
+    {
+        final LdapContext ctx;
+
+        final long lastUsed;
+
+        PooledContext(LdapContext ctx)
+        {
+            this.ctx = ctx;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.datanucleus.ExecutionContext;
+import org.datanucleus.exceptions.NucleusOptimisticException;
+import org.datanucleus.flush.FlushOrdered;
+import org.datanucleus.flush.OperationQueue;
+import org.datanucleus.state.DNStateManager;
+import org.datanucleus.store.connection.ManagedConnection;
+
+/**
+ * Flush process for LDAP, flushing objects in the order they were made dirty (as FlushOrdered) but batching the inserts.
+ * When the flush is in a transaction and pipelining is enabled, the binds issued while flushing are deferred and sent
+ * as a pipelined batch, parents before children, either at the end of the flush or when another operation needs
+ * the inserted entries to exist. Any insert failures are reported, per entry, when the batch is sent.
+ */
+public class LDAPFlushProcess extends FlushOrdered
+{
+    /* (non-Javadoc)
+     * @see org.datanucleus.flush.FlushOrdered#execute(org.datanucleus.ExecutionContext, java.util.Collection, java.util.Collection, org.datanucleus.flush.OperationQueue)
+     */
+    @Override
+    public List<NucleusOptimisticException> execute(ExecutionContext ec, Collection<DNStateManager> primarySMs, Collection<DNStateManager> secondarySMs,
+            OperationQueue opQueue)
+    {
+        LDAPStoreManager storeMgr = (LDAPStoreManager) ec.getStoreManager();
+        if (!storeMgr.isBatchingInserts() || !ec.getTransaction().isActive())
+        {
+            return super.execute(ec, primarySMs, secondarySMs, opQueue);
+        }
+
+        ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
+        try
+        {
+            if (!(mconn instanceof ConnectionFactoryImpl.ManagedConnectionImpl))
+            {
+                return super.execute(ec, primarySMs, secondarySMs, opQueue);
+            }
+
+            ConnectionFactoryImpl.ManagedConnectionImpl ldapConn = (ConnectionFactoryImpl.ManagedConnectionImpl) mconn;
+            if (!ldapConn.startBatch(storeMgr.newPipeline(mconn)))
+            {
+                return super.execute(ec, primarySMs, secondarySMs, opQueue);
+            }
+
+            try
+            {
+                List<NucleusOptimisticException> optimisticFailures = super.execute(ec, primarySMs, secondarySMs, opQueue);
+                ldapConn.endBatch();
+                return optimisticFailures;
+            }
+            finally
+            {
+                ldapConn.discardBatch();
+            }
+        }
+        finally
+        {
+            mconn.release();
+        }
+    }
+}
@@ -24,10 +24,17 @@ import org.datanucleus.metadata.MetaDataListener;
 
 /**
  * Listener for the load of metadata for classes.
- * Allows us to reject metadata when it isn't supported by this datastore.
+ * Allows us to reject metadata when it isn't supported by this datastore, and adds the classes to the reference index.
  */
 public class LDAPMetaDataListener implements MetaDataListener
 {
+    LDAPReferenceIndex referenceIndex;
+
+    public LDAPMetaDataListener(LDAPReferenceIndex referenceIndex)
+    {
+        this.referenceIndex = referenceIndex;
+    }
+
     /* (non-Javadoc)
      * @see org.datanucleus.metadata.MetaDataListener#loaded(org.datanucleus.metadata.AbstractClassMetaData)
      */
@@ -38,5 +45,6 @@ public class LDAPMetaDataListener implements MetaDataListener
             // Datastore id not supported
             throw new InvalidClassMetaDataException("LDAP.DatastoreID", cmd.getFullClassName());
         }
+        referenceIndex.classLoaded(cmd);
     }
 }
\ No newline at end of file
@@ -18,27 +18,35 @@ Contributors:
  **********************************************************************/
 package org.datanucleus.store.ldap;
 
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.naming.ContextNotEmptyException;
+import javax.naming.InvalidNameException;
 import javax.naming.NameAlreadyBoundException;
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
+import javax.naming.directory.AttributeInUseException;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.NoSuchAttributeException;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
 import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
 
 import org.datanucleus.ClassLoaderResolver;
 import org.datanucleus.ExecutionContext;
@@ -46,33 +54,38 @@ import org.datanucleus.exceptions.NucleusDataStoreException;
 import org.datanucleus.exceptions.NucleusObjectNotFoundException;
 import org.datanucleus.exceptions.NucleusOptimisticException;
 import org.datanucleus.exceptions.NucleusUserException;
+import org.datanucleus.identity.IdentityUtils;
 import org.datanucleus.metadata.AbstractClassMetaData;
 import org.datanucleus.metadata.AbstractMemberMetaData;
-import org.datanucleus.metadata.ElementMetaData;
 import org.datanucleus.metadata.IdentityType;
-import org.datanucleus.metadata.MetaDataManager;
 import org.datanucleus.metadata.RelationType;
+import org.datanucleus.metadata.VersionMetaData;
 import org.datanucleus.state.DNStateManager;
 import org.datanucleus.store.AbstractPersistenceHandler;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
 import org.datanucleus.store.fieldmanager.DeleteFieldManager;
 import org.datanucleus.store.ldap.LDAPUtils.LocationInfo;
+import org.datanucleus.store.ldap.backend.AssertionFailedException;
+import org.datanucleus.store.ldap.backend.DirectoryBackend;
+import org.datanucleus.store.ldap.backend.WriteControls;
 import org.datanucleus.store.ldap.fieldmanager.AbstractMappingStrategy;
 import org.datanucleus.store.ldap.fieldmanager.FetchFieldManager;
 import org.datanucleus.store.ldap.fieldmanager.MappingStrategyHelper;
 import org.datanucleus.store.ldap.fieldmanager.StoreFieldManager;
-import org.datanucleus.store.ldap.fieldmanager.RelationByAttributeMetaData;
-import org.datanucleus.store.ldap.fieldmanager.RelationByDnMetaData;
 import org.datanucleus.util.Localiser;
 import org.datanucleus.util.NucleusLogger;
 
 /**
  * Persistence handler for persisting to LDAP datastores. 
- * Doesn't support optimistic version checking. Doesn't support datastore identity.
+ * Optimistic version checks are made with the write itself, asserting the version attribute (RFC 4528 Assertion control),
+ * so cost no extra round trip. Doesn't support datastore identity.
  */
 public class LDAPPersistenceHandler extends AbstractPersistenceHandler
 {
+    /** Max number of terms in the OR filter of a search for referring entries. */
+    private static final int MAX_SEARCH_TERMS = 100;
+
     /**
      * Constructor.
      * @param storeMgr Manager for the datastore
@@ -144,34 +157,34 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.Insert.Start", sm.getObjectAsPrintable(), sm.getInternalObjectId()));
             }
 
-            DirContext ctx = (DirContext) mconn.getConnection();
+            DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
             BasicAttributes attrs = new BasicAttributes();
 
-            // split embedded members
-            List<AbstractMemberMetaData> nonEmbeddedMmds = LDAPUtils.getAllMemberMetaData(cmd);
-            List<AbstractMemberMetaData> embeddedMmds = new ArrayList<AbstractMemberMetaData>();
-            for (Iterator<AbstractMemberMetaData> it = nonEmbeddedMmds.iterator(); it.hasNext();)
+            // split members stored in this entry from embedded members stored in child entries
+            // server-generated members are not written, but read back
+            List<AbstractMemberMetaData> entryMmds = LDAPUtils.getAllMemberMetaData(cmd);
+            List<AbstractMemberMetaData> childEntryMmds = new ArrayList<AbstractMemberMetaData>();
+            for (Iterator<AbstractMemberMetaData> it = entryMmds.iterator(); it.hasNext();)
             {
                 AbstractMemberMetaData mmd = it.next();
-                if (LDAPUtils.isEmbeddedField(mmd))
+                if (LDAPUtils.isEmbeddedField(mmd) && LDAPUtils.isEmbeddedInChildEntry(mmd, ec.getMetaDataManager()))
+                {
+                    childEntryMmds.add(mmd);
+                    it.remove();
+                }
+                else if (LDAPUtils.isServerGenerated(mmd))
                 {
-                    embeddedMmds.add(mmd);
                     it.remove();
                 }
             }
-            int[] nonEmbeddedFieldNumbers = new int[nonEmbeddedMmds.size()];
-            for (int i = 0; i < nonEmbeddedFieldNumbers.length; i++)
-            {
-                nonEmbeddedFieldNumbers[i] = nonEmbeddedMmds.get(i).getAbsoluteFieldNumber();
-            }
-            int[] embeddedFieldNumbers = new int[embeddedMmds.size()];
-            for (int i = 0; i < embeddedFieldNumbers.length; i++)
+            int[] entryFieldNumbers = new int[entryMmds.size()];
+            for (int i = 0; i < entryFieldNumbers.length; i++)
             {
-                embeddedFieldNumbers[i] = embeddedMmds.get(i).getAbsoluteFieldNumber();
+                entryFieldNumbers[i] = entryMmds.get(i).getAbsoluteFieldNumber();
             }
 
-            // 1st: non-embedded members
-            sm.provideFields(nonEmbeddedFieldNumbers, new StoreFieldManager(storeMgr, sm, attrs, true));
+            // 1st: all members stored in this entry (including embedded members merged into it), added in one operation
+            sm.provideFields(entryFieldNumbers, new StoreFieldManager(storeMgr, sm, attrs, true));
             LdapName dn = LDAPUtils.getDistinguishedNameForObject(storeMgr, sm, false);
             BasicAttribute objectClass = new BasicAttribute("objectClass");
             for (String oc : objectClasses)
@@ -179,29 +192,22 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 objectClass.add(oc);
             }
             attrs.put(objectClass);
+            writeNextVersion(sm, attrs, true);
+            WriteControls controls = getPostReadControls(sm, backend, null);
             if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
             {
                 NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.createSubcontext", dn, attrs));
             }
-            // use bind() method here
-            // createSubContext returns a new Context object leads to problems when using connection pooling
-            ctx.bind(dn, null, attrs);
+            backend.bind(dn.toString(), attrs, controls);
+            setVersionWritten(sm, attrs);
+            setServerGeneratedValues(sm, controls);
 
-            // 2nd: embedded members now
-            // insert embedded child objects
-            // insertEmbeddedChildEntries(sm, ctx);
-            attrs = new BasicAttributes();
-            sm.provideFields(embeddedFieldNumbers, new StoreFieldManager(storeMgr, sm, attrs, true));
-            if (attrs.size() > 0)
+            // 2nd: embedded members stored as child entries, which need this entry to exist
+            if (!childEntryMmds.isEmpty())
             {
-                if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
-                {
-                    NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", dn, "REPLACE", attrs));
-                }
-                ctx.modifyAttributes(dn, DirContext.REPLACE_ATTRIBUTE, attrs);
+                insertChildEntries(sm, mconn, childEntryMmds);
             }
 
-            // TODO Implement version retrieval
             if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
             {
                 NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.ExecutionTime", (System.currentTimeMillis() - startTime)));
@@ -231,6 +237,46 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
         }
     }
 
+    /**
+     * Inserts the child entries of embedded members of the object managed by the passed StateManager.
+     * The binds are batched (and pipelined, when enabled) unless already batching as part of a flush,
+     * in which case they are deferred with the rest of the flush.
+     * @param sm StateManager
+     * @param mconn The connection
+     * @param childEntryMmds Metadata for the embedded members stored as child entries
+     */
+    private void insertChildEntries(DNStateManager sm, ManagedConnection mconn, List<AbstractMemberMetaData> childEntryMmds)
+    {
+        int[] childEntryFieldNumbers = new int[childEntryMmds.size()];
+        for (int i = 0; i < childEntryFieldNumbers.length; i++)
+        {
+            childEntryFieldNumbers[i] = childEntryMmds.get(i).getAbsoluteFieldNumber();
+        }
+
+        ConnectionFactoryImpl.ManagedConnectionImpl batchConn = null;
+        if (mconn instanceof ConnectionFactoryImpl.ManagedConnectionImpl &&
+            ((ConnectionFactoryImpl.ManagedConnectionImpl) mconn).startBatch(((LDAPStoreManager) storeMgr).newPipeline(mconn)))
+        {
+            batchConn = (ConnectionFactoryImpl.ManagedConnectionImpl) mconn;
+        }
+        try
+        {
+            // Child entries are created by the mapping strategies, so nothing is stored in this entry
+            sm.provideFields(childEntryFieldNumbers, new StoreFieldManager(storeMgr, sm, new BasicAttributes(), true));
+            if (batchConn != null)
+            {
+                batchConn.endBatch();
+            }
+        }
+        finally
+        {
+            if (batchConn != null)
+            {
+                batchConn.discardBatch();
+            }
+        }
+    }
+
     /**
      * Updates the specified fields of the object managed by the passed StateManager in the LDAP datastore.
      * @param sm StateManager
@@ -242,7 +288,6 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
         // Check if read-only so update not permitted
         assertReadOnlyForUpdateOfObject(sm);
 
-        // TODO Implement version checking
         ExecutionContext ec = sm.getExecutionContext();
         ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
         try
@@ -263,7 +308,7 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.Update.Start", sm.getObjectAsPrintable(), sm.getInternalObjectId(), fieldStr.toString()));
             }
 
-            DirContext ctx = (DirContext) mconn.getConnection();
+            DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
 
             // pre-update
             // for hierarchical mapping: check if parent has been changed
@@ -278,7 +323,6 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 {
                     if (i == absoluteFieldNumber)
                     {
-                        // TODO: manual move for non-leaf entry?
                         LdapName oldDn = LDAPUtils.getDistinguishedNameForObject(storeMgr, sm, true);
                         sm.setAssociatedValue("dn", null);
                         LdapName newDn = null;
@@ -304,19 +348,40 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 }
             }
 
-            // update
+            // update, asserting the version read when checking versions, and reading back server-generated values
+            WriteControls controls = getPostReadControls(sm, backend, LDAPUtils.getVersionCheckControls(sm));
             final BasicAttributes attrs = new BasicAttributes();
-            sm.provideFields(fieldNumbers, new StoreFieldManager(storeMgr, sm, attrs, false));
+            List<ModificationItem> valueMods = new ArrayList<ModificationItem>();
+            BasicAttributes replacements = new BasicAttributes();
+            sm.provideFields(getWrittenFieldNumbers(cmd, fieldNumbers), new StoreFieldManager(storeMgr, sm, attrs, valueMods, replacements));
+            writeNextVersion(sm, attrs, false);
             LdapName dn = LDAPUtils.getDistinguishedNameForObject(storeMgr, sm, true);
-            // replace attributes, empty attribute deletes existing attribute
-            if (attrs.size() > 0)
+            if (valueMods.isEmpty())
             {
-                if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+                // replace attributes, empty attribute deletes existing attribute
+                if (attrs.size() > 0)
                 {
-                    NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", dn, "REPLACE", attrs));
+                    if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+                    {
+                        NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", dn, "REPLACE", attrs));
+                    }
+                    if (controls == null)
+                    {
+                        backend.modifyAttributes(dn.toString(), DirContext.REPLACE_ATTRIBUTE, attrs);
+                    }
+                    else
+                    {
+                        backend.modifyAttributes(dn.toString(), getReplaceModifications(attrs), controls);
+                    }
                 }
-                ctx.modifyAttributes(dn, DirContext.REPLACE_ATTRIBUTE, attrs);
             }
+            else
+            {
+                // replace attributes, plus only the changed values of multi-valued relation attributes, in one operation
+                modifyAttributeValues(backend, dn.toString(), attrs, valueMods, replacements, controls);
+            }
+            setVersionWritten(sm, attrs);
+            setServerGeneratedValues(sm, controls);
             if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
             {
                 NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.ExecutionTime", (System.currentTimeMillis() - startTime)));
@@ -327,6 +392,11 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 ec.getStatistics().incrementUpdateCount();
             }
         }
+        catch (AssertionFailedException e)
+        {
+            throw new NucleusOptimisticException(Localiser.msg("LDAP.Update.VersionCheckFailed", sm.getObjectAsPrintable(), sm.getInternalObjectId()),
+                sm.getObject());
+        }
         catch (NamingException e)
         {
             throw new NucleusDataStoreException(e.getMessage(), e);
@@ -354,14 +424,12 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
         sm.provideFields(sm.getClassMetaData().getAllMemberPositions(), new DeleteFieldManager(sm));
 
         // referential integrity: check if this sm is referenced from somewhere in that case remove the reference
-        deleteDnReferences(sm);
-        deleteAttributeReferences(sm);
+        deleteReferences(sm);
 
-        // delete
-        // TODO Implement version checking
+        // delete, asserting the version read when checking versions
         ExecutionContext ec = sm.getExecutionContext();
         ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
-        DirContext ctx = (DirContext) mconn.getConnection();
+        DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
         long startTime = System.currentTimeMillis();
         try
         {
@@ -376,7 +444,9 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
             {
                 NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.destroySubcontext", dn));
             }
-            ctx.unbind(dn);
+            // A non-leaf entry is deleted recursively when this fails, so the result is needed now
+            backend.requireImmediateWrites();
+            backend.unbind(dn.toString(), LDAPUtils.getVersionCheckControls(sm));
 
             if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
             {
@@ -388,6 +458,11 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 ec.getStatistics().incrementDeleteCount();
             }
         }
+        catch (AssertionFailedException e)
+        {
+            throw new NucleusOptimisticException(Localiser.msg("LDAP.Delete.VersionCheckFailed", sm.getObjectAsPrintable(), sm.getInternalObjectId()),
+                sm.getObject());
+        }
         catch (ContextNotEmptyException cnee)
         {
             // delete recursive if parent of hierarchical or cascade-delete
@@ -398,7 +473,7 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                     NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.DeleteRecursive.Start", sm.getObjectAsPrintable(), sm.getInternalObjectId()));
                 }
 
-                LDAPUtils.deleteRecursive(LDAPUtils.getDistinguishedNameForObject(storeMgr, sm, true), ctx);
+                LDAPUtils.deleteRecursive((LDAPStoreManager) storeMgr, mconn, LDAPUtils.getDistinguishedNameForObject(storeMgr, sm, true));
 
                 if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
                 {
@@ -421,125 +496,227 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
     }
 
     /**
-     * Deletes DN references to the given state manager
+     * Assigns the next version to the object managed by the passed StateManager (when versioned and the version is not
+     * maintained by the server), setting the version member (if any) and adding the version attribute to the attributes to write.
      * @param sm StateManager
+     * @param attrs Attributes to write
+     * @param insert Whether the object is being inserted
      */
-    private void deleteDnReferences(DNStateManager sm)
+    private void writeNextVersion(DNStateManager sm, Attributes attrs, boolean insert)
     {
-        // 1st) this sm itself has a DN reference with <element>
-        int[] fieldNumbers = sm.getClassMetaData().getAllMemberPositions();
-        for (int fieldNumber : fieldNumbers)
+        AbstractClassMetaData cmd = sm.getClassMetaData();
+        String attrName = LDAPUtils.getVersionAttributeName(cmd);
+        if (attrName == null || LDAPUtils.isServerVersion(cmd))
+        {
+            return;
+        }
+
+        VersionMetaData vermd = cmd.getVersionMetaDataForClass();
+        Object nextVersion = sm.getExecutionContext().getLockManager().getNextVersion(vermd, insert ? null : sm.getTransactionalVersion());
+        if (vermd.getMemberName() != null)
         {
-            AbstractMemberMetaData mmd = sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
-            if (RelationByDnMetaData.isRelationByDn(mmd, sm.getExecutionContext().getMetaDataManager()))
+            // Version is stored in a member, so update the member too
+            AbstractMemberMetaData verMmd = cmd.getMetaDataForMember(vermd.getMemberName());
+            Object verFieldValue = nextVersion;
+            if (verMmd.getType() == Integer.class || verMmd.getType() == int.class)
             {
-                ElementMetaData elementMetaData = mmd.getElementMetaData();
-                if (elementMetaData != null)
-                {
-                    AbstractClassMetaData otherCmd = LDAPUtils.getEffectiveClassMetaData(mmd, sm.getExecutionContext().getMetaDataManager());
+                verFieldValue = Integer.valueOf(((Number) nextVersion).intValue());
+            }
+            sm.replaceField(verMmd.getAbsoluteFieldNumber(), verFieldValue);
+            sm.provideFields(new int[]{verMmd.getAbsoluteFieldNumber()}, new StoreFieldManager(storeMgr, sm, attrs, insert));
+        }
+        else
+        {
+            attrs.put(new BasicAttribute(attrName, LDAPUtils.getValueForVersion(nextVersion)));
+        }
+        sm.setTransactionalVersion(nextVersion);
+    }
 
-                    Class c = sm.getExecutionContext().getClassLoaderResolver().classForName(otherCmd.getFullClassName());
-                    if (c.isInterface() || Modifier.isAbstract(c.getModifiers()))
-                    {
-                        continue;
-                    }
+    /**
+     * Records the value of the version attribute written for the object managed by the passed StateManager, to assert
+     * with its next write. When the version is maintained by the server the new value is not known.
+     * @param sm StateManager
+     * @param attrs Attributes written
+     * @throws NamingException if an error occurs reading the attributes
+     */
+    private static void setVersionWritten(DNStateManager sm, Attributes attrs) throws NamingException
+    {
+        AbstractClassMetaData cmd = sm.getClassMetaData();
+        String attrName = LDAPUtils.getVersionAttributeName(cmd);
+        if (attrName != null)
+        {
+            Attribute attr = LDAPUtils.isServerVersion(cmd) ? null : attrs.get(attrName);
+            sm.setAssociatedValue(LDAPUtils.VERSION_VALUE_KEY, attr != null && attr.size() > 0 ? String.valueOf(attr.get()) : null);
+        }
+    }
 
-                    String name = elementMetaData.getColumnName() != null ? elementMetaData.getColumnName() : elementMetaData
-                            .getColumnMetaData()[0].getName();
-                    String emptyValue = LDAPUtils.getEmptyValue(mmd);
-                    deleteDnReference(otherCmd, name, sm, emptyValue);
-                }
-            }
+    /**
+     * Adds the request to read back the server-generated attributes of the object managed by the passed StateManager
+     * after the write (RFC 4527 Post-Read control), when it has any and the server supports the control.
+     * @param sm StateManager
+     * @param backend Backend the write is made with
+     * @param controls Controls for the write (or null)
+     * @return The controls for the write (or null)
+     */
+    private WriteControls getPostReadControls(DNStateManager sm, DirectoryBackend backend, WriteControls controls)
+    {
+        String[] attrNames = LDAPUtils.getServerGeneratedAttributeNames(sm.getClassMetaData());
+        if (attrNames.length == 0 || !((LDAPStoreManager) storeMgr).getServerCapabilities(backend).isControlSupported(WriteControls.POST_READ_OID))
+        {
+            return controls;
+        }
+        if (controls == null)
+        {
+            controls = new WriteControls(null);
         }
+        controls.setPostReadAttributes(attrNames);
+        return controls;
+    }
 
-        // 2nd) any other object has a DN reference to this sm w/o <element>
-        ClassLoaderResolver clr = sm.getExecutionContext().getClassLoaderResolver();
-        MetaDataManager mdm = sm.getExecutionContext().getMetaDataManager();
-        Collection<String> classesWithMetaData = mdm.getClassesWithMetaData();
-        for (String className : classesWithMetaData)
+    /**
+     * Sets the server-generated values of the object managed by the passed StateManager after a write, from the entry
+     * returned by the Post-Read control. Without it, server-generated members are unloaded so fetched when next accessed.
+     * @param sm StateManager
+     * @param controls Controls of the write (or null)
+     */
+    private void setServerGeneratedValues(DNStateManager sm, WriteControls controls)
+    {
+        if (LDAPUtils.getServerGeneratedAttributeNames(sm.getClassMetaData()).length > 0)
+        {
+            LDAPUtils.setServerGeneratedValues(storeMgr, sm, controls != null ? controls.getPostReadEntry() : null);
+        }
+    }
+
+    /**
+     * Accessor for the field numbers to write, i.e. without server-generated members.
+     * @param cmd Metadata for the class
+     * @param fieldNumbers The field numbers
+     * @return The field numbers to write
+     */
+    private static int[] getWrittenFieldNumbers(AbstractClassMetaData cmd, int[] fieldNumbers)
+    {
+        int numWritten = 0;
+        int[] writtenFieldNumbers = new int[fieldNumbers.length];
+        for (int fieldNumber : fieldNumbers)
         {
-            AbstractClassMetaData otherCmd = mdm.getMetaDataForClass(className, clr);
-            if (otherCmd.isEmbeddedOnly())
+            if (!LDAPUtils.isServerGenerated(cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber)))
             {
-                continue;
+                writtenFieldNumbers[numWritten++] = fieldNumber;
             }
-            Class c = sm.getExecutionContext().getClassLoaderResolver().classForName(className);
-            if (c.isInterface() || Modifier.isAbstract(c.getModifiers()))
+        }
+        return numWritten == fieldNumbers.length ? fieldNumbers : Arrays.copyOf(writtenFieldNumbers, numWritten);
+    }
+
+    /**
+     * Modifies an entry with the given replaced attributes plus the value-level (ADD/REMOVE) modifications of multi-valued attributes,
+     * in one operation. If the server rejects a value modification because the entry was changed since the values were read
+     * (the value to add is already present, or the value to remove isn't), all values of those attributes are replaced instead.
+     * The result is needed, so writes are made immediately rather than in an LDAP transaction.
+     * @param backend The backend
+     * @param dn DN of the entry
+     * @param attrs The attributes to replace (the replacements are added to these when the value modifications are rejected)
+     * @param valueMods The value-level modifications
+     * @param replacements All values of the attributes having value-level modifications
+     * @param controls The controls of the write (or null)
+     * @throws NamingException if an error occurs
+     */
+    static void modifyAttributeValues(DirectoryBackend backend, String dn, Attributes attrs, List<ModificationItem> valueMods,
+            Attributes replacements, WriteControls controls)
+    throws NamingException
+    {
+        List<ModificationItem> mods = new ArrayList<ModificationItem>(Arrays.asList(getReplaceModifications(attrs)));
+        mods.addAll(valueMods);
+        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", dn, "MODIFY", mods));
+        }
+        backend.requireImmediateWrites();
+        try
+        {
+            backend.modifyAttributes(dn, mods.toArray(new ModificationItem[mods.size()]), controls);
+        }
+        catch (AttributeInUseException | NoSuchAttributeException e)
+        {
+            // The entry was changed since the values were read, so replace all values instead
+            if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
             {
-                continue;
+                NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.Update.ValueModificationsRejected", dn, e.getMessage()));
             }
-            fieldNumbers = otherCmd.getAllMemberPositions();
-            for (int fieldNumber : fieldNumbers)
+            NamingEnumeration<? extends Attribute> replacementEnum = replacements.getAll();
+            while (replacementEnum.hasMore())
             {
-                AbstractMemberMetaData mmd = otherCmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
-                if (RelationByDnMetaData.isRelationByDn(mmd, sm.getExecutionContext().getMetaDataManager()))
-                {
-                    AbstractClassMetaData effectiveCmd = LDAPUtils.getEffectiveClassMetaData(mmd, sm.getExecutionContext().getMetaDataManager());
-                    String[] subclassNames = effectiveCmd != null ? sm.getExecutionContext().getMetaDataManager().getSubclassesForClass(effectiveCmd.getFullClassName(), true) : null;
-                    if (effectiveCmd == sm.getClassMetaData() || (subclassNames != null && Arrays.asList(subclassNames).contains(
-                        sm.getClassMetaData().getFullClassName())))
-                    {
-                        String name = LDAPUtils.getAttributeNameForField(mmd);
-                        String emptyValue = LDAPUtils.getEmptyValue(mmd);
-                        deleteDnReference(otherCmd, name, sm, emptyValue);
-                    }
-                }
+                attrs.put(replacementEnum.next());
             }
+            backend.modifyAttributes(dn, getReplaceModifications(attrs), controls);
         }
     }
 
+    private static ModificationItem[] getReplaceModifications(Attributes attrs) throws NamingException
+    {
+        ModificationItem[] mods = new ModificationItem[attrs.size()];
+        NamingEnumeration<? extends Attribute> attrEnum = attrs.getAll();
+        int i = 0;
+        while (attrEnum.hasMore())
+        {
+            mods[i++] = new ModificationItem(DirContext.REPLACE_ATTRIBUTE, attrEnum.next());
+        }
+        return mods;
+    }
+
     /**
-     * Deletes the DN reference from all classes of given class meta data to the given state manager
-     * @param cmd the class meta data of the object where the reference should be removed from
+     * Deletes the references to the given state manager held by other objects, i.e. the DN and attribute references of
+     * the relations that can refer to it, as found by the reference index of the store manager.
+     * DN references that the server removes itself (referential integrity) are skipped.
+     * The references are grouped by search base and scope, and each group is found with one search whose filter is the OR of
+     * the terms of its references. References in different attributes are only grouped when the server supports the Matched Values
+     * control, used to return just the referring values; otherwise there is one search per attribute. The modifications are pipelined.
      * @param sm StateManager
-     * @param emptyValue the value used for an empty member attribute
      */
-    private void deleteDnReference(AbstractClassMetaData cmd, String name, DNStateManager sm, Object emptyValue)
+    private void deleteReferences(DNStateManager sm)
     {
-        // System.out.println("deleteDnReference: " + cmd.getName() + " - " + sm);
-        LdapName dn = LDAPUtils.getDistinguishedNameForObject(storeMgr, sm, true);
+        ExecutionContext ec = sm.getExecutionContext();
+        List<LDAPReferenceIndex.Reference> references = ((LDAPStoreManager) storeMgr).getReferenceIndex().getReferencesForDelete(sm.getClassMetaData(),
+            ec.getClassLoaderResolver());
+        if (references.isEmpty())
+        {
+            return;
+        }
 
-        // search for object with (pcAttributeName=myDN)
-        ExecutionContext om = sm.getExecutionContext();
-        ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(om);
+        ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
         try
         {
-            LdapName base = LDAPUtils.getSearchBase(cmd, sm.getExecutionContext().getMetaDataManager());
-            String ocFilter = LDAPUtils.getSearchFilter(cmd);
-            String dnFilter = "(" + name + "=" + dn.toString() + ")";
-            String filter = ocFilter != null ? "(&" + ocFilter + dnFilter + ")" : dnFilter;
-            SearchControls searchControls = LDAPUtils.getSearchControls(cmd);
-            searchControls.setReturningAttributes(new String[]{name});
-            DirContext ctx = (DirContext) mconn.getConnection();
-            NamingEnumeration<SearchResult> enumeration = ctx.search(base, filter, searchControls);
-            while (enumeration.hasMoreElements())
-            {
-                SearchResult sr = enumeration.nextElement();
-                String srName = sr.getNameInNamespace();
-                Attributes attrs = sr.getAttributes();
-                Attribute attr = sr.getAttributes().get(name);
-                if (attr != null)
+            DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
+            boolean matchedValues = ((LDAPStoreManager) storeMgr).getServerCapabilities(backend).isControlSupported(DirectoryBackend.MATCHED_VALUES_OID);
+            Map<String, List<ReferenceSearch>> searches = new LinkedHashMap<>();
+            String dn = null;
+            for (LDAPReferenceIndex.Reference reference : references)
+            {
+                String value;
+                if (reference.isByDn())
                 {
-                    // TODO: should not compare strings but parsed LdapName objects
-                    boolean removed = attr.remove(dn.toString());
-                    if (removed)
+                    if (((LDAPStoreManager) storeMgr).isReferenceMaintainedByServer(backend, reference.getAttributeName()))
                     {
-                        if (attr.size() == 0 && emptyValue != null)
-                        {
-                            attr.add(emptyValue);
-                        }
-                        if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
-                        {
-                            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.DeleteDnReference", srName, dn));
-                        }
-                        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
-                        {
-                            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", srName, "REPLACE", attrs));
-                        }
-                        ctx.modifyAttributes(srName, DirContext.REPLACE_ATTRIBUTE, attrs);
+                        continue;
                     }
+                    if (dn == null)
+                    {
+                        dn = LDAPUtils.getDistinguishedNameForObject(storeMgr, sm, true).toString();
+                    }
+                    value = dn;
                 }
+                else
+                {
+                    Object joinAttributeValue = LDAPUtils.getAttributeValue(storeMgr, sm, reference.getJoinAttributeName());
+                    if (joinAttributeValue == null)
+                    {
+                        continue;
+                    }
+                    value = joinAttributeValue.toString();
+                }
+                addReferenceSearchTerm(ec, searches, reference, value, false, matchedValues);
             }
+
+            deleteReferences(mconn, searches);
         }
         catch (NamingException e)
         {
@@ -552,137 +729,335 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
     }
 
     /**
-     * Deletes attribute references to the given StateManager
-     * @param sm StateManager
+     * Deletes the references to the specified (deleted) entries of a class held by other objects, as for
+     * {@link #deleteReferences(DNStateManager)} but for many entries at once, e.g. for a bulk delete.
+     * The terms for the entries are combined into searches of up to {@link #MAX_SEARCH_TERMS} terms, and the referring attributes
+     * are read so that only the values actually present are removed.
+     * @param ec ExecutionContext
+     * @param mconn Connection to use
+     * @param cmd Metadata for the class of the entries
+     * @param entries Attributes of the entries (with those joined by attribute references), keyed by their DN
+     * @throws NamingException if an error occurs
      */
-    private void deleteAttributeReferences(DNStateManager sm)
+    public void deleteReferences(ExecutionContext ec, ManagedConnection mconn, AbstractClassMetaData cmd, Map<String, Attributes> entries)
+    throws NamingException
     {
-        // 1st) this sm itself has a attribute reference with <element>
-        int[] fieldNumbers = sm.getClassMetaData().getAllMemberPositions();
-        for (int fieldNumber : fieldNumbers)
+        List<LDAPReferenceIndex.Reference> references = ((LDAPStoreManager) storeMgr).getReferenceIndex().getReferencesForDelete(cmd,
+            ec.getClassLoaderResolver());
+        if (references.isEmpty() || entries.isEmpty())
+        {
+            return;
+        }
+
+        DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
+        Map<String, List<ReferenceSearch>> searches = new LinkedHashMap<>();
+        for (LDAPReferenceIndex.Reference reference : references)
         {
-            AbstractMemberMetaData mmd = sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
-            if (RelationByAttributeMetaData.isRelationByAttribute(mmd, sm.getExecutionContext().getMetaDataManager()))
+            if (reference.isByDn() && ((LDAPStoreManager) storeMgr).isReferenceMaintainedByServer(backend, reference.getAttributeName()))
             {
-                ElementMetaData elementMetaData = mmd.getElementMetaData();
-                if (elementMetaData != null)
+                continue;
+            }
+            for (Map.Entry<String, Attributes> entry : entries.entrySet())
+            {
+                if (reference.isByDn())
+                {
+                    addReferenceSearchTerm(ec, searches, reference, entry.getKey(), true, true);
+                }
+                else
                 {
-                    RelationByAttributeMetaData mappingMetaData = new RelationByAttributeMetaData(mmd, sm.getExecutionContext().getMetaDataManager());
-                    if (mappingMetaData.getNonOwnerMMD() == mmd)
+                    Attribute joinAttr = entry.getValue().get(reference.getJoinAttributeName());
+                    if (joinAttr != null && joinAttr.size() > 0)
                     {
-                        String ownerAttributeName = mappingMetaData.getOwnerAttributeName();
-                        String joinAttributeName = mappingMetaData.getJoinAttributeName();
-                        Object joinAttributeValue = LDAPUtils.getAttributeValue(storeMgr, sm, joinAttributeName);
-                        String emptyValue = LDAPUtils.getEmptyValue(mmd);
-                        AbstractClassMetaData otherCmd = LDAPUtils.getEffectiveClassMetaData(mmd, sm.getExecutionContext().getMetaDataManager());
-                        deleteAttributeReference(otherCmd, ownerAttributeName, joinAttributeValue, sm, emptyValue);
+                        addReferenceSearchTerm(ec, searches, reference, joinAttr.get().toString(), true, true);
                     }
                 }
             }
         }
+        deleteReferences(mconn, searches);
+    }
 
-        // 2nd) any other object has an attribute reference to this sm w/o <element>
-        ClassLoaderResolver clr = sm.getExecutionContext().getClassLoaderResolver();
-        MetaDataManager mdm = sm.getExecutionContext().getMetaDataManager();
-        Collection<String> classesWithMetaData = mdm.getClassesWithMetaData();
-        for (String className : classesWithMetaData)
+    /**
+     * Adds the term for a reference to the search for the base and scope of its referring class (and for its attribute, unless
+     * attributes can be mixed).
+     * @param ec ExecutionContext
+     * @param searches The searches, keyed by scope and base (and attribute)
+     * @param reference The reference
+     * @param value The value referring to the deleted entry
+     * @param readValues Whether the search has to read the referring values (when searching for several deleted entries)
+     * @param mixAttributes Whether a search can be for references in different attributes, i.e. the referring values are read
+     */
+    private static void addReferenceSearchTerm(ExecutionContext ec, Map<String, List<ReferenceSearch>> searches, LDAPReferenceIndex.Reference reference,
+            String value, boolean readValues, boolean mixAttributes)
+    {
+        AbstractClassMetaData cmd = reference.getReferringClassMetaData();
+        String base = LDAPUtils.getSearchBase(cmd, ec.getMetaDataManager()).toString();
+        int scope = LDAPUtils.getSearchControls(cmd).getSearchScope();
+        String key = scope + ":" + base + (mixAttributes ? "" : ":" + reference.getAttributeName().toLowerCase());
+        List<ReferenceSearch> baseSearches = searches.computeIfAbsent(key, k -> new ArrayList<>());
+        ReferenceSearch search = baseSearches.isEmpty() ? null : baseSearches.get(baseSearches.size() - 1);
+        if (search == null || search.terms.size() >= MAX_SEARCH_TERMS)
+        {
+            search = new ReferenceSearch(base, scope, readValues);
+            baseSearches.add(search);
+        }
+        search.add(reference, value, LDAPUtils.getSearchFilter(cmd));
+    }
+
+    private void deleteReferences(ManagedConnection mconn, Map<String, List<ReferenceSearch>> searches) throws NamingException
+    {
+        if (searches.isEmpty())
+        {
+            return;
+        }
+
+        // The searches must see the references written before, and the removals depend on the result of each write
+        DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
+        backend.requireImmediateWrites();
+        LDAPPipeline pipeline = ((LDAPStoreManager) storeMgr).newPipeline(mconn);
+        for (List<ReferenceSearch> baseSearches : searches.values())
+        {
+            for (ReferenceSearch search : baseSearches)
+            {
+                deleteReferences(backend, pipeline, search);
+            }
+        }
+        pipeline.awaitAndCheck();
+    }
+
+    /**
+     * Deletes the references found by the specified search, submitting the removal of the values from each referring entry.
+     * The values are removed with value-level REMOVE modifications matched by the server. Unless the search is reading the
+     * referring values (for several deleted entries), the referring attributes are not read when the search is for one attribute,
+     * since every entry found holds the values. A search for several attributes reads just the referring values, with the Matched
+     * Values control, so that only the values actually held by an entry are removed from it.
+     * @param backend Backend to search with
+     * @param pipeline Pipeline to submit the modifications to
+     * @param search The search for the referring entries
+     * @throws NamingException if the search fails
+     */
+    private void deleteReferences(DirectoryBackend backend, LDAPPipeline pipeline, ReferenceSearch search) throws NamingException
+    {
+        String filter = search.getFilter();
+        boolean singleAttribute = search.attributeNames.size() == 1;
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(search.scope);
+        if (search.readValues || !singleAttribute)
+        {
+            searchControls.setReturningAttributes(search.attributeNames.toArray(new String[search.attributeNames.size()]));
+        }
+        else
+        {
+            searchControls.setReturningAttributes(new String[]{"1.1"});
+        }
+        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
         {
-            AbstractClassMetaData otherCmd = mdm.getMetaDataForClass(className, clr);
-            if (otherCmd.isEmbeddedOnly())
+            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.search", search.base, filter, search.scope));
+        }
+
+        NamingEnumeration<SearchResult> enumeration = search.readValues || singleAttribute ? backend.search(search.base, filter, searchControls) :
+            backend.search(search.base, filter, searchControls, search.valueFilters.toArray(new String[search.valueFilters.size()]));
+        while (enumeration.hasMoreElements())
+        {
+            SearchResult sr = enumeration.nextElement();
+            final String srName = sr.getNameInNamespace();
+            if (search.readValues)
             {
+                final ModificationItem[] mods = getReferenceRemovals(sr.getAttributes(), search);
+                if (mods.length > 0)
+                {
+                    if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+                    {
+                        NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", srName, "REMOVE", Arrays.toString(mods)));
+                    }
+                    pipeline.submit(srName, b -> b.modifyAttributes(srName, mods));
+                }
                 continue;
             }
-            Class c = sm.getExecutionContext().getClassLoaderResolver().classForName(className);
-            if (c.isInterface() || Modifier.isAbstract(c.getModifiers()))
+
+            final List<Integer> referenceIndices = new ArrayList<>();
+            Set<String> removals = new HashSet<>();
+            for (int i = 0; i < search.references.size(); i++)
+            {
+                LDAPReferenceIndex.Reference reference = search.references.get(i);
+                if ((singleAttribute || hasReferringValue(sr.getAttributes(), reference, search.values.get(i))) &&
+                    removals.add(reference.getAttributeName().toLowerCase() + ":" + search.values.get(i)))
+                {
+                    referenceIndices.add(i);
+                }
+            }
+            if (referenceIndices.isEmpty())
+            {
+                continue;
+            }
+
+            pipeline.submit(srName, b -> removeReferences(b, srName, search, referenceIndices));
+        }
+    }
+
+    /**
+     * Accessor for the modifications removing the values of the references of a search from the read attributes of a referring entry.
+     * The "empty-value" placeholder is added when all values of an attribute are removed.
+     * @param attrs The referring attributes of the entry
+     * @param search The search that found the entry
+     * @return The modifications
+     * @throws NamingException if an error occurs reading the attributes
+     */
+    private static ModificationItem[] getReferenceRemovals(Attributes attrs, ReferenceSearch search) throws NamingException
+    {
+        List<ModificationItem> mods = new ArrayList<>();
+        for (String attributeName : search.attributeNames)
+        {
+            Attribute attr = attrs.get(attributeName);
+            if (attr == null)
             {
                 continue;
             }
-            fieldNumbers = otherCmd.getAllMemberPositions();
-            for (int fieldNumber : fieldNumbers)
+
+            Attribute removedAttr = new BasicAttribute(attr.getID());
+            String emptyValue = null;
+            NamingEnumeration<?> values = attr.getAll();
+            while (values.hasMore())
             {
-                AbstractMemberMetaData mmd = otherCmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
-                if (RelationByAttributeMetaData.isRelationByAttribute(mmd, sm.getExecutionContext().getMetaDataManager()))
+                Object value = values.next();
+                for (int i = 0; i < search.references.size(); i++)
                 {
-                    AbstractClassMetaData effectiveCmd = LDAPUtils.getEffectiveClassMetaData(mmd, sm.getExecutionContext().getMetaDataManager());
-                    String[] subclassNames = effectiveCmd != null ? sm.getExecutionContext().getMetaDataManager().getSubclassesForClass(
-                        effectiveCmd.getFullClassName(), true) : null;
-                    if (effectiveCmd == sm.getClassMetaData() || (subclassNames != null && Arrays.asList(subclassNames).contains(
-                        sm.getClassMetaData().getFullClassName())))
+                    LDAPReferenceIndex.Reference reference = search.references.get(i);
+                    if (reference.getAttributeName().equalsIgnoreCase(attributeName) && isReferringValue(reference, value, search.values.get(i)))
                     {
-                        RelationByAttributeMetaData mappingMetaData = new RelationByAttributeMetaData(mmd, sm.getExecutionContext().getMetaDataManager());
-                        if (mappingMetaData.getOwnerMMD() == mmd)
-                        {
-                            String ownerAttributeName = mappingMetaData.getOwnerAttributeName();
-                            String joinAttributeName = mappingMetaData.getJoinAttributeName();
-                            Object joinAttributeValue = LDAPUtils.getAttributeValue(storeMgr, sm, joinAttributeName);
-                            String emptyValue = LDAPUtils.getEmptyValue(mmd);
-                            deleteAttributeReference(otherCmd, ownerAttributeName, joinAttributeValue, sm, emptyValue);
-                        }
+                        removedAttr.add(value);
+                        emptyValue = reference.getEmptyValue();
+                        break;
                     }
                 }
             }
+            if (removedAttr.size() > 0)
+            {
+                if (removedAttr.size() == attr.size() && emptyValue != null)
+                {
+                    mods.add(new ModificationItem(DirContext.ADD_ATTRIBUTE, new BasicAttribute(attr.getID(), emptyValue)));
+                }
+                mods.add(new ModificationItem(DirContext.REMOVE_ATTRIBUTE, removedAttr));
+            }
         }
+        return mods.toArray(new ModificationItem[mods.size()]);
+    }
+
+    private static boolean isReferringValue(LDAPReferenceIndex.Reference reference, Object value, String referredValue)
+    {
+        if (reference.isByDn())
+        {
+            try
+            {
+                return new LdapName(value.toString()).equals(new LdapName(referredValue));
+            }
+            catch (InvalidNameException e)
+            {
+                return false;
+            }
+        }
+        return value.toString().equals(referredValue);
     }
 
     /**
-     * Deletes the DN reference from all classes of given class meta data to the given state manager
-     * @param cmd the class meta data of the object where the reference should be removed from
-     * @param attributeName the attribute name to search for
-     * @param attributeValue the attribute value to search for
-     * @param sm StateManager
-     * @param emptyValue the value used for an empty member attribute
+     * Removes the values of the specified references of a search from a referring entry.
+     * @param backend Backend to write with
+     * @param dn DN of the referring entry
+     * @param search The search that found the entry
+     * @param referenceIndices Indices of the references (of the search) to remove
+     * @throws NamingException if a removal fails
      */
-    private void deleteAttributeReference(AbstractClassMetaData cmd, String attributeName, Object attributeValue, DNStateManager sm, Object emptyValue)
+    private static void removeReferences(DirectoryBackend backend, String dn, ReferenceSearch search, List<Integer> referenceIndices)
+    throws NamingException
     {
-        // search for object with (pcAttributeName=myDN)
-        ExecutionContext om = sm.getExecutionContext();
-        ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(om);
-        try
+        for (int i : referenceIndices)
         {
-            LdapName base = LDAPUtils.getSearchBase(cmd, sm.getExecutionContext().getMetaDataManager());
-            String ocFilter = LDAPUtils.getSearchFilter(cmd);
-            String dnFilter = "(" + attributeName + "=" + attributeValue + ")";
-            String filter = ocFilter != null ? "(&" + ocFilter + dnFilter + ")" : dnFilter;
-            SearchControls searchControls = LDAPUtils.getSearchControls(cmd);
-            searchControls.setReturningAttributes(new String[]{attributeName});
-            DirContext ctx = (DirContext) mconn.getConnection();
-            NamingEnumeration<SearchResult> enumeration = ctx.search(base, filter, searchControls);
-            while (enumeration.hasMoreElements())
-            {
-                SearchResult sr = enumeration.nextElement();
-                String srName = sr.getNameInNamespace();
-                Attributes attrs = sr.getAttributes();
-                Attribute attr = sr.getAttributes().get(attributeName);
-                if (attr != null)
+            LDAPReferenceIndex.Reference reference = search.references.get(i);
+            String value = search.values.get(i);
+            if (LDAPUtils.removeAttributeValue(backend, dn, reference.getAttributeName(), value, reference.getEmptyValue()) &&
+                NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
+            {
+                if (reference.isByDn())
                 {
-                    boolean removed = attr.remove(attributeValue);
-                    if (removed)
-                    {
-                        if (attr.size() == 0 && emptyValue != null)
-                        {
-                            attr.add(emptyValue);
-                        }
-                        if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
-                        {
-                            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.DeleteAttributeReference", attributeName,
-                                attributeValue, srName));
-                        }
-                        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
-                        {
-                            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", srName, "REPLACE", attrs));
-                        }
-                        ctx.modifyAttributes(srName, DirContext.REPLACE_ATTRIBUTE, attrs);
-                    }
+                    NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.DeleteDnReference", dn, value));
+                }
+                else
+                {
+                    NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.DeleteAttributeReference", reference.getAttributeName(), value, dn));
                 }
             }
         }
-        catch (NamingException e)
+    }
+
+    private static boolean hasReferringValue(Attributes attrs, LDAPReferenceIndex.Reference reference, String referredValue) throws NamingException
+    {
+        Attribute attr = attrs.get(reference.getAttributeName());
+        if (attr != null)
         {
-            throw new NucleusDataStoreException(e.getMessage(), e);
+            NamingEnumeration<?> values = attr.getAll();
+            while (values.hasMore())
+            {
+                if (isReferringValue(reference, values.next(), referredValue))
+                {
+                    return true;
+                }
+            }
         }
-        finally
+        return false;
+    }
+
+    /**
+     * Search for the entries holding references to a deleted object, below one search base with one scope.
+     */
+    private static class ReferenceSearch
+    {
+        final String base;
+
+        final int scope;
+
+        /** Whether the referring values are read, to only remove those present. */
+        final boolean readValues;
+
+        /** The references, and the value referring to the deleted object for each. */
+        final List<LDAPReferenceIndex.Reference> references = new ArrayList<>();
+
+        final List<String> values = new ArrayList<>();
+
+        final Set<String> attributeNames = new LinkedHashSet<>();
+
+        final Set<String> terms = new LinkedHashSet<>();
+
+        /** Filter items for the referring values, for the Matched Values control. */
+        final Set<String> valueFilters = new LinkedHashSet<>();
+
+        ReferenceSearch(String base, int scope, boolean readValues)
         {
-            mconn.release();
+            this.base = base;
+            this.scope = scope;
+            this.readValues = readValues;
+        }
+
+        void add(LDAPReferenceIndex.Reference reference, String value, String objectClassFilter)
+        {
+            references.add(reference);
+            values.add(value);
+            attributeNames.add(reference.getAttributeName());
+            String valueFilter = "(" + reference.getAttributeName() + "=" + LDAPUtils.escapeFilterValue(value) + ")";
+            valueFilters.add(valueFilter);
+            terms.add(objectClassFilter != null ? "(&" + objectClassFilter + valueFilter + ")" : valueFilter);
+        }
+
+        String getFilter()
+        {
+            if (terms.size() == 1)
+            {
+                return terms.iterator().next();
+            }
+            StringBuilder filter = new StringBuilder("(|");
+            for (String term : terms)
+            {
+                filter.append(term);
+            }
+            return filter.append(")").toString();
         }
     }
 
@@ -718,35 +1093,13 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
             NucleusLogger.DATASTORE_RETRIEVE.debug(str.toString());
         }
 
-        List<String> attributeNameList = new ArrayList<String>();
-        ClassLoaderResolver clr = sm.getExecutionContext().getClassLoaderResolver();
-        for (int i = 0; i < fieldNumbers.length; i++)
-        {
-            AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumbers[i]);
-            RelationType relType = mmd.getRelationType(clr);
-            if (relType == RelationType.NONE)
-            {
-                String attrName = LDAPUtils.getAttributeNameForField(mmd);
-                attributeNameList.add(attrName);
-            }
-            else
-            {
-                AbstractMappingStrategy ms = MappingStrategyHelper.findMappingStrategy(storeMgr, sm, mmd, new BasicAttributes());
-                if (ms != null)
-                {
-                    List<String> attributeNames = ms.getAttributeNames();
-                    attributeNameList.addAll(attributeNames);
-                }
-            }
-        }
+        List<String> attributeNameList = getAttributeNames(sm, fieldNumbers);
         String[] attributeNames = attributeNameList.toArray(new String[0]);
 
         ExecutionContext ec = sm.getExecutionContext();
         ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
         try
         {
-            DirContext ctx = (DirContext) mconn.getConnection();
-
             long startTime = System.currentTimeMillis();
             if (NucleusLogger.DATASTORE_RETRIEVE.isDebugEnabled())
             {
@@ -759,8 +1112,9 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.getAttributes", dn, attributeNameList, ""));
             }
 
-            final Attributes result = ctx.getAttributes(dn, attributeNames);
+            Attributes result = LDAPUtils.read(mconn, b -> b.getAttributes(dn, attributeNames));
             sm.replaceFields(fieldNumbers, new FetchFieldManager(storeMgr, sm, result));
+            LDAPUtils.setVersionFromAttributes(sm, result);
 
             if (NucleusLogger.DATASTORE_RETRIEVE.isDebugEnabled())
             {
@@ -787,19 +1141,144 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
     }
 
     /**
-     * Accessor for the object with the specified identity (if present). Since we don't manage the memory instantiation
-     * of objects this just returns null.
+     * Accessor for the names of the attributes to read to retrieve the specified fields of the object, together with the
+     * version attribute of its class (if any).
+     * @param sm StateManager
+     * @param fieldNumbers Absolute field numbers to retrieve
+     * @return The attribute names
+     */
+    private List<String> getAttributeNames(DNStateManager sm, int[] fieldNumbers)
+    {
+        AbstractClassMetaData cmd = sm.getClassMetaData();
+        List<String> attributeNameList = new ArrayList<String>();
+        ClassLoaderResolver clr = sm.getExecutionContext().getClassLoaderResolver();
+        for (int i = 0; i < fieldNumbers.length; i++)
+        {
+            AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumbers[i]);
+            RelationType relType = mmd.getRelationType(clr);
+            if (relType == RelationType.NONE)
+            {
+                String attrName = LDAPUtils.getAttributeNameForField(mmd);
+                attributeNameList.add(attrName);
+            }
+            else
+            {
+                AbstractMappingStrategy ms = MappingStrategyHelper.findMappingStrategy(storeMgr, sm, mmd, new BasicAttributes());
+                if (ms != null)
+                {
+                    List<String> attributeNames = ms.getAttributeNames();
+                    attributeNameList.addAll(attributeNames);
+                }
+            }
+        }
+        String versionAttrName = LDAPUtils.getVersionAttributeName(cmd);
+        if (versionAttrName != null && !attributeNameList.contains(versionAttrName))
+        {
+            attributeNameList.add(versionAttrName);
+        }
+        return attributeNameList;
+    }
+
+    /**
+     * Accessor for the fields of the fetch plan of the object that are not yet loaded, which can be loaded when locating it.
+     * @param sm StateManager
+     * @return Absolute field numbers (empty when the object is new or deleted, so its fields are not to be read)
+     */
+    private static int[] getUnloadedFetchPlanFieldNumbers(DNStateManager sm)
+    {
+        if (sm.getLifecycleState().isNew() || sm.getLifecycleState().isDeleted())
+        {
+            return new int[0];
+        }
+        int[] fetchFieldNumbers = sm.getExecutionContext().getFetchPlan().getFetchPlanForClass(sm.getClassMetaData()).getMemberNumbers();
+        int[] fieldNumbers = new int[fetchFieldNumbers.length];
+        int numFields = 0;
+        for (int fieldNumber : fetchFieldNumbers)
+        {
+            if (!sm.isFieldLoaded(fieldNumber))
+            {
+                fieldNumbers[numFields++] = fieldNumber;
+            }
+        }
+        return Arrays.copyOf(fieldNumbers, numFields);
+    }
+
+    /**
+     * Accessor for the object with the specified identity (if present). When the distinguished name of the object can be
+     * computed from its identity (see {@link LDAPUtils#getDistinguishedNameForId}), the entry is read directly, its class is
+     * chosen from its object classes, and the object is returned with the basic fields of its fetch plan loaded. Otherwise returns
+     * null, so the object is found the generic way (a hollow object, located and fetched).
+     * This is not told whether the caller asked for validation, so the entry is always read, but only with the attributes of
+     * the fetch plans of the classes it can be of (see {@link LDAPUtils#getReturningAttributesForFetchPlan}).
      * @param ec ExecutionContext in use
      * @param id Identity of the object
-     * @return The object
+     * @return The object, or null if not found this way
      */
     public Object findObject(ExecutionContext ec, Object id)
     {
-        return null;
+        if (!IdentityUtils.isSingleFieldIdentity(id))
+        {
+            return null;
+        }
+        ClassLoaderResolver clr = ec.getClassLoaderResolver();
+        AbstractClassMetaData cmd = ec.getMetaDataManager().getMetaDataForClass(IdentityUtils.getTargetClassNameForIdentity(id), clr);
+        LdapName dn = cmd != null ? LDAPUtils.getDistinguishedNameForId(ec, cmd, id) : null;
+        if (dn == null)
+        {
+            return null;
+        }
+
+        ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
+        try
+        {
+            long startTime = System.currentTimeMillis();
+            // the entry may be of a subclass, so read the attributes of the fetch plans of the hierarchy
+            String[] attributeNames = LDAPUtils.getReturningAttributesForFetchPlan(ec, cmd);
+            if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.getAttributes", dn, Arrays.toString(attributeNames), ""));
+            }
+            Attributes result = LDAPUtils.read(mconn, b -> b.getAttributes(dn, attributeNames));
+            if (ec.getStatistics() != null)
+            {
+                ec.getStatistics().incrementNumReads();
+            }
+
+            AbstractClassMetaData entryCmd = LDAPUtils.getClassMetaDataForEntry(ec, cmd, dn, result);
+            if (entryCmd == null)
+            {
+                return null;
+            }
+            Object pc = LDAPUtils.findObjectUsingAID(ec, clr.classForName(entryCmd.getFullClassName()),
+                LDAPUtils.getFieldValuesForEntry(storeMgr, ec, entryCmd, result, LDAPUtils.getBasicFetchPlanFieldNumbers(ec, entryCmd)), false, false);
+            if (NucleusLogger.DATASTORE_RETRIEVE.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE_RETRIEVE.debug(Localiser.msg("LDAP.Find.Found", dn, entryCmd.getFullClassName(), (System.currentTimeMillis() - startTime)));
+            }
+            if (ec.getStatistics() != null)
+            {
+                ec.getStatistics().incrementFetchCount();
+            }
+            return pc;
+        }
+        catch (NameNotFoundException e)
+        {
+            return null;
+        }
+        catch (NamingException e)
+        {
+            throw new NucleusDataStoreException(e.getMessage(), e);
+        }
+        finally
+        {
+            mconn.release();
+        }
     }
 
     /**
      * Locates the object managed by the passed StateManager into the LDAP datastore.
+     * The entry is read with the attributes of the fields of the fetch plan that are not yet loaded, and these fields are loaded
+     * from them, so that locating and then fetching the object (e.g. getObjectById with validation) is one round trip.
      * @param sm StateManager
      * @throws NucleusObjectNotFoundException if the object cannot be located
      */
@@ -817,13 +1296,21 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 {
                     NucleusLogger.DATASTORE_RETRIEVE.debug(Localiser.msg("LDAP.Locate.Start", sm.getObjectAsPrintable(), sm.getInternalObjectId()));
                 }
-                DirContext ctx = (DirContext) mconn.getConnection();
                 LdapName dn = LDAPUtils.getDistinguishedNameForObject(storeMgr, sm, true);
+                int[] fieldNumbers = getUnloadedFetchPlanFieldNumbers(sm);
+                List<String> attributeNameList = fieldNumbers.length > 0 ? getAttributeNames(sm, fieldNumbers) : null;
                 if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
                 {
-                    NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.getAttributes", dn, "none", ""));
+                    NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.getAttributes", dn, attributeNameList != null ? attributeNameList : "none", ""));
+                }
+                String[] attributeNames = attributeNameList != null ? attributeNameList.toArray(new String[0]) : LDAPUtils.NO_ATTRIBUTES;
+                Attributes result = LDAPUtils.read(mconn, b -> b.getAttributes(dn, attributeNames));
+                if (fieldNumbers.length > 0)
+                {
+                    // Load the fetch plan fields from the same read
+                    sm.replaceNonLoadedFields(fieldNumbers, new FetchFieldManager(storeMgr, sm, result));
+                    LDAPUtils.setVersionFromAttributes(sm, result);
                 }
-                ctx.getAttributes(dn, LDAPUtils.NO_ATTRIBUTES);
                 if (NucleusLogger.DATASTORE_RETRIEVE.isDebugEnabled())
                 {
                     NucleusLogger.DATASTORE_RETRIEVE.debug(Localiser.msg("LDAP.ExecutionTime", (System.currentTimeMillis() - startTime)));
@@ -831,6 +1318,10 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
                 if (ec.getStatistics() != null)
                 {
                     ec.getStatistics().incrementNumReads();
+                    if (fieldNumbers.length > 0)
+                    {
+                        ec.getStatistics().incrementFetchCount();
+                    }
                 }
                 return;
             }
@@ -852,4 +1343,236 @@ public class LDAPPersistenceHandler extends AbstractPersistenceHandler
             throw new NucleusUserException(Localiser.msg("LDAP.DatastoreID"));
         }
     }
+
+    /**
+     * Locates the objects managed by the passed StateManagers. Objects in a fixed container are located in groups, by class and
+     * container, with one search per group (an OR of their RDNs, in chunks of "datanucleus.ldap.batchSize"), which also loads the
+     * fields of the fetch plan that are not yet loaded (as {@link #locateObject(DNStateManager)}). Other objects are located one by one.
+     * @param sms StateManagers
+     * @throws NucleusObjectNotFoundException if any object cannot be located
+     */
+    public void locateObjects(DNStateManager[] sms)
+    {
+        Map<DNStateManager, int[]> fieldNumbersBySm = new LinkedHashMap<>();
+        for (DNStateManager sm : sms)
+        {
+            if (isBatchLookupSupported(sm))
+            {
+                fieldNumbersBySm.put(sm, getUnloadedFetchPlanFieldNumbers(sm));
+            }
+            else
+            {
+                locateObject(sm);
+            }
+        }
+        readObjects(fieldNumbersBySm, false);
+    }
+
+    /**
+     * Retrieves the specified fields of the objects managed by the passed StateManagers. Objects in a fixed container are
+     * fetched in groups, by class and container, with one search per group (an OR of their RDNs, in chunks of
+     * "datanucleus.ldap.batchSize"). Other objects are fetched one by one.
+     * @param fieldNumbers Absolute field numbers to retrieve
+     * @param sms StateManagers
+     * @throws NucleusObjectNotFoundException if any object cannot be found
+     */
+    public void fetchObjects(int[] fieldNumbers, DNStateManager... sms)
+    {
+        Map<DNStateManager, int[]> fieldNumbersBySm = new LinkedHashMap<>();
+        for (DNStateManager sm : sms)
+        {
+            if (sm.getLifecycleState().isDeleted())
+            {
+                continue;
+            }
+            if (isBatchLookupSupported(sm))
+            {
+                fieldNumbersBySm.put(sm, fieldNumbers);
+            }
+            else
+            {
+                fetchObject(sm, fieldNumbers);
+            }
+        }
+        readObjects(fieldNumbersBySm, true);
+    }
+
+    /**
+     * Accessor for whether the object can be looked up together with others : application identity, not embedded, and of a class
+     * located in a fixed container so its DN is computed without reading the directory.
+     * @param sm StateManager
+     * @return Whether it can be looked up in a batch
+     */
+    private static boolean isBatchLookupSupported(DNStateManager sm)
+    {
+        AbstractClassMetaData cmd = sm.getClassMetaData();
+        if (cmd.getIdentityType() != IdentityType.APPLICATION || sm.getExecutionContext().getOwnerForEmbeddedStateManager(sm) != null)
+        {
+            return false;
+        }
+        LocationInfo locationInfo = LDAPUtils.getLocationInfo(cmd);
+        return locationInfo.dn != null && locationInfo.parentFieldName == null &&
+            LDAPUtils.getSearchControls(cmd).getSearchScope() != SearchControls.OBJECT_SCOPE;
+    }
+
+    /**
+     * Reads the entries of the objects, grouped by class and container with one search per chunk of objects, and loads the specified
+     * fields of each object from its entry.
+     * @param fieldNumbersBySm Absolute field numbers to load, keyed by the StateManager of the object
+     * @param replace Whether to replace the fields (when fetching), or only load those not yet loaded (when locating)
+     * @throws NucleusObjectNotFoundException if any object cannot be found
+     */
+    private void readObjects(Map<DNStateManager, int[]> fieldNumbersBySm, boolean replace)
+    {
+        if (fieldNumbersBySm.isEmpty())
+        {
+            return;
+        }
+        if (fieldNumbersBySm.size() == 1)
+        {
+            DNStateManager sm = fieldNumbersBySm.keySet().iterator().next();
+            if (replace)
+            {
+                fetchObject(sm, fieldNumbersBySm.get(sm));
+            }
+            else
+            {
+                locateObject(sm);
+            }
+            return;
+        }
+
+        // Group the objects by class and container
+        Map<String, Map<LdapName, DNStateManager>> groups = new LinkedHashMap<>();
+        for (DNStateManager sm : fieldNumbersBySm.keySet())
+        {
+            LdapName dn = LDAPUtils.getDistinguishedNameForObject(storeMgr, sm);
+            String key = sm.getClassMetaData().getFullClassName() + "|" + dn.getPrefix(dn.size() - 1);
+            Map<LdapName, DNStateManager> group = groups.get(key);
+            if (group == null)
+            {
+                group = new LinkedHashMap<>();
+                groups.put(key, group);
+            }
+            group.put(dn, sm);
+        }
+
+        ExecutionContext ec = fieldNumbersBySm.keySet().iterator().next().getExecutionContext();
+        List<NucleusObjectNotFoundException> notFound = new ArrayList<>();
+        int batchSize = ((LDAPStoreManager) storeMgr).getBatchSize();
+        ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
+        try
+        {
+            for (Map<LdapName, DNStateManager> group : groups.values())
+            {
+                Set<String> attributeNames = new LinkedHashSet<>();
+                for (DNStateManager sm : group.values())
+                {
+                    int[] fieldNumbers = fieldNumbersBySm.get(sm);
+                    if (fieldNumbers.length > 0)
+                    {
+                        attributeNames.addAll(getAttributeNames(sm, fieldNumbers));
+                    }
+                }
+
+                List<LdapName> dns = new ArrayList<>(group.keySet());
+                for (int i = 0; i < dns.size(); i += batchSize)
+                {
+                    List<LdapName> chunk = dns.subList(i, Math.min(i + batchSize, dns.size()));
+                    Map<LdapName, Attributes> entries = readEntries(mconn, chunk, attributeNames.toArray(new String[0]));
+                    if (ec.getStatistics() != null)
+                    {
+                        ec.getStatistics().incrementNumReads();
+                    }
+                    for (LdapName dn : chunk)
+                    {
+                        DNStateManager sm = group.get(dn);
+                        Attributes attrs = entries.get(dn);
+                        if (attrs == null)
+                        {
+                            notFound.add(new NucleusObjectNotFoundException("Object not found", sm.getInternalObjectId()));
+                            continue;
+                        }
+                        int[] fieldNumbers = fieldNumbersBySm.get(sm);
+                        if (fieldNumbers.length > 0)
+                        {
+                            if (replace)
+                            {
+                                sm.replaceFields(fieldNumbers, new FetchFieldManager(storeMgr, sm, attrs));
+                            }
+                            else
+                            {
+                                sm.replaceNonLoadedFields(fieldNumbers, new FetchFieldManager(storeMgr, sm, attrs));
+                            }
+                            LDAPUtils.setVersionFromAttributes(sm, attrs);
+                            if (ec.getStatistics() != null)
+                            {
+                                ec.getStatistics().incrementFetchCount();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        catch (NamingException e)
+        {
+            throw new NucleusDataStoreException(e.getMessage(), e);
+        }
+        finally
+        {
+            mconn.release();
+        }
+
+        if (notFound.size() == 1)
+        {
+            throw notFound.get(0);
+        }
+        else if (!notFound.isEmpty())
+        {
+            throw new NucleusObjectNotFoundException(Localiser.msg("LDAP.Fetch.NotFound", notFound.size()), notFound.toArray(new Throwable[0]));
+        }
+    }
+
+    /**
+     * Reads the entries with the specified DNs, all in the same container and with the same RDN attribute, with one search.
+     * @param mconn Managed connection
+     * @param dns Distinguished names of the entries
+     * @param attributeNames Attributes to return
+     * @return The attributes of the entries found, keyed by DN
+     * @throws NamingException if an error occurs
+     */
+    private static Map<LdapName, Attributes> readEntries(ManagedConnection mconn, List<LdapName> dns, String[] attributeNames) throws NamingException
+    {
+        LdapName base = (LdapName) dns.get(0).getPrefix(dns.get(0).size() - 1);
+        StringBuilder filter = new StringBuilder("(|");
+        for (LdapName dn : dns)
+        {
+            Rdn rdn = dn.getRdn(dn.size() - 1);
+            filter.append("(").append(rdn.getType()).append("=").append(LDAPUtils.escapeFilterValue(String.valueOf(rdn.getValue()))).append(")");
+        }
+        filter.append(")");
+
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+        searchControls.setReturningAttributes(attributeNames);
+        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.search", base, filter, searchControls.getSearchScope()));
+        }
+
+        return LDAPUtils.read(mconn, b -> readEntries(b, base.toString(), filter.toString(), searchControls));
+    }
+
+    private static Map<LdapName, Attributes> readEntries(DirectoryBackend backend, String base, String filter, SearchControls searchControls)
+            throws NamingException
+    {
+        Map<LdapName, Attributes> entries = new HashMap<>();
+        NamingEnumeration<SearchResult> enumeration = backend.search(base, filter, searchControls);
+        while (enumeration.hasMore())
+        {
+            SearchResult sr = enumeration.next();
+            entries.put(new LdapName(sr.getNameInNamespace()), sr.getAttributes());
+        }
+        return entries;
+    }
 }
\ No newline at end of file
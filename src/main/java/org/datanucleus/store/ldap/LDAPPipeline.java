@@ -0,0 +1,246 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.NamingException;
+
+import org.datanucleus.exceptions.NucleusDataStoreException;
+import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.ldap.backend.DirectoryBackend;
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Pipeline of independent LDAP operations on a ManagedConnection, allowing several operations to be outstanding
+ * at the same time rather than waiting a round trip for each.
+ * <p>
+ * Operations are executed by worker threads, each using its own backend obtained from the ManagedConnection.
+ * With the JNDI backend these use contexts derived from the same LDAP connection, and JNDI multiplexes the requests on that connection
+ * using their message ids, so up to "depth" requests are in flight on the connection at any time.
+ * With a depth of 1 (or no executor) operations are executed synchronously in the calling thread.
+ * <p>
+ * Operations submitted to the pipeline can complete in any order, so only independent operations should be
+ * submitted between calls to {@link #await()}. Failures are collected per operation and reported by {@link #await()}
+ * rather than stopping the other operations.
+ * <p>
+ * Completion is tracked with the permits of the window only : {@link #await()} waits until it can take all "depth" permits,
+ * so no per-operation state is kept beyond the failures.
+ */
+public class LDAPPipeline
+{
+    /**
+     * Operation to execute against the directory.
+     */
+    public interface Operation
+    {
+        void execute(DirectoryBackend backend) throws NamingException;
+    }
+
+    private final ManagedConnection mconn;
+
+    private final ExecutorService executor;
+
+    /** Max number of outstanding operations. */
+    private final int depth;
+
+    /** Permits for outstanding operations. */
+    private final Semaphore window;
+
+    /** First unexpected error thrown by an operation executed by a worker thread. */
+    private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+    /** Failures keyed by the key of the operation, in submission order. */
+    private final Map<Object, NamingException> failures = Collections.synchronizedMap(new LinkedHashMap<Object, NamingException>());
+
+    private int numSubmitted = 0;
+
+    /**
+     * Constructor.
+     * @param mconn The connection to execute the operations with
+     * @param executor Executor for the worker threads (null means execute synchronously)
+     * @param depth Max number of outstanding operations
+     */
+    public LDAPPipeline(ManagedConnection mconn, ExecutorService executor, int depth)
+    {
+        this.mconn = mconn;
+        this.executor = (depth > 1) ? executor : null;
+        this.depth = Math.max(depth, 1);
+        this.window = new Semaphore(this.depth);
+    }
+
+    /**
+     * Accessor for whether operations are actually pipelined (as opposed to executed synchronously).
+     * @return Whether pipelining
+     */
+    public boolean isPipelining()
+    {
+        return executor != null;
+    }
+
+    /**
+     * Submits an operation, blocking while the max number of operations are outstanding.
+     * @param key Key identifying the operation (e.g. its DN, or the object it is for) when reporting failures
+     * @param op The operation
+     */
+    public void submit(final Object key, final Operation op)
+    {
+        numSubmitted++;
+        if (executor == null)
+        {
+            execute(key, op, (DirectoryBackend) mconn.getConnection());
+            return;
+        }
+
+        try
+        {
+            window.acquire();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new NucleusDataStoreException(ie.getMessage(), ie);
+        }
+
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        execute(key, op, (DirectoryBackend) mconn.getConnection());
+                    }
+                    catch (RuntimeException | Error e)
+                    {
+                        error.compareAndSet(null, e);
+                    }
+                    finally
+                    {
+                        window.release();
+                    }
+                }
+            });
+        }
+        catch (RuntimeException re)
+        {
+            window.release();
+            throw re;
+        }
+    }
+
+    private void execute(Object key, Operation op, DirectoryBackend backend)
+    {
+        try
+        {
+            op.execute(backend);
+        }
+        catch (NamingException ne)
+        {
+            if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.Pipeline.OperationFailed", key, ne.getMessage()));
+            }
+            failures.put(key, ne);
+        }
+    }
+
+    /**
+     * Waits for all outstanding operations to complete, and returns the failures of all operations submitted
+     * since the previous call.
+     * @return Failures keyed by the operation key (in submission order); empty if all succeeded
+     */
+    public Map<Object, NamingException> await()
+    {
+        if (executor != null)
+        {
+            // All permits are available once no operation is outstanding.
+            // Must wait for the operations even when interrupted since they use the connection
+            window.acquireUninterruptibly(depth);
+            window.release(depth);
+        }
+
+        Throwable error = this.error.getAndSet(null);
+        if (error != null)
+        {
+            numSubmitted = 0;
+            failures.clear();
+            if (error instanceof RuntimeException)
+            {
+                throw (RuntimeException) error;
+            }
+            throw new NucleusDataStoreException(error.getMessage(), error);
+        }
+
+        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled() && numSubmitted > 0)
+        {
+            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.Pipeline.Completed", numSubmitted, failures.size()));
+        }
+        numSubmitted = 0;
+
+        synchronized (failures)
+        {
+            Map<Object, NamingException> result = new LinkedHashMap<Object, NamingException>(failures);
+            failures.clear();
+            return result;
+        }
+    }
+
+    /**
+     * Waits for all outstanding operations to complete, throwing an exception if any of them failed.
+     * @throws NucleusDataStoreException with the failures as nested exceptions, if any operation failed
+     */
+    public void awaitAndCheck()
+    {
+        Map<Object, NamingException> result = await();
+        if (!result.isEmpty())
+        {
+            throw failuresToException(result);
+        }
+    }
+
+    /**
+     * Convenience method to convert pipeline failures into an exception.
+     * @param failures The failures
+     * @return The exception, with one nested exception per failed operation
+     */
+    public static NucleusDataStoreException failuresToException(Map<Object, NamingException> failures)
+    {
+        if (failures.size() == 1)
+        {
+            Map.Entry<Object, NamingException> entry = failures.entrySet().iterator().next();
+            return new NucleusDataStoreException(entry.getValue().getMessage(), entry.getValue());
+        }
+
+        List<Throwable> nested = new ArrayList<Throwable>();
+        for (Map.Entry<Object, NamingException> entry : failures.entrySet())
+        {
+            nested.add(new NucleusDataStoreException(entry.getKey() + " : " + entry.getValue().getMessage(), entry.getValue()));
+        }
+        return new NucleusDataStoreException(Localiser.msg("LDAP.Pipeline.Failures", failures.size()), nested.toArray(new Throwable[nested.size()]));
+    }
+}
@@ -0,0 +1,315 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.datanucleus.ClassLoaderResolver;
+import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.ElementMetaData;
+import org.datanucleus.metadata.MetaDataManager;
+import org.datanucleus.store.ldap.fieldmanager.RelationByAttributeMetaData;
+import org.datanucleus.store.ldap.fieldmanager.RelationByDnMetaData;
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Index of the attributes that can refer to objects of a class, i.e. the references to remove when an object is deleted
+ * (referential integrity). Built from the metadata once, rather than scanning all classes and members for each delete :
+ * classes are indexed when first needed after their metadata is loaded (see {@link LDAPMetaDataListener}), and the
+ * references for a class being deleted are resolved once per class.
+ */
+public class LDAPReferenceIndex
+{
+    /**
+     * Attribute of entries of a (referring) class that can refer to an object.
+     */
+    public static class Reference
+    {
+        final AbstractClassMetaData referringCmd;
+
+        final String attributeName;
+
+        final String joinAttributeName;
+
+        final String emptyValue;
+
+        Reference(AbstractClassMetaData referringCmd, String attributeName, String joinAttributeName, String emptyValue)
+        {
+            this.referringCmd = referringCmd;
+            this.attributeName = attributeName;
+            this.joinAttributeName = joinAttributeName;
+            this.emptyValue = emptyValue;
+        }
+
+        /**
+         * Accessor for the class whose entries hold the reference.
+         * @return Metadata for the referring class
+         */
+        public AbstractClassMetaData getReferringClassMetaData()
+        {
+            return referringCmd;
+        }
+
+        /**
+         * Accessor for the attribute (of the referring entries) holding the reference.
+         * @return The attribute name
+         */
+        public String getAttributeName()
+        {
+            return attributeName;
+        }
+
+        /**
+         * Accessor for the attribute of the referred object whose value is held by the reference, for a relation by attribute.
+         * @return The join attribute name, or null for a relation by DN (the reference being the DN)
+         */
+        public String getJoinAttributeName()
+        {
+            return joinAttributeName;
+        }
+
+        /**
+         * Accessor for the placeholder value of the attribute when it has no references (extension "empty-value").
+         * @return The empty value (or null)
+         */
+        public String getEmptyValue()
+        {
+            return emptyValue;
+        }
+
+        public boolean isByDn()
+        {
+            return joinAttributeName == null;
+        }
+
+        public String toString()
+        {
+            return referringCmd.getFullClassName() + "." + attributeName + (joinAttributeName != null ? "->" + joinAttributeName : "");
+        }
+    }
+
+    private final MetaDataManager mmgr;
+
+    /** Names of classes whose metadata is loaded but not yet indexed. */
+    private final Set<String> pendingClassNames = new LinkedHashSet<String>();
+
+    /** Whether the classes with metadata before the index was created have been added. */
+    private boolean initialised = false;
+
+    /** References from the members (with element) of a class, keyed by the class name. */
+    private final Map<String, List<Reference>> ownReferences = new HashMap<String, List<Reference>>();
+
+    /** References from other classes, keyed by the name of the (declared) referred class. */
+    private final Map<String, List<Reference>> incomingReferences = new LinkedHashMap<String, List<Reference>>();
+
+    /** References to remove on delete, resolved for the class (including superclasses) being deleted. */
+    private final Map<String, List<Reference>> resolvedReferences = new HashMap<String, List<Reference>>();
+
+    public LDAPReferenceIndex(MetaDataManager mmgr)
+    {
+        this.mmgr = mmgr;
+    }
+
+    /**
+     * Method to notify that the metadata for a class has been loaded, so that it is indexed.
+     * @param cmd Metadata for the class
+     */
+    public synchronized void classLoaded(AbstractClassMetaData cmd)
+    {
+        pendingClassNames.add(cmd.getFullClassName());
+    }
+
+    /**
+     * Accessor for the references to remove when deleting an object of the specified class : the references to it held
+     * by objects of other classes, and the references held by the other side of its own relations with element.
+     * @param cmd Metadata for the class of the object being deleted
+     * @param clr ClassLoader resolver
+     * @return The references
+     */
+    public synchronized List<Reference> getReferencesForDelete(AbstractClassMetaData cmd, ClassLoaderResolver clr)
+    {
+        indexPendingClasses(clr);
+
+        List<Reference> references = resolvedReferences.get(cmd.getFullClassName());
+        if (references == null)
+        {
+            references = new ArrayList<Reference>();
+            List<Reference> own = ownReferences.get(cmd.getFullClassName());
+            if (own == null)
+            {
+                own = indexOwnReferences(cmd, clr);
+            }
+            references.addAll(own);
+            for (Map.Entry<String, List<Reference>> entry : incomingReferences.entrySet())
+            {
+                if (entry.getKey().equals(cmd.getFullClassName()) || isSubclass(cmd.getFullClassName(), entry.getKey()))
+                {
+                    references.addAll(entry.getValue());
+                }
+            }
+            references = Collections.unmodifiableList(references);
+            resolvedReferences.put(cmd.getFullClassName(), references);
+            if (NucleusLogger.DATASTORE.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE.debug(Localiser.msg("LDAP.ReferenceIndex.Resolved", cmd.getFullClassName(), references));
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Indexes the classes whose metadata was loaded since the last call.
+     * @param clr ClassLoader resolver
+     */
+    private void indexPendingClasses(ClassLoaderResolver clr)
+    {
+        if (!initialised)
+        {
+            // Classes loaded before this index was listening
+            Collection<String> classNames = mmgr.getClassesWithMetaData();
+            pendingClassNames.addAll(classNames);
+            initialised = true;
+        }
+        if (pendingClassNames.isEmpty())
+        {
+            return;
+        }
+
+        List<String> classNames = new ArrayList<String>(pendingClassNames);
+        pendingClassNames.clear();
+        for (String className : classNames)
+        {
+            AbstractClassMetaData cmd = mmgr.getMetaDataForClass(className, clr);
+            if (cmd == null || ownReferences.containsKey(className))
+            {
+                continue;
+            }
+            indexOwnReferences(cmd, clr);
+            indexIncomingReferences(cmd, clr);
+        }
+
+        // New references (or subclasses) may apply to classes already resolved
+        resolvedReferences.clear();
+    }
+
+    /**
+     * Indexes the relations with element of the specified class, whose other side holds references to its objects.
+     */
+    private List<Reference> indexOwnReferences(AbstractClassMetaData cmd, ClassLoaderResolver clr)
+    {
+        List<Reference> references = new ArrayList<Reference>();
+        for (int fieldNumber : cmd.getAllMemberPositions())
+        {
+            AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
+            ElementMetaData elementMetaData = mmd.getElementMetaData();
+            if (elementMetaData == null)
+            {
+                continue;
+            }
+            if (RelationByDnMetaData.isRelationByDn(mmd, mmgr))
+            {
+                AbstractClassMetaData otherCmd = LDAPUtils.getEffectiveClassMetaData(mmd, mmgr);
+                if (otherCmd == null || isAbstract(otherCmd, clr))
+                {
+                    continue;
+                }
+                String name = elementMetaData.getColumnName() != null ? elementMetaData.getColumnName() : elementMetaData.getColumnMetaData()[0].getName();
+                references.add(new Reference(otherCmd, name, null, LDAPUtils.getEmptyValue(mmd)));
+            }
+            else if (RelationByAttributeMetaData.isRelationByAttribute(mmd, mmgr))
+            {
+                RelationByAttributeMetaData mappingMetaData = new RelationByAttributeMetaData(mmd, mmgr);
+                if (mappingMetaData.getNonOwnerMMD() == mmd)
+                {
+                    AbstractClassMetaData otherCmd = LDAPUtils.getEffectiveClassMetaData(mmd, mmgr);
+                    references.add(new Reference(otherCmd, mappingMetaData.getOwnerAttributeName(), mappingMetaData.getJoinAttributeName(),
+                        LDAPUtils.getEmptyValue(mmd)));
+                }
+            }
+        }
+        ownReferences.put(cmd.getFullClassName(), references);
+        return references;
+    }
+
+    /**
+     * Indexes the relations of the specified class that refer to objects of other classes (by their declared class).
+     */
+    private void indexIncomingReferences(AbstractClassMetaData cmd, ClassLoaderResolver clr)
+    {
+        if (cmd.isEmbeddedOnly() || isAbstract(cmd, clr))
+        {
+            return;
+        }
+        for (int fieldNumber : cmd.getAllMemberPositions())
+        {
+            AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
+            Reference reference = null;
+            if (RelationByDnMetaData.isRelationByDn(mmd, mmgr))
+            {
+                reference = new Reference(cmd, LDAPUtils.getAttributeNameForField(mmd), null, LDAPUtils.getEmptyValue(mmd));
+            }
+            else if (RelationByAttributeMetaData.isRelationByAttribute(mmd, mmgr))
+            {
+                RelationByAttributeMetaData mappingMetaData = new RelationByAttributeMetaData(mmd, mmgr);
+                if (mappingMetaData.getOwnerMMD() == mmd)
+                {
+                    reference = new Reference(cmd, mappingMetaData.getOwnerAttributeName(), mappingMetaData.getJoinAttributeName(),
+                        LDAPUtils.getEmptyValue(mmd));
+                }
+            }
+            if (reference != null)
+            {
+                AbstractClassMetaData referredCmd = LDAPUtils.getEffectiveClassMetaData(mmd, mmgr);
+                if (referredCmd != null)
+                {
+                    List<Reference> references = incomingReferences.get(referredCmd.getFullClassName());
+                    if (references == null)
+                    {
+                        references = new ArrayList<Reference>();
+                        incomingReferences.put(referredCmd.getFullClassName(), references);
+                    }
+                    references.add(reference);
+                }
+            }
+        }
+    }
+
+    private boolean isSubclass(String className, String superclassName)
+    {
+        String[] subclassNames = mmgr.getSubclassesForClass(superclassName, true);
+        return subclassNames != null && Arrays.asList(subclassNames).contains(className);
+    }
+
+    private static boolean isAbstract(AbstractClassMetaData cmd, ClassLoaderResolver clr)
+    {
+        Class c = clr.classForName(cmd.getFullClassName());
+        return c.isInterface() || Modifier.isAbstract(c.getModifiers());
+    }
+}
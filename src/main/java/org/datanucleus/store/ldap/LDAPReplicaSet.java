@@ -0,0 +1,269 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.datanucleus.exceptions.NucleusDataStoreException;
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Set of read-only replica endpoints to which reads (fetch, locate, query searches) can be load-balanced.
+ * Endpoints are selected round-robin among the healthy ones. An endpoint that fails is marked down for a
+ * retry interval that grows exponentially with consecutive failures (up to a max), after which it is tried again.
+ * When no replica is healthy the caller falls back to the primary.
+ */
+public class LDAPReplicaSet
+{
+    /** Max multiplier applied to the retry interval for consecutive failures. */
+    private static final int MAX_BACKOFF_SHIFT = 5;
+
+    private final List<Endpoint> endpoints;
+
+    private final long retryInterval;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Constructor.
+     * @param endpoints The replica endpoints
+     * @param retryInterval Base interval (millisecs) before retrying an endpoint that failed
+     */
+    public LDAPReplicaSet(List<Endpoint> endpoints, long retryInterval)
+    {
+        this.endpoints = Collections.unmodifiableList(new ArrayList<Endpoint>(endpoints));
+        this.retryInterval = retryInterval;
+    }
+
+    public List<Endpoint> getEndpoints()
+    {
+        return endpoints;
+    }
+
+    /**
+     * Selects the next healthy endpoint (round-robin).
+     * @return The endpoint, or null if no endpoint is currently available
+     */
+    public Endpoint selectEndpoint()
+    {
+        int size = endpoints.size();
+        if (size == 0)
+        {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        int start = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+        for (int i = 0; i < size; i++)
+        {
+            Endpoint endpoint = endpoints.get((start + i) % size);
+            if (endpoint.isAvailable(now))
+            {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtains a context connected to the specified endpoint, marking the endpoint down if the connection fails.
+     * When the pool of the endpoint has no connection available (timed out, or closed) the endpoint is not marked down,
+     * since it is busy rather than failing, and null is returned so that the caller can try another endpoint.
+     * @param endpoint The endpoint
+     * @return The context, or null if the pool of the endpoint has no connection available
+     * @throws NamingException if the connection fails
+     */
+    public LdapContext obtainContext(Endpoint endpoint) throws NamingException
+    {
+        try
+        {
+            LdapContext ctx = (endpoint.pool != null) ? endpoint.pool.borrowContext() : new InitialLdapContext(endpoint.env, null);
+            endpoint.numReads.incrementAndGet();
+            return ctx;
+        }
+        catch (NamingException ne)
+        {
+            markFailure(endpoint, ne);
+            throw ne;
+        }
+        catch (NucleusDataStoreException e)
+        {
+            if (NucleusLogger.CONNECTION.isDebugEnabled())
+            {
+                NucleusLogger.CONNECTION.debug(Localiser.msg("LDAP.Replica.Unavailable", endpoint.url, e.getMessage()));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Releases a context obtained from {@link #obtainContext(Endpoint)}.
+     * @param endpoint The endpoint
+     * @param ctx The context
+     * @param broken Whether the connection of the context is known to be broken
+     */
+    public void releaseContext(Endpoint endpoint, LdapContext ctx, boolean broken)
+    {
+        if (endpoint.pool != null)
+        {
+            if (broken)
+            {
+                endpoint.pool.invalidateContext(ctx);
+            }
+            else
+            {
+                endpoint.pool.returnContext(ctx);
+            }
+        }
+        else
+        {
+            try
+            {
+                ctx.close();
+            }
+            catch (NamingException ne)
+            {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Marks an endpoint as failed, so it won't be selected until its retry interval has elapsed.
+     * @param endpoint The endpoint
+     * @param ne The failure
+     */
+    public void markFailure(Endpoint endpoint, NamingException ne)
+    {
+        int failures = endpoint.consecutiveFailures.incrementAndGet();
+        long backoff = retryInterval << Math.min(failures - 1, MAX_BACKOFF_SHIFT);
+        endpoint.downUntil = System.currentTimeMillis() + backoff;
+        endpoint.numFailures.incrementAndGet();
+        NucleusLogger.CONNECTION.warn(Localiser.msg("LDAP.Replica.Down", endpoint.url, backoff, ne.getMessage()));
+    }
+
+    /**
+     * Marks an endpoint as healthy after a successful operation.
+     * @param endpoint The endpoint
+     */
+    public void markSuccess(Endpoint endpoint)
+    {
+        if (endpoint.consecutiveFailures.get() > 0)
+        {
+            endpoint.consecutiveFailures.set(0);
+            endpoint.downUntil = 0;
+            if (NucleusLogger.CONNECTION.isDebugEnabled())
+            {
+                NucleusLogger.CONNECTION.debug(Localiser.msg("LDAP.Replica.Up", endpoint.url));
+            }
+        }
+    }
+
+    /**
+     * Closes the pools of all endpoints.
+     */
+    public void close()
+    {
+        for (Endpoint endpoint : endpoints)
+        {
+            if (endpoint.pool != null)
+            {
+                endpoint.pool.close();
+            }
+        }
+    }
+
+    public String toString()
+    {
+        return "LDAPReplicaSet" + endpoints;
+    }
+
+    /**
+     * Replica endpoint, with its (optional) pool and health state.
+     */
+    public static class Endpoint
+    {
+        final String url;
+
+        final java.util.Hashtable env;
+
+        final LDAPConnectionPool pool;
+
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        final AtomicLong numReads = new AtomicLong();
+
+        final AtomicLong numFailures = new AtomicLong();
+
+        volatile long downUntil = 0;
+
+        /**
+         * Constructor.
+         * @param url URL of the replica
+         * @param env Environment for creating contexts to the replica
+         * @param pool Pool of contexts to the replica (or null if not pooling)
+         */
+        public Endpoint(String url, java.util.Hashtable env, LDAPConnectionPool pool)
+        {
+            this.url = url;
+            this.env = env;
+            this.pool = pool;
+        }
+
+        public String getURL()
+        {
+            return url;
+        }
+
+        public LDAPConnectionPool getConnectionPool()
+        {
+            return pool;
+        }
+
+        /** @return Number of contexts obtained from this endpoint since startup */
+        public long getNumReads()
+        {
+            return numReads.get();
+        }
+
+        /** @return Number of failures of this endpoint since startup */
+        public long getNumFailures()
+        {
+            return numFailures.get();
+        }
+
+        boolean isAvailable(long now)
+        {
+            return now >= downUntil;
+        }
+
+        public String toString()
+        {
+            return url + (downUntil > System.currentTimeMillis() ? " (down)" : "");
+        }
+    }
+}
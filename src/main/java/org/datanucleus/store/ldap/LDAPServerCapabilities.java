@@ -0,0 +1,270 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.datanucleus.store.ldap.backend.DirectoryBackend;
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Controls, extended operations, features and capabilities advertised by the LDAP server in its root DSE.
+ * Used to decide whether optional protocol features (e.g. LDAP transactions) can be used.
+ * Also records which DN references the server maintains on delete, as far as it can be found out : the 389-DS plugin and the
+ * OpenLDAP overlay are looked for in the server configuration (only readable with sufficient rights). Active Directory only
+ * maintains its linked attributes, so nothing is recorded for it and the attributes have to be configured.
+ */
+public class LDAPServerCapabilities
+{
+    /** Capabilities when the root DSE cannot be read, so no optional feature is used. */
+    public static final LDAPServerCapabilities NONE = new LDAPServerCapabilities(
+        Collections.<String>emptySet(), Collections.<String>emptySet(), Collections.<String>emptySet(), Collections.<String>emptySet(), null, null);
+
+    /** OID of the capability advertised by Active Directory domain controllers. */
+    public static final String ACTIVE_DIRECTORY_OID = "1.2.840.113556.1.4.800";
+
+    /** Entry of the referential integrity plugin in the configuration of 389-DS. */
+    private static final String DS389_REFERENTIAL_INTEGRITY_DN = "cn=referential integrity postoperation,cn=plugins,cn=config";
+
+    private static final String[] ROOT_DSE_ATTRIBUTES = {"supportedControl", "supportedExtension", "supportedFeatures", "supportedCapabilities", "vendorName"};
+
+    private final Set<String> controls;
+
+    private final Set<String> extensions;
+
+    private final Set<String> features;
+
+    private final Set<String> capabilities;
+
+    private final String vendorName;
+
+    /** Attributes (lower case) whose DN references the server removes on delete, or null if none are known. */
+    private final Set<String> referentialIntegrityAttributes;
+
+    LDAPServerCapabilities(Set<String> controls, Set<String> extensions, Set<String> features, Set<String> capabilities, String vendorName,
+            Set<String> referentialIntegrityAttributes)
+    {
+        this.controls = controls;
+        this.extensions = extensions;
+        this.features = features;
+        this.capabilities = capabilities;
+        this.vendorName = vendorName;
+        this.referentialIntegrityAttributes = referentialIntegrityAttributes;
+    }
+
+    /**
+     * Reads the capabilities of the server from its root DSE.
+     * @param backend Backend to read with
+     * @return The capabilities ({@link #NONE} if the root DSE cannot be read)
+     */
+    public static LDAPServerCapabilities probe(DirectoryBackend backend)
+    {
+        try
+        {
+            Attributes attrs = backend.getAttributes("", ROOT_DSE_ATTRIBUTES);
+            Attribute vendorAttr = attrs.get("vendorName");
+            Set<String> capabilities = getValues(attrs, "supportedCapabilities");
+            LDAPServerCapabilities caps = new LDAPServerCapabilities(getValues(attrs, "supportedControl"), getValues(attrs, "supportedExtension"),
+                getValues(attrs, "supportedFeatures"), capabilities, vendorAttr != null && vendorAttr.size() > 0 ? String.valueOf(vendorAttr.get()) : null,
+                capabilities.contains(ACTIVE_DIRECTORY_OID) ? null : probeReferentialIntegrity(backend));
+            if (NucleusLogger.DATASTORE.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE.debug(Localiser.msg("LDAP.Capabilities.Probed", caps));
+            }
+            return caps;
+        }
+        catch (NamingException e)
+        {
+            NucleusLogger.DATASTORE.warn(Localiser.msg("LDAP.Capabilities.ProbeFailed", e.getMessage()));
+            return NONE;
+        }
+    }
+
+    /**
+     * Looks for the referential integrity plugin of 389-DS and the "refint" overlay of OpenLDAP in the configuration of the server.
+     * @param backend Backend to read with
+     * @return The (lower case) attributes maintained by the server, or null if not found (or the attributes can't be read)
+     */
+    private static Set<String> probeReferentialIntegrity(DirectoryBackend backend)
+    {
+        // 389-DS
+        try
+        {
+            // Older versions list the attributes in the plugin arguments rather than in "referint-membership-attr"
+            Attributes attrs = backend.getAttributes(DS389_REFERENTIAL_INTEGRITY_DN, new String[]{"*"});
+            Attribute enabledAttr = attrs.get("nsslapd-pluginEnabled");
+            if (enabledAttr != null && "on".equalsIgnoreCase(String.valueOf(enabledAttr.get())))
+            {
+                Set<String> attrNames = toLowerCase(getValues(attrs, "referint-membership-attr"));
+                if (attrNames.isEmpty())
+                {
+                    attrNames = toLowerCase(getPluginArgAttributeNames(attrs));
+                }
+                return attrNames.isEmpty() ? null : attrNames;
+            }
+        }
+        catch (NamingException e)
+        {
+            // Not 389-DS, or configuration not readable
+        }
+
+        // OpenLDAP
+        try
+        {
+            SearchControls searchControls = new SearchControls();
+            searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+            searchControls.setReturningAttributes(new String[]{"olcRefintAttribute"});
+            Set<String> attrNames = null;
+            NamingEnumeration<SearchResult> enumeration = backend.search("cn=config", "(objectClass=olcRefintConfig)", searchControls);
+            while (enumeration.hasMore())
+            {
+                Set<String> overlayAttrNames = toLowerCase(getValues(enumeration.next().getAttributes(), "olcRefintAttribute"));
+                if (!overlayAttrNames.isEmpty())
+                {
+                    if (attrNames == null)
+                    {
+                        attrNames = new HashSet<>();
+                    }
+                    attrNames.addAll(overlayAttrNames);
+                }
+            }
+            return attrNames;
+        }
+        catch (NamingException e)
+        {
+            // Not OpenLDAP, or configuration not readable
+        }
+        return null;
+    }
+
+    /**
+     * Accessor for the attributes listed in the arguments of the 389-DS referential integrity plugin : "nsslapd-pluginarg3" onwards,
+     * the first arguments being the update delay, the log file and the log change setting.
+     * @param attrs Attributes of the plugin entry
+     * @return The attribute names (empty if none)
+     * @throws NamingException if the values can't be read
+     */
+    static Set<String> getPluginArgAttributeNames(Attributes attrs) throws NamingException
+    {
+        Set<String> attrNames = new HashSet<>();
+        NamingEnumeration<? extends Attribute> attrEnum = attrs.getAll();
+        while (attrEnum.hasMore())
+        {
+            Attribute attr = attrEnum.next();
+            String attrId = attr.getID().toLowerCase();
+            if (attrId.startsWith("nsslapd-pluginarg"))
+            {
+                try
+                {
+                    if (Integer.parseInt(attrId.substring("nsslapd-pluginarg".length())) >= 3)
+                    {
+                        attrNames.addAll(getValues(attrs, attr.getID()));
+                    }
+                }
+                catch (NumberFormatException nfe)
+                {
+                    // Not a numbered argument
+                }
+            }
+        }
+        attrNames.remove("");
+        return attrNames;
+    }
+
+    private static Set<String> toLowerCase(Set<String> values)
+    {
+        Set<String> lowerValues = new HashSet<>();
+        for (String value : values)
+        {
+            lowerValues.add(value.toLowerCase());
+        }
+        return Collections.unmodifiableSet(lowerValues);
+    }
+
+    private static Set<String> getValues(Attributes attrs, String attrName) throws NamingException
+    {
+        Attribute attr = attrs.get(attrName);
+        if (attr == null)
+        {
+            return Collections.emptySet();
+        }
+        Set<String> values = new HashSet<>();
+        NamingEnumeration<?> enumeration = attr.getAll();
+        while (enumeration.hasMore())
+        {
+            values.add(String.valueOf(enumeration.next()).trim());
+        }
+        return Collections.unmodifiableSet(values);
+    }
+
+    public boolean isControlSupported(String oid)
+    {
+        return controls.contains(oid);
+    }
+
+    public boolean isExtensionSupported(String oid)
+    {
+        return extensions.contains(oid);
+    }
+
+    public boolean isFeatureSupported(String oid)
+    {
+        return features.contains(oid);
+    }
+
+    /**
+     * Accessor for whether the server advertises the specified capability (Active Directory "supportedCapabilities").
+     * @param oid OID of the capability
+     * @return Whether supported
+     */
+    public boolean hasCapability(String oid)
+    {
+        return capabilities.contains(oid);
+    }
+
+    public String getVendorName()
+    {
+        return vendorName;
+    }
+
+    /**
+     * Accessor for the attributes whose DN references the server removes when the referenced entry is deleted.
+     * @return The attribute names (lower case), or null if none are known to be
+     */
+    public Set<String> getReferentialIntegrityAttributes()
+    {
+        return referentialIntegrityAttributes;
+    }
+
+    public String toString()
+    {
+        return "LDAPServerCapabilities[vendor=" + vendorName + " controls=" + controls + " extensions=" + extensions +
+            " features=" + features + " capabilities=" + capabilities +
+            " referentialIntegrity=" + referentialIntegrityAttributes + "]";
+    }
+}
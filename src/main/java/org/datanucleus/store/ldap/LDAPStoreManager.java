@@ -22,20 +22,30 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.datanucleus.ClassLoaderResolver;
 import org.datanucleus.ExecutionContext;
 import org.datanucleus.PersistenceNucleusContext;
 import org.datanucleus.exceptions.NucleusException;
-import org.datanucleus.flush.FlushOrdered;
 import org.datanucleus.metadata.MetaDataListener;
 import org.datanucleus.metadata.QueryLanguage;
 import org.datanucleus.store.AbstractStoreManager;
 import org.datanucleus.store.StoreManager;
+import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.ldap.backend.DirectoryBackend;
+import org.datanucleus.store.ldap.backend.InMemoryBackend;
+import org.datanucleus.store.ldap.backend.LDAPTransaction;
 import org.datanucleus.store.ldap.query.JDOQLQuery;
 import org.datanucleus.store.ldap.query.JPQLQuery;
 import org.datanucleus.store.query.Query;
 import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
 
 /**
  * Manager for LDAP datastores.
@@ -45,6 +55,54 @@ public class LDAPStoreManager extends AbstractStoreManager
     /** Extension for metadata of a field/property to define the mapping strategy to use. */
     public static final String MAPPING_STRATEGY_EXTENSON = "mapping-strategy";
 
+    /** Comma-separated URLs of read-only replicas to which reads are load-balanced. */
+    public static final String PROPERTY_REPLICA_URLS = "datanucleus.ldap.replicaURLs";
+
+    /** Whether reads within an active transaction can also go to the replicas (default false). */
+    public static final String PROPERTY_READ_FROM_REPLICAS_IN_TXN = "datanucleus.ldap.readFromReplicasInTransaction";
+
+    /** Base interval (millisecs) before a failed replica is retried (default 30000). */
+    public static final String PROPERTY_REPLICA_RETRY_INTERVAL = "datanucleus.ldap.replicaRetryInterval";
+
+    /** Backend performing the directory operations : "jndi" (default, an LDAP server) or "memory" (in-memory directory). */
+    public static final String PROPERTY_BACKEND = "datanucleus.ldap.backend";
+
+    public static final String BACKEND_JNDI = "jndi";
+
+    public static final String BACKEND_MEMORY = "memory";
+
+    /** Max number of outstanding operations when pipelining writes (default 1, meaning no pipelining). */
+    public static final String PROPERTY_PIPELINE_DEPTH = "datanucleus.ldap.pipelineDepth";
+
+    /** Max number of worker threads executing pipelined operations, shared by all pipelines (default 4 times the pipeline depth). */
+    public static final String PROPERTY_PIPELINE_MAX_THREADS = "datanucleus.ldap.pipelineMaxThreads";
+
+    /** Whether to batch the inserts of a flush and send them pipelined (default true, only applies when pipelining). */
+    public static final String PROPERTY_BATCH_INSERTS = "datanucleus.ldap.batchInserts";
+
+    /**
+     * Whether to make the writes of a transaction in an LDAP transaction (RFC 5805) when the server supports it (default false).
+     * A server may only apply and validate these writes when the transaction ends, and searches don't see them, so operations
+     * depending on the result of a write or searching for written entries (deletes, changes of multi-valued relations, moves of
+     * entries, bulk updates and deletes) commit the LDAP transaction first, and the writes after them are applied individually.
+     */
+    public static final String PROPERTY_USE_LDAP_TRANSACTIONS = "datanucleus.ldap.useLDAPTransactions";
+
+    /** Number of results per page when a search reads all results in pages (default 1000). */
+    public static final String PROPERTY_PAGE_SIZE = "datanucleus.ldap.pageSize";
+
+    /** Max number of objects looked up by one search when fetching or locating several objects (default 100). */
+    public static final String PROPERTY_BATCH_SIZE = "datanucleus.ldap.batchSize";
+
+    /**
+     * Whether the server removes the DN references to deleted entries itself, so they needn't be removed on delete :
+     * "auto" (default, detected from the server), "true" or "false".
+     */
+    public static final String PROPERTY_SERVER_REFERENTIAL_INTEGRITY = "datanucleus.ldap.serverReferentialIntegrity";
+
+    /** Comma-separated attributes whose DN references the server maintains (default all when "true", those detected when "auto"). */
+    public static final String PROPERTY_SERVER_REFERENTIAL_INTEGRITY_ATTRIBUTES = "datanucleus.ldap.serverReferentialIntegrityAttributes";
+
     static
     {
         Localiser.registerBundle("org.datanucleus.store.ldap.Localisation", LDAPStoreManager.class.getClassLoader());
@@ -52,6 +110,42 @@ public class LDAPStoreManager extends AbstractStoreManager
 
     MetaDataListener metadataListener;
 
+    /** Index of the references to remove when deleting objects. */
+    LDAPReferenceIndex referenceIndex;
+
+    /** Max number of outstanding operations of a pipeline. */
+    int pipelineDepth = 1;
+
+    /** Max number of worker threads for pipelined operations. */
+    int pipelineMaxThreads;
+
+    /** Whether inserts during a flush are batched. */
+    boolean batchInserts = true;
+
+    /** Whether to use LDAP transactions for transactional writes. */
+    boolean useLDAPTransactions = false;
+
+    /** Number of results per page of a paged search. */
+    int pageSize = 1000;
+
+    /** Max number of objects looked up by one search. */
+    int batchSize = 100;
+
+    /** Whether the server maintains DN references on delete : null when to be detected. */
+    Boolean serverReferentialIntegrity = null;
+
+    /** Attributes (lower case) whose DN references the server maintains, null for all. */
+    Set<String> serverReferentialIntegrityAttributes;
+
+    /** Capabilities of the LDAP server, read when first needed. */
+    LDAPServerCapabilities serverCapabilities;
+
+    /** Worker threads for pipelined operations, created when first needed. */
+    ExecutorService pipelineExecutor;
+
+    /** Directory when using the in-memory backend. */
+    InMemoryBackend inMemoryBackend;
+
     /**
      * Constructor.
      * @param clr ClassLoader resolver
@@ -63,12 +157,56 @@ public class LDAPStoreManager extends AbstractStoreManager
         super("ldap", clr, ctx, props);
 
         // Handler for metadata
-        metadataListener = new LDAPMetaDataListener();
+        referenceIndex = new LDAPReferenceIndex(ctx.getMetaDataManager());
+        metadataListener = new LDAPMetaDataListener(referenceIndex);
         ctx.getMetaDataManager().registerListener(metadataListener);
 
         // Handler for persistence process
         persistenceHandler = new LDAPPersistenceHandler(this);
-        flushProcess = new FlushOrdered();
+        flushProcess = new LDAPFlushProcess();
+
+        if (hasProperty(PROPERTY_PIPELINE_DEPTH))
+        {
+            pipelineDepth = Math.max(1, getIntProperty(PROPERTY_PIPELINE_DEPTH));
+        }
+        pipelineMaxThreads = 4 * pipelineDepth;
+        if (hasProperty(PROPERTY_PIPELINE_MAX_THREADS))
+        {
+            pipelineMaxThreads = Math.max(1, getIntProperty(PROPERTY_PIPELINE_MAX_THREADS));
+        }
+        if (hasProperty(PROPERTY_BATCH_INSERTS))
+        {
+            batchInserts = getBooleanProperty(PROPERTY_BATCH_INSERTS);
+        }
+        if (hasProperty(PROPERTY_USE_LDAP_TRANSACTIONS))
+        {
+            useLDAPTransactions = getBooleanProperty(PROPERTY_USE_LDAP_TRANSACTIONS);
+        }
+        if (hasProperty(PROPERTY_PAGE_SIZE))
+        {
+            pageSize = Math.max(1, getIntProperty(PROPERTY_PAGE_SIZE));
+        }
+        if (hasProperty(PROPERTY_BATCH_SIZE))
+        {
+            batchSize = Math.max(1, getIntProperty(PROPERTY_BATCH_SIZE));
+        }
+        String refIntegrity = getStringProperty(PROPERTY_SERVER_REFERENTIAL_INTEGRITY);
+        if (refIntegrity != null && !"auto".equalsIgnoreCase(refIntegrity.trim()))
+        {
+            serverReferentialIntegrity = Boolean.valueOf(refIntegrity.trim());
+        }
+        String refIntegrityAttrs = getStringProperty(PROPERTY_SERVER_REFERENTIAL_INTEGRITY_ATTRIBUTES);
+        if (refIntegrityAttrs != null && refIntegrityAttrs.trim().length() > 0)
+        {
+            serverReferentialIntegrityAttributes = new HashSet<>();
+            for (String attrName : refIntegrityAttrs.split(","))
+            {
+                if (attrName.trim().length() > 0)
+                {
+                    serverReferentialIntegrityAttributes.add(attrName.trim().toLowerCase());
+                }
+            }
+        }
 
         logConfiguration();
     }
@@ -79,7 +217,193 @@ public class LDAPStoreManager extends AbstractStoreManager
     public synchronized void close()
     {
         nucleusContext.getMetaDataManager().deregisterListener(metadataListener);
+        if (pipelineExecutor != null)
+        {
+            pipelineExecutor.shutdown();
+            pipelineExecutor = null;
+        }
         super.close();
+        inMemoryBackend = null;
+    }
+
+    /**
+     * Accessor for the in-memory directory, shared by all connections, when using the "memory" backend.
+     * @return The in-memory backend
+     */
+    public synchronized InMemoryBackend getInMemoryBackend()
+    {
+        if (inMemoryBackend == null)
+        {
+            inMemoryBackend = new InMemoryBackend();
+        }
+        return inMemoryBackend;
+    }
+
+    /**
+     * Accessor for the index of the references to remove when deleting objects.
+     * @return The reference index
+     */
+    public LDAPReferenceIndex getReferenceIndex()
+    {
+        return referenceIndex;
+    }
+
+    /**
+     * Accessor for the capabilities advertised by the LDAP server, read from its root DSE on first call.
+     * @param backend Backend to read the root DSE with (if not yet read)
+     * @return The capabilities
+     */
+    public synchronized LDAPServerCapabilities getServerCapabilities(DirectoryBackend backend)
+    {
+        if (serverCapabilities == null)
+        {
+            serverCapabilities = LDAPServerCapabilities.probe(backend);
+        }
+        return serverCapabilities;
+    }
+
+    /**
+     * Accessor for whether the writes of a transaction should be made in an LDAP transaction (RFC 5805).
+     * Returns false (logging a warning once) when enabled but the server doesn't advertise the transaction extended operations.
+     * @param backend Backend to read the server capabilities with (if not yet read)
+     * @return Whether to use LDAP transactions
+     */
+    public boolean isUsingLDAPTransactions(DirectoryBackend backend)
+    {
+        if (!useLDAPTransactions)
+        {
+            return false;
+        }
+        LDAPServerCapabilities caps = getServerCapabilities(backend);
+        if (caps.isExtensionSupported(LDAPTransaction.START_TRANSACTION_OID) && caps.isExtensionSupported(LDAPTransaction.END_TRANSACTION_OID))
+        {
+            return true;
+        }
+        synchronized (this)
+        {
+            if (useLDAPTransactions)
+            {
+                NucleusLogger.DATASTORE.warn(Localiser.msg("LDAP.Transaction.NotSupported"));
+                useLDAPTransactions = false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Accessor for the number of results per page when a search reads all results in pages.
+     * @return The page size
+     */
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * Accessor for the max number of objects looked up by one search (an OR of their RDNs) when fetching or locating several objects.
+     * @return The batch size
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Accessor for whether the server removes the DN references held in the specified attribute when the referenced entry is deleted,
+     * so that they needn't be removed by the delete. Uses "datanucleus.ldap.serverReferentialIntegrity" and
+     * "datanucleus.ldap.serverReferentialIntegrityAttributes", detecting from the server when "auto". All attributes are only
+     * taken as maintained when "true" is set explicitly : under "auto" an attribute is maintained when the server is found to
+     * maintain references and either lists the attribute or the attribute is configured.
+     * @param backend Backend to read the server capabilities with (if not yet read)
+     * @param attributeName Name of the referring attribute
+     * @return Whether the server maintains the references
+     */
+    public boolean isReferenceMaintainedByServer(DirectoryBackend backend, String attributeName)
+    {
+        if (Boolean.FALSE.equals(serverReferentialIntegrity))
+        {
+            return false;
+        }
+        if (serverReferentialIntegrityAttributes != null)
+        {
+            if (!serverReferentialIntegrityAttributes.contains(attributeName.toLowerCase()))
+            {
+                return false;
+            }
+            if (Boolean.TRUE.equals(serverReferentialIntegrity))
+            {
+                return true;
+            }
+        }
+        else if (Boolean.TRUE.equals(serverReferentialIntegrity))
+        {
+            return true;
+        }
+
+        Set<String> detectedAttrNames = getServerCapabilities(backend).getReferentialIntegrityAttributes();
+        if (detectedAttrNames == null)
+        {
+            return false;
+        }
+        return serverReferentialIntegrityAttributes != null || detectedAttrNames.contains(attributeName.toLowerCase());
+    }
+
+    /**
+     * Creates a pipeline for executing independent operations on the specified connection.
+     * When "datanucleus.ldap.pipelineDepth" is more than 1 the operations are executed concurrently over the connection,
+     * otherwise synchronously. A pipeline created by a worker thread is synchronous, so that a worker never waits
+     * for operations queued behind it.
+     * @param mconn The connection
+     * @return The pipeline
+     */
+    public LDAPPipeline newPipeline(ManagedConnection mconn)
+    {
+        boolean pipelining = pipelineDepth > 1 && !(Thread.currentThread() instanceof PipelineThread);
+        return new LDAPPipeline(mconn, pipelining ? getPipelineExecutor() : null, pipelineDepth);
+    }
+
+    /**
+     * Accessor for whether the inserts of a flush should be batched and sent pipelined.
+     * @return Whether batching inserts
+     */
+    public boolean isBatchingInserts()
+    {
+        return batchInserts && pipelineDepth > 1;
+    }
+
+    private synchronized ExecutorService getPipelineExecutor()
+    {
+        if (pipelineExecutor == null)
+        {
+            // Fixed number of threads, stopped when idle. The queue needn't be bounded since each pipeline
+            // has at most "depth" operations outstanding
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(pipelineMaxThreads, pipelineMaxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    private final AtomicInteger threadNumber = new AtomicInteger();
+
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thread = new PipelineThread(r, "DataNucleus-LDAP-Pipeline-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+            pipelineExecutor = executor;
+        }
+        return pipelineExecutor;
+    }
+
+    /**
+     * Worker thread executing pipelined operations.
+     */
+    private static class PipelineThread extends Thread
+    {
+        PipelineThread(Runnable r, String name)
+        {
+            super(r, name);
+        }
     }
 
     /**
@@ -95,6 +419,8 @@ public class LDAPStoreManager extends AbstractStoreManager
         set.add(StoreManager.OPTION_ORM_EMBEDDED_PC);
         set.add(StoreManager.OPTION_QUERY_JDOQL_BULK_DELETE);
         set.add(StoreManager.OPTION_QUERY_JPQL_BULK_DELETE);
+        set.add(StoreManager.OPTION_QUERY_JDOQL_BULK_UPDATE);
+        set.add(StoreManager.OPTION_QUERY_JPQL_BULK_UPDATE);
         return set;
     }
 
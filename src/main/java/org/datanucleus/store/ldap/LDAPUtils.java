@@ -20,25 +20,37 @@ package org.datanucleus.store.ldap;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
+import javax.naming.CommunicationException;
 import javax.naming.ContextNotEmptyException;
 import javax.naming.InvalidNameException;
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
 import javax.naming.directory.Attribute;
+import javax.naming.directory.AttributeInUseException;
 import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.NoSuchAttributeException;
+import javax.naming.directory.SchemaViolationException;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
 import javax.naming.ldap.LdapName;
@@ -53,13 +65,19 @@ import org.datanucleus.exceptions.NucleusUserException;
 import org.datanucleus.identity.IdentityUtils;
 import org.datanucleus.metadata.AbstractClassMetaData;
 import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.IdentityType;
 import org.datanucleus.metadata.MetaDataManager;
 import org.datanucleus.metadata.MetaDataUtils;
 import org.datanucleus.metadata.RelationType;
+import org.datanucleus.metadata.VersionMetaData;
+import org.datanucleus.metadata.VersionStrategy;
 import org.datanucleus.state.DNStateManager;
 import org.datanucleus.store.FieldValues;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.ldap.backend.DirectoryBackend;
+import org.datanucleus.store.ldap.backend.WriteControls;
+import org.datanucleus.store.ldap.fieldmanager.DateToGeneralizedTimeStringConverter;
 import org.datanucleus.store.ldap.fieldmanager.FetchFieldManager;
 import org.datanucleus.store.ldap.fieldmanager.StoreFieldManager;
 import org.datanucleus.store.query.compiler.QueryCompilation;
@@ -75,6 +93,82 @@ public class LDAPUtils
 {
     public static final String[] NO_ATTRIBUTES = new String[0];
 
+    /** Extension for a class naming an attribute maintained by the server (e.g. "entryCSN") to use as its version. */
+    public static final String VERSION_ATTRIBUTE_EXTENSION = "version-attribute";
+
+    /** Extension for a member whose attribute is generated by the server (e.g. entryUUID, createTimestamp), so is never written. */
+    public static final String SERVER_GENERATED_EXTENSION = "server-generated";
+
+    /** Key of the associated value of a StateManager holding the value of the version attribute in the directory. */
+    public static final String VERSION_VALUE_KEY = "LDAPVERSION";
+
+    /**
+     * Accessor for the backend to use for a read operation on the specified connection. This is for a read
+     * replica when replicas are configured (and allowed for this connection), else the primary connection.
+     * @param mconn The managed connection
+     * @return The backend to read with
+     */
+    public static DirectoryBackend getReadContext(ManagedConnection mconn)
+    {
+        if (mconn instanceof ConnectionFactoryImpl.ManagedConnectionImpl)
+        {
+            return (DirectoryBackend) ((ConnectionFactoryImpl.ManagedConnectionImpl) mconn).getReadConnection();
+        }
+        return (DirectoryBackend) mconn.getConnection();
+    }
+
+    /**
+     * Read operation against the directory.
+     * @param <T> Type of the result of the read
+     */
+    public interface ReadOperation<T>
+    {
+        T execute(DirectoryBackend backend) throws NamingException;
+    }
+
+    /**
+     * Executes a read operation with the backend from {@link #getReadContext(ManagedConnection)}, retrying it (on another
+     * endpoint) when it fails on a read replica that is then marked down.
+     * @param mconn The managed connection
+     * @param op The read operation
+     * @return The result of the read
+     * @param <T> Type of the result of the read
+     * @throws NamingException if the read fails
+     */
+    public static <T> T read(ManagedConnection mconn, ReadOperation<T> op) throws NamingException
+    {
+        while (true)
+        {
+            try
+            {
+                return op.execute(getReadContext(mconn));
+            }
+            catch (NamingException ne)
+            {
+                if (!readFailed(mconn, ne))
+                {
+                    throw ne;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to notify a communication failure of a read using the context from {@link #getReadContext(ManagedConnection)}.
+     * When the read was on a replica, that replica is marked down and the read can be retried.
+     * @param mconn The managed connection
+     * @param ne The failure
+     * @return Whether the read should be retried
+     */
+    public static boolean readFailed(ManagedConnection mconn, NamingException ne)
+    {
+        if (ne instanceof CommunicationException && mconn instanceof ConnectionFactoryImpl.ManagedConnectionImpl)
+        {
+            return ((ConnectionFactoryImpl.ManagedConnectionImpl) mconn).readFailed(ne);
+        }
+        return false;
+    }
+
     /**
      * Gets the effective class meta data for the given field meta data. This is either the class meta data of field
      * itself or, if the field is a collection type, the class meta data of the collection's elements.
@@ -164,6 +258,24 @@ public class LDAPUtils
         return mmd.getEmbeddedMetaData() != null || (mmd.getElementMetaData() != null && mmd.getElementMetaData().getEmbeddedMetaData() != null);
     }
     
+    /**
+     * Convenience method to check if an embedded member is stored in child entries of the owner entry (as opposed to
+     * being merged into the owner entry). Embedded collections are always stored as child entries, and an embedded
+     * object is stored as a child entry when its class defines object classes.
+     * @param mmd Metadata for the embedded member
+     * @param mmgr MetaData manager
+     * @return Whether the member is stored in child entries
+     */
+    public static boolean isEmbeddedInChildEntry(AbstractMemberMetaData mmd, MetaDataManager mmgr)
+    {
+        if (mmd.getEmbeddedMetaData() == null)
+        {
+            return mmd.getElementMetaData() != null && mmd.getElementMetaData().getEmbeddedMetaData() != null;
+        }
+        AbstractClassMetaData embeddedCmd = getEffectiveClassMetaData(mmd, mmgr);
+        return embeddedCmd != null && !getObjectClassesForClass(embeddedCmd).isEmpty();
+    }
+
     /**
      * Convenience method to check if the given object is mapped hierarchical.
      * @param sm StateManager
@@ -281,12 +393,12 @@ public class LDAPUtils
                     ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
                     try
                     {
-                        DirContext ctx = (DirContext) mconn.getConnection();
+                        DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
                         if (NucleusLogger.DATASTORE_RETRIEVE.isDebugEnabled())
                         {
                             NucleusLogger.DATASTORE_RETRIEVE.debug(Localiser.msg("LDAP.JNDI.search", base, filter, searchControls.getSearchScope()));
                         }
-                        NamingEnumeration<SearchResult> enumeration = ctx.search(base, filter, searchControls);
+                        NamingEnumeration<SearchResult> enumeration = backend.search(base.toString(), filter, searchControls);
                         if (enumeration.hasMoreElements())
                         {
                             SearchResult sr = enumeration.nextElement();
@@ -408,6 +520,16 @@ public class LDAPUtils
             searchControls.setSearchScope(locationInfo.scope);
         }
 
+        String[] generatedAttrNames = getServerGeneratedAttributeNames(cmd);
+        if (generatedAttrNames.length > 0)
+        {
+            // server-generated attributes are typically operational so only returned when requested
+            String[] attrNames = new String[generatedAttrNames.length + 1];
+            attrNames[0] = "*";
+            System.arraycopy(generatedAttrNames, 0, attrNames, 1, generatedAttrNames.length);
+            searchControls.setReturningAttributes(attrNames);
+        }
+
         return searchControls;
     }
 
@@ -619,6 +741,290 @@ public class LDAPUtils
         return mmd.getValueForExtension("empty-value");
     }
 
+    /**
+     * Accessor for the attribute holding the version of objects of the specified class. This is the attribute named
+     * by the class extension "version-attribute" (an attribute maintained by the server, e.g. "entryCSN" or
+     * "modifyTimestamp"), else the attribute of the version member, else the column of the surrogate version.
+     * @param cmd Metadata for the class
+     * @return The attribute name, or null if the class is not versioned
+     */
+    public static String getVersionAttributeName(AbstractClassMetaData cmd)
+    {
+        if (cmd.hasExtension(VERSION_ATTRIBUTE_EXTENSION))
+        {
+            return cmd.getValueForExtension(VERSION_ATTRIBUTE_EXTENSION);
+        }
+        VersionMetaData vermd = cmd.getVersionMetaDataForClass();
+        if (vermd == null || vermd.getStrategy() == null || vermd.getStrategy() == VersionStrategy.NONE)
+        {
+            return null;
+        }
+        if (vermd.getMemberName() != null)
+        {
+            return getAttributeNameForField(cmd.getMetaDataForMember(vermd.getMemberName()));
+        }
+        return vermd.getColumnName();
+    }
+
+    /**
+     * Accessor for whether the version of objects of the specified class is maintained by the server, using the
+     * class extension "version-attribute", so is never written by the store.
+     * @param cmd Metadata for the class
+     * @return Whether the version is maintained by the server
+     */
+    public static boolean isServerVersion(AbstractClassMetaData cmd)
+    {
+        return cmd.hasExtension(VERSION_ATTRIBUTE_EXTENSION);
+    }
+
+    /**
+     * Accessor for whether the attribute of the specified member is generated by the server (extension "server-generated"),
+     * so is never written by the store but read back after a write.
+     * @param mmd Metadata for the member
+     * @return Whether server-generated
+     */
+    public static boolean isServerGenerated(AbstractMemberMetaData mmd)
+    {
+        return "true".equalsIgnoreCase(mmd.getValueForExtension(SERVER_GENERATED_EXTENSION));
+    }
+
+    /**
+     * Accessor for the attributes of objects of the specified class that are generated by the server : those of the
+     * server-generated members, plus the version attribute when maintained by the server.
+     * @param cmd Metadata for the class
+     * @return The attribute names (empty if none)
+     */
+    public static String[] getServerGeneratedAttributeNames(AbstractClassMetaData cmd)
+    {
+        Set<String> attrNames = new LinkedHashSet<String>();
+        for (AbstractMemberMetaData mmd : getAllMemberMetaData(cmd))
+        {
+            if (isServerGenerated(mmd))
+            {
+                attrNames.add(getAttributeNameForField(mmd));
+            }
+        }
+        if (isServerVersion(cmd))
+        {
+            attrNames.add(getVersionAttributeName(cmd));
+        }
+        return attrNames.toArray(new String[attrNames.size()]);
+    }
+
+    /**
+     * Accessor for the attributes to read for an entry of the specified class or of one of its subclasses, to load the object
+     * with its fetch plan : the object classes (to choose the class of the entry), and for each concrete class of the hierarchy
+     * the attributes of the primary key, of the version and of the basic members of the fetch plan of that class.
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the class
+     * @return The attribute names
+     */
+    public static String[] getReturningAttributesForFetchPlan(ExecutionContext ec, AbstractClassMetaData cmd)
+    {
+        Set<String> attrNames = new LinkedHashSet<String>();
+        attrNames.add("objectClass");
+        for (AbstractClassMetaData classCmd : getClassHierarchy(ec, cmd))
+        {
+            if (classCmd.isAbstract())
+            {
+                continue;
+            }
+            for (int fieldNumber : classCmd.getPKMemberPositions())
+            {
+                attrNames.add(getAttributeNameForField(classCmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber)));
+            }
+            for (int fieldNumber : getBasicFetchPlanFieldNumbers(ec, classCmd))
+            {
+                attrNames.add(getAttributeNameForField(classCmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber)));
+            }
+            String versionAttrName = getVersionAttributeName(classCmd);
+            if (versionAttrName != null)
+            {
+                attrNames.add(versionAttrName);
+            }
+        }
+        return attrNames.toArray(new String[attrNames.size()]);
+    }
+
+    /**
+     * Accessor for the members of the fetch plan of the specified class that are loaded from the attributes of the entry alone,
+     * i.e. the basic members (not relations, containers or persistent interfaces).
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the class
+     * @return Absolute field numbers
+     */
+    public static int[] getBasicFetchPlanFieldNumbers(ExecutionContext ec, AbstractClassMetaData cmd)
+    {
+        ClassLoaderResolver clr = ec.getClassLoaderResolver();
+        int[] fetchFieldNumbers = ec.getFetchPlan().getFetchPlanForClass(cmd).getMemberNumbers();
+        int[] fieldNumbers = new int[fetchFieldNumbers.length];
+        int numFields = 0;
+        for (int fieldNumber : fetchFieldNumbers)
+        {
+            if (isBasicMember(cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), clr))
+            {
+                fieldNumbers[numFields++] = fieldNumber;
+            }
+        }
+        return Arrays.copyOf(fieldNumbers, numFields);
+    }
+
+    private static boolean isBasicMember(AbstractMemberMetaData mmd, ClassLoaderResolver clr)
+    {
+        return mmd.getRelationType(clr) == RelationType.NONE && !mmd.isPersistentInterface(clr) &&
+            !Collection.class.isAssignableFrom(mmd.getType()) && !Map.class.isAssignableFrom(mmd.getType()) && !mmd.getType().isArray();
+    }
+
+    /**
+     * Sets the server-generated members and the version of the object managed by the passed StateManager from the
+     * attributes of its entry as returned by the server after a write. Server-generated members whose attribute was
+     * not returned are unloaded, so that they are fetched when next accessed.
+     * @param storeMgr Store Manager
+     * @param sm StateManager
+     * @param attrs Attributes of the entry (null if not returned)
+     */
+    public static void setServerGeneratedValues(StoreManager storeMgr, DNStateManager sm, Attributes attrs)
+    {
+        AbstractClassMetaData cmd = sm.getClassMetaData();
+        List<Integer> fetchedFieldNumbers = new ArrayList<Integer>();
+        for (AbstractMemberMetaData mmd : getAllMemberMetaData(cmd))
+        {
+            if (isServerGenerated(mmd))
+            {
+                if (attrs != null && attrs.get(getAttributeNameForField(mmd)) != null)
+                {
+                    fetchedFieldNumbers.add(mmd.getAbsoluteFieldNumber());
+                }
+                else
+                {
+                    sm.unloadField(mmd.getName());
+                }
+            }
+        }
+        if (!fetchedFieldNumbers.isEmpty())
+        {
+            int[] fieldNumbers = new int[fetchedFieldNumbers.size()];
+            for (int i = 0; i < fieldNumbers.length; i++)
+            {
+                fieldNumbers[i] = fetchedFieldNumbers.get(i);
+            }
+            sm.replaceFields(fieldNumbers, new FetchFieldManager(storeMgr, sm, attrs));
+        }
+        if (attrs != null)
+        {
+            setVersionFromAttributes(sm, attrs);
+        }
+    }
+
+    /**
+     * Sets the version of the object managed by the passed StateManager from the attributes of its entry (if present).
+     * The value as held in the directory is also kept, for checking the version when writing.
+     * @param sm StateManager
+     * @param attrs Attributes of the entry
+     */
+    public static void setVersionFromAttributes(DNStateManager sm, Attributes attrs)
+    {
+        AbstractClassMetaData cmd = sm.getClassMetaData();
+        String attrName = getVersionAttributeName(cmd);
+        if (attrName == null)
+        {
+            return;
+        }
+        try
+        {
+            Attribute attr = attrs.get(attrName);
+            if (attr != null && attr.size() > 0)
+            {
+                String value = String.valueOf(attr.get());
+                sm.setAssociatedValue(VERSION_VALUE_KEY, value);
+                sm.setVersion(getVersionForValue(cmd, value));
+            }
+        }
+        catch (NamingException e)
+        {
+            throw new NucleusDataStoreException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Converts a value of the version attribute to the version of the object.
+     * @param cmd Metadata for the class
+     * @param value The attribute value
+     * @return The version
+     */
+    public static Object getVersionForValue(AbstractClassMetaData cmd, String value)
+    {
+        VersionMetaData vermd = isServerVersion(cmd) ? null : cmd.getVersionMetaDataForClass();
+        if (vermd != null)
+        {
+            if (vermd.getStrategy() == VersionStrategy.VERSION_NUMBER)
+            {
+                try
+                {
+                    return Long.valueOf(value);
+                }
+                catch (NumberFormatException nfe)
+                {
+                    return value;
+                }
+            }
+            else if (vermd.getStrategy() == VersionStrategy.DATE_TIME)
+            {
+                Date date = new DateToGeneralizedTimeStringConverter().toMemberType(value);
+                return date != null ? new Timestamp(date.getTime()) : value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Converts the version of an object to the value of its (surrogate) version attribute.
+     * @param version The version
+     * @return The attribute value
+     */
+    public static String getValueForVersion(Object version)
+    {
+        if (version instanceof Date)
+        {
+            return new DateToGeneralizedTimeStringConverter().toDatastoreType((Date) version);
+        }
+        return String.valueOf(version);
+    }
+
+    /**
+     * Accessor for the controls to write the object managed by the passed StateManager with, asserting that its entry
+     * still has the version that was read (or last written), so that the version check needs no extra round trip.
+     * The version is only checked in an optimistic transaction, and when known.
+     * @param sm StateManager
+     * @return The controls, or null if no version check
+     */
+    public static WriteControls getVersionCheckControls(DNStateManager sm)
+    {
+        ExecutionContext ec = sm.getExecutionContext();
+        if (!ec.getTransaction().isActive() || !ec.getTransaction().getOptimistic())
+        {
+            return null;
+        }
+        String attrName = getVersionAttributeName(sm.getClassMetaData());
+        String value = (String) sm.getAssociatedValue(VERSION_VALUE_KEY);
+        if (attrName == null || value == null)
+        {
+            return null;
+        }
+        return new WriteControls("(" + attrName + "=" + escapeFilterValue(value) + ")");
+    }
+
+    /**
+     * Escapes a value for use as assertion value in a filter (RFC 4515), i.e. "*", "(", ")", "\" and NUL are
+     * represented as a backslash followed by the two hexadecimal digits of the octet.
+     * @param value The value
+     * @return The escaped value
+     */
+    public static String escapeFilterValue(String value)
+    {
+        return value.replace("\\", "\\5c").replace("\u0000", "\\00").replace("*", "\\2a").replace("(", "\\28").replace(")", "\\29");
+    }
+
     /*
      * Helper for MetaData <-> LDAP translation
      */
@@ -667,12 +1073,12 @@ public class LDAPUtils
         try
         {
             LdapName dn = getDistinguishedNameForObject(storeMgr, sm, true);
-            DirContext ctx = (DirContext) mconn.getConnection();
+            DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
             if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
             {
                 NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.getAttributes", dn, attributeName, ""));
             }
-            Attributes attributes = ctx.getAttributes(dn, new String[]{attributeName});
+            Attributes attributes = backend.getAttributes(dn.toString(), new String[]{attributeName});
             Attribute attribute = attributes.get(attributeName);
             Collection<Object> pcAttributeValues = new ArrayList<Object>();
             if (attribute != null)
@@ -695,6 +1101,100 @@ public class LDAPUtils
         }
     }
 
+    /**
+     * Adds a value to a multi-valued attribute of an entry, without reading the attribute.
+     * If the attribute has an "empty-value" placeholder it is removed after adding the value.
+     * The result of the add is needed, so writes are made immediately rather than in an LDAP transaction.
+     * @param backend The backend
+     * @param dn DN of the entry
+     * @param attributeName Name of the attribute
+     * @param value The value to add
+     * @param emptyValue The placeholder value (or null)
+     * @return Whether the value was added (false if it was already present)
+     * @throws NamingException if an error occurs
+     */
+    public static boolean addAttributeValue(DirectoryBackend backend, String dn, String attributeName, Object value, String emptyValue)
+    throws NamingException
+    {
+        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", dn, "ADD", attributeName + ": " + value));
+        }
+        backend.requireImmediateWrites();
+        boolean added = true;
+        try
+        {
+            backend.modifyAttributes(dn, new ModificationItem[]{new ModificationItem(DirContext.ADD_ATTRIBUTE, new BasicAttribute(attributeName, value))});
+        }
+        catch (AttributeInUseException e)
+        {
+            added = false;
+        }
+
+        if (emptyValue != null && added)
+        {
+            try
+            {
+                backend.modifyAttributes(dn, new ModificationItem[]{new ModificationItem(DirContext.REMOVE_ATTRIBUTE, new BasicAttribute(attributeName, emptyValue))});
+            }
+            catch (NoSuchAttributeException e)
+            {
+                // No placeholder
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes a value from a multi-valued attribute of an entry, without reading the attribute (the server matches the value).
+     * If the server rejects the removal because it would leave the attribute empty, and an "empty-value" placeholder is defined,
+     * the placeholder is added in the same modification. As for {@link #addAttributeValue}, writes are made immediately.
+     * @param backend The backend
+     * @param dn DN of the entry
+     * @param attributeName Name of the attribute
+     * @param value The value to remove
+     * @param emptyValue The placeholder value (or null)
+     * @return Whether the value was removed (false if it wasn't present)
+     * @throws NamingException if an error occurs
+     */
+    public static boolean removeAttributeValue(DirectoryBackend backend, String dn, String attributeName, Object value, String emptyValue)
+    throws NamingException
+    {
+        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", dn, "REMOVE", attributeName + ": " + value));
+        }
+        backend.requireImmediateWrites();
+        ModificationItem remove = new ModificationItem(DirContext.REMOVE_ATTRIBUTE, new BasicAttribute(attributeName, value));
+        try
+        {
+            backend.modifyAttributes(dn, new ModificationItem[]{remove});
+            return true;
+        }
+        catch (NoSuchAttributeException e)
+        {
+            return false;
+        }
+        catch (SchemaViolationException e)
+        {
+            if (emptyValue == null)
+            {
+                throw e;
+            }
+        }
+
+        // Removing the last value violates the schema, so put the placeholder in
+        try
+        {
+            backend.modifyAttributes(dn, new ModificationItem[]{new ModificationItem(DirContext.ADD_ATTRIBUTE, new BasicAttribute(attributeName, emptyValue)), remove});
+            return true;
+        }
+        catch (NoSuchAttributeException e)
+        {
+            return false;
+        }
+    }
+
     /**
      * Accessor for the (LDAP) attribute name for the specified field. Uses the extension "dn" if specified
      * (deprecated), else the extension "attribute" if specified, else the "column" if specified, else uses the field
@@ -759,20 +1259,488 @@ public class LDAPUtils
         return dn;
     }
 
-    public static Object getObjectByDN(StoreManager storeMgr, ExecutionContext om, Class type, String dnAsString)
+    /**
+     * Accessor for the distinguished name of the object with the specified identity, when it can be computed from the identity
+     * alone : application identity with a single primary key member mapped to the RDN, and a class located in a fixed container.
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the class of the object
+     * @param id Identity of the object
+     * @return The distinguished name, or null if it cannot be computed without reading the directory
+     */
+    public static LdapName getDistinguishedNameForId(ExecutionContext ec, AbstractClassMetaData cmd, Object id)
     {
-        AbstractClassMetaData cmd = om.getMetaDataManager().getMetaDataForClass(type, om.getClassLoaderResolver());
-        LdapName base = getSearchBase(cmd, om.getMetaDataManager());
-
-        try
+        if (!IdentityUtils.isSingleFieldIdentity(id) || cmd.isEmbeddedOnly() || cmd.getNoOfPrimaryKeyMembers() != 1)
         {
-            LdapName dn = new LdapName(dnAsString);
-            Rdn rdn = dn.getRdn(dn.size() - 1);
-            String filter = "(" + rdn.getType() + "=" + rdn.getValue() + ")";
-            List<Object> objects = LDAPUtils.getObjectsOfCandidateType(storeMgr, om, cmd, base, filter, true, false);
-            if (objects.size() == 1)
-            {
-                return objects.get(0);
+            return null;
+        }
+        LocationInfo locationInfo = getLocationInfo(cmd);
+        if (locationInfo.dn == null || locationInfo.parentFieldName != null || getSearchControls(cmd).getSearchScope() == SearchControls.OBJECT_SCOPE)
+        {
+            return null;
+        }
+        AbstractMemberMetaData pkMmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(cmd.getPKMemberPositions()[0]);
+        if (pkMmd.getRelationType(ec.getClassLoaderResolver()) != RelationType.NONE || pkMmd.isEmbedded() ||
+            pkMmd.hasExtension(LDAPStoreManager.MAPPING_STRATEGY_EXTENSON))
+        {
+            return null;
+        }
+
+        try
+        {
+            Attribute rdnAttr = StoreFieldManager.getAttributeForValue(pkMmd, IdentityUtils.getTargetKeyForSingleFieldIdentity(id), ec.getTypeManager(), true);
+            if (rdnAttr == null)
+            {
+                return null;
+            }
+            LdapName dn = new LdapName(locationInfo.dn.getRdns());
+            dn.add(new Rdn(rdnAttr.getID(), rdnAttr.get()));
+            return dn;
+        }
+        catch (NamingException e)
+        {
+            throw new NucleusDataStoreException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Accessor for the most specific class of the hierarchy of the specified class that the entry is an object of, going by the
+     * object classes of the entry. Only subclasses located in the same container as the entry are considered.
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the root class of the hierarchy to consider
+     * @param dn Distinguished name of the entry
+     * @param attrs Attributes of the entry, with its object classes
+     * @return Metadata for the class, or null if the entry is not an object of the class nor any of its subclasses
+     * @throws NamingException if the object classes cannot be read
+     */
+    public static AbstractClassMetaData getClassMetaDataForEntry(ExecutionContext ec, AbstractClassMetaData cmd, LdapName dn, Attributes attrs)
+            throws NamingException
+    {
+        Set<String> entryObjectClasses = new HashSet<String>();
+        Attribute ocAttr = attrs.get("objectClass");
+        if (ocAttr != null)
+        {
+            NamingEnumeration<?> enumeration = ocAttr.getAll();
+            while (enumeration.hasMore())
+            {
+                entryObjectClasses.add(String.valueOf(enumeration.next()).toLowerCase());
+            }
+        }
+
+        AbstractClassMetaData entryCmd = null;
+        int numObjectClasses = -1;
+        List<AbstractClassMetaData> cmds = getClassHierarchy(ec, cmd);
+        LdapName containerDn = (LdapName) dn.getPrefix(dn.size() - 1);
+        for (AbstractClassMetaData candidateCmd : cmds)
+        {
+            Set<String> objectClasses = getObjectClassesForClass(candidateCmd);
+            if (candidateCmd.isAbstract() || objectClasses.size() <= numObjectClasses || !containerDn.equals(getLocationInfo(candidateCmd).dn))
+            {
+                continue;
+            }
+            boolean matches = true;
+            for (String objectClass : objectClasses)
+            {
+                if (!entryObjectClasses.contains(objectClass.toLowerCase()))
+                {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches)
+            {
+                // The class mapped to the most object classes is the most specific
+                entryCmd = candidateCmd;
+                numObjectClasses = objectClasses.size();
+            }
+        }
+        return entryCmd;
+    }
+
+    /**
+     * Gets the objects with the specified DNs, in the same order. Objects whose class and identity are encoded in the DN are taken
+     * from the cache or created hollow, without reading the directory (see {@link #getIdForDistinguishedName}). The others are read with one search per chunk of
+     * "datanucleus.ldap.batchSize" DNs (an OR of their RDNs) and class of the hierarchy, each entry taken as an object of the most
+     * specific class it matches. A DN not found this way is looked up on its own (see {@link #getObjectByDN}).
+     * @param storeMgr Store Manager
+     * @param ec ExecutionContext
+     * @param type Type of the objects
+     * @param dnsAsString The distinguished names
+     * @return The objects
+     */
+    public static List<Object> getObjectsByDN(StoreManager storeMgr, ExecutionContext ec, Class type, List<String> dnsAsString)
+    {
+        AbstractClassMetaData cmd = ec.getMetaDataManager().getMetaDataForClass(type, ec.getClassLoaderResolver());
+        List<AbstractClassMetaData> cmds = getClassHierarchy(ec, cmd);
+        Object[] objects = new Object[dnsAsString.size()];
+        Map<LdapName, List<Integer>> misses = new LinkedHashMap<LdapName, List<Integer>>();
+        try
+        {
+            for (int i = 0; i < objects.length; i++)
+            {
+                LdapName dn = new LdapName(dnsAsString.get(i));
+                objects[i] = getObjectForDistinguishedName(ec, cmds, dn);
+                if (objects[i] == null)
+                {
+                    List<Integer> positions = misses.get(dn);
+                    if (positions == null)
+                    {
+                        positions = new ArrayList<Integer>();
+                        misses.put(dn, positions);
+                    }
+                    positions.add(i);
+                }
+            }
+        }
+        catch (InvalidNameException e)
+        {
+            throw new NucleusDataStoreException(e.getMessage(), e);
+        }
+
+        if (!misses.isEmpty())
+        {
+            LdapName base = getSearchBase(cmd, ec.getMetaDataManager());
+            int batchSize = ((LDAPStoreManager) storeMgr).getBatchSize();
+            List<LdapName> dns = new ArrayList<LdapName>(misses.keySet());
+            for (int i = 0; i < dns.size(); i += batchSize)
+            {
+                List<LdapName> chunk = dns.subList(i, Math.min(i + batchSize, dns.size()));
+                StringBuilder filter = new StringBuilder("(|");
+                for (LdapName dn : chunk)
+                {
+                    Rdn rdn = dn.getRdn(dn.size() - 1);
+                    filter.append("(").append(rdn.getType()).append("=").append(escapeFilterValue(String.valueOf(rdn.getValue()))).append(")");
+                }
+                filter.append(")");
+
+                Map<LdapName, Attributes> entries = new HashMap<LdapName, Attributes>();
+                Map<LdapName, AbstractClassMetaData> entryCmds = getEntriesOfClasses(storeMgr, ec, cmds, base, filter.toString(), entries);
+                for (Map.Entry<LdapName, AbstractClassMetaData> entry : entryCmds.entrySet())
+                {
+                    List<Integer> positions = misses.get(entry.getKey());
+                    if (positions != null)
+                    {
+                        Object pc = getObjectForEntry(storeMgr, ec, entry.getValue(), entries.get(entry.getKey()));
+                        for (int position : positions)
+                        {
+                            objects[position] = pc;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < objects.length; i++)
+        {
+            if (objects[i] == null)
+            {
+                objects[i] = getObjectByDN(storeMgr, ec, type, dnsAsString.get(i));
+            }
+        }
+        return Arrays.asList(objects);
+    }
+
+    /**
+     * Gets the objects of the specified type whose join attribute has the specified values, in the same order. The objects are read
+     * with one search per chunk of "datanucleus.ldap.batchSize" distinct values (an OR of equality terms) and class of the hierarchy,
+     * each entry taken as an object of the most specific class it matches, and mapped back by value : exactly when an entry has
+     * the value, otherwise case-insensitively (as most matching rules are). Values with no object or with several objects are
+     * reported together, once.
+     * @param storeMgr Store Manager
+     * @param ec ExecutionContext
+     * @param type Type of the objects
+     * @param attributeName Name of the join attribute
+     * @param attributeValues Values of the join attribute
+     * @return The objects
+     * @throws NucleusObjectNotFoundException if no object has one of the values
+     * @throws NucleusDataStoreException if several objects have one of the values
+     */
+    public static List<Object> getObjectsByAttribute(StoreManager storeMgr, ExecutionContext ec, Class type, String attributeName,
+            List<String> attributeValues)
+    {
+        AbstractClassMetaData cmd = ec.getMetaDataManager().getMetaDataForClass(type, ec.getClassLoaderResolver());
+        List<AbstractClassMetaData> cmds = getClassHierarchy(ec, cmd);
+        LdapName base = getSearchBase(cmd, ec.getMetaDataManager());
+        int batchSize = ((LDAPStoreManager) storeMgr).getBatchSize();
+
+        List<String> distinctValues = new ArrayList<String>(new LinkedHashSet<String>(attributeValues));
+        Set<String> lowerCaseValues = new HashSet<String>();
+        for (String value : distinctValues)
+        {
+            lowerCaseValues.add(value.toLowerCase());
+        }
+        Map<String, Set<LdapName>> dnsByValue = new HashMap<String, Set<LdapName>>();
+        Map<String, Set<LdapName>> dnsByLowerCaseValue = new HashMap<String, Set<LdapName>>();
+        Map<LdapName, Attributes> entries = new HashMap<LdapName, Attributes>();
+        Map<LdapName, AbstractClassMetaData> entryCmds = new HashMap<LdapName, AbstractClassMetaData>();
+        try
+        {
+            for (int i = 0; i < distinctValues.size(); i += batchSize)
+            {
+                List<String> chunk = distinctValues.subList(i, Math.min(i + batchSize, distinctValues.size()));
+                StringBuilder filter = new StringBuilder("(|");
+                for (String value : chunk)
+                {
+                    filter.append("(").append(attributeName).append("=").append(escapeFilterValue(value)).append(")");
+                }
+                filter.append(")");
+
+                Map<LdapName, Attributes> chunkEntries = new HashMap<LdapName, Attributes>();
+                entryCmds.putAll(getEntriesOfClasses(storeMgr, ec, cmds, base, filter.toString(), chunkEntries));
+                for (Map.Entry<LdapName, Attributes> entry : chunkEntries.entrySet())
+                {
+                    entries.put(entry.getKey(), entry.getValue());
+                    Attribute attr = entry.getValue().get(attributeName);
+                    for (int j = 0; attr != null && j < attr.size(); j++)
+                    {
+                        String value = String.valueOf(attr.get(j));
+                        if (lowerCaseValues.contains(value.toLowerCase()))
+                        {
+                            addDn(dnsByValue, value, entry.getKey());
+                            addDn(dnsByLowerCaseValue, value.toLowerCase(), entry.getKey());
+                        }
+                    }
+                }
+            }
+        }
+        catch (NamingException e)
+        {
+            throw new NucleusDataStoreException(e.getMessage(), e);
+        }
+
+        List<String> missingValues = new ArrayList<String>();
+        List<String> ambiguousValues = new ArrayList<String>();
+        Map<String, LdapName> dnByValue = new HashMap<String, LdapName>();
+        for (String value : distinctValues)
+        {
+            Set<LdapName> dns = dnsByValue.containsKey(value) ? dnsByValue.get(value) : dnsByLowerCaseValue.get(value.toLowerCase());
+            if (dns == null)
+            {
+                missingValues.add(value);
+            }
+            else if (dns.size() > 1)
+            {
+                ambiguousValues.add(value);
+            }
+            else
+            {
+                dnByValue.put(value, dns.iterator().next());
+            }
+        }
+        if (!ambiguousValues.isEmpty())
+        {
+            throw new NucleusDataStoreException(Localiser.msg("LDAP.Relation.Ambiguous", type.getName(), attributeName, ambiguousValues));
+        }
+        if (!missingValues.isEmpty())
+        {
+            throw new NucleusObjectNotFoundException(Localiser.msg("LDAP.Relation.NotFound", type.getName(), attributeName, missingValues));
+        }
+
+        Map<LdapName, Object> objectsByDn = new HashMap<LdapName, Object>();
+        List<Object> objects = new ArrayList<Object>(attributeValues.size());
+        for (String value : attributeValues)
+        {
+            LdapName dn = dnByValue.get(value);
+            Object pc = objectsByDn.get(dn);
+            if (pc == null)
+            {
+                pc = getObjectForEntry(storeMgr, ec, entryCmds.get(dn), entries.get(dn));
+                objectsByDn.put(dn, pc);
+            }
+            objects.add(pc);
+        }
+        return objects;
+    }
+
+    private static void addDn(Map<String, Set<LdapName>> dnsByValue, String value, LdapName dn)
+    {
+        Set<LdapName> dns = dnsByValue.get(value);
+        if (dns == null)
+        {
+            dns = new HashSet<LdapName>();
+            dnsByValue.put(value, dns);
+        }
+        dns.add(dn);
+    }
+
+    /**
+     * Reads the entries matching the filter as objects of each of the specified classes, keeping for each entry the most specific
+     * class (mapped to the most object classes) it matches.
+     * @param storeMgr Store Manager
+     * @param ec ExecutionContext
+     * @param cmds Metadata for the classes
+     * @param base Search base
+     * @param filter Filter, added to the filter of each class
+     * @param entries Map to put the attributes of the entries in, keyed by DN
+     * @return Metadata for the class of each entry, keyed by DN
+     */
+    private static Map<LdapName, AbstractClassMetaData> getEntriesOfClasses(StoreManager storeMgr, ExecutionContext ec, List<AbstractClassMetaData> cmds,
+            LdapName base, String filter, Map<LdapName, Attributes> entries)
+    {
+        Map<LdapName, AbstractClassMetaData> entryCmds = new HashMap<LdapName, AbstractClassMetaData>();
+        for (AbstractClassMetaData classCmd : cmds)
+        {
+            for (Map.Entry<LdapName, Attributes> entry : getEntries(storeMgr, ec, classCmd, base, filter, false, false).entrySet())
+            {
+                AbstractClassMetaData entryCmd = entryCmds.get(entry.getKey());
+                if (entryCmd == null || getObjectClassesForClass(classCmd).size() > getObjectClassesForClass(entryCmd).size())
+                {
+                    entries.put(entry.getKey(), entry.getValue());
+                    entryCmds.put(entry.getKey(), classCmd);
+                }
+            }
+        }
+        return entryCmds;
+    }
+
+    /**
+     * Gets the object of the specified class for an entry read from the directory, from the cache if present.
+     * @param storeMgr Store Manager
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the class of the object
+     * @param attrs Attributes of the entry
+     * @return The object
+     */
+    private static Object getObjectForEntry(StoreManager storeMgr, ExecutionContext ec, AbstractClassMetaData cmd, Attributes attrs)
+    {
+        return findObjectUsingAID(ec, ec.getClassLoaderResolver().classForName(cmd.getFullClassName()), getFieldValuesForEntry(storeMgr, ec, cmd, attrs), false, false);
+    }
+
+    /**
+     * Accessor for the identity of the object of the specified class with the specified DN, when it is encoded in the DN : application
+     * identity with a single primary key member (of a type whose string form is the key) mapped to the RDN, and a class located in
+     * a fixed container that is the parent of the DN, or mapped hierarchically with the parent of the DN under its search base and
+     * ending with its suffix.
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the class
+     * @param dn The distinguished name
+     * @return The identity, or null if the DN is not of an object of the class or does not encode its identity
+     */
+    public static Object getIdForDistinguishedName(ExecutionContext ec, AbstractClassMetaData cmd, LdapName dn)
+    {
+        if (dn.size() == 0 || cmd.isEmbeddedOnly() || cmd.getNoOfPrimaryKeyMembers() != 1 || !(cmd.getIdentityType() == IdentityType.APPLICATION))
+        {
+            return null;
+        }
+        LocationInfo locationInfo = getLocationInfo(cmd);
+        LdapName containerDn = (LdapName) dn.getPrefix(dn.size() - 1);
+        if (locationInfo.parentFieldName != null)
+        {
+            LdapName base = getSearchBase(cmd, ec.getMetaDataManager());
+            if (base == null || !containerDn.startsWith(base) || !containerDn.endsWith(locationInfo.suffix))
+            {
+                return null;
+            }
+        }
+        else if (locationInfo.dn == null || !locationInfo.dn.equals(containerDn))
+        {
+            return null;
+        }
+        AbstractMemberMetaData pkMmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(cmd.getPKMemberPositions()[0]);
+        Class pkType = pkMmd.getType().isPrimitive() ? ClassUtils.getWrapperTypeForPrimitiveType(pkMmd.getType()) : pkMmd.getType();
+        Rdn rdn = dn.getRdn(dn.size() - 1);
+        if (!rdn.getType().equalsIgnoreCase(getAttributeNameForField(pkMmd)) || pkMmd.hasExtension(LDAPStoreManager.MAPPING_STRATEGY_EXTENSON) ||
+            !(pkType == String.class || pkType == Long.class || pkType == Integer.class || pkType == Short.class || pkType == Byte.class))
+        {
+            return null;
+        }
+        return ec.newObjectId(ec.getClassLoaderResolver().classForName(cmd.getFullClassName()), String.valueOf(rdn.getValue()));
+    }
+
+    /**
+     * Accessor for the object of one of the specified classes with the specified DN, without reading the directory. The classes
+     * whose location and primary key match the DN are resolved from it (see {@link #getIdForDistinguishedName}) : a cached object
+     * of one of them is returned, else when only one of them can be instantiated a hollow object of it is returned, to be loaded
+     * when a field is accessed.
+     * @param ec ExecutionContext
+     * @param cmds Metadata for the classes
+     * @param dn The distinguished name
+     * @return The object, or null if its class and identity cannot be resolved from the DN
+     */
+    private static Object getObjectForDistinguishedName(ExecutionContext ec, List<AbstractClassMetaData> cmds, LdapName dn)
+    {
+        Object hollowId = null;
+        AbstractClassMetaData hollowCmd = null;
+        int numCandidates = 0;
+        for (AbstractClassMetaData cmd : cmds)
+        {
+            Object id = getIdForDistinguishedName(ec, cmd, dn);
+            if (id == null)
+            {
+                continue;
+            }
+            Object pc = ec.getObjectFromCache(id);
+            if (pc != null)
+            {
+                return pc;
+            }
+            if (!cmd.isAbstract())
+            {
+                hollowId = id;
+                hollowCmd = cmd;
+                numCandidates++;
+            }
+        }
+        if (numCandidates != 1)
+        {
+            // Class not known without reading the entry
+            return null;
+        }
+
+        DNStateManager sm = ec.getNucleusContext().getStateManagerFactory().newForHollow(ec,
+            ec.getClassLoaderResolver().classForName(hollowCmd.getFullClassName()), hollowId);
+        ec.putObjectIntoLevel1Cache(sm);
+        return sm.getObject();
+    }
+
+    /**
+     * Accessor for the metadata of the specified class and of all its subclasses.
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the class
+     * @return Metadata for the class followed by its subclasses
+     */
+    private static List<AbstractClassMetaData> getClassHierarchy(ExecutionContext ec, AbstractClassMetaData cmd)
+    {
+        List<AbstractClassMetaData> cmds = new ArrayList<AbstractClassMetaData>();
+        cmds.add(cmd);
+        String[] subclassNames = ec.getMetaDataManager().getSubclassesForClass(cmd.getFullClassName(), true);
+        if (subclassNames != null)
+        {
+            for (String subclassName : subclassNames)
+            {
+                cmds.add(ec.getMetaDataManager().getMetaDataForClass(subclassName, ec.getClassLoaderResolver()));
+            }
+        }
+        return cmds;
+    }
+
+    /**
+     * Gets the object with the specified DN. When its class and identity are encoded in the DN the object is taken from the cache
+     * or created hollow, without reading the directory, else it is searched by its RDN under the search base of the type.
+     * @param storeMgr Store Manager
+     * @param om ExecutionContext
+     * @param type Type of the object
+     * @param dnAsString The distinguished name
+     * @return The object
+     */
+    public static Object getObjectByDN(StoreManager storeMgr, ExecutionContext om, Class type, String dnAsString)
+    {
+        AbstractClassMetaData cmd = om.getMetaDataManager().getMetaDataForClass(type, om.getClassLoaderResolver());
+        LdapName base = getSearchBase(cmd, om.getMetaDataManager());
+
+        try
+        {
+            LdapName dn = new LdapName(dnAsString);
+            Object pc = getObjectForDistinguishedName(om, getClassHierarchy(om, cmd), dn);
+            if (pc != null)
+            {
+                return pc;
+            }
+            Rdn rdn = dn.getRdn(dn.size() - 1);
+            String filter = "(" + rdn.getType() + "=" + rdn.getValue() + ")";
+            List<Object> objects = LDAPUtils.getObjectsOfCandidateType(storeMgr, om, cmd, base, filter, true, false);
+            if (objects.size() == 1)
+            {
+                return objects.get(0);
             }
             else if (objects.size() == 0)
             {
@@ -830,16 +1798,21 @@ public class LDAPUtils
         listener.addObjectToPersist(pc);
     }
 
+    /**
+     * Moves the entry of an object (with its subtree) to a new DN.
+     * @param storeMgr Store Manager
+     * @param pc The object
+     * @param ec ExecutionContext
+     * @param oldDn Current DN of the entry
+     * @param newDn New DN of the entry
+     * @throws NucleusDataStoreException if an error occurs
+     */
     public static void markForRename(StoreManager storeMgr, Object pc, ExecutionContext ec, LdapName oldDn, LdapName newDn)
     {
         ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
         try
         {
-            if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
-            {
-                NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.rename", oldDn, newDn));
-            }
-            ((DirContext) mconn.getConnection()).rename(oldDn, newDn);
+            moveSubtree((LDAPStoreManager) storeMgr, mconn, oldDn, newDn);
         }
         catch (NamingException e)
         {
@@ -851,6 +1824,115 @@ public class LDAPUtils
         }
     }
 
+    /**
+     * Moves an entry and its subtree to a new DN, using a ModDN operation (with a new superior when the parent changes).
+     * Servers that refuse the ModDN of a non-leaf entry have the subtree copied instead : the subtree is listed with one paged
+     * SUBTREE search and added under the new DN parents first, pipelining the adds of each level, then the old subtree is deleted.
+     * Since this depends on the result of the ModDN and the search must see the entries written before, writes are made immediately
+     * rather than in an LDAP transaction.
+     * @param storeMgr Store Manager
+     * @param mconn Connection to move with
+     * @param oldDn Current DN of the entry
+     * @param newDn New DN of the entry
+     * @throws NamingException if an error occurs
+     */
+    public static void moveSubtree(LDAPStoreManager storeMgr, ManagedConnection mconn, LdapName oldDn, LdapName newDn) throws NamingException
+    {
+        DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
+        backend.requireImmediateWrites();
+        try
+        {
+            if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.rename", oldDn, newDn));
+            }
+            backend.rename(oldDn.toString(), newDn.toString());
+            return;
+        }
+        catch (ContextNotEmptyException | OperationNotSupportedException e)
+        {
+            // Server doesn't allow ModDN of this non-leaf entry (notAllowedOnNonLeaf / unwillingToPerform), so copy the subtree
+            if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.MoveSubtree.Copy", oldDn, newDn, e.getMessage()));
+            }
+        }
+
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.search", oldDn, "(objectClass=*)", searchControls.getSearchScope()));
+        }
+        List<SearchResult> results = backend.searchPaged(oldDn.toString(), "(objectClass=*)", searchControls, storeMgr.getPageSize());
+
+        // Group by depth, parents first, so that parents are added before their children
+        TreeMap<Integer, List<SearchResult>> resultsByLevel = new TreeMap<Integer, List<SearchResult>>();
+        List<String> oldDns = new ArrayList<String>(results.size());
+        for (SearchResult result : results)
+        {
+            oldDns.add(result.getNameInNamespace());
+            resultsByLevel.computeIfAbsent(new LdapName(result.getNameInNamespace()).size(), k -> new ArrayList<SearchResult>()).add(result);
+        }
+
+        int numCopied = 0;
+        for (List<SearchResult> levelResults : resultsByLevel.values())
+        {
+            LDAPPipeline pipeline = storeMgr.newPipeline(mconn);
+            for (SearchResult result : levelResults)
+            {
+                LdapName entryOldDn = new LdapName(result.getNameInNamespace());
+                final String entryNewDn = ((LdapName) newDn.clone()).addAll(entryOldDn.getSuffix(oldDn.size())).toString();
+                final Attributes attrs = result.getAttributes();
+                if (entryOldDn.size() == oldDn.size())
+                {
+                    // Top entry : the naming attribute value changes when the RDN changes
+                    Rdn oldRdn = oldDn.getRdn(oldDn.size() - 1);
+                    Rdn newRdn = newDn.getRdn(newDn.size() - 1);
+                    if (!oldRdn.equals(newRdn))
+                    {
+                        Attribute oldRdnAttr = attrs.get(oldRdn.getType());
+                        if (oldRdnAttr != null)
+                        {
+                            oldRdnAttr.remove(oldRdn.getValue());
+                            if (oldRdnAttr.size() == 0)
+                            {
+                                attrs.remove(oldRdn.getType());
+                            }
+                        }
+                        Attribute newRdnAttr = attrs.get(newRdn.getType());
+                        if (newRdnAttr == null)
+                        {
+                            attrs.put(newRdn.getType(), newRdn.getValue());
+                        }
+                        else if (!newRdnAttr.contains(newRdn.getValue()))
+                        {
+                            newRdnAttr.add(newRdn.getValue());
+                        }
+                    }
+                }
+                if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+                {
+                    NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.createSubcontext", entryNewDn, attrs));
+                }
+                pipeline.submit(entryNewDn, b -> b.bind(entryNewDn, attrs));
+            }
+            pipeline.awaitAndCheck();
+
+            numCopied += levelResults.size();
+            if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.MoveSubtree.Progress", oldDn, numCopied, results.size()));
+            }
+        }
+
+        deleteEntries(storeMgr, mconn, oldDns);
+        if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.MoveSubtree.Moved", oldDn, newDn, results.size()));
+        }
+    }
+
     public static void markForDeletion(Object pc, ExecutionContext ec)
     {
         LDAPTransactionEventListener listener = getTransactionEventListener(ec);
@@ -992,7 +2074,26 @@ public class LDAPUtils
         {
             // TODO Drop usage of findObjectUsingAID (see NUCLDAP-48) and use IdentityUtils instead
             // The problem is that FetchFieldManager relies on having StateManager available, which is wrong
-            Object pc = findObjectUsingAID(ec, clr.classForName(cmd.getFullClassName()), new FieldValues()
+            Object pc = findObjectUsingAID(ec, clr.classForName(cmd.getFullClassName()), getFieldValuesForEntry(storeMgr, ec, cmd, attrs), ignoreCache, true);
+            results.add(pc);
+        }
+
+        return results;
+    }
+
+    /**
+     * Accessor for the field values of an object of the specified class read from its entry : the primary key and the basic
+     * members, and the version.
+     * @param storeMgr Store Manager
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the class of the object
+     * @param attrs Attributes of the entry
+     * @return The field values
+     */
+    public static FieldValues getFieldValuesForEntry(final StoreManager storeMgr, ExecutionContext ec, final AbstractClassMetaData cmd, final Attributes attrs)
+    {
+        final ClassLoaderResolver clr = ec.getClassLoaderResolver();
+        return new FieldValues()
             {
                 // StateManager calls the fetchFields method
                 public void fetchFields(DNStateManager sm)
@@ -1004,8 +2105,7 @@ public class LDAPUtils
                     for (AbstractMemberMetaData mmd : allMemberMetaData)
                     {
                         mmd.getAbsoluteFieldNumber();
-                        if (mmd.getRelationType(clr) == RelationType.NONE && !mmd.isPersistentInterface(clr) && 
-                            !Collection.class.isAssignableFrom(mmd.getType()) && !Map.class.isAssignableFrom(mmd.getType()) && !mmd.getType().isArray())
+                        if (isBasicMember(mmd, clr))
                         {
                             basicMemberMetaData.add(mmd);
                         }
@@ -1016,6 +2116,7 @@ public class LDAPUtils
                         basicMemberPosition[i] = basicMemberMetaData.get(i).getAbsoluteFieldNumber();
                     }
                     sm.replaceFields(basicMemberPosition, new FetchFieldManager(storeMgr, sm, attrs));
+                    setVersionFromAttributes(sm, attrs);
                 }
 
                 public void fetchNonLoadedFields(DNStateManager sm)
@@ -1027,12 +2128,41 @@ public class LDAPUtils
                 {
                     return null;
                 }
-            }, ignoreCache, true);
+            };
+    }
 
-            results.add(pc);
-        }
+    /**
+     * Accessor for the field values of an entry read with the attributes of the specified members only : the primary key, the
+     * specified members and the version are loaded from the attributes, and the other members are left unloaded.
+     * @param storeMgr Store Manager
+     * @param ec ExecutionContext
+     * @param cmd Metadata for the class of the entry
+     * @param attrs Attributes of the entry
+     * @param fieldNumbers Absolute numbers of the members whose attributes were read
+     * @return The field values
+     */
+    public static FieldValues getFieldValuesForEntry(final StoreManager storeMgr, ExecutionContext ec, final AbstractClassMetaData cmd, final Attributes attrs,
+            final int[] fieldNumbers)
+    {
+        return new FieldValues()
+            {
+                public void fetchFields(DNStateManager sm)
+                {
+                    sm.replaceFields(cmd.getPKMemberPositions(), new FetchFieldManager(storeMgr, sm, attrs));
+                    sm.replaceFields(fieldNumbers, new FetchFieldManager(storeMgr, sm, attrs));
+                    setVersionFromAttributes(sm, attrs);
+                }
 
-        return results;
+                public void fetchNonLoadedFields(DNStateManager sm)
+                {
+                    sm.replaceNonLoadedFields(fieldNumbers, new FetchFieldManager(storeMgr, sm, attrs));
+                }
+
+                public FetchPlan getFetchPlanForLoading()
+                {
+                    return null;
+                }
+            };
     }
 
     /**
@@ -1127,23 +2257,11 @@ public class LDAPUtils
         ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
         try
         {
-            DirContext ctx = (DirContext) mconn.getConnection();
-            ClassLoaderResolver clr = ec.getClassLoaderResolver();
-            Map<LdapName, Attributes> results = getEntries(ec, candidateCmd, ctx, base, additionalFilter, ignoreCache);
-            if (subclasses)
-            {
-                // Add on any subclass objects
-                String[] subclassNames = ec.getMetaDataManager().getSubclassesForClass(candidateCmd.getFullClassName(), true);
-                if (subclassNames != null)
-                {
-                    for (String subclassName : subclassNames)
-                    {
-                        AbstractClassMetaData cmd = ec.getMetaDataManager().getMetaDataForClass(subclassName, clr);
-                        results.putAll(getEntries(ec, cmd, ctx, base, additionalFilter, ignoreCache));
-                    }
-                }
-            }
-            return results;
+            return read(mconn, b -> getEntries(ec, candidateCmd, b, base, additionalFilter, subclasses, ignoreCache));
+        }
+        catch (NamingException ne)
+        {
+            throw new NucleusDataStoreException(ne.getMessage(), ne);
         }
         finally
         {
@@ -1151,8 +2269,29 @@ public class LDAPUtils
         }
     }
 
+    private static Map<LdapName, Attributes> getEntries(ExecutionContext ec, AbstractClassMetaData candidateCmd, DirectoryBackend backend,
+        LdapName base, String additionalFilter, boolean subclasses, boolean ignoreCache) throws NamingException
+    {
+        ClassLoaderResolver clr = ec.getClassLoaderResolver();
+        Map<LdapName, Attributes> results = getEntries(ec, candidateCmd, backend, base, additionalFilter, ignoreCache);
+        if (subclasses)
+        {
+            // Add on any subclass objects
+            String[] subclassNames = ec.getMetaDataManager().getSubclassesForClass(candidateCmd.getFullClassName(), true);
+            if (subclassNames != null)
+            {
+                for (String subclassName : subclassNames)
+                {
+                    AbstractClassMetaData cmd = ec.getMetaDataManager().getMetaDataForClass(subclassName, clr);
+                    results.putAll(getEntries(ec, cmd, backend, base, additionalFilter, ignoreCache));
+                }
+            }
+        }
+        return results;
+    }
+
     private static Map<LdapName, Attributes> getEntries(ExecutionContext ec, final AbstractClassMetaData acmd, 
-        DirContext ctx, LdapName base, String additionalFilter, boolean ignoreCache)
+        DirectoryBackend backend, LdapName base, String additionalFilter, boolean ignoreCache) throws NamingException
     {
         Map<LdapName, Attributes> results = new LinkedHashMap<LdapName, Attributes>();
 
@@ -1181,7 +2320,7 @@ public class LDAPUtils
                 NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.search", base, filter, searchControls.getSearchScope()));
             }
 
-            NamingEnumeration<SearchResult> enumeration = ctx.search(base.toString(), filter, searchControls);
+            NamingEnumeration<SearchResult> enumeration = backend.search(base.toString(), filter, searchControls);
             while (enumeration.hasMoreElements())
             {
                 final SearchResult sr = enumeration.nextElement();
@@ -1205,10 +2344,6 @@ public class LDAPUtils
         {
             // ignore, occurs when trying to search for an non-existing object
         }
-        catch (NamingException ne)
-        {
-            throw new NucleusDataStoreException(ne.getMessage(), ne);
-        }
 
         return results;
     }
@@ -1222,7 +2357,7 @@ public class LDAPUtils
         ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
         try
         {
-            ((DirContext) mconn.getConnection()).bind(dn, null, attributes);
+            ((DirectoryBackend) mconn.getConnection()).bind(dn.toString(), attributes);
         }
         catch (NamingException ne)
         {
@@ -1243,7 +2378,7 @@ public class LDAPUtils
         ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
         try
         {
-            ((DirContext) mconn.getConnection()).modifyAttributes(dn, DirContext.REPLACE_ATTRIBUTE, attributes);
+            ((DirectoryBackend) mconn.getConnection()).modifyAttributes(dn.toString(), DirContext.REPLACE_ATTRIBUTE, attributes);
         }
         catch (NamingException ne)
         {
@@ -1255,12 +2390,19 @@ public class LDAPUtils
         }
     }
 
+    /**
+     * Deletes an entry and its subtree.
+     * @param storeMgr Store Manager
+     * @param dn DN of the entry
+     * @param ec ExecutionContext
+     * @throws NucleusDataStoreException if an error occurs
+     */
     public static void deleteRecursive(StoreManager storeMgr, LdapName dn, ExecutionContext ec)
     {
         ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
         try
         {
-            deleteRecursive(dn, (DirContext) mconn.getConnection());
+            deleteRecursive((LDAPStoreManager) storeMgr, mconn, dn);
         }
         catch (NamingException ne)
         {
@@ -1272,34 +2414,82 @@ public class LDAPUtils
         }
     }
 
-    public static void deleteRecursive(LdapName dn, DirContext ctx) throws NamingException
+    /**
+     * Deletes an entry and its subtree. When the server advertises the Tree Delete control the server deletes the subtree with
+     * the entry. Otherwise the subtree is listed with one paged SUBTREE search returning no attributes, and deleted leaves first,
+     * one level at a time, pipelining the deletes of each level. The search must see the entries written before, so writes are made
+     * immediately rather than in an LDAP transaction.
+     * @param storeMgr Store Manager
+     * @param mconn Connection to delete with
+     * @param dn DN of the entry
+     * @throws NamingException if an error occurs
+     */
+    public static void deleteRecursive(LDAPStoreManager storeMgr, ManagedConnection mconn, LdapName dn) throws NamingException
     {
-        // search one-level and delete each, on exception: delete all children recursive
-        NamingEnumeration<SearchResult> enumeration = ctx.search(dn, "(objectClass=*)", new SearchControls());
-        while (enumeration.hasMoreElements())
+        DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
+        backend.requireImmediateWrites();
+        if (storeMgr.getServerCapabilities(backend).isControlSupported(WriteControls.TREE_DELETE_OID))
         {
-            SearchResult result = enumeration.nextElement();
-            String resultName = result.getNameInNamespace();
-            LdapName resultDn = new LdapName(resultName);
-            try
-            {
-                if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
-                {
-                    NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.destroySubcontext", resultDn));
-                }
-                ctx.unbind(resultDn);
-            }
-            catch (ContextNotEmptyException cnee)
+            if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
             {
-                deleteRecursive(resultDn, ctx);
+                NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.destroySubcontext", dn + " (tree delete)"));
             }
+            WriteControls controls = new WriteControls(null);
+            controls.setTreeDelete(true);
+            backend.unbind(dn.toString(), controls);
+            return;
         }
 
-        // now all child entries are deleted, delete parent again
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        searchControls.setReturningAttributes(new String[]{"1.1"});
         if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
         {
-            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.destroySubcontext", dn));
+            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.search", dn, "(objectClass=*)", searchControls.getSearchScope()));
+        }
+        List<SearchResult> results = backend.searchPaged(dn.toString(), "(objectClass=*)", searchControls, storeMgr.getPageSize());
+
+        List<String> dns = new ArrayList<String>(results.size());
+        for (SearchResult result : results)
+        {
+            dns.add(result.getNameInNamespace());
+        }
+        int numLevels = deleteEntries(storeMgr, mconn, dns);
+        if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.DeleteRecursive.Deleted", dn, results.size(), numLevels));
+        }
+    }
+
+    /**
+     * Deletes the specified entries (making up whole subtrees) leaves first, one level at a time, pipelining the deletes of each level.
+     * @param storeMgr Store Manager
+     * @param mconn Connection to delete with
+     * @param dns DNs of the entries
+     * @return The number of levels
+     * @throws NamingException if an error occurs
+     */
+    private static int deleteEntries(LDAPStoreManager storeMgr, ManagedConnection mconn, List<String> dns) throws NamingException
+    {
+        // Group by depth, deepest first, so that children are deleted before their parents
+        TreeMap<Integer, List<String>> dnsByLevel = new TreeMap<Integer, List<String>>(Collections.reverseOrder());
+        for (String entryDn : dns)
+        {
+            dnsByLevel.computeIfAbsent(new LdapName(entryDn).size(), k -> new ArrayList<String>()).add(entryDn);
+        }
+        for (List<String> levelDns : dnsByLevel.values())
+        {
+            LDAPPipeline pipeline = storeMgr.newPipeline(mconn);
+            for (final String entryDn : levelDns)
+            {
+                if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+                {
+                    NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.destroySubcontext", entryDn));
+                }
+                pipeline.submit(entryDn, b -> b.unbind(entryDn));
+            }
+            pipeline.awaitAndCheck();
         }
-        ctx.unbind(dn);
+        return dnsByLevel.size();
     }
-}
\ No newline at end of file
+}
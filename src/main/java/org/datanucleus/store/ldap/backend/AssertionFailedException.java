@@ -0,0 +1,37 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import javax.naming.NamingException;
+
+/**
+ * Thrown when a write is not applied because the entry doesn't match the assertion of its {@link WriteControls}
+ * (LDAP result code 122 "assertionFailed").
+ */
+public class AssertionFailedException extends NamingException
+{
+    private static final long serialVersionUID = -1632957834920151875L;
+
+    /** LDAP result code for a failed assertion. */
+    public static final int RESULT_CODE = 122;
+
+    public AssertionFailedException(String explanation)
+    {
+        super(explanation);
+    }
+}
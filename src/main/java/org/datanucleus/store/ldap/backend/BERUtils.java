@@ -0,0 +1,371 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.InvalidSearchFilterException;
+
+import org.datanucleus.store.ldap.query.filter.AbstractBranchFilter;
+import org.datanucleus.store.ldap.query.filter.AndFilter;
+import org.datanucleus.store.ldap.query.filter.EqualityFilter;
+import org.datanucleus.store.ldap.query.filter.Filter;
+import org.datanucleus.store.ldap.query.filter.FilterParser;
+import org.datanucleus.store.ldap.query.filter.GreaterEqFilter;
+import org.datanucleus.store.ldap.query.filter.LessEqFilter;
+import org.datanucleus.store.ldap.query.filter.NotFilter;
+import org.datanucleus.store.ldap.query.filter.OrFilter;
+import org.datanucleus.store.ldap.query.filter.PresenceFilter;
+import org.datanucleus.store.ldap.query.filter.SubstringFilter;
+
+/**
+ * Minimal BER encoding and decoding (definite lengths, as required by LDAP) of the values of the controls and extended
+ * operations used by the LDAP store. JNDI has no public BER API, so this provides just what is needed.
+ */
+public final class BERUtils
+{
+    public static final int TAG_BOOLEAN = 0x01;
+
+    public static final int TAG_INTEGER = 0x02;
+
+    public static final int TAG_OCTET_STRING = 0x04;
+
+    public static final int TAG_ENUMERATED = 0x0A;
+
+    public static final int TAG_SEQUENCE = 0x30;
+
+    public static final int TAG_SET = 0x31;
+
+    /** Tag of SearchResultEntry ([APPLICATION 4] SEQUENCE), as returned by the Read Entry controls. */
+    public static final int TAG_SEARCH_RESULT_ENTRY = 0x64;
+
+    private BERUtils()
+    {
+    }
+
+    /**
+     * Encodes an element with the specified tag and content.
+     * @param tag The tag
+     * @param content The content octets
+     * @return The encoded element
+     */
+    public static byte[] encode(int tag, byte[] content)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + 6);
+        out.write(tag);
+        writeLength(out, content.length);
+        out.write(content, 0, content.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a constructed element (e.g. SEQUENCE) with the specified tag, containing the specified (encoded) elements.
+     * @param tag The tag
+     * @param elements The encoded elements
+     * @return The encoded element
+     */
+    public static byte[] encodeConstructed(int tag, byte[]... elements)
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] element : elements)
+        {
+            if (element != null)
+            {
+                content.write(element, 0, element.length);
+            }
+        }
+        return encode(tag, content.toByteArray());
+    }
+
+    /**
+     * Encodes a SEQUENCE of the specified (encoded) elements. Null elements (e.g. omitted DEFAULT values) are skipped.
+     * @param elements The encoded elements
+     * @return The encoded SEQUENCE
+     */
+    public static byte[] encodeSequence(byte[]... elements)
+    {
+        return encodeConstructed(TAG_SEQUENCE, elements);
+    }
+
+    public static byte[] encodeBoolean(boolean value)
+    {
+        return encode(TAG_BOOLEAN, new byte[] {value ? (byte) 0xFF : 0x00});
+    }
+
+    public static byte[] encodeInteger(int tag, long value)
+    {
+        // minimal two's complement representation
+        int numBytes = 1;
+        while (numBytes < 8 && (value >> (numBytes * 8 - 1)) != 0 && (value >> (numBytes * 8 - 1)) != -1)
+        {
+            numBytes++;
+        }
+        byte[] content = new byte[numBytes];
+        for (int i = 0; i < numBytes; i++)
+        {
+            content[numBytes - 1 - i] = (byte) (value >> (i * 8));
+        }
+        return encode(tag, content);
+    }
+
+    public static byte[] encodeInteger(long value)
+    {
+        return encodeInteger(TAG_INTEGER, value);
+    }
+
+    public static byte[] encodeOctetString(int tag, byte[] value)
+    {
+        return encode(tag, value);
+    }
+
+    public static byte[] encodeOctetString(byte[] value)
+    {
+        return encode(TAG_OCTET_STRING, value);
+    }
+
+    public static byte[] encodeOctetString(String value)
+    {
+        return encode(TAG_OCTET_STRING, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encodes a filter in its string representation (RFC 4515) as the Filter of the LDAP protocol (RFC 4511).
+     * @param filter The filter
+     * @return The encoded filter
+     * @throws NamingException if the filter is invalid
+     */
+    public static byte[] encodeFilter(String filter) throws NamingException
+    {
+        return encodeFilter(FilterParser.parse(filter));
+    }
+
+    /**
+     * Encodes a parsed filter as the Filter of the LDAP protocol (RFC 4511).
+     * @param filter The filter
+     * @return The encoded filter
+     * @throws NamingException if the filter is not supported
+     */
+    public static byte[] encodeFilter(Filter filter) throws NamingException
+    {
+        if (filter instanceof AndFilter || filter instanceof OrFilter || filter instanceof NotFilter)
+        {
+            // and [0] SET OF Filter, or [1] SET OF Filter, not [2] Filter
+            List<Filter> children = ((AbstractBranchFilter) filter).getChildren();
+            byte[][] elements = new byte[children.size()][];
+            for (int i = 0; i < elements.length; i++)
+            {
+                elements[i] = encodeFilter(children.get(i));
+            }
+            int tag = filter instanceof AndFilter ? 0xA0 : (filter instanceof OrFilter ? 0xA1 : 0xA2);
+            return encodeConstructed(tag, elements);
+        }
+        else if (filter instanceof EqualityFilter)
+        {
+            // equalityMatch [3] AttributeValueAssertion
+            EqualityFilter eq = (EqualityFilter) filter;
+            return encodeConstructed(0xA3, encodeOctetString(eq.getAttribute()), encodeOctetString(FilterParser.unescape(eq.getValue())));
+        }
+        else if (filter instanceof GreaterEqFilter)
+        {
+            // greaterOrEqual [5] AttributeValueAssertion
+            GreaterEqFilter ge = (GreaterEqFilter) filter;
+            return encodeConstructed(0xA5, encodeOctetString(ge.getAttribute()), encodeOctetString(FilterParser.unescape(ge.getValue())));
+        }
+        else if (filter instanceof LessEqFilter)
+        {
+            // lessOrEqual [6] AttributeValueAssertion
+            LessEqFilter le = (LessEqFilter) filter;
+            return encodeConstructed(0xA6, encodeOctetString(le.getAttribute()), encodeOctetString(FilterParser.unescape(le.getValue())));
+        }
+        else if (filter instanceof PresenceFilter)
+        {
+            // present [7] AttributeDescription
+            return encode(0x87, ((PresenceFilter) filter).getAttribute().getBytes(StandardCharsets.UTF_8));
+        }
+        else if (filter instanceof SubstringFilter)
+        {
+            // substrings [4] SEQUENCE { type, substrings SEQUENCE OF CHOICE { initial [0], any [1], final [2] } }
+            SubstringFilter sub = (SubstringFilter) filter;
+            List<String> anyPatterns = sub.getAnyPatterns();
+            byte[][] parts = new byte[anyPatterns.size() + 2][];
+            if (sub.getInitialPattern() != null)
+            {
+                parts[0] = encodeOctetString(0x80, FilterParser.unescape(sub.getInitialPattern()).getBytes(StandardCharsets.UTF_8));
+            }
+            for (int i = 0; i < anyPatterns.size(); i++)
+            {
+                parts[i + 1] = encodeOctetString(0x81, FilterParser.unescape(anyPatterns.get(i)).getBytes(StandardCharsets.UTF_8));
+            }
+            if (sub.getFinalPattern() != null)
+            {
+                parts[parts.length - 1] = encodeOctetString(0x82, FilterParser.unescape(sub.getFinalPattern()).getBytes(StandardCharsets.UTF_8));
+            }
+            return encodeConstructed(0xA4, encodeOctetString(sub.getAttribute()), encodeSequence(parts));
+        }
+        throw new InvalidSearchFilterException("Unsupported filter " + filter);
+    }
+
+    /**
+     * Encodes the value of the Matched Values control (RFC 3876) : the ValuesReturnFilter, a SEQUENCE OF SimpleFilterItem.
+     * @param valueFilters The filter items, e.g. "(member=cn=a,dc=example,dc=com)" (no AND, OR or NOT)
+     * @return The encoded control value
+     * @throws NamingException if a filter item is invalid
+     */
+    public static byte[] encodeValuesReturnFilter(String... valueFilters) throws NamingException
+    {
+        byte[][] items = new byte[valueFilters.length][];
+        for (int i = 0; i < valueFilters.length; i++)
+        {
+            Filter filter = FilterParser.parse(valueFilters[i]);
+            if (filter instanceof AbstractBranchFilter)
+            {
+                throw new InvalidSearchFilterException("Unsupported values return filter item " + valueFilters[i]);
+            }
+            items[i] = encodeFilter(filter);
+        }
+        return encodeSequence(items);
+    }
+
+    /**
+     * Decodes the SearchResultEntry returned in the value of a Read Entry control (RFC 4527) to the attributes of the entry.
+     * Values are decoded as (UTF-8) strings.
+     * @param value The encoded SearchResultEntry
+     * @return The attributes
+     * @throws NamingException if the value is not a valid SearchResultEntry
+     */
+    public static Attributes decodeEntry(byte[] value) throws NamingException
+    {
+        // SearchResultEntry ::= [APPLICATION 4] SEQUENCE { objectName LDAPDN, attributes PartialAttributeList }
+        Decoder entry = new Decoder(value, 0, value.length).readConstructed(TAG_SEARCH_RESULT_ENTRY);
+        entry.readString(TAG_OCTET_STRING);
+        Decoder attrList = entry.readConstructed(TAG_SEQUENCE);
+        Attributes attrs = new BasicAttributes(true);
+        while (attrList.hasMore())
+        {
+            // PartialAttribute ::= SEQUENCE { type AttributeDescription, vals SET OF AttributeValue }
+            Decoder partialAttr = attrList.readConstructed(TAG_SEQUENCE);
+            Attribute attr = new BasicAttribute(partialAttr.readString(TAG_OCTET_STRING));
+            Decoder vals = partialAttr.readConstructed(TAG_SET);
+            while (vals.hasMore())
+            {
+                attr.add(vals.readString(TAG_OCTET_STRING));
+            }
+            attrs.put(attr);
+        }
+        return attrs;
+    }
+
+    /**
+     * Reader of the elements within (part of) an encoded value.
+     */
+    private static class Decoder
+    {
+        private final byte[] bytes;
+
+        private int pos;
+
+        private final int end;
+
+        Decoder(byte[] bytes, int start, int end)
+        {
+            this.bytes = bytes;
+            this.pos = start;
+            this.end = end;
+        }
+
+        boolean hasMore()
+        {
+            return pos < end;
+        }
+
+        /**
+         * Reads the header of the next element, checking its tag.
+         * @param tag The expected tag
+         * @return The length of the content of the element, which starts at the (new) position
+         */
+        private int readHeader(int tag) throws NamingException
+        {
+            if (pos + 2 > end || (bytes[pos] & 0xFF) != tag)
+            {
+                throw new NamingException("Invalid BER encoding : expected tag " + Integer.toHexString(tag) + " at offset " + pos);
+            }
+            pos++;
+            int length = bytes[pos++] & 0xFF;
+            if ((length & 0x80) != 0)
+            {
+                int numBytes = length & 0x7F;
+                if (numBytes == 0 || numBytes > 4 || pos + numBytes > end)
+                {
+                    throw new NamingException("Invalid BER encoding : unsupported length at offset " + pos);
+                }
+                length = 0;
+                for (int i = 0; i < numBytes; i++)
+                {
+                    length = (length << 8) | (bytes[pos++] & 0xFF);
+                }
+            }
+            if (length < 0 || length > end - pos)
+            {
+                throw new NamingException("Invalid BER encoding : length " + length + " exceeds the value at offset " + pos);
+            }
+            return length;
+        }
+
+        Decoder readConstructed(int tag) throws NamingException
+        {
+            int length = readHeader(tag);
+            Decoder content = new Decoder(bytes, pos, pos + length);
+            pos += length;
+            return content;
+        }
+
+        String readString(int tag) throws NamingException
+        {
+            int length = readHeader(tag);
+            String str = new String(bytes, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return str;
+        }
+    }
+
+    private static void writeLength(ByteArrayOutputStream out, int length)
+    {
+        if (length < 0x80)
+        {
+            out.write(length);
+            return;
+        }
+        int numBytes = 0;
+        for (int l = length; l != 0; l >>>= 8)
+        {
+            numBytes++;
+        }
+        out.write(0x80 | numBytes);
+        for (int i = numBytes - 1; i >= 0; i--)
+        {
+            out.write(length >>> (i * 8));
+        }
+    }
+}
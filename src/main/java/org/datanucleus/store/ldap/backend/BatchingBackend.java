@@ -0,0 +1,286 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+import org.datanucleus.exceptions.NucleusDataStoreException;
+import org.datanucleus.exceptions.NucleusUserException;
+import org.datanucleus.store.ldap.LDAPPipeline;
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Backend that defers binds, so that the entries added during a flush can be sent as a pipelined batch.
+ * Any other operation is a barrier : the pending binds are sent first, so that operations are seen by the
+ * server in an order consistent with the order they were issued.
+ * Pending binds are sent level by level (by number of RDNs in the DN) so that parents are added before their children,
+ * with all binds of a level pipelined. Failures are reported per entry when the batch is sent.
+ */
+public class BatchingBackend implements DirectoryBackend
+{
+    private final DirectoryBackend delegate;
+
+    private final LDAPPipeline pipeline;
+
+    /** Pending binds, in the order they were issued. */
+    private final List<PendingBind> pending = new ArrayList<PendingBind>();
+
+    private boolean draining = false;
+
+    /**
+     * Constructor.
+     * @param delegate The backend to perform operations with
+     * @param pipeline Pipeline to send the binds with
+     */
+    public BatchingBackend(DirectoryBackend delegate, LDAPPipeline pipeline)
+    {
+        this.delegate = delegate;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Accessor for whether the pending binds are currently being sent (in which case operations must go to the delegate).
+     * @return Whether draining
+     */
+    public boolean isDraining()
+    {
+        return draining;
+    }
+
+    /**
+     * Accessor for the number of binds waiting to be sent.
+     * @return Number of pending binds
+     */
+    public int getNumberPending()
+    {
+        return pending.size();
+    }
+
+    public void bind(String dn, Attributes attrs) throws NamingException
+    {
+        pending.add(new PendingBind(new LdapName(dn), attrs));
+    }
+
+    public void bind(String dn, Attributes attrs, WriteControls controls) throws NamingException
+    {
+        if (controls == null || controls.isEmpty())
+        {
+            bind(dn, attrs);
+            return;
+        }
+
+        // The caller needs the outcome of the controls after this call, so cannot defer it
+        flush();
+        delegate.bind(dn, attrs, controls);
+    }
+
+    public Attributes getAttributes(String dn, String[] attrIds) throws NamingException
+    {
+        flush();
+        return delegate.getAttributes(dn, attrIds);
+    }
+
+    public NamingEnumeration<SearchResult> search(String base, String filter, SearchControls controls) throws NamingException
+    {
+        flush();
+        return delegate.search(base, filter, controls);
+    }
+
+    public NamingEnumeration<SearchResult> search(String base, String filter, SearchControls controls, String[] valueFilters) throws NamingException
+    {
+        flush();
+        return delegate.search(base, filter, controls, valueFilters);
+    }
+
+    public List<SearchResult> searchPaged(String base, String filter, SearchControls controls, int pageSize) throws NamingException
+    {
+        flush();
+        return delegate.searchPaged(base, filter, controls, pageSize);
+    }
+
+    public void searchPaged(String base, String filter, SearchControls controls, int pageSize, PageHandler handler) throws NamingException
+    {
+        flush();
+        delegate.searchPaged(base, filter, controls, pageSize, handler);
+    }
+
+    public void modifyAttributes(String dn, int modOp, Attributes attrs) throws NamingException
+    {
+        flush();
+        delegate.modifyAttributes(dn, modOp, attrs);
+    }
+
+    public void modifyAttributes(String dn, ModificationItem[] mods) throws NamingException
+    {
+        flush();
+        delegate.modifyAttributes(dn, mods);
+    }
+
+    public void modifyAttributes(String dn, ModificationItem[] mods, WriteControls controls) throws NamingException
+    {
+        flush();
+        delegate.modifyAttributes(dn, mods, controls);
+    }
+
+    public void rename(String oldDn, String newDn) throws NamingException
+    {
+        flush();
+        delegate.rename(oldDn, newDn);
+    }
+
+    public void unbind(String dn) throws NamingException
+    {
+        flush();
+        delegate.unbind(dn);
+    }
+
+    public void unbind(String dn, WriteControls controls) throws NamingException
+    {
+        flush();
+        delegate.unbind(dn, controls);
+    }
+
+    public void requireImmediateWrites() throws NamingException
+    {
+        flush();
+        delegate.requireImmediateWrites();
+    }
+
+    /**
+     * Sends all pending binds, parents before children, pipelining the binds of each level.
+     * @throws NucleusDataStoreException if any bind failed, with a nested exception per failed entry
+     */
+    public void flush()
+    {
+        if (pending.isEmpty() || draining)
+        {
+            return;
+        }
+
+        // Group by depth so that parents are bound before their children
+        TreeMap<Integer, List<PendingBind>> bindsByLevel = new TreeMap<Integer, List<PendingBind>>();
+        for (PendingBind bind : pending)
+        {
+            List<PendingBind> binds = bindsByLevel.get(bind.dn.size());
+            if (binds == null)
+            {
+                binds = new ArrayList<PendingBind>();
+                bindsByLevel.put(bind.dn.size(), binds);
+            }
+            binds.add(bind);
+        }
+        int numBinds = pending.size();
+        pending.clear();
+
+        long startTime = System.currentTimeMillis();
+        draining = true;
+        try
+        {
+            Map<Object, NamingException> failures = new LinkedHashMap<Object, NamingException>();
+            for (List<PendingBind> binds : bindsByLevel.values())
+            {
+                for (final PendingBind bind : binds)
+                {
+                    final String dn = bind.dn.toString();
+                    pipeline.submit(dn, b -> b.bind(dn, bind.attrs));
+                }
+                failures.putAll(pipeline.await());
+                if (!failures.isEmpty())
+                {
+                    // Entries of the next levels may depend on the failed ones, so stop
+                    break;
+                }
+            }
+
+            if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.Batch.Flushed", numBinds, bindsByLevel.size(), failures.size(),
+                    System.currentTimeMillis() - startTime));
+            }
+            if (!failures.isEmpty())
+            {
+                throw failuresToException(failures);
+            }
+        }
+        finally
+        {
+            draining = false;
+        }
+    }
+
+    /**
+     * Discards any pending binds, for example when the flush failed.
+     */
+    public void discard()
+    {
+        pending.clear();
+    }
+
+    private static NucleusDataStoreException failuresToException(Map<Object, NamingException> failures)
+    {
+        List<Throwable> nested = new ArrayList<Throwable>();
+        for (Map.Entry<Object, NamingException> entry : failures.entrySet())
+        {
+            NamingException ne = entry.getValue();
+            if (ne instanceof NameAlreadyBoundException)
+            {
+                nested.add(new NucleusUserException(Localiser.msg("LDAP.Batch.EntryAlreadyExists", entry.getKey()), ne));
+            }
+            else
+            {
+                nested.add(new NucleusDataStoreException(Localiser.msg("LDAP.Batch.BindFailed", entry.getKey(), ne.getMessage()), ne));
+            }
+        }
+        if (nested.size() == 1)
+        {
+            Throwable t = nested.get(0);
+            return (t instanceof NucleusDataStoreException) ? (NucleusDataStoreException) t : new NucleusDataStoreException(t.getMessage(), t);
+        }
+        return new NucleusDataStoreException(Localiser.msg("LDAP.Batch.Failures", failures.size()), nested.toArray(new Throwable[nested.size()]));
+    }
+
+    /**
+     * Bind waiting to be sent.
+     */
+    private static class PendingBind
+    {
+        final LdapName dn;
+
+        final Attributes attrs;
+
+        PendingBind(LdapName dn, Attributes attrs)
+        {
+            this.dn = dn;
+            this.attrs = attrs;
+        }
+    }
+}
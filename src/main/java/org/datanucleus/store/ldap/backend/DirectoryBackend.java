@@ -0,0 +1,186 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+/**
+ * Interface for the directory operations used by the LDAP store. This is what a ManagedConnection of the
+ * LDAP store provides as its connection.
+ * The semantics (including the exceptions thrown) follow those of the equivalent JNDI DirContext methods,
+ * and all names are full distinguished names. Implementations are not required to be thread-safe.
+ */
+public interface DirectoryBackend
+{
+    /** OID of the Matched Values control (RFC 3876). */
+    String MATCHED_VALUES_OID = "1.2.826.0.1.3344810.2.3";
+
+    /**
+     * Handler for the pages of results of a paged search.
+     */
+    interface PageHandler
+    {
+        /**
+         * Handles a page of results. This is called before the next page is requested, and without the paging control set,
+         * so the handler can perform other operations with the backend (other than a paged search).
+         * @param results The search results of the page, with their name in namespace set
+         * @throws NamingException if an error occurs
+         */
+        void handlePage(List<SearchResult> results) throws NamingException;
+    }
+
+    /**
+     * Makes the writes from now on apply immediately, for an operation that depends on the result of each write (e.g. falling back
+     * when a value is already present, or when an entry has children) or that searches for entries written before. Writes deferred
+     * until then (pending in a batch, or in an LDAP transaction, which a server may only apply and validate when it is ended)
+     * are applied first.
+     * @throws NamingException if the deferred writes fail
+     */
+    void requireImmediateWrites() throws NamingException;
+
+    /**
+     * Adds an entry.
+     * @param dn DN of the entry
+     * @param attrs Attributes of the entry
+     * @throws NamingException if an error occurs, e.g. NameAlreadyBoundException if the entry exists
+     */
+    void bind(String dn, Attributes attrs) throws NamingException;
+
+    /**
+     * Adds an entry, sending the specified controls.
+     * @param dn DN of the entry
+     * @param attrs Attributes of the entry
+     * @param controls Controls for the write (or null)
+     * @throws NamingException if an error occurs, e.g. NameAlreadyBoundException if the entry exists
+     */
+    void bind(String dn, Attributes attrs, WriteControls controls) throws NamingException;
+
+    /**
+     * Reads (attributes of) an entry.
+     * @param dn DN of the entry
+     * @param attrIds Names of the attributes to return (null means all user attributes)
+     * @return The attributes
+     * @throws NamingException if an error occurs, e.g. NameNotFoundException if the entry doesn't exist
+     */
+    Attributes getAttributes(String dn, String[] attrIds) throws NamingException;
+
+    /**
+     * Searches for entries.
+     * @param base DN of the search base
+     * @param filter The filter (RFC 4515)
+     * @param controls Controls for the search (scope, attributes to return, limits)
+     * @return The search results, with their name in namespace set
+     * @throws NamingException if an error occurs
+     */
+    NamingEnumeration<SearchResult> search(String base, String filter, SearchControls controls) throws NamingException;
+
+    /**
+     * Searches for entries, returning only the values of the returned attributes that match one of the specified filter items,
+     * using the Matched Values control (RFC 3876). Attributes without any matching value may be omitted, or returned without values.
+     * Only to be used when the server advertises the control.
+     * @param base DN of the search base
+     * @param filter The filter (RFC 4515)
+     * @param controls Controls for the search (scope, attributes to return, limits)
+     * @param valueFilters Filter items for the values to return, e.g. "(member=cn=a,dc=example,dc=com)" (no AND, OR or NOT)
+     * @return The search results, with their name in namespace set
+     * @throws NamingException if an error occurs
+     */
+    NamingEnumeration<SearchResult> search(String base, String filter, SearchControls controls, String[] valueFilters) throws NamingException;
+
+    /**
+     * Searches for entries, retrieving the results in pages (RFC 2696 Simple Paged Results control) so that large result sets
+     * are not cut by the size limit of the server. All results are read before returning.
+     * @param base DN of the search base
+     * @param filter The filter (RFC 4515)
+     * @param controls Controls for the search (scope, attributes to return, limits)
+     * @param pageSize Number of results per page
+     * @return The search results, with their name in namespace set
+     * @throws NamingException if an error occurs
+     */
+    List<SearchResult> searchPaged(String base, String filter, SearchControls controls, int pageSize) throws NamingException;
+
+    /**
+     * Searches for entries, retrieving the results in pages (RFC 2696 Simple Paged Results control) and passing each page
+     * to the handler as it is read, so the results needn't all be held in memory.
+     * @param base DN of the search base
+     * @param filter The filter (RFC 4515)
+     * @param controls Controls for the search (scope, attributes to return, limits)
+     * @param pageSize Number of results per page
+     * @param handler Handler for the pages of results
+     * @throws NamingException if an error occurs, either in the search or in the handler
+     */
+    void searchPaged(String base, String filter, SearchControls controls, int pageSize, PageHandler handler) throws NamingException;
+
+    /**
+     * Modifies an entry, applying the same modification to all specified attributes.
+     * @param dn DN of the entry
+     * @param modOp The modification (DirContext.ADD_ATTRIBUTE, REPLACE_ATTRIBUTE, REMOVE_ATTRIBUTE)
+     * @param attrs The attributes
+     * @throws NamingException if an error occurs
+     */
+    void modifyAttributes(String dn, int modOp, Attributes attrs) throws NamingException;
+
+    /**
+     * Modifies an entry, applying the modifications atomically and in order.
+     * @param dn DN of the entry
+     * @param mods The modifications
+     * @throws NamingException if an error occurs
+     */
+    void modifyAttributes(String dn, ModificationItem[] mods) throws NamingException;
+
+    /**
+     * Modifies an entry, applying the modifications atomically and in order, sending the specified controls.
+     * @param dn DN of the entry
+     * @param mods The modifications
+     * @param controls Controls for the write (or null)
+     * @throws AssertionFailedException if the entry doesn't match the assertion of the controls (nothing is modified)
+     * @throws NamingException if an error occurs
+     */
+    void modifyAttributes(String dn, ModificationItem[] mods, WriteControls controls) throws NamingException;
+
+    /**
+     * Renames/moves an entry (and its subtree).
+     * @param oldDn Current DN of the entry
+     * @param newDn New DN of the entry
+     * @throws NamingException if an error occurs
+     */
+    void rename(String oldDn, String newDn) throws NamingException;
+
+    /**
+     * Deletes a (leaf) entry.
+     * @param dn DN of the entry
+     * @throws NamingException if an error occurs, e.g. ContextNotEmptyException if the entry has children
+     */
+    void unbind(String dn) throws NamingException;
+
+    /**
+     * Deletes a (leaf) entry, sending the specified controls. With a tree delete the subtree of the entry is deleted too.
+     * @param dn DN of the entry
+     * @param controls Controls for the write (or null)
+     * @throws AssertionFailedException if the entry doesn't match the assertion of the controls (nothing is deleted)
+     * @throws NamingException if an error occurs, e.g. ContextNotEmptyException if the entry has children
+     */
+    void unbind(String dn, WriteControls controls) throws NamingException;
+}
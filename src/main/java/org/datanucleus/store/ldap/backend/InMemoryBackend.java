@@ -0,0 +1,849 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.naming.ContextNotEmptyException;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.AttributeInUseException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.NoSuchAttributeException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+import org.datanucleus.store.ldap.query.filter.AbstractBranchFilter;
+import org.datanucleus.store.ldap.query.filter.AndFilter;
+import org.datanucleus.store.ldap.query.filter.EqualityFilter;
+import org.datanucleus.store.ldap.query.filter.Filter;
+import org.datanucleus.store.ldap.query.filter.FilterParser;
+import org.datanucleus.store.ldap.query.filter.GreaterEqFilter;
+import org.datanucleus.store.ldap.query.filter.LessEqFilter;
+import org.datanucleus.store.ldap.query.filter.NotFilter;
+import org.datanucleus.store.ldap.query.filter.OrFilter;
+import org.datanucleus.store.ldap.query.filter.PresenceFilter;
+import org.datanucleus.store.ldap.query.filter.SubstringFilter;
+
+/**
+ * Backend holding the directory information tree in memory, for running the store without an LDAP server
+ * (e.g. for performance testing and profiling). Instances are thread-safe and are shared by all connections
+ * of a store manager; the contents are lost when the store manager is closed.
+ * <p>
+ * There is no schema : attribute names are case-insensitive, string values are matched case-insensitively
+ * (or as DNs when both values are DNs), and values that are numbers are ordered numerically.
+ * Missing ancestors of an added entry are created automatically (with objectClass "top"), so that no
+ * naming contexts need to be set up beforehand.
+ */
+public class InMemoryBackend implements DirectoryBackend
+{
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Entries keyed by their DN (LdapName equality being case-insensitive and ignoring formatting). */
+    private final Map<LdapName, Entry> entries = new HashMap<LdapName, Entry>();
+
+    public InMemoryBackend()
+    {
+        // Root DSE, parent of all naming contexts
+        LdapName rootName = new LdapName(new ArrayList<Rdn>());
+        entries.put(rootName, new Entry(rootName, new BasicAttributes(true)));
+    }
+
+    public void requireImmediateWrites()
+    {
+        // Writes are always applied immediately
+    }
+
+    public void bind(String dn, Attributes attrs) throws NamingException
+    {
+        bind(dn, attrs, null);
+    }
+
+    public void bind(String dn, Attributes attrs, WriteControls controls) throws NamingException
+    {
+        LdapName name = new LdapName(dn);
+        lock.writeLock().lock();
+        try
+        {
+            if (entries.containsKey(name))
+            {
+                throw new NameAlreadyBoundException(dn);
+            }
+            if (name.size() == 0)
+            {
+                throw new NamingException("Cannot bind the root entry");
+            }
+            Entry parent = getOrCreateParent(name);
+
+            Entry entry = new Entry(name, copyAttributes(attrs, null));
+            // Entry must contain its RDN value
+            Rdn rdn = name.getRdn(name.size() - 1);
+            addValueIfMissing(entry.attrs, rdn.getType(), rdn.getValue());
+            entries.put(name, entry);
+            parent.children.add(name);
+            readEntry(entry, controls, false);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Attributes getAttributes(String dn, String[] attrIds) throws NamingException
+    {
+        LdapName name = new LdapName(dn);
+        lock.readLock().lock();
+        try
+        {
+            return copyAttributes(getEntry(name).attrs, attrIds);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    public NamingEnumeration<SearchResult> search(String base, String filter, SearchControls controls) throws NamingException
+    {
+        LdapName baseName = new LdapName(base);
+        Filter filterObj = FilterParser.parse(filter);
+        int scope = controls != null ? controls.getSearchScope() : SearchControls.ONELEVEL_SCOPE;
+        long countLimit = controls != null ? controls.getCountLimit() : 0;
+        String[] attrIds = controls != null ? controls.getReturningAttributes() : null;
+
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        lock.readLock().lock();
+        try
+        {
+            Entry baseEntry = getEntry(baseName);
+            List<Entry> candidates = new ArrayList<Entry>();
+            if (scope == SearchControls.OBJECT_SCOPE)
+            {
+                candidates.add(baseEntry);
+            }
+            else if (scope == SearchControls.ONELEVEL_SCOPE)
+            {
+                for (LdapName childName : baseEntry.children)
+                {
+                    candidates.add(entries.get(childName));
+                }
+            }
+            else
+            {
+                collectSubtree(baseEntry, candidates);
+            }
+
+            for (Entry entry : candidates)
+            {
+                if (matches(filterObj, entry.attrs))
+                {
+                    String relativeName = entry.dn.getSuffix(baseName.size()).toString();
+                    SearchResult sr = new SearchResult(relativeName, null, copyAttributes(entry.attrs, attrIds));
+                    sr.setNameInNamespace(entry.dn.toString());
+                    results.add(sr);
+                    if (countLimit > 0 && results.size() >= countLimit)
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        return new ListEnumeration<SearchResult>(results);
+    }
+
+    public NamingEnumeration<SearchResult> search(String base, String filter, SearchControls controls, String[] valueFilters) throws NamingException
+    {
+        Filter[] items = new Filter[valueFilters.length];
+        for (int i = 0; i < items.length; i++)
+        {
+            items[i] = FilterParser.parse(valueFilters[i]);
+        }
+
+        // Keep only the values matching an item, and omit the attributes without any
+        List<SearchResult> results = Collections.list(search(base, filter, controls));
+        for (SearchResult result : results)
+        {
+            Attributes matchedAttrs = new BasicAttributes(true);
+            NamingEnumeration<? extends Attribute> attrEnum = result.getAttributes().getAll();
+            while (attrEnum.hasMore())
+            {
+                Attribute attr = attrEnum.next();
+                Attribute matchedAttr = new BasicAttribute(attr.getID());
+                for (int i = 0; i < attr.size(); i++)
+                {
+                    Attributes valueAttrs = new BasicAttributes(attr.getID(), attr.get(i), true);
+                    for (Filter item : items)
+                    {
+                        if (matches(item, valueAttrs))
+                        {
+                            matchedAttr.add(attr.get(i));
+                            break;
+                        }
+                    }
+                }
+                if (matchedAttr.size() > 0)
+                {
+                    matchedAttrs.put(matchedAttr);
+                }
+            }
+            result.setAttributes(matchedAttrs);
+        }
+        return new ListEnumeration<SearchResult>(results);
+    }
+
+    public List<SearchResult> searchPaged(String base, String filter, SearchControls controls, int pageSize) throws NamingException
+    {
+        return Collections.list(search(base, filter, controls));
+    }
+
+    public void searchPaged(String base, String filter, SearchControls controls, int pageSize, PageHandler handler) throws NamingException
+    {
+        List<SearchResult> results = searchPaged(base, filter, controls, pageSize);
+        int size = Math.max(pageSize, 1);
+        for (int i = 0; i < results.size(); i += size)
+        {
+            handler.handlePage(results.subList(i, Math.min(i + size, results.size())));
+        }
+    }
+
+    public void modifyAttributes(String dn, int modOp, Attributes attrs) throws NamingException
+    {
+        ModificationItem[] mods = new ModificationItem[attrs.size()];
+        NamingEnumeration<? extends Attribute> attrEnum = attrs.getAll();
+        int i = 0;
+        while (attrEnum.hasMore())
+        {
+            mods[i++] = new ModificationItem(modOp, attrEnum.next());
+        }
+        modifyAttributes(dn, mods);
+    }
+
+    public void modifyAttributes(String dn, ModificationItem[] mods) throws NamingException
+    {
+        modifyAttributes(dn, mods, null);
+    }
+
+    public void modifyAttributes(String dn, ModificationItem[] mods, WriteControls controls) throws NamingException
+    {
+        LdapName name = new LdapName(dn);
+        lock.writeLock().lock();
+        try
+        {
+            Entry entry = getEntry(name);
+            checkAssertion(entry, controls);
+            readEntry(entry, controls, true);
+
+            // Apply to a copy so that the modifications are atomic
+            Attributes newAttrs = copyAttributes(entry.attrs, null);
+            for (ModificationItem mod : mods)
+            {
+                Attribute attr = mod.getAttribute();
+                String attrId = attr.getID();
+                Attribute existing = newAttrs.get(attrId);
+                switch (mod.getModificationOp())
+                {
+                    case DirContext.ADD_ATTRIBUTE :
+                        if (existing == null)
+                        {
+                            existing = new BasicAttribute(attrId);
+                            newAttrs.put(existing);
+                        }
+                        for (int i = 0; i < attr.size(); i++)
+                        {
+                            Object value = attr.get(i);
+                            if (indexOfValue(existing, value) >= 0)
+                            {
+                                throw new AttributeInUseException(attrId + ": value #" + i + " already exists in " + dn);
+                            }
+                            existing.add(value);
+                        }
+                        break;
+                    case DirContext.REPLACE_ATTRIBUTE :
+                        newAttrs.remove(attrId);
+                        if (attr.size() > 0)
+                        {
+                            newAttrs.put(copyAttribute(attr));
+                        }
+                        break;
+                    case DirContext.REMOVE_ATTRIBUTE :
+                        if (existing == null)
+                        {
+                            throw new NoSuchAttributeException(attrId + " in " + dn);
+                        }
+                        if (attr.size() == 0)
+                        {
+                            newAttrs.remove(attrId);
+                        }
+                        else
+                        {
+                            for (int i = 0; i < attr.size(); i++)
+                            {
+                                int index = indexOfValue(existing, attr.get(i));
+                                if (index < 0)
+                                {
+                                    throw new NoSuchAttributeException(attrId + ": value #" + i + " not found in " + dn);
+                                }
+                                existing.remove(index);
+                            }
+                            if (existing.size() == 0)
+                            {
+                                newAttrs.remove(attrId);
+                            }
+                        }
+                        break;
+                    default :
+                        throw new IllegalArgumentException("Invalid modification operation " + mod.getModificationOp());
+                }
+            }
+            entry.attrs = newAttrs;
+            readEntry(entry, controls, false);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void rename(String oldDn, String newDn) throws NamingException
+    {
+        LdapName oldName = new LdapName(oldDn);
+        LdapName newName = new LdapName(newDn);
+        lock.writeLock().lock();
+        try
+        {
+            Entry entry = getEntry(oldName);
+            if (entries.containsKey(newName))
+            {
+                throw new NameAlreadyBoundException(newDn);
+            }
+            LdapName newParentName = (LdapName) newName.getPrefix(newName.size() - 1);
+            Entry newParent = getEntry(newParentName);
+            if (newName.startsWith(oldName))
+            {
+                throw new NamingException("Cannot move " + oldDn + " below itself");
+            }
+
+            Entry oldParent = entries.get(oldName.getPrefix(oldName.size() - 1));
+            if (oldParent != null)
+            {
+                oldParent.children.remove(oldName);
+            }
+            newParent.children.add(newName);
+
+            // Replace the RDN value of the entry (deleteoldrdn)
+            Rdn oldRdn = oldName.getRdn(oldName.size() - 1);
+            Rdn newRdn = newName.getRdn(newName.size() - 1);
+            if (!oldRdn.equals(newRdn))
+            {
+                Attribute rdnAttr = entry.attrs.get(oldRdn.getType());
+                if (rdnAttr != null)
+                {
+                    int index = indexOfValue(rdnAttr, oldRdn.getValue());
+                    if (index >= 0)
+                    {
+                        rdnAttr.remove(index);
+                    }
+                    if (rdnAttr.size() == 0)
+                    {
+                        entry.attrs.remove(oldRdn.getType());
+                    }
+                }
+                addValueIfMissing(entry.attrs, newRdn.getType(), newRdn.getValue());
+            }
+
+            moveSubtree(entry, newName);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void unbind(String dn) throws NamingException
+    {
+        unbind(dn, null);
+    }
+
+    public void unbind(String dn, WriteControls controls) throws NamingException
+    {
+        LdapName name = new LdapName(dn);
+        lock.writeLock().lock();
+        try
+        {
+            Entry entry = entries.get(name);
+            if (entry == null || name.size() == 0)
+            {
+                // Like JNDI, unbind of a non-existent entry succeeds
+                return;
+            }
+            checkAssertion(entry, controls);
+            if (!entry.children.isEmpty())
+            {
+                if (controls == null || !controls.isTreeDelete())
+                {
+                    throw new ContextNotEmptyException(dn);
+                }
+                List<Entry> subtree = new ArrayList<Entry>();
+                collectSubtree(entry, subtree);
+                for (Entry subtreeEntry : subtree)
+                {
+                    entries.remove(subtreeEntry.dn);
+                }
+            }
+            readEntry(entry, controls, true);
+            entries.remove(name);
+            Entry parent = entries.get(name.getPrefix(name.size() - 1));
+            if (parent != null)
+            {
+                parent.children.remove(name);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Accessor for the number of entries in the directory.
+     * @return The number of entries
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return entries.size() - 1;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            LdapName rootName = new LdapName(new ArrayList<Rdn>());
+            Entry root = entries.get(rootName);
+            root.children.clear();
+            entries.clear();
+            entries.put(rootName, root);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Entry getEntry(LdapName name) throws NameNotFoundException
+    {
+        Entry entry = entries.get(name);
+        if (entry == null)
+        {
+            throw new NameNotFoundException(name.toString());
+        }
+        return entry;
+    }
+
+    private Entry getOrCreateParent(LdapName name)
+    {
+        if (name.size() == 0)
+        {
+            return null;
+        }
+
+        LdapName parentName = (LdapName) name.getPrefix(name.size() - 1);
+        Entry parent = entries.get(parentName);
+        if (parent == null)
+        {
+            Entry grandParent = getOrCreateParent(parentName);
+            Attributes attrs = new BasicAttributes(true);
+            attrs.put("objectClass", "top");
+            if (parentName.size() > 0)
+            {
+                Rdn rdn = parentName.getRdn(parentName.size() - 1);
+                attrs.put(rdn.getType(), rdn.getValue());
+            }
+            parent = new Entry(parentName, attrs);
+            entries.put(parentName, parent);
+            if (grandParent != null)
+            {
+                grandParent.children.add(parentName);
+            }
+        }
+        return parent;
+    }
+
+    private void collectSubtree(Entry entry, List<Entry> result)
+    {
+        result.add(entry);
+        for (LdapName childName : entry.children)
+        {
+            collectSubtree(entries.get(childName), result);
+        }
+    }
+
+    private void moveSubtree(Entry entry, LdapName newName)
+    {
+        LdapName oldName = entry.dn;
+        entries.remove(oldName);
+        entry.dn = newName;
+        entries.put(newName, entry);
+
+        Set<LdapName> oldChildren = entry.children;
+        entry.children = new LinkedHashSet<LdapName>();
+        for (LdapName oldChildName : oldChildren)
+        {
+            LdapName newChildName = (LdapName) ((LdapName) newName.clone()).add(oldChildName.getRdn(oldChildName.size() - 1));
+            entry.children.add(newChildName);
+            moveSubtree(entries.get(oldChildName), newChildName);
+        }
+    }
+
+    private static Attributes copyAttributes(Attributes attrs, String[] attrIds) throws NamingException
+    {
+        Attributes copy = new BasicAttributes(true);
+        if (attrs == null)
+        {
+            return copy;
+        }
+        if (attrIds == null || Arrays.asList(attrIds).contains("*"))
+        {
+            NamingEnumeration<? extends Attribute> attrEnum = attrs.getAll();
+            while (attrEnum.hasMore())
+            {
+                Attribute attr = attrEnum.next();
+                if (attr.size() > 0)
+                {
+                    copy.put(copyAttribute(attr));
+                }
+            }
+        }
+        else
+        {
+            for (String attrId : attrIds)
+            {
+                Attribute attr = attrs.get(attrId);
+                if (attr != null && attr.size() > 0)
+                {
+                    copy.put(copyAttribute(attr));
+                }
+            }
+        }
+        return copy;
+    }
+
+    private static Attribute copyAttribute(Attribute attr) throws NamingException
+    {
+        Attribute copy = new BasicAttribute(attr.getID());
+        for (int i = 0; i < attr.size(); i++)
+        {
+            Object value = attr.get(i);
+            copy.add(value instanceof byte[] ? ((byte[]) value).clone() : value);
+        }
+        return copy;
+    }
+
+    private static void addValueIfMissing(Attributes attrs, String attrId, Object value) throws NamingException
+    {
+        Attribute attr = attrs.get(attrId);
+        if (attr == null)
+        {
+            attrs.put(attrId, value);
+        }
+        else if (indexOfValue(attr, value) < 0)
+        {
+            attr.add(value);
+        }
+    }
+
+    private static int indexOfValue(Attribute attr, Object value) throws NamingException
+    {
+        for (int i = 0; i < attr.size(); i++)
+        {
+            if (valuesEqual(attr.get(i), value))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean valuesEqual(Object value1, Object value2)
+    {
+        if (value1 instanceof byte[] || value2 instanceof byte[])
+        {
+            return value1 instanceof byte[] && value2 instanceof byte[] && Arrays.equals((byte[]) value1, (byte[]) value2);
+        }
+        String str1 = String.valueOf(value1).trim();
+        String str2 = String.valueOf(value2).trim();
+        if (str1.equalsIgnoreCase(str2))
+        {
+            return true;
+        }
+        if (str1.indexOf('=') > 0 && str2.indexOf('=') > 0)
+        {
+            // Compare as DNs
+            try
+            {
+                return new LdapName(str1).equals(new LdapName(str2));
+            }
+            catch (NamingException ne)
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static int compareValues(Object value1, String value2)
+    {
+        String str1 = String.valueOf(value1).trim();
+        String str2 = value2.trim();
+        try
+        {
+            return new BigDecimal(str1).compareTo(new BigDecimal(str2));
+        }
+        catch (NumberFormatException nfe)
+        {
+            return str1.compareToIgnoreCase(str2);
+        }
+    }
+
+    private static void checkAssertion(Entry entry, WriteControls controls) throws NamingException
+    {
+        if (controls != null && controls.getAssertion() != null && !matches(FilterParser.parse(controls.getAssertion()), entry.attrs))
+        {
+            throw new AssertionFailedException("Assertion " + controls.getAssertion() + " failed for " + entry.dn);
+        }
+    }
+
+    private static void readEntry(Entry entry, WriteControls controls, boolean preRead) throws NamingException
+    {
+        if (controls == null)
+        {
+            return;
+        }
+        if (preRead && controls.getPreReadAttributes() != null)
+        {
+            controls.setPreReadEntry(copyAttributes(entry.attrs, controls.getPreReadAttributes()));
+        }
+        else if (!preRead && controls.getPostReadAttributes() != null)
+        {
+            controls.setPostReadEntry(copyAttributes(entry.attrs, controls.getPostReadAttributes()));
+        }
+    }
+
+    private static boolean matches(Filter filter, Attributes attrs) throws NamingException
+    {
+        if (filter instanceof AndFilter)
+        {
+            for (Filter child : ((AbstractBranchFilter) filter).getChildren())
+            {
+                if (!matches(child, attrs))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        else if (filter instanceof OrFilter)
+        {
+            for (Filter child : ((AbstractBranchFilter) filter).getChildren())
+            {
+                if (matches(child, attrs))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        else if (filter instanceof NotFilter)
+        {
+            return !matches(((NotFilter) filter).getChildren().get(0), attrs);
+        }
+        else if (filter instanceof PresenceFilter)
+        {
+            String attrId = ((PresenceFilter) filter).getAttribute();
+            Attribute attr = attrs.get(attrId);
+            return "objectClass".equalsIgnoreCase(attrId) || (attr != null && attr.size() > 0);
+        }
+        else if (filter instanceof EqualityFilter)
+        {
+            EqualityFilter eq = (EqualityFilter) filter;
+            Attribute attr = attrs.get(eq.getAttribute());
+            return attr != null && indexOfValue(attr, FilterParser.unescape(eq.getValue())) >= 0;
+        }
+        else if (filter instanceof GreaterEqFilter || filter instanceof LessEqFilter)
+        {
+            boolean greater = filter instanceof GreaterEqFilter;
+            String attrId = greater ? ((GreaterEqFilter) filter).getAttribute() : ((LessEqFilter) filter).getAttribute();
+            String value = FilterParser.unescape(greater ? ((GreaterEqFilter) filter).getValue() : ((LessEqFilter) filter).getValue());
+            Attribute attr = attrs.get(attrId);
+            if (attr != null)
+            {
+                for (int i = 0; i < attr.size(); i++)
+                {
+                    int comparison = compareValues(attr.get(i), value);
+                    if (greater ? comparison >= 0 : comparison <= 0)
+                    {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        else if (filter instanceof SubstringFilter)
+        {
+            SubstringFilter sub = (SubstringFilter) filter;
+            Attribute attr = attrs.get(sub.getAttribute());
+            if (attr != null)
+            {
+                for (int i = 0; i < attr.size(); i++)
+                {
+                    if (substringMatches(sub, String.valueOf(attr.get(i)).toLowerCase()))
+                    {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        throw new NamingException("Unsupported filter " + filter);
+    }
+
+    private static boolean substringMatches(SubstringFilter filter, String value)
+    {
+        int pos = 0;
+        if (filter.getInitialPattern() != null)
+        {
+            String initial = FilterParser.unescape(filter.getInitialPattern()).toLowerCase();
+            if (!value.startsWith(initial))
+            {
+                return false;
+            }
+            pos = initial.length();
+        }
+        for (String any : filter.getAnyPatterns())
+        {
+            String part = FilterParser.unescape(any).toLowerCase();
+            int index = value.indexOf(part, pos);
+            if (index < 0)
+            {
+                return false;
+            }
+            pos = index + part.length();
+        }
+        if (filter.getFinalPattern() != null)
+        {
+            String end = FilterParser.unescape(filter.getFinalPattern()).toLowerCase();
+            return value.length() - end.length() >= pos && value.endsWith(end);
+        }
+        return true;
+    }
+
+    /**
+     * Entry of the directory.
+     */
+    private static class Entry
+    {
+        LdapName dn;
+
+        Attributes attrs;
+
+        Set<LdapName> children = new LinkedHashSet<LdapName>();
+
+        Entry(LdapName dn, Attributes attrs)
+        {
+            this.dn = dn;
+            this.attrs = attrs;
+        }
+    }
+
+    /**
+     * NamingEnumeration over a list.
+     */
+    private static class ListEnumeration<T> implements NamingEnumeration<T>
+    {
+        private final Iterator<T> iterator;
+
+        ListEnumeration(List<T> list)
+        {
+            this.iterator = list.iterator();
+        }
+
+        public boolean hasMoreElements()
+        {
+            return iterator.hasNext();
+        }
+
+        public T nextElement()
+        {
+            if (!iterator.hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return iterator.next();
+        }
+
+        public boolean hasMore()
+        {
+            return hasMoreElements();
+        }
+
+        public T next()
+        {
+            return nextElement();
+        }
+
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+/**
+ * Backend using a JNDI LDAP context, so operations go to an LDAP server.
+ * When an {@link LDAPTransaction} is set, writes are made in that transaction.
+ * {@link WriteControls} are sent as request controls of the write.
+ */
+public class JNDIBackend implements DirectoryBackend
+{
+    protected final LdapContext ctx;
+
+    /** LDAP transaction that writes are made in (if any). */
+    protected LDAPTransaction transaction;
+
+    public JNDIBackend(LdapContext ctx)
+    {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Accessor for the underlying JNDI context.
+     * @return The context
+     */
+    public LdapContext getContext()
+    {
+        return ctx;
+    }
+
+    /**
+     * Accessor for the LDAP transaction that writes are made in.
+     * @return The transaction (or null if writes are applied individually)
+     */
+    public LDAPTransaction getTransaction()
+    {
+        return transaction;
+    }
+
+    /**
+     * Sets the LDAP transaction that writes are made in, which must be on the connection of this context.
+     * @param txn The transaction (or null to apply writes individually)
+     */
+    public void setTransaction(LDAPTransaction txn)
+    {
+        this.transaction = txn;
+    }
+
+    /**
+     * Called before a write, setting the request controls for the write : the transaction specification control when
+     * in a transaction, and those of the specified write controls.
+     * @param controls Controls for the write (or null)
+     * @return Whether any request controls were set
+     * @throws NamingException if the transaction cannot be started or the controls are invalid
+     */
+    protected boolean beginWrite(WriteControls controls) throws NamingException
+    {
+        List<Control> requestControls = new ArrayList<Control>(4);
+        Control txnControl = transaction != null ? transaction.getControl(ctx) : null;
+        if (txnControl != null)
+        {
+            requestControls.add(txnControl);
+        }
+        if (controls != null)
+        {
+            if (controls.getAssertion() != null)
+            {
+                requestControls.add(new BasicControl(WriteControls.ASSERTION_OID, true, BERUtils.encodeFilter(controls.getAssertion())));
+            }
+            if (controls.getPreReadAttributes() != null)
+            {
+                requestControls.add(new BasicControl(WriteControls.PRE_READ_OID, false, encodeAttributeSelection(controls.getPreReadAttributes())));
+            }
+            if (controls.getPostReadAttributes() != null)
+            {
+                requestControls.add(new BasicControl(WriteControls.POST_READ_OID, false, encodeAttributeSelection(controls.getPostReadAttributes())));
+            }
+            if (controls.isTreeDelete())
+            {
+                requestControls.add(new BasicControl(WriteControls.TREE_DELETE_OID, true, null));
+            }
+        }
+        if (requestControls.isEmpty())
+        {
+            return false;
+        }
+        ctx.setRequestControls(requestControls.toArray(new Control[requestControls.size()]));
+        return true;
+    }
+
+    /**
+     * Called after a successful write, setting the entries returned by the Read Entry controls (if requested).
+     * @param controls Controls for the write (or null)
+     * @throws NamingException if an error occurs decoding the response controls
+     */
+    protected void writeCompleted(WriteControls controls) throws NamingException
+    {
+        if (controls == null || !controls.isReadingEntry())
+        {
+            return;
+        }
+        Control[] responseControls = ctx.getResponseControls();
+        if (responseControls != null)
+        {
+            for (Control control : responseControls)
+            {
+                if (WriteControls.PRE_READ_OID.equals(control.getID()) && control.getEncodedValue() != null)
+                {
+                    controls.setPreReadEntry(BERUtils.decodeEntry(control.getEncodedValue()));
+                }
+                else if (WriteControls.POST_READ_OID.equals(control.getID()) && control.getEncodedValue() != null)
+                {
+                    controls.setPostReadEntry(BERUtils.decodeEntry(control.getEncodedValue()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Called after a write, so that other operations are not sent with the request controls of the write.
+     * @param controlsSet Whether request controls were set for the write
+     * @throws NamingException if an error occurs resetting the controls
+     */
+    protected void endWrite(boolean controlsSet) throws NamingException
+    {
+        if (controlsSet)
+        {
+            ctx.setRequestControls(null);
+        }
+    }
+
+    private static byte[] encodeAttributeSelection(String[] attrIds)
+    {
+        // AttributeSelection ::= SEQUENCE OF selector LDAPString
+        byte[][] selectors = new byte[attrIds.length][];
+        for (int i = 0; i < attrIds.length; i++)
+        {
+            selectors[i] = BERUtils.encodeOctetString(attrIds[i]);
+        }
+        return BERUtils.encodeSequence(selectors);
+    }
+
+    /**
+     * Converts the failure of a write with an assertion, since JNDI has no specific exception for result code 122.
+     * @param ne The failure
+     * @return The exception to throw
+     */
+    protected static NamingException convertWriteException(NamingException ne)
+    {
+        String msg = ne.getMessage();
+        if (msg != null && msg.contains("error code " + AssertionFailedException.RESULT_CODE))
+        {
+            AssertionFailedException afe = new AssertionFailedException(msg);
+            afe.setRootCause(ne);
+            return afe;
+        }
+        return ne;
+    }
+
+    public void requireImmediateWrites() throws NamingException
+    {
+        if (transaction != null)
+        {
+            transaction.stop();
+        }
+    }
+
+    public void bind(String dn, Attributes attrs) throws NamingException
+    {
+        bind(dn, attrs, null);
+    }
+
+    public void bind(String dn, Attributes attrs, WriteControls controls) throws NamingException
+    {
+        boolean controlsSet = beginWrite(controls);
+        try
+        {
+            // use bind() method here
+            // createSubContext returns a new Context object leads to problems when using connection pooling
+            ctx.bind(dn, null, attrs);
+            writeCompleted(controls);
+        }
+        finally
+        {
+            endWrite(controlsSet);
+        }
+    }
+
+    public Attributes getAttributes(String dn, String[] attrIds) throws NamingException
+    {
+        return ctx.getAttributes(dn, attrIds);
+    }
+
+    public NamingEnumeration<SearchResult> search(String base, String filter, SearchControls controls) throws NamingException
+    {
+        return ctx.search(base, filter, controls);
+    }
+
+    public NamingEnumeration<SearchResult> search(String base, String filter, SearchControls controls, String[] valueFilters) throws NamingException
+    {
+        ctx.setRequestControls(new Control[]{new BasicControl(MATCHED_VALUES_OID, true, BERUtils.encodeValuesReturnFilter(valueFilters))});
+        try
+        {
+            return ctx.search(base, filter, controls);
+        }
+        finally
+        {
+            ctx.setRequestControls(null);
+        }
+    }
+
+    public List<SearchResult> searchPaged(String base, String filter, SearchControls controls, int pageSize) throws NamingException
+    {
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        searchPaged(base, filter, controls, pageSize, results::addAll);
+        return results;
+    }
+
+    public void searchPaged(String base, String filter, SearchControls controls, int pageSize, PageHandler handler) throws NamingException
+    {
+        byte[] cookie = null;
+        try
+        {
+            do
+            {
+                ctx.setRequestControls(new Control[]{new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL)});
+                List<SearchResult> results = new ArrayList<SearchResult>();
+                NamingEnumeration<SearchResult> enumeration = ctx.search(base, filter, controls);
+                while (enumeration.hasMore())
+                {
+                    results.add(enumeration.next());
+                }
+
+                cookie = null;
+                Control[] responseControls = ctx.getResponseControls();
+                if (responseControls != null)
+                {
+                    for (Control control : responseControls)
+                    {
+                        if (control instanceof PagedResultsResponseControl)
+                        {
+                            cookie = ((PagedResultsResponseControl) control).getCookie();
+                        }
+                    }
+                }
+
+                // The handler can use this context, so it mustn't send the paging control
+                ctx.setRequestControls(null);
+                if (!results.isEmpty())
+                {
+                    handler.handlePage(results);
+                }
+            }
+            while (cookie != null && cookie.length > 0);
+        }
+        catch (IOException ioe)
+        {
+            NamingException ne = new NamingException(ioe.getMessage());
+            ne.setRootCause(ioe);
+            throw ne;
+        }
+        finally
+        {
+            ctx.setRequestControls(null);
+        }
+    }
+
+    public void modifyAttributes(String dn, int modOp, Attributes attrs) throws NamingException
+    {
+        boolean controlsSet = beginWrite(null);
+        try
+        {
+            ctx.modifyAttributes(dn, modOp, attrs);
+        }
+        finally
+        {
+            endWrite(controlsSet);
+        }
+    }
+
+    public void modifyAttributes(String dn, ModificationItem[] mods) throws NamingException
+    {
+        modifyAttributes(dn, mods, null);
+    }
+
+    public void modifyAttributes(String dn, ModificationItem[] mods, WriteControls controls) throws NamingException
+    {
+        boolean controlsSet = beginWrite(controls);
+        try
+        {
+            ctx.modifyAttributes(dn, mods);
+            writeCompleted(controls);
+        }
+        catch (NamingException ne)
+        {
+            throw convertWriteException(ne);
+        }
+        finally
+        {
+            endWrite(controlsSet);
+        }
+    }
+
+    public void rename(String oldDn, String newDn) throws NamingException
+    {
+        boolean controlsSet = beginWrite(null);
+        try
+        {
+            ctx.rename(oldDn, newDn);
+        }
+        finally
+        {
+            endWrite(controlsSet);
+        }
+    }
+
+    public void unbind(String dn) throws NamingException
+    {
+        unbind(dn, null);
+    }
+
+    public void unbind(String dn, WriteControls controls) throws NamingException
+    {
+        boolean controlsSet = beginWrite(controls);
+        try
+        {
+            ctx.unbind(dn);
+            writeCompleted(controls);
+        }
+        catch (NamingException ne)
+        {
+            throw convertWriteException(ne);
+        }
+        finally
+        {
+            endWrite(controlsSet);
+        }
+    }
+
+    public String toString()
+    {
+        return "JNDIBackend[" + ctx + "]";
+    }
+}
@@ -0,0 +1,76 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import java.util.Arrays;
+
+import javax.naming.ldap.ExtendedRequest;
+import javax.naming.ldap.ExtendedResponse;
+
+/**
+ * Extended operation request with an already encoded value, whose response just exposes the returned value.
+ */
+public class LDAPExtendedRequest implements ExtendedRequest
+{
+    private static final long serialVersionUID = 2397146374069513744L;
+
+    private final String id;
+
+    private final byte[] value;
+
+    /**
+     * Constructor.
+     * @param id OID of the extended operation
+     * @param value The encoded request value (or null if none)
+     */
+    public LDAPExtendedRequest(String id, byte[] value)
+    {
+        this.id = id;
+        this.value = value;
+    }
+
+    public String getID()
+    {
+        return id;
+    }
+
+    public byte[] getEncodedValue()
+    {
+        return value;
+    }
+
+    public ExtendedResponse createExtendedResponse(String responseId, byte[] berValue, int offset, int length)
+    {
+        final String respId = responseId;
+        final byte[] respValue = (berValue != null) ? Arrays.copyOfRange(berValue, offset, offset + length) : null;
+        return new ExtendedResponse()
+        {
+            private static final long serialVersionUID = -4286411529125163787L;
+
+            public String getID()
+            {
+                return respId;
+            }
+
+            public byte[] getEncodedValue()
+            {
+                return respValue;
+            }
+        };
+    }
+}
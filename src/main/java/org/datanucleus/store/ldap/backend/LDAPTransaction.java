@@ -0,0 +1,177 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.ExtendedResponse;
+import javax.naming.ldap.LdapContext;
+
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * LDAP transaction (RFC 5805) on a connection. The transaction is started lazily, when the first write needs its
+ * transaction specification control, and is ended by {@link #end(boolean)}. All writes of the transaction must be
+ * made on the connection it was started on (contexts derived from the same context share its connection).
+ * <p>
+ * A server may only apply and validate the writes of a transaction when it is ended, so a write in the transaction doesn't
+ * report whether it will succeed, and searches don't see the writes made in the transaction. Operations that depend on either
+ * call {@link #stop()}, committing the writes made so far and making the following writes outside the transaction.
+ */
+public class LDAPTransaction
+{
+    /** OID of the Start Transaction extended operation. */
+    public static final String START_TRANSACTION_OID = "1.3.6.1.1.21.1";
+
+    /** OID of the Transaction Specification control. */
+    public static final String TRANSACTION_SPECIFICATION_OID = "1.3.6.1.1.21.2";
+
+    /** OID of the End Transaction extended operation. */
+    public static final String END_TRANSACTION_OID = "1.3.6.1.1.21.3";
+
+    /** Context to end the transaction with. */
+    private final LdapContext ctx;
+
+    /** Transaction specification control, when the transaction is started. */
+    private Control control;
+
+    private byte[] id;
+
+    private int numWrites = 0;
+
+    /** Whether writes are no longer made in the transaction. */
+    private boolean stopped = false;
+
+    /**
+     * Constructor.
+     * @param ctx Context to end the transaction with
+     */
+    public LDAPTransaction(LdapContext ctx)
+    {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Accessor for whether the transaction has been started in the server.
+     * @return Whether started
+     */
+    public synchronized boolean isStarted()
+    {
+        return control != null;
+    }
+
+    /**
+     * Accessor for the control to send with a write in this transaction, starting the transaction if not yet started.
+     * @param writeCtx Context the write is being made with (on the connection of the transaction)
+     * @return The transaction specification control, or null if stopped (so the write is applied individually)
+     * @throws NamingException if the transaction cannot be started
+     */
+    public synchronized Control getControl(LdapContext writeCtx) throws NamingException
+    {
+        if (stopped)
+        {
+            return null;
+        }
+        if (control == null)
+        {
+            ExtendedResponse response = writeCtx.extendedOperation(new LDAPExtendedRequest(START_TRANSACTION_OID, null));
+            byte[] txnId = response.getEncodedValue();
+            if (txnId == null || txnId.length == 0)
+            {
+                throw new NamingException(Localiser.msg("LDAP.Transaction.NoIdentifier"));
+            }
+            id = txnId;
+            control = new BasicControl(TRANSACTION_SPECIFICATION_OID, true, txnId);
+            numWrites = 0;
+            if (NucleusLogger.DATASTORE.isDebugEnabled())
+            {
+                NucleusLogger.DATASTORE.debug(Localiser.msg("LDAP.Transaction.Started", toHex(txnId)));
+            }
+        }
+        numWrites++;
+        return control;
+    }
+
+    /**
+     * Stops making writes in this transaction, for an operation that needs the result of each write or searches for entries written
+     * before. The writes made so far are committed, so they are applied before any later write, and later writes are applied individually.
+     * The writes of the transaction are thus only atomic up to this point.
+     * @throws NamingException if the server fails to commit the transaction
+     */
+    public synchronized void stop() throws NamingException
+    {
+        if (stopped)
+        {
+            return;
+        }
+        stopped = true;
+        if (control != null)
+        {
+            NucleusLogger.DATASTORE.warn(Localiser.msg("LDAP.Transaction.Stopped", toHex(id), numWrites));
+            end(true);
+        }
+    }
+
+    /**
+     * Accessor for whether writes are no longer made in this transaction.
+     * @return Whether stopped
+     */
+    public synchronized boolean isStopped()
+    {
+        return stopped;
+    }
+
+    /**
+     * Ends the transaction (if started).
+     * @param commit Whether to commit (otherwise abort)
+     * @throws NamingException if the server fails to end the transaction (for a commit, the updates have not been applied)
+     */
+    public synchronized void end(boolean commit) throws NamingException
+    {
+        if (control == null)
+        {
+            return;
+        }
+
+        // txnEndReq ::= SEQUENCE { commit BOOLEAN DEFAULT TRUE, identifier OCTET STRING }
+        byte[] value = BERUtils.encodeSequence(commit ? null : BERUtils.encodeBoolean(false), BERUtils.encodeOctetString(id));
+        String txnId = toHex(id);
+        int writes = numWrites;
+        control = null;
+        id = null;
+        numWrites = 0;
+
+        ctx.extendedOperation(new LDAPExtendedRequest(END_TRANSACTION_OID, value));
+        if (NucleusLogger.DATASTORE.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE.debug(Localiser.msg(commit ? "LDAP.Transaction.Committed" : "LDAP.Transaction.Aborted", txnId, writes));
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder str = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+        {
+            str.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,165 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import javax.naming.directory.Attributes;
+
+/**
+ * Controls to send with a write operation, and the entries they return.
+ * <ul>
+ * <li>An assertion (RFC 4528 Assertion control) makes the write conditional on the entry matching a filter, so that
+ * for example an optimistic version check costs no extra round trip; if the entry doesn't match the write is not
+ * applied and an {@link AssertionFailedException} is thrown.</li>
+ * <li>Pre-read and post-read attributes (RFC 4527 Read Entry controls) return attributes of the entry as they were
+ * before and are after the write, e.g. server-generated values such as entryUUID, entryCSN or modifyTimestamp, without
+ * a separate read. These are not critical, so the entry is null if the server doesn't return it.</li>
+ * <li>Tree delete (Tree Delete control, as advertised by Active Directory and some other servers) makes the delete of an entry
+ * also delete its subtree, in the server.</li>
+ * </ul>
+ */
+public class WriteControls
+{
+    /** OID of the Assertion control. */
+    public static final String ASSERTION_OID = "1.3.6.1.1.12";
+
+    /** OID of the Pre-Read control. */
+    public static final String PRE_READ_OID = "1.3.6.1.1.13.1";
+
+    /** OID of the Post-Read control. */
+    public static final String POST_READ_OID = "1.3.6.1.1.13.2";
+
+    /** OID of the Tree Delete control. */
+    public static final String TREE_DELETE_OID = "1.2.840.113556.1.4.805";
+
+    /** Filter that the entry must match for the write to be applied (or null). */
+    private final String assertion;
+
+    private String[] preReadAttributes;
+
+    private String[] postReadAttributes;
+
+    /** Whether a delete deletes the subtree of the entry. */
+    private boolean treeDelete = false;
+
+    /** Attributes of the entry before the write, as returned by the server. */
+    private Attributes preReadEntry;
+
+    /** Attributes of the entry after the write, as returned by the server. */
+    private Attributes postReadEntry;
+
+    /**
+     * Constructor.
+     * @param assertion Filter (RFC 4515) that the entry must match for the write to be applied, or null
+     */
+    public WriteControls(String assertion)
+    {
+        this.assertion = assertion;
+    }
+
+    public String getAssertion()
+    {
+        return assertion;
+    }
+
+    public String[] getPreReadAttributes()
+    {
+        return preReadAttributes;
+    }
+
+    /**
+     * Sets the attributes to return as they were before the write (modify, delete).
+     * @param attrIds Names of the attributes
+     */
+    public void setPreReadAttributes(String[] attrIds)
+    {
+        this.preReadAttributes = attrIds;
+    }
+
+    public String[] getPostReadAttributes()
+    {
+        return postReadAttributes;
+    }
+
+    /**
+     * Sets the attributes to return as they are after the write (add, modify).
+     * @param attrIds Names of the attributes
+     */
+    public void setPostReadAttributes(String[] attrIds)
+    {
+        this.postReadAttributes = attrIds;
+    }
+
+    public boolean isTreeDelete()
+    {
+        return treeDelete;
+    }
+
+    /**
+     * Sets whether a delete deletes the subtree of the entry as well (only to be used when the server supports the control).
+     * @param treeDelete Whether to delete the subtree
+     */
+    public void setTreeDelete(boolean treeDelete)
+    {
+        this.treeDelete = treeDelete;
+    }
+
+    /**
+     * Accessor for whether the write returns entries, so cannot be deferred.
+     * @return Whether reading entries
+     */
+    public boolean isReadingEntry()
+    {
+        return preReadAttributes != null || postReadAttributes != null;
+    }
+
+    public Attributes getPreReadEntry()
+    {
+        return preReadEntry;
+    }
+
+    public void setPreReadEntry(Attributes attrs)
+    {
+        this.preReadEntry = attrs;
+    }
+
+    public Attributes getPostReadEntry()
+    {
+        return postReadEntry;
+    }
+
+    public void setPostReadEntry(Attributes attrs)
+    {
+        this.postReadEntry = attrs;
+    }
+
+    /**
+     * Accessor for whether there is nothing to send with the write.
+     * @return Whether no controls
+     */
+    public boolean isEmpty()
+    {
+        return assertion == null && !isReadingEntry() && !treeDelete;
+    }
+
+    public String toString()
+    {
+        return "WriteControls[assertion=" + assertion +
+            (preReadAttributes != null ? " preRead=" + String.join(",", preReadAttributes) : "") +
+            (postReadAttributes != null ? " postRead=" + String.join(",", postReadAttributes) : "") + (treeDelete ? " treeDelete" : "") + "]";
+    }
+}
@@ -17,10 +17,19 @@ Contributors :
  ***********************************************************************/
 package org.datanucleus.store.ldap.fieldmanager;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.naming.InvalidNameException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.ldap.LdapName;
 
 import org.datanucleus.ExecutionContext;
 import org.datanucleus.metadata.AbstractMemberMetaData;
@@ -33,6 +42,9 @@ import org.datanucleus.store.ldap.LDAPUtils;
  */
 public abstract class AbstractMappingStrategy
 {
+    /** Prefix of the key of the StateManager associated value holding the last known datastore values of a field. */
+    protected static final String VALUES_SNAPSHOT_KEY = "LDAPVALUES";
+
     protected ExecutionContext ec;
 
     /** StateManager. */
@@ -53,6 +65,12 @@ public abstract class AbstractMappingStrategy
     /** The LDAP attribute name of the field meta data. */
     protected String name;
 
+    /** Value-level modifications (ADD/REMOVE) of the entry, when updating and the strategy can use them. */
+    protected List<ModificationItem> modifications;
+
+    /** Full values of attributes that have modifications, to REPLACE with if the modifications are rejected. */
+    protected Attributes replacements;
+
     /**
      * Instantiates a new abstract mapping strategy.
      * @param sm StateManager
@@ -70,6 +88,175 @@ public abstract class AbstractMappingStrategy
         this.attr = attributes.get(this.name);
     }
 
+    /**
+     * Allows the strategy to update multi-valued attributes of the entry with value-level modifications
+     * rather than replacing all values.
+     * @param modifications List to add the ADD/REMOVE modifications to
+     * @param replacements Attributes to put the full values of modified attributes in (used when the modifications are rejected)
+     */
+    public void setModifications(List<ModificationItem> modifications, Attributes replacements)
+    {
+        this.modifications = modifications;
+        this.replacements = replacements;
+    }
+
+    /**
+     * Accessor for the values of this field as last written to or read from the datastore.
+     * @return The values, or null if not known
+     */
+    protected Collection<Object> getValuesSnapshot()
+    {
+        return (Collection<Object>) sm.getAssociatedValue(VALUES_SNAPSHOT_KEY + mmd.getAbsoluteFieldNumber());
+    }
+
+    /**
+     * Records the values of this field as written to or read from the datastore, for computing the changes on update.
+     * @param values The values
+     */
+    protected void setValuesSnapshot(Collection<?> values)
+    {
+        sm.setAssociatedValue(VALUES_SNAPSHOT_KEY + mmd.getAbsoluteFieldNumber(), values != null ? new ArrayList<Object>(values) : null);
+    }
+
+    /**
+     * Writes the values of a multi-valued attribute, and records them as the values last written.
+     * When updating with value-level modifications and the values last read or written are known, only the changes are written
+     * (see {@link #addValueModifications}). Otherwise (inserting, or the field wasn't read) all values are written,
+     * with the "empty-value" placeholder when there are none.
+     * @param attrName Name of the attribute
+     * @param values The new values
+     * @param emptyValue The placeholder value (or null)
+     * @param dnValues Whether the values are DNs, so are compared as DNs
+     * @return The values that were removed, or null if all values were written
+     */
+    protected List<String> putValues(String attrName, List<String> values, String emptyValue, boolean dnValues)
+    {
+        List<String> removedValues = null;
+        Collection<Object> oldValues = getValuesSnapshot();
+        if (modifications != null && oldValues != null)
+        {
+            List<String> oldStrings = new ArrayList<String>(oldValues.size());
+            for (Object value : oldValues)
+            {
+                oldStrings.add(String.valueOf(value));
+            }
+            removedValues = addValueModifications(attrName, oldStrings, values, emptyValue, dnValues);
+        }
+        else
+        {
+            BasicAttribute all = new BasicAttribute(attrName);
+            for (String value : values)
+            {
+                all.add(value);
+            }
+            if (all.size() == 0 && emptyValue != null)
+            {
+                all.add(emptyValue);
+            }
+            attributes.put(all);
+        }
+        setValuesSnapshot(values);
+        return removedValues;
+    }
+
+    /**
+     * Adds ADD and REMOVE modifications for the changes between the old and the new values of a multi-valued attribute.
+     * Handles the "empty-value" placeholder, removing it when the first value is added and adding it when the last value is removed.
+     * @param attrName Name of the attribute
+     * @param oldValues The values currently in the datastore (excluding any placeholder)
+     * @param newValues The new values
+     * @param emptyValue The placeholder value (or null)
+     * @param dnValues Whether the values are DNs, so are compared as DNs
+     * @return The values that were removed
+     */
+    protected List<String> addValueModifications(String attrName, Collection<String> oldValues, Collection<String> newValues, String emptyValue,
+            boolean dnValues)
+    {
+        Map<Object, String> oldByKey = new LinkedHashMap<Object, String>();
+        for (String value : oldValues)
+        {
+            oldByKey.put(getValueKey(value, dnValues), value);
+        }
+        Map<Object, String> newByKey = new LinkedHashMap<Object, String>();
+        for (String value : newValues)
+        {
+            newByKey.put(getValueKey(value, dnValues), value);
+        }
+
+        BasicAttribute added = new BasicAttribute(attrName);
+        for (Map.Entry<Object, String> entry : newByKey.entrySet())
+        {
+            if (!oldByKey.containsKey(entry.getKey()))
+            {
+                added.add(entry.getValue());
+            }
+        }
+        BasicAttribute removed = new BasicAttribute(attrName);
+        List<String> removedValues = new ArrayList<String>();
+        for (Map.Entry<Object, String> entry : oldByKey.entrySet())
+        {
+            if (!newByKey.containsKey(entry.getKey()))
+            {
+                removed.add(entry.getValue());
+                removedValues.add(entry.getValue());
+            }
+        }
+
+        if (emptyValue != null)
+        {
+            if (oldByKey.isEmpty() && !newByKey.isEmpty())
+            {
+                removed.add(emptyValue);
+            }
+            else if (!oldByKey.isEmpty() && newByKey.isEmpty())
+            {
+                added.add(emptyValue);
+            }
+        }
+
+        // Add before remove, so the attribute never becomes empty
+        if (added.size() > 0)
+        {
+            modifications.add(new ModificationItem(DirContext.ADD_ATTRIBUTE, added));
+        }
+        if (removed.size() > 0)
+        {
+            modifications.add(new ModificationItem(DirContext.REMOVE_ATTRIBUTE, removed));
+        }
+
+        if (replacements != null)
+        {
+            BasicAttribute all = new BasicAttribute(attrName);
+            for (String value : newByKey.values())
+            {
+                all.add(value);
+            }
+            if (all.size() == 0 && emptyValue != null)
+            {
+                all.add(emptyValue);
+            }
+            replacements.put(all);
+        }
+        return removedValues;
+    }
+
+    private static Object getValueKey(String value, boolean dnValue)
+    {
+        if (dnValue)
+        {
+            try
+            {
+                // LdapName equality ignores case and insignificant whitespace
+                return new LdapName(value);
+            }
+            catch (InvalidNameException e)
+            {
+                // Not a valid DN, so compare as a string
+            }
+        }
+        return value;
+    }
+
     /**
      * Inserts the given value(s) into LDAP.
      * @param value the value(s)
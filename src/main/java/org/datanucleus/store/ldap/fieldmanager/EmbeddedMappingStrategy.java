@@ -355,19 +355,19 @@ public class EmbeddedMappingStrategy extends AbstractMappingStrategy
         List<AbstractMemberMetaData> embeddedMmds = LDAPUtils.getAllMemberMetaData(effectiveClassMetaData);
         BasicAttributes embeddedAttributes = new BasicAttributes();
 
-        // split embedded fields and non-embedded fields
+        // split fields stored in the child entry from embedded fields stored in child entries of it
         List<AbstractMemberMetaData> nonEmbeddedMmds = new ArrayList<AbstractMemberMetaData>();
         for (Iterator<AbstractMemberMetaData> it = embeddedMmds.iterator(); it.hasNext();)
         {
             AbstractMemberMetaData mmd = it.next();
-            if (!LDAPUtils.isEmbeddedField(mmd))
+            if (!LDAPUtils.isEmbeddedField(mmd) || !LDAPUtils.isEmbeddedInChildEntry(mmd, ec.getMetaDataManager()))
             {
                 nonEmbeddedMmds.add(mmd);
                 it.remove();
             }
         }
 
-        // 1st: non-embedded members
+        // 1st: members stored in the child entry (including embedded members merged into it)
         insertMerge(embeddedSM, embeddedAttributes, nonEmbeddedMmds, embeddedMetaData);
 
         // add object classes
@@ -383,8 +383,11 @@ public class EmbeddedMappingStrategy extends AbstractMappingStrategy
         LdapName dn = LDAPUtils.getDistinguishedNameForObject(storeMgr, embeddedSM);
         LDAPUtils.insert(storeMgr, dn, embeddedAttributes, ec);
 
-        // 2nd: embedded members
-        insertMerge(embeddedSM, embeddedAttributes, embeddedMmds, embeddedMetaData);
+        // 2nd: embedded members stored as child entries of the child entry
+        if (!embeddedMmds.isEmpty())
+        {
+            insertMerge(embeddedSM, new BasicAttributes(), embeddedMmds, embeddedMetaData);
+        }
     }
 
     private void insertMerge(DNStateManager embeddedSM, Attributes embeddedAttributes, List<AbstractMemberMetaData> embeddedMmds, EmbeddedMetaData embeddedMetaData)
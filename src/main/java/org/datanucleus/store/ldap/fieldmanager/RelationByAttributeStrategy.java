@@ -20,6 +20,7 @@ package org.datanucleus.store.ldap.fieldmanager;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 
@@ -27,7 +28,6 @@ import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
-import javax.naming.directory.DirContext;
 import javax.naming.ldap.LdapName;
 
 import org.datanucleus.ClassLoaderResolver;
@@ -40,6 +40,7 @@ import org.datanucleus.state.DNStateManager;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
 import org.datanucleus.store.ldap.LDAPUtils;
+import org.datanucleus.store.ldap.backend.DirectoryBackend;
 import org.datanucleus.store.types.SCOUtils;
 import org.datanucleus.util.Localiser;
 import org.datanucleus.util.NucleusLogger;
@@ -92,13 +93,16 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
             if (RelationType.isRelationSingleValued(relationType))
             {
                 // TODO: check empty value
-                return getAttributeMappedReference(effectiveClassMetaData, ownerAttributeName, joinAttributeValue);
+                Object value = getAttributeMappedReference(effectiveClassMetaData, ownerAttributeName, joinAttributeValue);
+                setValuesSnapshot(value != null ? Collections.singletonList(value) : Collections.emptyList());
+                return value;
             }
             else if (RelationType.isRelationMultiValued(relationType))
             {
                 if (mmd.hasCollection())
                 {
                     Collection<Object> coll = getAttributeMappedReferences(effectiveClassMetaData, mmd, ownerAttributeName, joinAttributeValue);
+                    setValuesSnapshot(coll);
                     return SCOUtils.wrapSCOField(sm, fieldNumber, coll, true);
                 }
             }
@@ -131,11 +135,13 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
                     coll = (Collection<Object>) instanceType.getDeclaredConstructor().newInstance();
                     Class elementType = clr.classForName(mmd.getCollection().getElementType());
                     removeEmptyValue(emptyValue, attr);
+                    List<String> values = new ArrayList<String>();
                     for (int i = 0; attr != null && i < attr.size(); i++)
                     {
-                        Object o = LDAPUtils.getObjectByAttribute(storeMgr, ec, elementType, joinAttributeName, (String) attr.get(i), ec.getMetaDataManager());
-                        coll.add(o);
+                        values.add((String) attr.get(i));
                     }
+                    coll.addAll(LDAPUtils.getObjectsByAttribute(storeMgr, ec, elementType, joinAttributeName, values));
+                    setValuesSnapshot(values);
                 }
                 catch (NamingException e)
                 {
@@ -168,6 +174,7 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
                 if (RelationType.isRelationSingleValued(relationType))
                 {
                     addAttributeReference(value, ownerAttributeName, joinAttributeValue, emptyValue);
+                    setValuesSnapshot(Collections.singletonList(value));
                 }
                 else if (RelationType.isRelationMultiValued(relationType))
                 {
@@ -180,6 +187,7 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
                             LDAPUtils.unmarkForDeletion(pc, ec);
                             addAttributeReference(pc, ownerAttributeName, joinAttributeValue, emptyValue);
                         }
+                        setValuesSnapshot(c);
                     }
                 }
                 else
@@ -205,12 +213,15 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
                         // 1-N (collection) relation
                         Collection c = (Collection) value;
                         BasicAttribute attr = new BasicAttribute(ownerAttributeName);
+                        List<Object> values = new ArrayList<Object>();
                         for (Object pc : c)
                         {
                             DNStateManager pcSM = ec.findStateManager(pc, true);
                             Object joinAttributeValue = LDAPUtils.getAttributeValue(storeMgr, pcSM, joinAttributeName);
                             attr.add(joinAttributeValue);
+                            values.add(joinAttributeValue);
                         }
+                        setValuesSnapshot(values);
                         addEmptyValue(emptyValue, attr);
                         if (attr.size() > 0)
                         {
@@ -248,7 +259,7 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
             {
                 if (RelationType.isRelationSingleValued(relationType))
                 {
-                    Object oldValue = getAttributeMappedReference(effectiveClassMetaData, ownerAttributeName, joinAttributeValue);
+                    Object oldValue = getOldAttributeMappedReference(ownerAttributeName, joinAttributeValue);
                     if (!value.equals(oldValue))
                     {
                         LDAPUtils.markForPersisting(value, ec);
@@ -262,13 +273,18 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
                         }
                         addAttributeReference(value, ownerAttributeName, joinAttributeValue, emptyValue);
                     }
+                    setValuesSnapshot(Collections.singletonList(value));
                 }
                 else if (RelationType.isRelationMultiValued(relationType))
                 {
                     if (mmd.hasCollection())
                     {
                         Collection<Object> coll = (Collection<Object>) value;
-                        Collection<Object> oldColl = getAttributeMappedReferences(effectiveClassMetaData, mmd, ownerAttributeName, joinAttributeValue);
+                        Collection<Object> oldColl = getValuesSnapshot();
+                        if (oldColl == null)
+                        {
+                            oldColl = getAttributeMappedReferences(effectiveClassMetaData, mmd, ownerAttributeName, joinAttributeValue);
+                        }
                         if (oldColl != null)
                         {
                             Collection<Object> toAdd = null;
@@ -301,6 +317,7 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
                                     LDAPUtils.markForDeletion(pc, ec);
                                 }
                             }
+                            setValuesSnapshot(coll);
                         }
                         else
                         {
@@ -315,8 +332,9 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
             }
             else
             {
-                Object oldValue = getAttributeMappedReference(effectiveClassMetaData, ownerAttributeName, joinAttributeValue);
+                Object oldValue = getOldAttributeMappedReference(ownerAttributeName, joinAttributeValue);
                 removeAttributeReference(oldValue, ownerAttributeName, joinAttributeValue, emptyValue);
+                setValuesSnapshot(Collections.emptyList());
             }
         }
         else
@@ -338,58 +356,71 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
                     if (mmd.hasCollection())
                     {
                         Collection coll = (Collection) value;
-                        // cascade-delete/dependent-element
+                        List<String> values = new ArrayList<String>();
+                        for (Object pc : coll)
+                        {
+                            LDAPUtils.unmarkForDeletion(pc, ec);
+                            DNStateManager smpc = ec.findStateManager(pc, true);
+                            values.add(String.valueOf(LDAPUtils.getAttributeValue(storeMgr, smpc, joinAttributeName)));
+                        }
+
+                        Collection<Object> oldValues = getValuesSnapshot();
+                        List<String> removedValues = putValues(ownerAttributeName, values, emptyValue, false);
                         if (mmd.getCollection().isDependentElement())
                         {
-                            Collection<Object> attributeValues = LDAPUtils.getAttributeValuesFromLDAP(storeMgr, sm, ownerAttributeName);
-                            Collection<Object> oldColl = null;
-                            Class instanceType = mmd.getType();
-                            instanceType = SCOUtils.getContainerInstanceType(instanceType, mmd.getOrderMetaData() != null);
-                            try
+                            // cascade-delete/dependent-element
+                            if (removedValues != null)
                             {
-                                oldColl = (Collection<Object>) instanceType.getDeclaredConstructor().newInstance();
                                 Class elementType = clr.classForName(mmd.getCollection().getElementType());
-                                for (Object object : attributeValues)
+                                for (Object pc : LDAPUtils.getObjectsByAttribute(storeMgr, ec, elementType, joinAttributeName, removedValues))
                                 {
-                                    Object o = LDAPUtils.getObjectByAttribute(storeMgr, ec, elementType, joinAttributeName, (String) object, ec.getMetaDataManager());
-                                    oldColl.add(o);
+                                    if (pc != null && !coll.contains(pc))
+                                    {
+                                        LDAPUtils.markForDeletion(pc, ec);
+                                    }
                                 }
                             }
-                            catch (Exception e)
-                            {
-                                throw new NucleusException("Error in trying to create object of type " + instanceType.getName(), e);
-                            }
-                            
-                            
-                            if (oldColl != null)
+                            else
                             {
-                                Collection<Object> toRemove = null;
-                                if (List.class.isAssignableFrom(instanceType))
+                                Collection<Object> attributeValues = (oldValues != null) ? oldValues : LDAPUtils.getAttributeValuesFromLDAP(storeMgr, sm, ownerAttributeName);
+                                Collection<Object> oldColl = null;
+                                Class instanceType = mmd.getType();
+                                instanceType = SCOUtils.getContainerInstanceType(instanceType, mmd.getOrderMetaData() != null);
+                                try
                                 {
-                                    toRemove = new ArrayList<Object>(oldColl);
+                                    oldColl = (Collection<Object>) instanceType.getDeclaredConstructor().newInstance();
+                                    Class elementType = clr.classForName(mmd.getCollection().getElementType());
+                                    List<String> oldJoinValues = new ArrayList<String>();
+                                    for (Object object : attributeValues)
+                                    {
+                                        oldJoinValues.add((String) object);
+                                    }
+                                    oldColl.addAll(LDAPUtils.getObjectsByAttribute(storeMgr, ec, elementType, joinAttributeName, oldJoinValues));
                                 }
-                                else
+                                catch (Exception e)
                                 {
-                                    toRemove = new HashSet<Object>(oldColl);
+                                    throw new NucleusException("Error in trying to create object of type " + instanceType.getName(), e);
                                 }
-                                toRemove.removeAll(coll);
-                                for (Object pc : toRemove)
+
+                                if (oldColl != null)
                                 {
-                                    LDAPUtils.markForDeletion(pc, ec);
+                                    Collection<Object> toRemove = null;
+                                    if (List.class.isAssignableFrom(instanceType))
+                                    {
+                                        toRemove = new ArrayList<Object>(oldColl);
+                                    }
+                                    else
+                                    {
+                                        toRemove = new HashSet<Object>(oldColl);
+                                    }
+                                    toRemove.removeAll(coll);
+                                    for (Object pc : toRemove)
+                                    {
+                                        LDAPUtils.markForDeletion(pc, ec);
+                                    }
                                 }
                             }
                         }
-
-                        BasicAttribute attr = new BasicAttribute(ownerAttributeName);
-                        attributes.put(attr);
-                        for (Object pc : coll)
-                        {
-                            LDAPUtils.unmarkForDeletion(pc, ec);
-                            DNStateManager smpc = ec.findStateManager(pc, true);
-                            Object joinAttributeValue = LDAPUtils.getAttributeValue(storeMgr, smpc, joinAttributeName);
-                            attr.add(joinAttributeValue);
-                        }
-                        addEmptyValue(emptyValue, attr);
                     }
                 }
                 else
@@ -403,10 +434,28 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
                 BasicAttribute attr = new BasicAttribute(ownerAttributeName);
                 addEmptyValue(emptyValue, attr);
                 attributes.put(attr);
+                setValuesSnapshot(Collections.emptyList());
             }
         }
     }
 
+    /**
+     * Gets the object currently referencing this object, using the values recorded when the field was fetched or written
+     * where available, else searching the datastore.
+     * @param pcAttributeName Name of the attribute of the referencing entry
+     * @param joinAttributeValue The value of the join attribute of this object
+     * @return The referencing object, or null if none
+     */
+    private Object getOldAttributeMappedReference(String pcAttributeName, Object joinAttributeValue)
+    {
+        Collection<Object> oldValues = getValuesSnapshot();
+        if (oldValues != null)
+        {
+            return oldValues.isEmpty() ? null : oldValues.iterator().next();
+        }
+        return getAttributeMappedReference(effectiveClassMetaData, pcAttributeName, joinAttributeValue);
+    }
+
     private Object getAttributeMappedReference(AbstractClassMetaData cmd, String pcAttributeName, Object myAttributeValue)
     {
         Collection<Object> coll = getAttributeMappedReferences(cmd, null, pcAttributeName, myAttributeValue);
@@ -469,23 +518,11 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
             ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
             try
             {
-                DirContext ctx = (DirContext) mconn.getConnection();
-                Attributes attributes = ctx.getAttributes(fromDN, new String[]{attributeName});
-                Attribute attribute = attributes.get(attributeName);
-                if (attribute != null)
+                if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
                 {
-                    boolean removed = attribute.remove(joinAttributeValue);
-                    if (removed)
-                    {
-                        addEmptyValue(emptyValue, attribute);
-                        if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
-                        {
-                            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.DeleteAttributeReference", attributeName, joinAttributeValue, fromDN));
-                            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", fromDN, "REPLACE", attributes));
-                        }
-                        ctx.modifyAttributes(fromDN, DirContext.REPLACE_ATTRIBUTE, attributes);
-                    }
+                    NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.DeleteAttributeReference", attributeName, joinAttributeValue, fromDN));
                 }
+                LDAPUtils.removeAttributeValue((DirectoryBackend) mconn.getConnection(), fromDN.toString(), attributeName, joinAttributeValue, emptyValue);
             }
             catch (NamingException e)
             {
@@ -515,25 +552,11 @@ public class RelationByAttributeStrategy extends AbstractMappingStrategy
             ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
             try
             {
-                DirContext ctx = (DirContext) mconn.getConnection();
-                Attributes attributes = ctx.getAttributes(toDN, new String[]{attributeName});
-                Attribute attribute = attributes.get(attributeName);
-                if (attribute == null)
+                if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
                 {
-                    attribute = new BasicAttribute(attributeName);
-                    attributes.put(attribute);
-                }
-                if (!attribute.contains(joinAttributeValue))
-                {
-                    attribute.add(joinAttributeValue);
-                    removeEmptyValue(emptyValue, attribute);
-                    if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
-                    {
-                        NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.AddAttributeReference", attributeName, joinAttributeValue, toDN));
-                        NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", toDN, "REPLACE", attributes));
-                    }
-                    ctx.modifyAttributes(toDN, DirContext.REPLACE_ATTRIBUTE, attributes);
+                    NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.AddAttributeReference", attributeName, joinAttributeValue, toDN));
                 }
+                LDAPUtils.addAttributeValue((DirectoryBackend) mconn.getConnection(), toDN.toString(), attributeName, joinAttributeValue, emptyValue);
             }
             catch (NamingException e)
             {
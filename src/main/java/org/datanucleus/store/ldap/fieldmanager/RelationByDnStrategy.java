@@ -21,6 +21,7 @@ package org.datanucleus.store.ldap.fieldmanager;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 
@@ -28,7 +29,6 @@ import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
-import javax.naming.directory.DirContext;
 import javax.naming.ldap.LdapName;
 
 import org.datanucleus.ClassLoaderResolver;
@@ -43,6 +43,7 @@ import org.datanucleus.state.DNStateManager;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.connection.ManagedConnection;
 import org.datanucleus.store.ldap.LDAPUtils;
+import org.datanucleus.store.ldap.backend.DirectoryBackend;
 import org.datanucleus.store.types.SCOUtils;
 import org.datanucleus.util.Localiser;
 import org.datanucleus.util.NucleusLogger;
@@ -89,13 +90,16 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
             if (RelationType.isRelationSingleValued(relationType))
             {
                 // TODO: check empty value
-                return getDnMappedReference(effectiveClassMetaData, ownerAttributeName, sm);
+                Object value = getDnMappedReference(effectiveClassMetaData, ownerAttributeName, sm);
+                setValuesSnapshot(value != null ? Collections.singletonList(value) : Collections.emptyList());
+                return value;
             }
             else if (RelationType.isRelationMultiValued(relationType))
             {
                 if (mmd.hasCollection())
                 {
                     Collection<Object> coll = getDnMappedReferences(effectiveClassMetaData, mmd, ownerAttributeName, sm);
+                    setValuesSnapshot(coll);
                     return SCOUtils.wrapSCOField(sm, fieldNumber, coll, true);
                 }
             }
@@ -129,10 +133,13 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
                     coll = (Collection<Object>) instanceType.getDeclaredConstructor().newInstance();
                     Class elementType = clr.classForName(mmd.getCollection().getElementType());
                     removeEmptyValue(emptyValue, attr);
+                    List<String> values = new ArrayList<String>();
                     for (int i = 0; attr != null && i < attr.size(); i++)
                     {
-                        coll.add(LDAPUtils.getObjectByDN(storeMgr, ec, elementType, (String) attr.get(i)));
+                        values.add((String) attr.get(i));
                     }
+                    coll.addAll(LDAPUtils.getObjectsByDN(storeMgr, ec, elementType, values));
+                    setValuesSnapshot(values);
                 }
                 catch (NamingException e)
                 {
@@ -164,6 +171,7 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
                 if (RelationType.isRelationSingleValued(relationType))
                 {
                     addDnReference(value, ownerAttributeName, myDN, emptyValue);
+                    setValuesSnapshot(Collections.singletonList(value));
                 }
                 else if (RelationType.isRelationMultiValued(relationType))
                 {
@@ -176,6 +184,7 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
                             LDAPUtils.unmarkForDeletion(pc, ec);
                             addDnReference(pc, ownerAttributeName, myDN, emptyValue);
                         }
+                        setValuesSnapshot(c);
                     }
                 }
                 else
@@ -202,11 +211,15 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
                         // 1-N (collection) relation
                         Collection c = (Collection) value;
                         BasicAttribute attr = new BasicAttribute(name);
+                        List<String> values = new ArrayList<String>();
                         for (Object pc : c)
                         {
                             DNStateManager pcSM = ec.findStateManager(pc, true);
-                            attr.add(LDAPUtils.getDistinguishedNameForObject(storeMgr, pcSM).toString());
+                            String pcDN = LDAPUtils.getDistinguishedNameForObject(storeMgr, pcSM).toString();
+                            attr.add(pcDN);
+                            values.add(pcDN);
                         }
+                        setValuesSnapshot(values);
                         addEmptyValue(emptyValue, attr);
                         if (attr.size() > 0)
                         {
@@ -242,7 +255,7 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
             {
                 if (RelationType.isRelationSingleValued(relationType))
                 {
-                    Object oldValue = getDnMappedReference(effectiveClassMetaData, ownerAttributeName, sm);
+                    Object oldValue = getOldDnMappedReference(ownerAttributeName);
                     if (!value.equals(oldValue))
                     {
                         LDAPUtils.markForPersisting(value, ec);
@@ -250,13 +263,18 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
                         removeDnReference(oldValue, ownerAttributeName, myDN, emptyValue);
                         addDnReference(value, ownerAttributeName, myDN, emptyValue);
                     }
+                    setValuesSnapshot(Collections.singletonList(value));
                 }
                 else if (RelationType.isRelationMultiValued(relationType))
                 {
                     if (mmd.hasCollection())
                     {
                         Collection<Object> coll = (Collection<Object>) value;
-                        Collection<Object> oldColl = getDnMappedReferences(effectiveClassMetaData, mmd, ownerAttributeName, sm);
+                        Collection<Object> oldColl = getValuesSnapshot();
+                        if (oldColl == null)
+                        {
+                            oldColl = getDnMappedReferences(effectiveClassMetaData, mmd, ownerAttributeName, sm);
+                        }
                         if (oldColl != null)
                         {
                             Collection<Object> toAdd = null;
@@ -289,6 +307,7 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
                                     LDAPUtils.markForDeletion(pc, ec);
                                 }
                             }
+                            setValuesSnapshot(coll);
                         }
                         else
                         {
@@ -303,7 +322,8 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
             }
             else
             {
-                removeDnReference(getDnMappedReference(effectiveClassMetaData, ownerAttributeName, sm), ownerAttributeName, myDN, emptyValue);
+                removeDnReference(getOldDnMappedReference(ownerAttributeName), ownerAttributeName, myDN, emptyValue);
+                setValuesSnapshot(Collections.emptyList());
             }
         }
         else
@@ -323,48 +343,63 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
                     if (mmd.hasCollection())
                     {
                         Collection coll = (Collection) value;
-                        // cascade-delete/dependent-element
+                        List<String> values = new ArrayList<String>();
+                        for (Object pc : coll)
+                        {
+                            LDAPUtils.unmarkForDeletion(pc, ec);
+                            DNStateManager smpc = ec.findStateManager(pc, true);
+                            values.add(LDAPUtils.getDistinguishedNameForObject(storeMgr, smpc).toString());
+                        }
+
+                        Collection<Object> oldValues = getValuesSnapshot();
+                        List<String> removedValues = putValues(ownerAttributeName, values, emptyValue, true);
                         if (mmd.getCollection().isDependentElement())
                         {
-                            Collection<Object> oldColl = null;
-                            Class instanceType = mmd.getType();
-                            instanceType = SCOUtils.getContainerInstanceType(instanceType, mmd.getOrderMetaData() != null);
-                            Collection<Object> attributeValues = LDAPUtils.getAttributeValuesFromLDAP(storeMgr, sm, ownerAttributeName);
-                            try
+                            // cascade-delete/dependent-element
+                            if (removedValues != null)
                             {
-                                oldColl = (Collection<Object>) instanceType.getDeclaredConstructor().newInstance();
                                 Class elementType = clr.classForName(mmd.getCollection().getElementType());
-                                for (Object object : attributeValues)
+                                for (Object pc : LDAPUtils.getObjectsByDN(storeMgr, ec, elementType, removedValues))
                                 {
-                                    String oldDn = (String) object;
-                                    oldColl.add(LDAPUtils.getObjectByDN(storeMgr, ec, elementType, oldDn));
+                                    if (pc != null && !coll.contains(pc))
+                                    {
+                                        LDAPUtils.markForDeletion(pc, ec);
+                                    }
                                 }
                             }
-                            catch (Exception e)
+                            else
                             {
-                                throw new NucleusException("Error in trying to create object of type " + instanceType.getName(), e);
-                            }
+                                Collection<Object> oldColl = null;
+                                Class instanceType = mmd.getType();
+                                instanceType = SCOUtils.getContainerInstanceType(instanceType, mmd.getOrderMetaData() != null);
+                                Collection<Object> attributeValues = (oldValues != null) ? oldValues : LDAPUtils.getAttributeValuesFromLDAP(storeMgr, sm, ownerAttributeName);
+                                try
+                                {
+                                    oldColl = (Collection<Object>) instanceType.getDeclaredConstructor().newInstance();
+                                    Class elementType = clr.classForName(mmd.getCollection().getElementType());
+                                    List<String> oldDns = new ArrayList<String>();
+                                    for (Object object : attributeValues)
+                                    {
+                                        oldDns.add((String) object);
+                                    }
+                                    oldColl.addAll(LDAPUtils.getObjectsByDN(storeMgr, ec, elementType, oldDns));
+                                }
+                                catch (Exception e)
+                                {
+                                    throw new NucleusException("Error in trying to create object of type " + instanceType.getName(), e);
+                                }
 
-                            if (oldColl != null)
-                            {
-                                Collection<Object> toRemove = (List.class.isAssignableFrom(instanceType)) ? new ArrayList<Object>(oldColl) : new HashSet<Object>(oldColl);
-                                toRemove.removeAll(coll);
-                                for (Object pc : toRemove)
+                                if (oldColl != null)
                                 {
-                                    LDAPUtils.markForDeletion(pc, ec);
+                                    Collection<Object> toRemove = (List.class.isAssignableFrom(instanceType)) ? new ArrayList<Object>(oldColl) : new HashSet<Object>(oldColl);
+                                    toRemove.removeAll(coll);
+                                    for (Object pc : toRemove)
+                                    {
+                                        LDAPUtils.markForDeletion(pc, ec);
+                                    }
                                 }
                             }
                         }
-
-                        BasicAttribute attr = new BasicAttribute(ownerAttributeName);
-                        attributes.put(attr);
-                        for (Object pc : coll)
-                        {
-                            LDAPUtils.unmarkForDeletion(pc, ec);
-                            DNStateManager smpc = ec.findStateManager(pc, true);
-                            attr.add(LDAPUtils.getDistinguishedNameForObject(storeMgr, smpc).toString());
-                        }
-                        addEmptyValue(emptyValue, attr);
                     }
                 }
                 else
@@ -378,10 +413,27 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
                 BasicAttribute attr = new BasicAttribute(ownerAttributeName);
                 addEmptyValue(emptyValue, attr);
                 attributes.put(attr);
+                setValuesSnapshot(Collections.emptyList());
             }
         }
     }
 
+    /**
+     * Gets the object currently referencing this object, using the values recorded when the field was fetched or written
+     * where available, else searching the datastore.
+     * @param pcAttributeName Name of the attribute of the referencing entry
+     * @return The referencing object, or null if none
+     */
+    private Object getOldDnMappedReference(String pcAttributeName)
+    {
+        Collection<Object> oldValues = getValuesSnapshot();
+        if (oldValues != null)
+        {
+            return oldValues.isEmpty() ? null : oldValues.iterator().next();
+        }
+        return getDnMappedReference(effectiveClassMetaData, pcAttributeName, sm);
+    }
+
     private Object getDnMappedReference(AbstractClassMetaData cmd, String pcAttributeName, DNStateManager sm)
     {
         Collection<Object> coll = getDnMappedReferences(cmd, null, pcAttributeName, sm);
@@ -440,23 +492,11 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
             ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
             try
             {
-                DirContext ctx = (DirContext) mconn.getConnection();
-                Attributes pcAttributes = ctx.getAttributes(oldPcDN, new String[]{pcAttributeName});
-                Attribute pcAttribute = pcAttributes.get(pcAttributeName);
-                if (pcAttribute != null)
+                if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
                 {
-                    boolean removed = pcAttribute.remove(dn.toString());
-                    if (removed)
-                    {
-                        addEmptyValue(emptyValue, pcAttribute);
-                        if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
-                        {
-                            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.DeleteDnReference", oldPcDN, dn));
-                            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", oldPcDN, "REPLACE", pcAttributes));
-                        }
-                        ctx.modifyAttributes(oldPcDN, DirContext.REPLACE_ATTRIBUTE, pcAttributes);
-                    }
+                    NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.DeleteDnReference", oldPcDN, dn));
                 }
+                LDAPUtils.removeAttributeValue((DirectoryBackend) mconn.getConnection(), oldPcDN.toString(), pcAttributeName, dn.toString(), emptyValue);
             }
             catch (NamingException e)
             {
@@ -486,25 +526,11 @@ public class RelationByDnStrategy extends AbstractMappingStrategy
             ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
             try
             {
-                DirContext ctx = (DirContext) mconn.getConnection();
-                Attributes attributes = ctx.getAttributes(newPcDN, new String[]{pcAttributeName});
-                Attribute attribute = attributes.get(pcAttributeName);
-                if (attribute == null)
+                if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
                 {
-                    attribute = new BasicAttribute(pcAttributeName);
-                    attributes.put(attribute);
-                }
-                if (!attribute.contains(dn.toString()))
-                {
-                    attribute.add(dn.toString());
-                    removeEmptyValue(emptyValue, attribute);
-                    if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
-                    {
-                        NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.AddDnReference", newPcDN, dn));
-                        NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", newPcDN, "REPLACE", attributes));
-                    }
-                    ctx.modifyAttributes(newPcDN, DirContext.REPLACE_ATTRIBUTE, attributes);
+                    NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.JNDI.AddDnReference", newPcDN, dn));
                 }
+                LDAPUtils.addAttributeValue((DirectoryBackend) mconn.getConnection(), newPcDN.toString(), pcAttributeName, dn.toString(), emptyValue);
             }
             catch (NamingException e)
             {
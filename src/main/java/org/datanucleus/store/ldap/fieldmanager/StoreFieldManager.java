@@ -20,10 +20,12 @@ package org.datanucleus.store.ldap.fieldmanager;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.ModificationItem;
 
 import org.datanucleus.ClassLoaderResolver;
 import org.datanucleus.exceptions.NucleusException;
@@ -35,7 +37,9 @@ import org.datanucleus.state.DNStateManager;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.fieldmanager.AbstractFieldManager;
 import org.datanucleus.store.ldap.LDAPUtils;
+import org.datanucleus.store.types.TypeManager;
 import org.datanucleus.store.types.converters.TypeConverter;
+import org.datanucleus.util.ClassUtils;
 
 /**
  * FieldManager for inserting data into LDAP.
@@ -47,6 +51,12 @@ public class StoreFieldManager extends AbstractFieldManager
     Attributes attributes;
     boolean insert;
 
+    /** Value-level modifications of multi-valued relation attributes (when updating), null to replace all values. */
+    List<ModificationItem> modifications;
+
+    /** Full values of the attributes with modifications. */
+    Attributes replacements;
+
     public StoreFieldManager(StoreManager storeMgr, DNStateManager sm, Attributes attrs, boolean insert)
     {
         this.sm = sm;
@@ -55,6 +65,21 @@ public class StoreFieldManager extends AbstractFieldManager
         this.insert = insert;
     }
 
+    /**
+     * Constructor for an update where multi-valued relation attributes can be updated with value-level modifications.
+     * @param storeMgr Store Manager
+     * @param sm StateManager
+     * @param attrs Attributes to replace
+     * @param modifications List to add ADD/REMOVE modifications to
+     * @param replacements Attributes to put the full values of attributes with modifications in
+     */
+    public StoreFieldManager(StoreManager storeMgr, DNStateManager sm, Attributes attrs, List<ModificationItem> modifications, Attributes replacements)
+    {
+        this(storeMgr, sm, attrs, false);
+        this.modifications = modifications;
+        this.replacements = replacements;
+    }
+
     public void storeObjectField(int fieldNumber, Object value)
     {
         AbstractMemberMetaData mmd = sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
@@ -104,93 +129,8 @@ public class StoreFieldManager extends AbstractFieldManager
             }
             else
             {
-                if (value == null)
-                {
-                    if (insert)
-                    {
-                        return;
-                    }
-                    attributes.put(new BasicAttribute(name));
-                    return;
-                }
-
-                if (Boolean.class.isAssignableFrom(mmd.getType()))
-                {
-                    storeBooleanField(fieldNumber, (Boolean) value);
-                    return;
-                }
-                else if (Byte.class.isAssignableFrom(mmd.getType()))
-                {
-                    storeByteField(fieldNumber, (Byte)value);
-                    return;
-                }
-                else if (Character.class.isAssignableFrom(mmd.getType()))
-                {
-                    storeCharField(fieldNumber, (Character)value);
-                    return;
-                }
-                else if (Double.class.isAssignableFrom(mmd.getType()))
-                {
-                    storeDoubleField(fieldNumber, (Double)value);
-                    return;
-                }
-                else if (Float.class.isAssignableFrom(mmd.getType()))
-                {
-                    storeFloatField(fieldNumber, (Float)value);
-                    return;
-                }
-                else if (Integer.class.isAssignableFrom(mmd.getType()))
-                {
-                    storeIntField(fieldNumber, (Integer)value);
-                    return;
-                }
-                else if (Long.class.isAssignableFrom(mmd.getType()))
-                {
-                    storeLongField(fieldNumber, (Long)value);
-                    return;
-                }
-                else if (Short.class.isAssignableFrom(mmd.getType()))
-                {
-                    storeShortField(fieldNumber, (Short)value);
-                    return;
-                }
-                else if (mmd.getType().isEnum())
-                {
-                    // Persist Enum as either String, or ordinal value
-                    ColumnMetaData colmd = null;
-                    if (mmd != null && mmd.getColumnMetaData() != null && mmd.getColumnMetaData().length > 0)
-                    {
-                        colmd = mmd.getColumnMetaData()[0];
-                    }
-                    boolean useNumeric = MetaDataUtils.persistColumnAsNumeric(colmd);
-                    storeStringValue(fieldNumber, "" + (useNumeric ? ((Enum)value).ordinal() : value.toString()));
-                    return;
-                }
-                else
-                {
-                    // Support for TypeConverter
-                    // Support user-specified type converter
-                    TypeConverter converter = null;
-                    if (Date.class.isAssignableFrom(mmd.getType()))
-                    {
-                        converter = new DateToGeneralizedTimeStringConverter();
-                    }
-                    else if (Calendar.class.isAssignableFrom(mmd.getType()))
-                    {
-                        converter = new CalendarToGeneralizedTimeStringConverter();
-                    }
-                    else
-                    {
-                        converter = sm.getExecutionContext().getTypeManager().getTypeConverterForType(mmd.getType(), String.class);
-                    }
-                    if (converter != null)
-                    {
-                        attributes.put(new BasicAttribute(name, converter.toDatastoreType(value)));
-                        return;
-                    }
-
-                    throw new NucleusException("Field " + mmd.getFullFieldName() + " cannot be persisted because type=" + mmd.getTypeName() + " is not supported for this datastore");
-                }
+                storeValue(mmd, value);
+                return;
             }
         }
         else
@@ -205,6 +145,10 @@ public class StoreFieldManager extends AbstractFieldManager
                 }
                 else
                 {
+                    if (modifications != null)
+                    {
+                        ms.setModifications(modifications, replacements);
+                    }
                     ms.update(value);
                 }
                 return;
@@ -217,76 +161,178 @@ public class StoreFieldManager extends AbstractFieldManager
 
     public void storeBooleanField(int fieldNumber, boolean value)
     {
-        AbstractMemberMetaData mmd = sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
-        String name = LDAPUtils.getAttributeNameForField(mmd);
-
-        // Apache Directory 1.5+ seems to require uppercase for booleans
-        attributes.put(new BasicAttribute(name, ("" + value).toUpperCase()));
+        storeValue(sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), value);
     }
 
     public void storeByteField(int fieldNumber, byte value)
     {
-        storeStringValue(fieldNumber, "" + value);
+        storeValue(sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), value);
     }
 
     public void storeCharField(int fieldNumber, char value)
     {
-        storeStringValue(fieldNumber, "" + value);
+        storeValue(sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), value);
     }
 
     public void storeDoubleField(int fieldNumber, double value)
     {
-        storeStringValue(fieldNumber, "" + value);
+        storeValue(sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), value);
     }
 
     public void storeFloatField(int fieldNumber, float value)
     {
-        storeStringValue(fieldNumber, "" + value);
+        storeValue(sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), value);
     }
 
     public void storeIntField(int fieldNumber, int value)
     {
-        storeStringValue(fieldNumber, "" + value);
+        storeValue(sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), value);
     }
 
     public void storeLongField(int fieldNumber, long value)
     {
-        storeStringValue(fieldNumber, "" + value);
+        storeValue(sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), value);
     }
 
     public void storeShortField(int fieldNumber, short value)
     {
-        storeStringValue(fieldNumber, "" + value);
+        storeValue(sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), value);
     }
 
     public void storeStringField(int fieldNumber, String value)
     {
-        storeStringValue(fieldNumber, value);
+        storeValue(sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber), value);
     }
 
-    protected void storeStringValue(int fieldNumber, String stringValue)
+    protected void storeValue(AbstractMemberMetaData mmd, Object value)
     {
-        if (stringValue != null && stringValue.length() == 0)
+        Attribute attr = getAttributeForValue(mmd, value, sm.getExecutionContext().getTypeManager(), insert);
+        if (attr != null)
         {
-            // this deletes existing value
-            stringValue = null;
+            attributes.put(attr);
         }
+    }
 
-        AbstractMemberMetaData mmd = sm.getClassMetaData().getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
+    /**
+     * Converts the value of a basic (single-valued, non-relation) member to the attribute to write, as stored for an object.
+     * The conversion is chosen from the type of the member, so the value must be of that type (see {@link #isValueForMember}).
+     * Also used to write values without an object, e.g. for a bulk update.
+     * @param mmd Metadata for the member
+     * @param value The value
+     * @param typeMgr Type manager, for the type converter of other types
+     * @param insert Whether inserting, in which case a null value isn't written
+     * @return The attribute (with no value when the value is null, which deletes existing values), or null if nothing to write
+     * @throws NucleusException if the type of the member is not supported
+     */
+    public static Attribute getAttributeForValue(AbstractMemberMetaData mmd, Object value, TypeManager typeMgr, boolean insert)
+    {
         String name = LDAPUtils.getAttributeNameForField(mmd);
-
-        if (stringValue == null)
+        Class type = getMemberType(mmd);
+        Object datastoreValue = null;
+        if (value == null)
+        {
+            // Nothing to convert
+        }
+        else if (type == Boolean.class)
         {
-            if (insert)
+            // Apache Directory 1.5+ seems to require uppercase for booleans
+            datastoreValue = ("" + value).toUpperCase();
+        }
+        else if (type == String.class || type == Character.class || type == Byte.class || type == Double.class || type == Float.class ||
+            type == Integer.class || type == Long.class || type == Short.class)
+        {
+            // an empty string deletes existing value
+            String stringValue = "" + value;
+            datastoreValue = stringValue.length() > 0 ? stringValue : null;
+        }
+        else if (type.isEnum())
+        {
+            // Persist Enum as either String, or ordinal value
+            ColumnMetaData colmd = null;
+            if (mmd.getColumnMetaData() != null && mmd.getColumnMetaData().length > 0)
             {
-                return;
+                colmd = mmd.getColumnMetaData()[0];
             }
-
-            attributes.put(new BasicAttribute(name));
-            return;
+            boolean useNumeric = MetaDataUtils.persistColumnAsNumeric(colmd);
+            datastoreValue = "" + (useNumeric ? ((Enum)value).ordinal() : value.toString());
+        }
+        else
+        {
+            // Support for TypeConverter
+            // Support user-specified type converter
+            TypeConverter converter = null;
+            if (Date.class.isAssignableFrom(mmd.getType()))
+            {
+                converter = new DateToGeneralizedTimeStringConverter();
+            }
+            else if (Calendar.class.isAssignableFrom(mmd.getType()))
+            {
+                converter = new CalendarToGeneralizedTimeStringConverter();
+            }
+            else
+            {
+                converter = typeMgr.getTypeConverterForType(mmd.getType(), String.class);
+            }
+            if (converter == null)
+            {
+                throw new NucleusException("Field " + mmd.getFullFieldName() + " cannot be persisted because type=" + mmd.getTypeName() + " is not supported for this datastore");
+            }
+            datastoreValue = converter.toDatastoreType(value);
         }
 
+        if (datastoreValue == null)
+        {
+            return insert ? null : new BasicAttribute(name);
+        }
         // TODO We only ever put String values in here, maybe could use other types?
-        attributes.put(new BasicAttribute(name, stringValue));
+        return new BasicAttribute(name, datastoreValue);
+    }
+
+    /**
+     * Accessor for whether the value can be stored for the member by {@link #getAttributeForValue} : null for a non-primitive
+     * member, a value of the type of the member, or an integral number in the range of an integral member (as literals are typed).
+     * @param mmd Metadata for the member
+     * @param value The value
+     * @return Whether the value is of the type of the member
+     */
+    public static boolean isValueForMember(AbstractMemberMetaData mmd, Object value)
+    {
+        Class type = getMemberType(mmd);
+        if (value == null)
+        {
+            return !mmd.getType().isPrimitive();
+        }
+        else if (type.isInstance(value))
+        {
+            return true;
+        }
+        else if (isIntegral(value.getClass()) && isIntegral(type))
+        {
+            long longValue = ((Number) value).longValue();
+            if (type == Integer.class)
+            {
+                return longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE;
+            }
+            else if (type == Short.class)
+            {
+                return longValue >= Short.MIN_VALUE && longValue <= Short.MAX_VALUE;
+            }
+            else if (type == Byte.class)
+            {
+                return longValue >= Byte.MIN_VALUE && longValue <= Byte.MAX_VALUE;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isIntegral(Class type)
+    {
+        return type == Long.class || type == Integer.class || type == Short.class || type == Byte.class;
+    }
+
+    private static Class getMemberType(AbstractMemberMetaData mmd)
+    {
+        return mmd.getType().isPrimitive() ? ClassUtils.getWrapperTypeForPrimitiveType(mmd.getType()) : mmd.getType();
     }
 }
\ No newline at end of file
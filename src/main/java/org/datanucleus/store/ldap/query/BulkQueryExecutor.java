@@ -0,0 +1,612 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.ContextNotEmptyException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+import org.datanucleus.ClassLoaderResolver;
+import org.datanucleus.ExecutionContext;
+import org.datanucleus.exceptions.NucleusDataStoreException;
+import org.datanucleus.exceptions.NucleusException;
+import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.RelationType;
+import org.datanucleus.store.StoreManager;
+import org.datanucleus.store.connection.ManagedConnection;
+import org.datanucleus.store.ldap.LDAPPersistenceHandler;
+import org.datanucleus.store.ldap.LDAPPipeline;
+import org.datanucleus.store.ldap.LDAPReferenceIndex;
+import org.datanucleus.store.ldap.LDAPStoreManager;
+import org.datanucleus.store.ldap.LDAPUtils;
+import org.datanucleus.store.ldap.backend.DirectoryBackend;
+import org.datanucleus.store.ldap.fieldmanager.StoreFieldManager;
+import org.datanucleus.store.ldap.query.filter.AbstractBranchFilter;
+import org.datanucleus.store.ldap.query.filter.AbstractLeafFilter;
+import org.datanucleus.store.ldap.query.filter.AndFilter;
+import org.datanucleus.store.ldap.query.filter.EqualityFilter;
+import org.datanucleus.store.ldap.query.filter.Filter;
+import org.datanucleus.store.ldap.query.filter.FilterParser;
+import org.datanucleus.store.ldap.query.filter.NotFilter;
+import org.datanucleus.store.ldap.query.filter.OrFilter;
+import org.datanucleus.store.ldap.query.filter.PresenceFilter;
+import org.datanucleus.store.ldap.query.filter.SubstringFilter;
+import org.datanucleus.store.query.QueryUtils;
+import org.datanucleus.store.query.compiler.QueryCompilation;
+import org.datanucleus.store.query.expression.DyadicExpression;
+import org.datanucleus.store.query.expression.Expression;
+import org.datanucleus.store.query.expression.Literal;
+import org.datanucleus.store.query.expression.ParameterExpression;
+import org.datanucleus.store.query.expression.PrimaryExpression;
+import org.datanucleus.util.Localiser;
+import org.datanucleus.util.NucleusLogger;
+
+/**
+ * Executes bulk queries (delete, update) natively, i.e. as an LDAP search for the DNs of the matching entries followed by pipelined writes,
+ * without instantiating the objects. Only possible when the query filter maps fully to an LDAP filter (see
+ * {@link QueryToLDAPFilterMapper#isFullyMapped()}), otherwise the query has to be evaluated against the objects.
+ * As the matching rules of the LDAP attributes may be case-insensitive, the attributes compared by the query filter are returned
+ * by the search and the entries are re-checked exactly against the filter before being written.
+ */
+public class BulkQueryExecutor
+{
+    final LDAPStoreManager storeMgr;
+
+    final ExecutionContext ec;
+
+    final QueryCompilation compilation;
+
+    final Map parameters;
+
+    /** The mapped query filter of each candidate class, for the exact re-check of the selected entries. */
+    final Map<AbstractClassMetaData, Filter> queryFilters = new HashMap<>();
+
+    /**
+     * Constructor.
+     * @param storeMgr StoreManager
+     * @param ec ExecutionContext
+     * @param compilation The query compilation
+     * @param parameters The input parameters
+     */
+    public BulkQueryExecutor(StoreManager storeMgr, ExecutionContext ec, QueryCompilation compilation, Map parameters)
+    {
+        this.storeMgr = (LDAPStoreManager) storeMgr;
+        this.ec = ec;
+        this.compilation = compilation;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Deletes the objects matching the query : the matching entries are found with a paged search returning only the attributes
+     * compared by the query filter and those needed for the reference cleanup, and as each page of entries is read the references to them
+     * are removed in batches and the entries are deleted with pipelined deletes. Cached objects of the candidate classes are evicted.
+     * @param candidateClass The candidate class
+     * @param subclasses Whether to include subclasses
+     * @return The number of deleted objects, or null if the query cannot be executed natively
+     */
+    public Long executeDelete(Class candidateClass, boolean subclasses)
+    {
+        Map<AbstractClassMetaData, String> filters = getFilters(candidateClass, subclasses, true);
+        if (filters == null)
+        {
+            return null;
+        }
+
+        long startTime = System.currentTimeMillis();
+        ClassLoaderResolver clr = ec.getClassLoaderResolver();
+        LDAPPersistenceHandler handler = (LDAPPersistenceHandler) storeMgr.getPersistenceHandler();
+        long numDeleted = 0;
+        ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
+        try
+        {
+            // The search must see the entries written before, and non-leaf entries are found by their delete failing
+            DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
+            backend.requireImmediateWrites();
+            for (Map.Entry<AbstractClassMetaData, String> entry : filters.entrySet())
+            {
+                AbstractClassMetaData cmd = entry.getKey();
+
+                // Read only the attributes joined by attribute references, for the reference cleanup
+                Set<String> joinAttributeNames = new LinkedHashSet<>();
+                for (LDAPReferenceIndex.Reference reference : storeMgr.getReferenceIndex().getReferencesForDelete(cmd, clr))
+                {
+                    if (!reference.isByDn())
+                    {
+                        joinAttributeNames.add(reference.getJoinAttributeName());
+                    }
+                }
+
+                // Each page of entries is deleted as it is read, so the entries needn't all be held in memory
+                final List<String> nonLeafDns = Collections.synchronizedList(new ArrayList<String>());
+                LDAPPipeline pipeline = storeMgr.newPipeline(mconn);
+                numDeleted += search(backend, cmd, entry.getValue(), getReturningAttributes(cmd, joinAttributeNames), results ->
+                {
+                    Map<String, Attributes> entries = new LinkedHashMap<>();
+                    for (SearchResult result : results)
+                    {
+                        entries.put(result.getNameInNamespace(), result.getAttributes());
+                    }
+                    handler.deleteReferences(ec, mconn, cmd, entries);
+
+                    for (final String dn : entries.keySet())
+                    {
+                        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+                        {
+                            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.destroySubcontext", dn));
+                        }
+                        pipeline.submit(dn, b -> unbind(b, dn, nonLeafDns));
+                    }
+                });
+                pipeline.awaitAndCheck();
+
+                // Entries with children (e.g. parents of hierarchical mappings, or with embedded entries) are deleted recursively
+                for (String dn : nonLeafDns)
+                {
+                    LDAPUtils.deleteRecursive(storeMgr, mconn, new LdapName(dn));
+                }
+            }
+        }
+        catch (NamingException e)
+        {
+            throw new NucleusDataStoreException(e.getMessage(), e);
+        }
+        finally
+        {
+            mconn.release();
+        }
+
+        // Cached objects may have been deleted
+        ec.evictObjects(candidateClass, subclasses);
+        ec.getNucleusContext().getLevel2Cache().evictAll(candidateClass, subclasses);
+        if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.Query.BulkDelete", candidateClass.getName(), numDeleted,
+                (System.currentTimeMillis() - startTime)));
+        }
+        return numDeleted;
+    }
+
+    /**
+     * Updates the objects matching the query : the matching entries are found with a paged search returning only the attributes
+     * compared by the query filter, and the attributes of the members set by the query are replaced with pipelined modifications
+     * as each page of entries is read.
+     * The values are converted as when storing the members of an object. Cached objects of the candidate classes are evicted.
+     * Only basic members (not the primary key, relations, containers, embedded or server-generated members) can be set, and
+     * classes with a version maintained by DataNucleus are not supported since the version of each object would need incrementing.
+     * @param candidateClass The candidate class
+     * @param subclasses Whether to include subclasses
+     * @return The number of updated objects, or null if the query cannot be executed natively
+     */
+    public Long executeUpdate(Class candidateClass, boolean subclasses)
+    {
+        Map<AbstractClassMetaData, String> filters = getFilters(candidateClass, subclasses, false);
+        if (filters == null)
+        {
+            return null;
+        }
+        Map<AbstractClassMetaData, ModificationItem[]> updates = new LinkedHashMap<>();
+        for (AbstractClassMetaData cmd : filters.keySet())
+        {
+            ModificationItem[] mods = getUpdateModifications(cmd);
+            if (mods == null)
+            {
+                return null;
+            }
+            updates.put(cmd, mods);
+        }
+
+        long startTime = System.currentTimeMillis();
+        long numUpdated = 0;
+        ManagedConnection mconn = storeMgr.getConnectionManager().getConnection(ec);
+        try
+        {
+            // The search must see the entries written before
+            DirectoryBackend backend = (DirectoryBackend) mconn.getConnection();
+            backend.requireImmediateWrites();
+            for (Map.Entry<AbstractClassMetaData, String> entry : filters.entrySet())
+            {
+                final ModificationItem[] mods = updates.get(entry.getKey());
+
+                // Each page of entries is updated as it is read, so the entries needn't all be held in memory
+                LDAPPipeline pipeline = storeMgr.newPipeline(mconn);
+                numUpdated += search(backend, entry.getKey(), entry.getValue(), getReturningAttributes(entry.getKey(), Collections.<String>emptySet()),
+                    results ->
+                    {
+                        for (SearchResult result : results)
+                        {
+                            final String dn = result.getNameInNamespace();
+                            if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+                            {
+                                NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.modifyAttributes", dn, "REPLACE", Arrays.toString(mods)));
+                            }
+                            pipeline.submit(dn, b -> b.modifyAttributes(dn, mods));
+                        }
+                    });
+                pipeline.awaitAndCheck();
+            }
+        }
+        catch (NamingException e)
+        {
+            throw new NucleusDataStoreException(e.getMessage(), e);
+        }
+        finally
+        {
+            mconn.release();
+        }
+
+        // Cached objects may have been updated
+        ec.evictObjects(candidateClass, subclasses);
+        ec.getNucleusContext().getLevel2Cache().evictAll(candidateClass, subclasses);
+        if (NucleusLogger.DATASTORE_PERSIST.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_PERSIST.debug(Localiser.msg("LDAP.Query.BulkUpdate", candidateClass.getName(), numUpdated,
+                (System.currentTimeMillis() - startTime)));
+        }
+        return numUpdated;
+    }
+
+    /**
+     * Accessor for the modifications replacing the attributes of the members set by the update expressions of the query.
+     * @param cmd Metadata for the class
+     * @return The modifications, or null if an update expression is not supported natively
+     */
+    private ModificationItem[] getUpdateModifications(AbstractClassMetaData cmd)
+    {
+        Expression[] updateExprs = compilation.getExprUpdate();
+        if (updateExprs == null || updateExprs.length == 0)
+        {
+            return null;
+        }
+        if (cmd.getVersionMetaDataForClass() != null && !LDAPUtils.isServerVersion(cmd))
+        {
+            return null;
+        }
+
+        ClassLoaderResolver clr = ec.getClassLoaderResolver();
+        ModificationItem[] mods = new ModificationItem[updateExprs.length];
+        for (int i = 0; i < updateExprs.length; i++)
+        {
+            Expression updateExpr = updateExprs[i];
+            if (!(updateExpr instanceof DyadicExpression) || updateExpr.getOperator() != Expression.OP_EQ ||
+                !(updateExpr.getLeft() instanceof PrimaryExpression))
+            {
+                return null;
+            }
+
+            List<String> tuples = ((PrimaryExpression) updateExpr.getLeft()).getTuples();
+            int first = tuples.size() > 1 && tuples.get(0).equals(compilation.getCandidateAlias()) ? 1 : 0;
+            AbstractMemberMetaData mmd = tuples.size() - first == 1 ? cmd.getMetaDataForMember(tuples.get(first)) : null;
+            if (mmd == null || mmd.isPrimaryKey() || mmd.getRelationType(clr) != RelationType.NONE || mmd.hasContainer() || mmd.isEmbedded() ||
+                mmd.isSerialized() || mmd.hasExtension(LDAPStoreManager.MAPPING_STRATEGY_EXTENSON) || LDAPUtils.isServerGenerated(mmd))
+            {
+                return null;
+            }
+
+            Object value;
+            Expression valueExpr = updateExpr.getRight();
+            if (valueExpr instanceof Literal)
+            {
+                value = ((Literal) valueExpr).getLiteral();
+            }
+            else if (valueExpr instanceof ParameterExpression)
+            {
+                value = QueryUtils.getValueForParameterExpression(parameters, (ParameterExpression) valueExpr);
+            }
+            else
+            {
+                return null;
+            }
+            if (!StoreFieldManager.isValueForMember(mmd, value))
+            {
+                // The conversion depends on the member type, so the value must be of that type
+                return null;
+            }
+            mods[i] = new ModificationItem(DirContext.REPLACE_ATTRIBUTE, StoreFieldManager.getAttributeForValue(mmd, value, ec.getTypeManager(), false));
+        }
+        return mods;
+    }
+
+    private static void unbind(DirectoryBackend backend, String dn, List<String> nonLeafDns) throws NamingException
+    {
+        try
+        {
+            backend.unbind(dn);
+        }
+        catch (ContextNotEmptyException e)
+        {
+            nonLeafDns.add(dn);
+        }
+    }
+
+    /**
+     * Searches (paged) for the entries of a class matching the filter, passing the matching entries of each page to the handler
+     * as the page is read.
+     * @param backend Backend to search with
+     * @param cmd Metadata for the class
+     * @param filter The LDAP filter
+     * @param attrIds Attributes to return
+     * @param pageHandler Handler for the matching entries of each page
+     * @return The number of matching entries
+     * @throws NamingException if the search or the handler fails
+     */
+    long search(DirectoryBackend backend, AbstractClassMetaData cmd, String filter, String[] attrIds, DirectoryBackend.PageHandler pageHandler) throws NamingException
+    {
+        LdapName base = LDAPUtils.getSearchBase(cmd, ec.getMetaDataManager());
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(LDAPUtils.getSearchControls(cmd).getSearchScope());
+        searchControls.setReturningAttributes(attrIds);
+        if (NucleusLogger.DATASTORE_NATIVE.isDebugEnabled())
+        {
+            NucleusLogger.DATASTORE_NATIVE.debug(Localiser.msg("LDAP.JNDI.search", base, filter, searchControls.getSearchScope()));
+        }
+
+        final Filter queryFilter = queryFilters.get(cmd);
+        final long[] numMatching = new long[1];
+        backend.searchPaged(base.toString(), filter, searchControls, storeMgr.getPageSize(), results ->
+        {
+            List<SearchResult> matching = new ArrayList<>(results.size());
+            for (SearchResult result : results)
+            {
+                if (queryFilter == null || matchesExactly(queryFilter, result.getAttributes()))
+                {
+                    matching.add(result);
+                }
+            }
+            if (!matching.isEmpty())
+            {
+                numMatching[0] += matching.size();
+                pageHandler.handlePage(matching);
+            }
+        });
+        return numMatching[0];
+    }
+
+    /**
+     * Accessor for the attributes to return from the search for the entries of a class : the attributes needed by the caller
+     * and those compared by the query filter.
+     * @param cmd Metadata for the class
+     * @param attrNames Names of the attributes needed by the caller
+     * @return The attribute names, or "1.1" (no attributes) if none
+     */
+    private String[] getReturningAttributes(AbstractClassMetaData cmd, Set<String> attrNames)
+    {
+        Set<String> names = new LinkedHashSet<>(attrNames);
+        Filter queryFilter = queryFilters.get(cmd);
+        if (queryFilter != null)
+        {
+            addAttributeNames(queryFilter, names);
+        }
+        return names.isEmpty() ? new String[]{"1.1"} : names.toArray(new String[names.size()]);
+    }
+
+    private static void addAttributeNames(Filter filter, Set<String> names)
+    {
+        if (filter instanceof AbstractBranchFilter)
+        {
+            for (Filter child : ((AbstractBranchFilter) filter).getChildren())
+            {
+                addAttributeNames(child, names);
+            }
+        }
+        else
+        {
+            names.add(((AbstractLeafFilter) filter).getAttribute());
+        }
+    }
+
+    /**
+     * Checks whether the attributes match the (fully mapped) filter, comparing the values exactly rather than with the matching
+     * rules of the LDAP attributes.
+     * @param filter The filter
+     * @param attrs The attributes of the entry
+     * @return Whether the entry matches
+     * @throws NamingException if the attribute values can't be read
+     */
+    static boolean matchesExactly(Filter filter, Attributes attrs) throws NamingException
+    {
+        if (filter instanceof AndFilter)
+        {
+            for (Filter child : ((AndFilter) filter).getChildren())
+            {
+                if (!matchesExactly(child, attrs))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        else if (filter instanceof OrFilter)
+        {
+            for (Filter child : ((OrFilter) filter).getChildren())
+            {
+                if (matchesExactly(child, attrs))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        else if (filter instanceof NotFilter)
+        {
+            return !matchesExactly(((NotFilter) filter).getChildren().get(0), attrs);
+        }
+
+        Attribute attr = attrs.get(((AbstractLeafFilter) filter).getAttribute());
+        if (filter instanceof PresenceFilter)
+        {
+            return attr != null && attr.size() > 0;
+        }
+        else if (filter instanceof EqualityFilter)
+        {
+            String value = FilterParser.unescape(((EqualityFilter) filter).getValue());
+            for (int i = 0; attr != null && i < attr.size(); i++)
+            {
+                if (value.equals(String.valueOf(attr.get(i))))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        else if (filter instanceof SubstringFilter)
+        {
+            for (int i = 0; attr != null && i < attr.size(); i++)
+            {
+                if (substringMatchesExactly((SubstringFilter) filter, String.valueOf(attr.get(i))))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        throw new NucleusException("Filter not fully mapped : " + filter);
+    }
+
+    private static boolean substringMatchesExactly(SubstringFilter filter, String value)
+    {
+        int pos = 0;
+        if (filter.getInitialPattern() != null)
+        {
+            String initial = FilterParser.unescape(filter.getInitialPattern());
+            if (!value.startsWith(initial))
+            {
+                return false;
+            }
+            pos = initial.length();
+        }
+        for (String any : filter.getAnyPatterns())
+        {
+            String pattern = FilterParser.unescape(any);
+            int index = value.indexOf(pattern, pos);
+            if (index < 0)
+            {
+                return false;
+            }
+            pos = index + pattern.length();
+        }
+        if (filter.getFinalPattern() != null)
+        {
+            String fin = FilterParser.unescape(filter.getFinalPattern());
+            return value.length() - fin.length() >= pos && value.endsWith(fin);
+        }
+        return true;
+    }
+
+    /**
+     * Accessor for the LDAP filter for each candidate class, when the query filter maps fully to an LDAP filter.
+     * @param candidateClass The candidate class
+     * @param subclasses Whether to include subclasses
+     * @param delete Whether the objects are to be deleted, in which case classes with dependent members are not supported
+     * @return The filters keyed by class metadata, or null if the query cannot be executed natively
+     */
+    Map<AbstractClassMetaData, String> getFilters(Class candidateClass, boolean subclasses, boolean delete)
+    {
+        if (compilation == null || compilation.getSubqueryAliases() != null)
+        {
+            return null;
+        }
+
+        ClassLoaderResolver clr = ec.getClassLoaderResolver();
+        List<AbstractClassMetaData> cmds = new ArrayList<>();
+        cmds.add(ec.getMetaDataManager().getMetaDataForClass(candidateClass, clr));
+        if (subclasses)
+        {
+            String[] subclassNames = ec.getMetaDataManager().getSubclassesForClass(candidateClass.getName(), true);
+            if (subclassNames != null)
+            {
+                for (String subclassName : subclassNames)
+                {
+                    cmds.add(ec.getMetaDataManager().getMetaDataForClass(subclassName, clr));
+                }
+            }
+        }
+
+        Map<AbstractClassMetaData, String> filters = new LinkedHashMap<>();
+        for (AbstractClassMetaData cmd : cmds)
+        {
+            String classFilter = LDAPUtils.getSearchFilter(cmd);
+            if (classFilter == null)
+            {
+                // sanity check, as when querying : no objects if the class has no object class
+                continue;
+            }
+            if (delete && hasDependentMembers(cmd))
+            {
+                return null;
+            }
+
+            QueryToLDAPFilterMapper mapper = new QueryToLDAPFilterMapper(compilation, parameters, cmd, clr);
+            String queryFilter;
+            try
+            {
+                queryFilter = mapper.compile();
+            }
+            catch (NucleusException e)
+            {
+                return null;
+            }
+            if (!mapper.isFullyMapped())
+            {
+                return null;
+            }
+            if (mapper.getFilter() != null)
+            {
+                queryFilters.put(cmd, mapper.getFilter());
+            }
+            filters.put(cmd, queryFilter != null ? "(&" + classFilter + queryFilter + ")" : classFilter);
+        }
+        return filters;
+    }
+
+    /**
+     * Accessor for whether deleting an object of the class deletes other objects (dependent or cascade-delete members).
+     * @param cmd Metadata for the class
+     * @return Whether there are dependent members
+     */
+    private static boolean hasDependentMembers(AbstractClassMetaData cmd)
+    {
+        for (AbstractMemberMetaData mmd : LDAPUtils.getAllMemberMetaData(cmd))
+        {
+            if (mmd.isDependent() || mmd.isCascadeDelete() || mmd.isCascadeRemoveOrphans() ||
+                (mmd.hasCollection() && mmd.getCollection().isDependentElement()) ||
+                (mmd.hasArray() && mmd.getArray().isDependentElement()) ||
+                (mmd.hasMap() && (mmd.getMap().isDependentKey() || mmd.getMap().isDependentValue())))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Map;
 
 import org.datanucleus.ExecutionContext;
+import org.datanucleus.exceptions.NucleusException;
 import org.datanucleus.metadata.QueryLanguage;
 import org.datanucleus.store.StoreManager;
 import org.datanucleus.store.ldap.LDAPUtils;
@@ -46,6 +47,8 @@ import org.datanucleus.util.NucleusLogger;
  * </ul>
  * Performs a simple LDAP search for all objects of the requisite "distinguished name" to limit it to the candidate
  * class. Then utilises the generic JDOQLEvaluator to do in-memory imposition of the JDOQL filter, ordering, result etc.
+ * Bulk updates, and bulk deletes whose filter maps fully to an LDAP filter are executed natively, without instantiating the objects
+ * (see {@link BulkQueryExecutor}).
  */
 public class JDOQLQuery extends AbstractJDOQLQuery
 {
@@ -92,6 +95,35 @@ public class JDOQLQuery extends AbstractJDOQLQuery
             startTime = System.currentTimeMillis();
             NucleusLogger.QUERY.debug(Localiser.msg("021046", QueryLanguage.JDOQL.name(), getSingleStringQuery(), null));
         }
+        if (type == QueryType.BULK_UPDATE)
+        {
+            // Update natively, without instantiating the objects
+            Long numUpdated = (candidateCollection == null && !inMemory) ?
+                new BulkQueryExecutor(getStoreManager(), ec, compilation, parameters).executeUpdate(candidateClass, subclasses) : null;
+            if (numUpdated == null)
+            {
+                throw new NucleusException(Localiser.msg("LDAP.Query.BulkUpdateNotSupported", getSingleStringQuery()));
+            }
+            if (NucleusLogger.QUERY.isDebugEnabled())
+            {
+                NucleusLogger.QUERY.debug(Localiser.msg("021074", QueryLanguage.JDOQL.name(), "" + (System.currentTimeMillis() - startTime)));
+            }
+            return numUpdated;
+        }
+        if (type == QueryType.BULK_DELETE && candidateCollection == null && !inMemory)
+        {
+            // Delete natively when the filter maps fully to LDAP, without instantiating the objects
+            Long numDeleted = new BulkQueryExecutor(getStoreManager(), ec, compilation, parameters).executeDelete(candidateClass, subclasses);
+            if (numDeleted != null)
+            {
+                if (NucleusLogger.QUERY.isDebugEnabled())
+                {
+                    NucleusLogger.QUERY.debug(Localiser.msg("021074", QueryLanguage.JDOQL.name(), "" + (System.currentTimeMillis() - startTime)));
+                }
+                return numDeleted;
+            }
+        }
+
         Collection candidates = null;
         if (candidateCollection == null)
         {
@@ -113,6 +145,11 @@ public class JDOQLQuery extends AbstractJDOQLQuery
             NucleusLogger.QUERY.debug(Localiser.msg("021074", QueryLanguage.JDOQL.name(), "" + (System.currentTimeMillis() - startTime)));
         }
 
+        if (type == QueryType.BULK_DELETE)
+        {
+            ec.deleteObjects(results.toArray());
+            return Long.valueOf(results.size());
+        }
         return results;
     }
 }
\ No newline at end of file
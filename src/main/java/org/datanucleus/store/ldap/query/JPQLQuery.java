@@ -38,6 +38,8 @@ import org.datanucleus.util.NucleusLogger;
  * Performs a simple LDAP search for all objects of the requisite "distinguished name"
  * to limit it to the candidate class. Then utilises the generic JPQLEvaluator to do
  * in-memory imposition of the JPQL filter, ordering, result etc.
+ * Bulk updates, and bulk deletes whose filter maps fully to an LDAP filter are executed natively, without instantiating the objects
+ * (see {@link BulkQueryExecutor}).
  */
 public class JPQLQuery extends AbstractJPQLQuery
 {
@@ -84,6 +86,35 @@ public class JPQLQuery extends AbstractJPQLQuery
             startTime = System.currentTimeMillis();
             NucleusLogger.QUERY.debug(Localiser.msg("021046", QueryLanguage.JPQL.name(), getSingleStringQuery(), null));
         }
+        if (type == QueryType.BULK_UPDATE)
+        {
+            // Update natively, without instantiating the objects
+            Long numUpdated = (candidateCollection == null && !inMemory) ?
+                new BulkQueryExecutor(getStoreManager(), ec, compilation, parameters).executeUpdate(candidateClass, subclasses) : null;
+            if (numUpdated == null)
+            {
+                throw new NucleusException(Localiser.msg("LDAP.Query.BulkUpdateNotSupported", getSingleStringQuery()));
+            }
+            if (NucleusLogger.QUERY.isDebugEnabled())
+            {
+                NucleusLogger.QUERY.debug(Localiser.msg("021074", QueryLanguage.JPQL.name(), "" + (System.currentTimeMillis() - startTime)));
+            }
+            return numUpdated;
+        }
+        if (type == QueryType.BULK_DELETE && candidateCollection == null && !inMemory)
+        {
+            // Delete natively when the filter maps fully to LDAP, without instantiating the objects
+            Long numDeleted = new BulkQueryExecutor(getStoreManager(), ec, compilation, parameters).executeDelete(candidateClass, subclasses);
+            if (numDeleted != null)
+            {
+                if (NucleusLogger.QUERY.isDebugEnabled())
+                {
+                    NucleusLogger.QUERY.debug(Localiser.msg("021074", QueryLanguage.JPQL.name(), "" + (System.currentTimeMillis() - startTime)));
+                }
+                return numDeleted;
+            }
+        }
+
         List candidates = null;
         if (candidateCollection == null)
         {
@@ -109,10 +140,6 @@ public class JPQLQuery extends AbstractJPQLQuery
             ec.deleteObjects(results.toArray());
             return Long.valueOf(results.size());
         }
-        else if (type == QueryType.BULK_UPDATE)
-        {
-            throw new NucleusException("Bulk Update is not yet supported");
-        }
         else
         {
             return results;
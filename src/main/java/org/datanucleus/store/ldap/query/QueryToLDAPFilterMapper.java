@@ -23,9 +23,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.datanucleus.ClassLoaderResolver;
 import org.datanucleus.exceptions.NucleusException;
 import org.datanucleus.metadata.AbstractClassMetaData;
 import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.RelationType;
+import org.datanucleus.store.ldap.LDAPStoreManager;
 import org.datanucleus.store.ldap.LDAPUtils;
 import org.datanucleus.store.ldap.query.filter.AndFilter;
 import org.datanucleus.store.ldap.query.filter.EqualityFilter;
@@ -46,10 +49,17 @@ import org.datanucleus.store.query.expression.Literal;
 import org.datanucleus.store.query.expression.ParameterExpression;
 import org.datanucleus.store.query.expression.PrimaryExpression;
 import org.datanucleus.store.query.expression.Expression.Operator;
+import org.datanucleus.util.ClassUtils;
 
 /**
  * Class which maps a compiled query to an LDAP filter. Utilizes the filter of the java query and adds them to the
  * underlying LDAP filter. All other components are not handled here and instead processed by the in-memory evaluator.
+ * When created with a ClassLoaderResolver, also records whether the filter was mapped completely, i.e. only tests basic
+ * (String, numeric or character) members of the candidate itself for (in)equality, null or prefix/suffix, so that the LDAP
+ * filter alone selects the objects. Ordering comparisons are not, since the ordering of LDAP attributes depends on their schema.
+ * Since most matching rules of LDAP attributes are case-insensitive the LDAP filter may select more entries than the query
+ * filter, which have to be re-checked exactly against {@link #getFilter()}; String inequality is therefore not fully mapped,
+ * because the entries excluded by it can't be re-checked.
  */
 public class QueryToLDAPFilterMapper extends AbstractExpressionEvaluator
 {
@@ -74,6 +84,15 @@ public class QueryToLDAPFilterMapper extends AbstractExpressionEvaluator
     /** Map with LDAP attribute types */
     Map ldapAttributeTypeMap;
 
+    /** ClassLoader resolver, when checking whether the filter is fully mapped. */
+    ClassLoaderResolver clr;
+
+    /** Whether all of the filter maps to the LDAP filter. */
+    boolean fullyMapped = true;
+
+    /** The mapped LDAP filter. */
+    Filter ldapFilter;
+
     /**
      * Constructor.
      * @param compilation The generic query compilation
@@ -89,6 +108,40 @@ public class QueryToLDAPFilterMapper extends AbstractExpressionEvaluator
         this.acmd = acmd;
     }
 
+    /**
+     * Constructor checking whether the filter is fully mapped.
+     * @param compilation The generic query compilation
+     * @param parameters Parameters needed
+     * @param acmd Metadata for the candidate
+     * @param clr ClassLoader resolver
+     */
+    public QueryToLDAPFilterMapper(QueryCompilation compilation, Map parameters, AbstractClassMetaData acmd, ClassLoaderResolver clr)
+    {
+        this(compilation, parameters, acmd);
+        this.clr = clr;
+    }
+
+    /**
+     * Accessor for whether the compiled filter selects exactly the objects matching the query filter, so that no in-memory
+     * evaluation is needed. Only valid after {@link #compile()}, and when constructed with a ClassLoaderResolver.
+     * The matching rules of the LDAP attributes still apply (e.g. most are case-insensitive), so the selected entries have to
+     * be checked exactly against {@link #getFilter()}.
+     * @return Whether fully mapped
+     */
+    public boolean isFullyMapped()
+    {
+        return clr != null && fullyMapped;
+    }
+
+    /**
+     * Accessor for the mapped LDAP filter. Only valid after {@link #compile()}.
+     * @return the mapped LDAP filter or null if no filter
+     */
+    public Filter getFilter()
+    {
+        return ldapFilter;
+    }
+
     /**
      * Compiles the query and returns the mapped LDAP filter.
      * @return the mapped LDAP filter or null if no filter
@@ -104,8 +157,8 @@ public class QueryToLDAPFilterMapper extends AbstractExpressionEvaluator
                 Object object = stack.pop();
                 if (object instanceof Filter)
                 {
-                    Filter additionalFilter = (Filter) object;
-                    return additionalFilter.toString();
+                    ldapFilter = (Filter) object;
+                    return ldapFilter.toString();
                 }
 
                 throw new NucleusException("Unexpected element on stack: object=" + object);
@@ -187,6 +240,10 @@ public class QueryToLDAPFilterMapper extends AbstractExpressionEvaluator
 
     private Object processExpressionWithOperator(Expression expr, Operator operator)
     {
+        if (operator != Expression.OP_EQ && operator != Expression.OP_NOTEQ)
+        {
+            fullyMapped = false;
+        }
         Object right = stack.pop();
         Object left = stack.pop();
         Filter filter;
@@ -219,12 +276,18 @@ public class QueryToLDAPFilterMapper extends AbstractExpressionEvaluator
             // TODO: implement other cases
             throw new NucleusException("Case not handled yet: left=" + left + ", right=" + right);
         }
+        if (filter instanceof NotFilter && operator == Expression.OP_NOTEQ && hasStringValue((PrimaryExpression) left))
+        {
+            // the LDAP matching rule may be case-insensitive, and the entries it excludes can't be re-checked exactly
+            fullyMapped = false;
+        }
 
         return filter;
     }
 
     protected Object processPrimaryExpression(PrimaryExpression expr)
     {
+        checkFullyMapped(expr);
         stack.push(expr);
         return expr;
     }
@@ -253,6 +316,7 @@ public class QueryToLDAPFilterMapper extends AbstractExpressionEvaluator
         if (invokedExpr instanceof PrimaryExpression)
         {
             PrimaryExpression primaryExpression = (PrimaryExpression) invokedExpr;
+            checkFullyMapped(primaryExpression);
             String attribute = getLdapAttributeType(primaryExpression);
             if (method.equals("startsWith"))
             {
@@ -373,6 +437,58 @@ public class QueryToLDAPFilterMapper extends AbstractExpressionEvaluator
         return filter;
     }
 
+    /**
+     * Checks that the expression refers to a basic member of the candidate, stored as a single attribute with its string value.
+     * @param expr the expression
+     */
+    private void checkFullyMapped(PrimaryExpression expr)
+    {
+        if (clr == null || !fullyMapped)
+        {
+            return;
+        }
+
+        AbstractMemberMetaData mmd = getMemberMetaData(expr);
+        if (mmd == null || mmd.getRelationType(clr) != RelationType.NONE || mmd.isEmbedded() || mmd.isSerialized() ||
+            mmd.getTypeConverterName() != null || mmd.hasExtension(LDAPStoreManager.MAPPING_STRATEGY_EXTENSON))
+        {
+            fullyMapped = false;
+            return;
+        }
+        Class type = ClassUtils.getWrapperTypeForPrimitiveType(mmd.getType());
+        if (type == null)
+        {
+            type = mmd.getType();
+        }
+        if (type != String.class && type != Character.class && !(Number.class.isAssignableFrom(type) && type.getName().startsWith("java.lang.")))
+        {
+            fullyMapped = false;
+        }
+    }
+
+    /**
+     * Checks whether the expression refers to a String or character member of the candidate.
+     * @param expr the expression
+     * @return whether the member has a String value
+     */
+    private boolean hasStringValue(PrimaryExpression expr)
+    {
+        AbstractMemberMetaData mmd = getMemberMetaData(expr);
+        return mmd != null && (mmd.getType() == String.class || mmd.getType() == Character.class || mmd.getType() == char.class);
+    }
+
+    /**
+     * Gets the metadata for the member of the candidate the expression refers to.
+     * @param expr the expression
+     * @return the member metadata, or null if not a member of the candidate
+     */
+    private AbstractMemberMetaData getMemberMetaData(PrimaryExpression expr)
+    {
+        List<String> tuples = expr.getTuples();
+        int first = tuples.size() > 1 && tuples.get(0).equals(compilation.getCandidateAlias()) ? 1 : 0;
+        return tuples.size() - first == 1 ? acmd.getMetaDataForMember(tuples.get(first)) : null;
+    }
+
     /**
      * Gets the LDAP attribute type from the given expression.
      * @param expr the expression
@@ -0,0 +1,235 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.query.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.directory.InvalidSearchFilterException;
+
+/**
+ * Parser for the string representation of LDAP filters (RFC 4515) into {@link Filter} objects.
+ * Assertion values are kept in their escaped form, as they are in the filter objects; use {@link #unescape(String)}
+ * to obtain the actual value. Approximate matches are parsed as equality filters, and extensible matches are not supported.
+ */
+public final class FilterParser
+{
+    private final String filter;
+
+    private int pos = 0;
+
+    private FilterParser(String filter)
+    {
+        this.filter = filter;
+    }
+
+    /**
+     * Parses the specified filter string.
+     * @param filter The filter, e.g. "(&amp;(objectClass=person)(cn=foo*))"
+     * @return The filter object
+     * @throws InvalidSearchFilterException if the filter is invalid or not supported
+     */
+    public static Filter parse(String filter) throws InvalidSearchFilterException
+    {
+        String str = filter.trim();
+        if (!str.startsWith("("))
+        {
+            str = "(" + str + ")";
+        }
+        FilterParser parser = new FilterParser(str);
+        Filter result = parser.parseFilter();
+        if (parser.pos != str.length())
+        {
+            throw new InvalidSearchFilterException("Unexpected characters at position " + parser.pos + " of filter " + filter);
+        }
+        return result;
+    }
+
+    private Filter parseFilter() throws InvalidSearchFilterException
+    {
+        expect('(');
+        Filter result;
+        char c = peek();
+        if (c == '&')
+        {
+            pos++;
+            result = new AndFilter(parseFilterList());
+        }
+        else if (c == '|')
+        {
+            pos++;
+            result = new OrFilter(parseFilterList());
+        }
+        else if (c == '!')
+        {
+            pos++;
+            result = new NotFilter(parseFilter());
+        }
+        else
+        {
+            result = parseItem();
+        }
+        expect(')');
+        return result;
+    }
+
+    private Filter[] parseFilterList() throws InvalidSearchFilterException
+    {
+        List<Filter> children = new ArrayList<Filter>();
+        while (peek() == '(')
+        {
+            children.add(parseFilter());
+        }
+        return children.toArray(new Filter[children.size()]);
+    }
+
+    private Filter parseItem() throws InvalidSearchFilterException
+    {
+        int start = pos;
+        while (pos < filter.length() && "=~<>:()".indexOf(filter.charAt(pos)) < 0)
+        {
+            pos++;
+        }
+        String attribute = filter.substring(start, pos).trim();
+        if (attribute.length() == 0)
+        {
+            throw new InvalidSearchFilterException("Missing attribute at position " + start + " of filter " + filter);
+        }
+
+        char c = peek();
+        String op;
+        if (c == '=')
+        {
+            op = "=";
+            pos++;
+        }
+        else if ((c == '~' || c == '<' || c == '>') && pos + 1 < filter.length() && filter.charAt(pos + 1) == '=')
+        {
+            op = filter.substring(pos, pos + 2);
+            pos += 2;
+        }
+        else
+        {
+            throw new InvalidSearchFilterException("Unsupported filter type at position " + pos + " of filter " + filter);
+        }
+
+        start = pos;
+        while (pos < filter.length() && filter.charAt(pos) != ')')
+        {
+            pos++;
+        }
+        String value = filter.substring(start, pos);
+
+        if (op.equals(">="))
+        {
+            return new GreaterEqFilter(attribute, value);
+        }
+        else if (op.equals("<="))
+        {
+            return new LessEqFilter(attribute, value);
+        }
+        else if (op.equals("~="))
+        {
+            return new EqualityFilter(attribute, value);
+        }
+        else if (value.equals("*"))
+        {
+            return new PresenceFilter(attribute);
+        }
+        else if (value.indexOf('*') >= 0)
+        {
+            SubstringFilter substring = new SubstringFilter(attribute);
+            String[] parts = value.split("\\*", -1);
+            if (parts[0].length() > 0)
+            {
+                substring.setInitialPattern(parts[0]);
+            }
+            for (int i = 1; i < parts.length - 1; i++)
+            {
+                if (parts[i].length() > 0)
+                {
+                    substring.addAnyPattern(parts[i]);
+                }
+            }
+            if (parts[parts.length - 1].length() > 0)
+            {
+                substring.setFinalPattern(parts[parts.length - 1]);
+            }
+            return substring;
+        }
+        return new EqualityFilter(attribute, value);
+    }
+
+    private char peek() throws InvalidSearchFilterException
+    {
+        if (pos >= filter.length())
+        {
+            throw new InvalidSearchFilterException("Unexpected end of filter " + filter);
+        }
+        return filter.charAt(pos);
+    }
+
+    private void expect(char c) throws InvalidSearchFilterException
+    {
+        if (peek() != c)
+        {
+            throw new InvalidSearchFilterException("Expected '" + c + "' at position " + pos + " of filter " + filter);
+        }
+        pos++;
+    }
+
+    /**
+     * Converts an escaped assertion value (using "\XX" hex escapes for UTF-8 bytes) to its actual value.
+     * @param value The escaped value
+     * @return The unescaped value
+     */
+    public static String unescape(String value)
+    {
+        if (value == null || value.indexOf('\\') < 0)
+        {
+            return value;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+        int i = 0;
+        while (i < value.length())
+        {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 2 < value.length() && isHex(value.charAt(i + 1)) && isHex(value.charAt(i + 2)))
+            {
+                bytes.write(Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                i += 3;
+            }
+            else
+            {
+                int codePoint = value.codePointAt(i);
+                byte[] charBytes = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+                bytes.write(charBytes, 0, charBytes.length);
+                i += Character.charCount(codePoint);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static boolean isHex(char c)
+    {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -0,0 +1,396 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.ldap.LdapContext;
+
+import junit.framework.TestCase;
+
+import org.datanucleus.exceptions.NucleusDataStoreException;
+
+/**
+ * Tests for the LDAP connection pool, with contexts that don't connect to a server.
+ */
+public class LDAPConnectionPoolTest extends TestCase
+{
+    /** Number of stub contexts open. */
+    final AtomicInteger open = new AtomicInteger();
+
+    /** Max number of stub contexts open at the same time. */
+    final AtomicInteger maxOpen = new AtomicInteger();
+
+    /** Whether the stub contexts pass validation. */
+    volatile boolean valid = true;
+
+    /** Whether creating a stub context fails. */
+    volatile boolean failCreate = false;
+
+    /**
+     * Pool creating stub contexts (being an inner class, these can be created during the warm-up in the constructor).
+     */
+    class StubPool extends LDAPConnectionPool
+    {
+        StubPool(int initialSize, int minIdle, int maxIdle, int maxSize, long maxWait, long minEvictableIdleTime)
+        {
+            super("stub", new Hashtable(), initialSize, minIdle, maxIdle, maxSize, maxWait, 0, minEvictableIdleTime);
+        }
+
+        protected LdapContext createContext() throws NamingException
+        {
+            if (failCreate)
+            {
+                throw new NamingException("Server down");
+            }
+            int numOpen = open.incrementAndGet();
+            maxOpen.accumulateAndGet(numOpen, Math::max);
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{LdapContext.class}, new StubContext());
+        }
+
+        /**
+         * Context answering the validation read while the pool is valid, and counting closes.
+         */
+        class StubContext implements InvocationHandler
+        {
+            boolean closed = false;
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("getAttributes"))
+                {
+                    if (closed || !valid)
+                    {
+                        throw new NamingException("Connection lost");
+                    }
+                    return new BasicAttributes(true);
+                }
+                else if (method.getName().equals("close"))
+                {
+                    if (!closed)
+                    {
+                        closed = true;
+                        open.decrementAndGet();
+                    }
+                    return null;
+                }
+                else if (method.getName().equals("equals"))
+                {
+                    return proxy == args[0];
+                }
+                else if (method.getName().equals("hashCode"))
+                {
+                    return System.identityHashCode(proxy);
+                }
+                else if (method.getName().equals("toString"))
+                {
+                    return "StubContext@" + System.identityHashCode(proxy);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    public void testWarmUp()
+    {
+        StubPool pool = new StubPool(2, 1, 3, 4, -1, 0);
+        assertEquals(2, pool.getNumIdle());
+        assertEquals(0, pool.getNumActive());
+        assertEquals(2, pool.getNumOpen());
+        assertEquals(2, pool.getNumCreated());
+
+        // Warm up is at least the min idle, at most the max idle
+        assertEquals(2, new StubPool(0, 2, 3, 4, -1, 0).getNumIdle());
+        assertEquals(3, new StubPool(10, 0, 3, 4, -1, 0).getNumIdle());
+    }
+
+    public void testBorrowReusesIdleContexts() throws Exception
+    {
+        StubPool pool = new StubPool(1, 0, 2, 2, -1, 0);
+        LdapContext ctx1 = pool.borrowContext();
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(1, pool.getNumActive());
+        LdapContext ctx2 = pool.borrowContext();
+        assertNotSame(ctx1, ctx2);
+        assertEquals(2, pool.getNumCreated());
+
+        pool.returnContext(ctx2);
+        assertEquals(1, pool.getNumIdle());
+        assertSame(ctx2, pool.borrowContext());
+        assertEquals(2, pool.getNumCreated());
+        assertEquals(3, pool.getNumBorrowed());
+    }
+
+    public void testMaxIdle() throws Exception
+    {
+        StubPool pool = new StubPool(0, 0, 1, 3, -1, 0);
+        LdapContext ctx1 = pool.borrowContext();
+        LdapContext ctx2 = pool.borrowContext();
+        pool.returnContext(ctx1);
+        pool.returnContext(ctx2);
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(1, pool.getNumDestroyed());
+        assertEquals(1, open.get());
+    }
+
+    public void testTimeout() throws Exception
+    {
+        StubPool pool = new StubPool(0, 0, 1, 1, 50, 0);
+        LdapContext ctx = pool.borrowContext();
+        long start = System.currentTimeMillis();
+        try
+        {
+            pool.borrowContext();
+            fail("Pool should be exhausted");
+        }
+        catch (NucleusDataStoreException e)
+        {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start >= 40);
+        assertEquals(1, pool.getNumTimeouts());
+        assertEquals(1, pool.getNumActive());
+        assertTrue(pool.getMaxWaitTime() >= 40);
+
+        pool.returnContext(ctx);
+        assertSame(ctx, pool.borrowContext());
+    }
+
+    public void testWaitersServedInOrder() throws Exception
+    {
+        final StubPool pool = new StubPool(0, 0, 1, 1, -1, 0);
+        LdapContext ctx = pool.borrowContext();
+        final List<Integer> order = new ArrayList<Integer>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++)
+        {
+            final int id = i;
+            Thread thread = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        LdapContext borrowed = pool.borrowContext();
+                        synchronized (order)
+                        {
+                            order.add(id);
+                        }
+                        pool.returnContext(borrowed);
+                    }
+                    catch (NamingException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            // wait for the thread to queue before starting the next one
+            while (pool.getNumWaiting() < i + 1)
+            {
+                Thread.sleep(5);
+            }
+        }
+
+        pool.returnContext(ctx);
+        for (Thread thread : threads)
+        {
+            thread.join(5000);
+        }
+        assertEquals(3, order.size());
+        assertEquals(Integer.valueOf(0), order.get(0));
+        assertEquals(Integer.valueOf(1), order.get(1));
+        assertEquals(Integer.valueOf(2), order.get(2));
+        assertEquals(1, pool.getNumCreated());
+    }
+
+    public void testInvalidateContext() throws Exception
+    {
+        StubPool pool = new StubPool(0, 0, 1, 1, 50, 0);
+        LdapContext ctx = pool.borrowContext();
+        pool.invalidateContext(ctx);
+        assertEquals(0, pool.getNumActive());
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(0, open.get());
+
+        // the permit is released
+        assertNotSame(ctx, pool.borrowContext());
+    }
+
+    public void testCreateFailureReleasesPermit() throws Exception
+    {
+        StubPool pool = new StubPool(0, 0, 1, 1, 50, 0);
+        failCreate = true;
+        try
+        {
+            pool.borrowContext();
+            fail("Connection should fail");
+        }
+        catch (NamingException e)
+        {
+            // expected
+        }
+        assertEquals(0, pool.getNumOpen());
+
+        failCreate = false;
+        assertNotNull(pool.borrowContext());
+    }
+
+    public void testMaintainEvictsIdleContextsAboveMinIdle() throws Exception
+    {
+        StubPool pool = new StubPool(3, 1, 3, 3, -1, 1);
+        Thread.sleep(10);
+        pool.maintain();
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(2, pool.getNumDestroyed());
+        assertEquals(1, open.get());
+    }
+
+    public void testMaintainReplacesInvalidContexts() throws Exception
+    {
+        StubPool pool = new StubPool(2, 2, 2, 2, -1, 0);
+        valid = false;
+        pool.maintain();
+        assertEquals(2, pool.getNumValidationFailures());
+        assertEquals(2, pool.getNumDestroyed());
+
+        // topped back up to the min idle
+        assertEquals(2, pool.getNumIdle());
+        assertEquals(4, pool.getNumCreated());
+        assertEquals(2, open.get());
+    }
+
+    public void testMaintainTopUpWithinMaxSize() throws Exception
+    {
+        StubPool pool = new StubPool(0, 2, 2, 2, -1, 0);
+        LdapContext ctx1 = pool.borrowContext();
+        LdapContext ctx2 = pool.borrowContext();
+        pool.maintain();
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(2, pool.getNumOpen());
+
+        pool.returnContext(ctx1);
+        pool.maintain();
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(2, open.get());
+        pool.returnContext(ctx2);
+    }
+
+    public void testOpenContextsNeverExceedMaxSize() throws Exception
+    {
+        final StubPool pool = new StubPool(0, 3, 3, 4, -1, 0);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++)
+        {
+            new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int j = 0; j < 500; j++)
+                        {
+                            LdapContext ctx = pool.borrowContext();
+                            if (j % 7 == 0)
+                            {
+                                pool.invalidateContext(ctx);
+                            }
+                            else
+                            {
+                                pool.returnContext(ctx);
+                            }
+                        }
+                    }
+                    catch (Throwable t)
+                    {
+                        failure.set(t);
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        while (done.getCount() > 0)
+        {
+            pool.maintain();
+        }
+        done.await();
+
+        assertNull(failure.get());
+        assertTrue("max open was " + maxOpen.get(), maxOpen.get() <= 4);
+        assertEquals(0, pool.getNumActive());
+        assertEquals(open.get(), pool.getNumOpen());
+    }
+
+    public void testClose() throws Exception
+    {
+        StubPool pool = new StubPool(1, 0, 2, 2, -1, 0);
+        LdapContext ctx = pool.borrowContext();
+        pool.returnContext(pool.borrowContext());
+        pool.close();
+        assertEquals(0, pool.getNumIdle());
+
+        // contexts returned after the close are closed
+        pool.returnContext(ctx);
+        assertEquals(0, open.get());
+        try
+        {
+            pool.borrowContext();
+            fail("Pool should be closed");
+        }
+        catch (NucleusDataStoreException e)
+        {
+            // expected
+        }
+    }
+
+    public void testMetrics() throws Exception
+    {
+        StubPool pool = new StubPool(0, 0, 1, 1, 0, 0);
+        LdapContext ctx = pool.borrowContext();
+        try
+        {
+            pool.borrowContext();
+        }
+        catch (NucleusDataStoreException e)
+        {
+            // expected
+        }
+        pool.returnContext(ctx);
+        assertEquals(1, pool.getNumBorrowed());
+        assertEquals(1, pool.getNumTimeouts());
+        assertEquals(0, pool.getNumWaiting());
+        assertTrue(pool.getAverageWaitTime() >= 0);
+        assertTrue(pool.toString().contains("borrowed=1"));
+        assertTrue(pool.toString().contains("timeouts=1"));
+    }
+}
@@ -0,0 +1,125 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+
+import junit.framework.TestCase;
+
+import org.datanucleus.store.ldap.backend.InMemoryBackend;
+
+/**
+ * Tests for updating an entry with value-level modifications, and replacing all values when the entry was changed since it was read.
+ */
+public class LDAPPersistenceHandlerTest extends TestCase
+{
+    private static final String DN = "cn=admins,ou=groups,dc=example,dc=com";
+
+    private static final String BOB = "cn=Bob Smith,ou=people,dc=example,dc=com";
+
+    private static final String ANN = "cn=Ann Jones,ou=people,dc=example,dc=com";
+
+    private static final String JOE = "cn=Joe Smithers,ou=people,dc=example,dc=com";
+
+    private InMemoryBackend backend;
+
+    /** The replaced attributes of the update. */
+    private Attributes attrs;
+
+    /** The value modifications of the update, changing the members from Bob and Ann to Ann and Joe. */
+    private List<ModificationItem> valueMods;
+
+    /** All values of the attributes having value modifications. */
+    private Attributes replacements;
+
+    protected void setUp() throws Exception
+    {
+        backend = new InMemoryBackend();
+        Attributes group = new BasicAttributes(true);
+        group.put("objectClass", "groupOfNames");
+        group.put("description", "old");
+        BasicAttribute member = new BasicAttribute("member");
+        member.add(BOB);
+        member.add(ANN);
+        group.put(member);
+        backend.bind(DN, group);
+
+        attrs = new BasicAttributes();
+        attrs.put("description", "new");
+        valueMods = new ArrayList<ModificationItem>();
+        valueMods.add(new ModificationItem(DirContext.ADD_ATTRIBUTE, new BasicAttribute("member", JOE)));
+        valueMods.add(new ModificationItem(DirContext.REMOVE_ATTRIBUTE, new BasicAttribute("member", BOB)));
+        replacements = new BasicAttributes();
+        BasicAttribute all = new BasicAttribute("member");
+        all.add(ANN);
+        all.add(JOE);
+        replacements.put(all);
+    }
+
+    private void assertUpdated(String... members) throws Exception
+    {
+        Attributes entry = backend.getAttributes(DN, null);
+        assertEquals("new", entry.get("description").get());
+        Attribute member = entry.get("member");
+        assertEquals(members.length, member.size());
+        for (String value : members)
+        {
+            assertTrue(value, member.contains(value));
+        }
+    }
+
+    public void testValueModifications() throws Exception
+    {
+        LDAPPersistenceHandler.modifyAttributeValues(backend, DN, attrs, valueMods, replacements, null);
+        assertUpdated(ANN, JOE);
+    }
+
+    public void testValueAlreadyAdded() throws Exception
+    {
+        // Joe was added since the values were read, so the ADD is rejected (AttributeInUseException) and all values replaced
+        backend.modifyAttributes(DN, DirContext.ADD_ATTRIBUTE, new BasicAttributes("member", JOE));
+        LDAPPersistenceHandler.modifyAttributeValues(backend, DN, attrs, valueMods, replacements, null);
+        assertUpdated(ANN, JOE);
+    }
+
+    public void testValueAlreadyRemoved() throws Exception
+    {
+        // Bob was removed since the values were read, so the REMOVE is rejected (NoSuchAttributeException) and all values replaced
+        backend.modifyAttributes(DN, DirContext.REMOVE_ATTRIBUTE, new BasicAttributes("member", BOB));
+        LDAPPersistenceHandler.modifyAttributeValues(backend, DN, attrs, valueMods, replacements, null);
+        assertUpdated(ANN, JOE);
+    }
+
+    public void testReplacementOverridesOtherChanges() throws Exception
+    {
+        // values added by others are lost when replacing, as with an update without value modifications
+        backend.modifyAttributes(DN, new ModificationItem[]{
+            new ModificationItem(DirContext.ADD_ATTRIBUTE, new BasicAttribute("member", "cn=Jane Doe,ou=people,dc=example,dc=com")),
+            new ModificationItem(DirContext.REMOVE_ATTRIBUTE, new BasicAttribute("member", BOB))});
+        LDAPPersistenceHandler.modifyAttributeValues(backend, DN, attrs, valueMods, replacements, null);
+        assertUpdated(ANN, JOE);
+    }
+}
@@ -0,0 +1,318 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.datanucleus.ClassLoaderResolver;
+import org.datanucleus.ClassLoaderResolverImpl;
+import org.datanucleus.NucleusContext;
+import org.datanucleus.metadata.AbstractClassMetaData;
+import org.datanucleus.metadata.AbstractMemberMetaData;
+import org.datanucleus.metadata.ClassMetaData;
+import org.datanucleus.metadata.ElementMetaData;
+import org.datanucleus.metadata.FieldMetaData;
+import org.datanucleus.metadata.FileMetaData;
+import org.datanucleus.metadata.MetaDataManager;
+import org.datanucleus.metadata.PackageMetaData;
+import org.datanucleus.store.ldap.fieldmanager.RelationByDnMetaData;
+
+/**
+ * Tests for the index of the references to remove on delete, checking that it gives the references found by scanning
+ * the metadata of all classes for each delete.
+ */
+public class LDAPReferenceIndexTest extends TestCase
+{
+    public static class Person
+    {
+    }
+
+    public static class Employee extends Person
+    {
+    }
+
+    public abstract static class AbstractGroup
+    {
+    }
+
+    public static class Team extends AbstractGroup
+    {
+    }
+
+    public static class Department
+    {
+    }
+
+    public static class Project
+    {
+    }
+
+    private static final PackageMetaData PACKAGE = new FileMetaData().newPackageMetadata(LDAPReferenceIndexTest.class.getPackage().getName());
+
+    /**
+     * Metadata for a class, with relations by DN.
+     */
+    private static class TestClassMetaData extends ClassMetaData
+    {
+        private final List<AbstractMemberMetaData> members = new ArrayList<AbstractMemberMetaData>();
+
+        TestClassMetaData(Class cls)
+        {
+            super(PACKAGE, cls.getName().substring(PACKAGE.getName().length() + 1));
+        }
+
+        /**
+         * Adds a relation by DN.
+         * @param fieldName Name of the field, which is the attribute name
+         * @param type The referred class
+         * @param elementColumn Attribute of the referred entries, for a relation with element (else null)
+         * @return This metadata
+         */
+        TestClassMetaData addRelation(String fieldName, final Class type, String elementColumn)
+        {
+            FieldMetaData mmd = new FieldMetaData(this, fieldName)
+            {
+                public Class getType()
+                {
+                    return type;
+                }
+            };
+            mmd.addExtension(LDAPStoreManager.MAPPING_STRATEGY_EXTENSON, "dn");
+            if (elementColumn != null)
+            {
+                ElementMetaData elementMetaData = new ElementMetaData();
+                elementMetaData.setColumnName(elementColumn);
+                mmd.setElementMetaData(elementMetaData);
+            }
+            members.add(mmd);
+            return this;
+        }
+
+        public int[] getAllMemberPositions()
+        {
+            int[] positions = new int[members.size()];
+            for (int i = 0; i < positions.length; i++)
+            {
+                positions[i] = i;
+            }
+            return positions;
+        }
+
+        public AbstractMemberMetaData getMetaDataForManagedMemberAtAbsolutePosition(int position)
+        {
+            return members.get(position);
+        }
+    }
+
+    private final ClassLoaderResolver clr = new ClassLoaderResolverImpl();
+
+    /** Metadata of the classes, keyed by class name. */
+    private final Map<String, AbstractClassMetaData> classes = new LinkedHashMap<String, AbstractClassMetaData>();
+
+    private MetaDataManager mmgr;
+
+    private LDAPReferenceIndex index;
+
+    protected void setUp() throws Exception
+    {
+        final NucleusContext nucleusContext = (NucleusContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{NucleusContext.class},
+            new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                {
+                    if (method.getName().equals("getClassLoaderResolver"))
+                    {
+                        return clr;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        mmgr = (MetaDataManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{MetaDataManager.class}, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("getNucleusContext"))
+                {
+                    return nucleusContext;
+                }
+                else if (method.getName().equals("getClassesWithMetaData"))
+                {
+                    return new ArrayList<String>(classes.keySet());
+                }
+                else if (method.getName().equals("getMetaDataForClass"))
+                {
+                    Object cls = args[0];
+                    return cls == null ? null : classes.get(cls instanceof Class ? ((Class) cls).getName() : (String) cls);
+                }
+                else if (method.getName().equals("getSubclassesForClass"))
+                {
+                    List<String> subclassNames = new ArrayList<String>();
+                    Class superclass = clr.classForName((String) args[0]);
+                    for (String className : classes.keySet())
+                    {
+                        if (!className.equals(args[0]) && superclass.isAssignableFrom(clr.classForName(className)))
+                        {
+                            subclassNames.add(className);
+                        }
+                    }
+                    return subclassNames.isEmpty() ? null : subclassNames.toArray(new String[subclassNames.size()]);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        addClass(new TestClassMetaData(Person.class));
+        addClass(new TestClassMetaData(Employee.class).addRelation("manager", Person.class, null));
+        addClass(new TestClassMetaData(AbstractGroup.class).addRelation("owner", Person.class, null));
+        addClass(new TestClassMetaData(Team.class).addRelation("owner", Person.class, null).addRelation("member", Employee.class, null));
+        addClass(new TestClassMetaData(Department.class).addRelation("staff", Person.class, "departmentMember")
+            .addRelation("head", Employee.class, null).addRelation("teams", AbstractGroup.class, "department"));
+        index = new LDAPReferenceIndex(mmgr);
+    }
+
+    private void addClass(AbstractClassMetaData cmd)
+    {
+        classes.put(cmd.getFullClassName(), cmd);
+    }
+
+    private AbstractClassMetaData getClass(Class cls)
+    {
+        return classes.get(cls.getName());
+    }
+
+    /**
+     * The references to remove when deleting an object of the class, by scanning all classes (as before the index).
+     */
+    private List<String> scan(AbstractClassMetaData cmd)
+    {
+        List<String> references = new ArrayList<String>();
+
+        // this class has a DN reference with element
+        for (int fieldNumber : cmd.getAllMemberPositions())
+        {
+            AbstractMemberMetaData mmd = cmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
+            if (RelationByDnMetaData.isRelationByDn(mmd, mmgr) && mmd.getElementMetaData() != null)
+            {
+                AbstractClassMetaData otherCmd = LDAPUtils.getEffectiveClassMetaData(mmd, mmgr);
+                if (!isAbstract(otherCmd))
+                {
+                    references.add(otherCmd.getFullClassName() + "." + mmd.getElementMetaData().getColumnName());
+                }
+            }
+        }
+
+        // any other class has a DN reference to this class
+        for (String className : mmgr.getClassesWithMetaData())
+        {
+            AbstractClassMetaData otherCmd = mmgr.getMetaDataForClass(className, clr);
+            if (otherCmd.isEmbeddedOnly() || isAbstract(otherCmd))
+            {
+                continue;
+            }
+            for (int fieldNumber : otherCmd.getAllMemberPositions())
+            {
+                AbstractMemberMetaData mmd = otherCmd.getMetaDataForManagedMemberAtAbsolutePosition(fieldNumber);
+                if (RelationByDnMetaData.isRelationByDn(mmd, mmgr))
+                {
+                    AbstractClassMetaData effectiveCmd = LDAPUtils.getEffectiveClassMetaData(mmd, mmgr);
+                    String[] subclassNames = effectiveCmd != null ? mmgr.getSubclassesForClass(effectiveCmd.getFullClassName(), true) : null;
+                    if (effectiveCmd == cmd || (subclassNames != null && Arrays.asList(subclassNames).contains(cmd.getFullClassName())))
+                    {
+                        references.add(otherCmd.getFullClassName() + "." + LDAPUtils.getAttributeNameForField(mmd));
+                    }
+                }
+            }
+        }
+        Collections.sort(references);
+        return references;
+    }
+
+    private boolean isAbstract(AbstractClassMetaData cmd)
+    {
+        Class c = clr.classForName(cmd.getFullClassName());
+        return c.isInterface() || Modifier.isAbstract(c.getModifiers());
+    }
+
+    private List<String> getReferencesForDelete(Class cls)
+    {
+        List<String> references = new ArrayList<String>();
+        for (LDAPReferenceIndex.Reference reference : index.getReferencesForDelete(getClass(cls), clr))
+        {
+            assertTrue(reference.isByDn());
+            references.add(reference.toString());
+        }
+        Collections.sort(references);
+        assertEquals(scan(getClass(cls)), references);
+        return references;
+    }
+
+    private static String reference(Class cls, String attributeName)
+    {
+        return cls.getName() + "." + attributeName;
+    }
+
+    public void testReferencesToClass() throws Exception
+    {
+        // the references declared to the abstract class are held by Team entries, not by the abstract class
+        assertEquals(Arrays.asList(reference(Department.class, "staff"), reference(Employee.class, "manager"), reference(Team.class, "owner")),
+            getReferencesForDelete(Person.class));
+    }
+
+    public void testReferencesToSubclass() throws Exception
+    {
+        // the references to Person, plus those to Employee
+        assertEquals(Arrays.asList(reference(Department.class, "head"), reference(Department.class, "staff"), reference(Employee.class, "manager"),
+            reference(Team.class, "member"), reference(Team.class, "owner")), getReferencesForDelete(Employee.class));
+    }
+
+    public void testReferencesWithElement() throws Exception
+    {
+        // the other side of the relations with element, except to the abstract class
+        assertEquals(Arrays.asList(reference(Person.class, "departmentMember")), getReferencesForDelete(Department.class));
+
+        // whereas the references to the abstract class are removed when deleting an object of its subclass
+        assertEquals(Arrays.asList(reference(Department.class, "teams")), getReferencesForDelete(Team.class));
+    }
+
+    public void testClassLoadedAfterResolve() throws Exception
+    {
+        List<String> references = getReferencesForDelete(Employee.class);
+        assertSame(index.getReferencesForDelete(getClass(Employee.class), clr), index.getReferencesForDelete(getClass(Employee.class), clr));
+
+        AbstractClassMetaData cmd = new TestClassMetaData(Project.class).addRelation("lead", Employee.class, null).addRelation("team", Team.class, "project");
+        addClass(cmd);
+        index.classLoaded(cmd);
+        List<String> newReferences = new ArrayList<String>(references);
+        newReferences.add(reference(Project.class, "lead"));
+        Collections.sort(newReferences);
+        assertEquals(newReferences, getReferencesForDelete(Employee.class));
+        assertEquals(Arrays.asList(reference(Department.class, "teams"), reference(Project.class, "team")), getReferencesForDelete(Team.class));
+        assertEquals(Arrays.asList(reference(Team.class, "project")), getReferencesForDelete(Project.class));
+    }
+}
@@ -0,0 +1,132 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+import junit.framework.TestCase;
+
+import org.datanucleus.store.ldap.backend.InMemoryBackend;
+
+/**
+ * Tests for the detection of the server capabilities, in particular of the DN references the server maintains on delete.
+ */
+public class LDAPServerCapabilitiesTest extends TestCase
+{
+    private static final String DS389_PLUGIN_DN = "cn=referential integrity postoperation,cn=plugins,cn=config";
+
+    private InMemoryBackend backend;
+
+    /** Attributes of the root DSE returned by the backend. */
+    private Attributes rootDse;
+
+    protected void setUp() throws Exception
+    {
+        rootDse = new BasicAttributes(true);
+        rootDse.put("vendorName", "Test");
+        backend = new InMemoryBackend()
+        {
+            public Attributes getAttributes(String dn, String[] attrIds) throws NamingException
+            {
+                return dn.length() == 0 ? rootDse : super.getAttributes(dn, attrIds);
+            }
+        };
+    }
+
+    private Attributes ds389Plugin(String enabled)
+    {
+        Attributes attrs = new BasicAttributes(true);
+        attrs.put("objectClass", "nsSlapdPlugin");
+        attrs.put("nsslapd-pluginEnabled", enabled);
+        return attrs;
+    }
+
+    public void testActiveDirectoryNotAssumed() throws Exception
+    {
+        // Active Directory only maintains its linked attributes, so nothing is known about others
+        rootDse.put("supportedCapabilities", LDAPServerCapabilities.ACTIVE_DIRECTORY_OID);
+        LDAPServerCapabilities caps = LDAPServerCapabilities.probe(backend);
+        assertTrue(caps.hasCapability(LDAPServerCapabilities.ACTIVE_DIRECTORY_OID));
+        assertNull(caps.getReferentialIntegrityAttributes());
+    }
+
+    public void testNoReferentialIntegrity() throws Exception
+    {
+        assertNull(LDAPServerCapabilities.probe(backend).getReferentialIntegrityAttributes());
+    }
+
+    public void test389MembershipAttributes() throws Exception
+    {
+        Attributes attrs = ds389Plugin("on");
+        BasicAttribute membershipAttr = new BasicAttribute("referint-membership-attr");
+        membershipAttr.add("member");
+        membershipAttr.add("uniqueMember");
+        attrs.put(membershipAttr);
+        backend.bind(DS389_PLUGIN_DN, attrs);
+
+        assertEquals(new HashSet<String>(Arrays.asList("member", "uniquemember")), LDAPServerCapabilities.probe(backend).getReferentialIntegrityAttributes());
+    }
+
+    public void test389PluginArguments() throws Exception
+    {
+        // Older versions : delay, log file and log change, then the attributes
+        Attributes attrs = ds389Plugin("on");
+        attrs.put("nsslapd-pluginarg0", "0");
+        attrs.put("nsslapd-pluginarg1", "/var/log/dirsrv/slapd-example/referint");
+        attrs.put("nsslapd-pluginarg2", "0");
+        attrs.put("nsslapd-pluginarg3", "member");
+        attrs.put("nsslapd-pluginarg4", "owner");
+        backend.bind(DS389_PLUGIN_DN, attrs);
+
+        assertEquals(new HashSet<String>(Arrays.asList("member", "owner")), LDAPServerCapabilities.probe(backend).getReferentialIntegrityAttributes());
+    }
+
+    public void test389AttributesNotReadable() throws Exception
+    {
+        // Enabled, but the attributes are not known so none is taken as maintained
+        backend.bind(DS389_PLUGIN_DN, ds389Plugin("on"));
+        assertNull(LDAPServerCapabilities.probe(backend).getReferentialIntegrityAttributes());
+    }
+
+    public void test389Disabled() throws Exception
+    {
+        Attributes attrs = ds389Plugin("off");
+        attrs.put("referint-membership-attr", "member");
+        backend.bind(DS389_PLUGIN_DN, attrs);
+        assertNull(LDAPServerCapabilities.probe(backend).getReferentialIntegrityAttributes());
+    }
+
+    public void testOpenLDAPOverlay() throws Exception
+    {
+        Attributes attrs = new BasicAttributes(true);
+        attrs.put("objectClass", "olcRefintConfig");
+        BasicAttribute refintAttr = new BasicAttribute("olcRefintAttribute");
+        refintAttr.add("member");
+        refintAttr.add("seeAlso");
+        attrs.put(refintAttr);
+        backend.bind("olcOverlay={0}refint,olcDatabase={1}mdb,cn=config", attrs);
+
+        assertEquals(new HashSet<String>(Arrays.asList("member", "seealso")), LDAPServerCapabilities.probe(backend).getReferentialIntegrityAttributes());
+    }
+}
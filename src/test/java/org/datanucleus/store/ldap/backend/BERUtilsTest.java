@@ -0,0 +1,201 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import java.util.Arrays;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.InvalidSearchFilterException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the BER encoding and decoding of control and extended operation values.
+ */
+public class BERUtilsTest extends TestCase
+{
+    private static byte[] bytes(int... values)
+    {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static void assertBytes(byte[] expected, byte[] actual)
+    {
+        assertTrue("expected " + Arrays.toString(expected) + " but was " + Arrays.toString(actual), Arrays.equals(expected, actual));
+    }
+
+    public void testEncodeBoolean()
+    {
+        assertBytes(bytes(0x01, 0x01, 0xFF), BERUtils.encodeBoolean(true));
+        assertBytes(bytes(0x01, 0x01, 0x00), BERUtils.encodeBoolean(false));
+    }
+
+    public void testEncodeInteger()
+    {
+        assertBytes(bytes(0x02, 0x01, 0x00), BERUtils.encodeInteger(0));
+        assertBytes(bytes(0x02, 0x01, 0x7F), BERUtils.encodeInteger(127));
+        assertBytes(bytes(0x02, 0x02, 0x00, 0x80), BERUtils.encodeInteger(128));
+        assertBytes(bytes(0x02, 0x02, 0x01, 0x00), BERUtils.encodeInteger(256));
+        assertBytes(bytes(0x02, 0x01, 0xFF), BERUtils.encodeInteger(-1));
+        assertBytes(bytes(0x02, 0x01, 0x80), BERUtils.encodeInteger(-128));
+        assertBytes(bytes(0x02, 0x02, 0xFF, 0x7F), BERUtils.encodeInteger(-129));
+        assertBytes(bytes(0x0A, 0x01, 0x03), BERUtils.encodeInteger(BERUtils.TAG_ENUMERATED, 3));
+    }
+
+    public void testEncodeOctetString()
+    {
+        assertBytes(bytes(0x04, 0x02, 'c', 'n'), BERUtils.encodeOctetString("cn"));
+        assertBytes(bytes(0x04, 0x02, 0xC3, 0xBC), BERUtils.encodeOctetString("\u00fc"));
+        assertBytes(bytes(0x80, 0x01, 0x07), BERUtils.encodeOctetString(0x80, bytes(0x07)));
+    }
+
+    public void testEncodeLongLengths()
+    {
+        byte[] encoded = BERUtils.encodeOctetString(new byte[200]);
+        assertEquals(203, encoded.length);
+        assertBytes(bytes(0x04, 0x81, 0xC8), Arrays.copyOf(encoded, 3));
+
+        encoded = BERUtils.encodeOctetString(new byte[300]);
+        assertEquals(304, encoded.length);
+        assertBytes(bytes(0x04, 0x82, 0x01, 0x2C), Arrays.copyOf(encoded, 4));
+    }
+
+    public void testEncodeSequenceSkipsNulls()
+    {
+        assertBytes(bytes(0x30, 0x00), BERUtils.encodeSequence());
+        assertBytes(bytes(0x30, 0x06, 0x01, 0x01, 0xFF, 0x02, 0x01, 0x05),
+            BERUtils.encodeSequence(BERUtils.encodeBoolean(true), null, BERUtils.encodeInteger(5)));
+    }
+
+    public void testEncodeTransactionEndRequest()
+    {
+        // txnEndReq ::= SEQUENCE { commit BOOLEAN DEFAULT TRUE, identifier OCTET STRING }, as sent by LDAPTransaction.end
+        byte[] txnId = bytes(0x12, 0x34);
+        assertBytes(bytes(0x30, 0x04, 0x04, 0x02, 0x12, 0x34),
+            BERUtils.encodeSequence(null, BERUtils.encodeOctetString(txnId)));
+        assertBytes(bytes(0x30, 0x07, 0x01, 0x01, 0x00, 0x04, 0x02, 0x12, 0x34),
+            BERUtils.encodeSequence(BERUtils.encodeBoolean(false), BERUtils.encodeOctetString(txnId)));
+    }
+
+    public void testEncodeFilterItems() throws Exception
+    {
+        // equalityMatch [3] AttributeValueAssertion
+        assertBytes(bytes(0xA3, 0x07, 0x04, 0x02, 'c', 'n', 0x04, 0x01, 'a'), BERUtils.encodeFilter("(cn=a)"));
+        // greaterOrEqual [5], lessOrEqual [6]
+        assertBytes(bytes(0xA5, 0x08, 0x04, 0x03, 'a', 'g', 'e', 0x04, 0x01, '5'), BERUtils.encodeFilter("(age>=5)"));
+        assertBytes(bytes(0xA6, 0x08, 0x04, 0x03, 'a', 'g', 'e', 0x04, 0x01, '5'), BERUtils.encodeFilter("(age<=5)"));
+        // present [7] AttributeDescription
+        assertBytes(bytes(0x87, 0x04, 'm', 'a', 'i', 'l'), BERUtils.encodeFilter("(mail=*)"));
+    }
+
+    public void testEncodeFilterUnescapesValues() throws Exception
+    {
+        assertBytes(bytes(0xA3, 0x08, 0x04, 0x02, 'c', 'n', 0x04, 0x02, 'a', '*'), BERUtils.encodeFilter("(cn=a\\2a)"));
+    }
+
+    public void testEncodeSubstringFilter() throws Exception
+    {
+        // substrings [4] SEQUENCE { type, SEQUENCE OF CHOICE { initial [0], any [1], final [2] } }
+        assertBytes(bytes(0xA4, 0x0F, 0x04, 0x02, 'c', 'n', 0x30, 0x09, 0x80, 0x01, 'a', 0x81, 0x01, 'b', 0x82, 0x01, 'c'),
+            BERUtils.encodeFilter("(cn=a*b*c)"));
+        assertBytes(bytes(0xA4, 0x09, 0x04, 0x02, 'c', 'n', 0x30, 0x03, 0x82, 0x01, 'c'), BERUtils.encodeFilter("(cn=*c)"));
+    }
+
+    public void testEncodeBranchFilters() throws Exception
+    {
+        // and [0] SET OF Filter, not [2] Filter
+        assertBytes(bytes(0xA0, 0x14, 0xA3, 0x07, 0x04, 0x02, 'c', 'n', 0x04, 0x01, 'a', 0xA2, 0x09, 0xA3, 0x07, 0x04, 0x02, 's', 'n', 0x04, 0x01, 'b'),
+            BERUtils.encodeFilter("(&(cn=a)(!(sn=b)))"));
+        // or [1] SET OF Filter
+        assertBytes(bytes(0xA1, 0x0F, 0xA3, 0x07, 0x04, 0x02, 'c', 'n', 0x04, 0x01, 'a', 0x87, 0x04, 'm', 'a', 'i', 'l'),
+            BERUtils.encodeFilter("(|(cn=a)(mail=*))"));
+    }
+
+    public void testEncodeValuesReturnFilter() throws Exception
+    {
+        // SEQUENCE OF SimpleFilterItem
+        assertBytes(bytes(0x30, 0x0F, 0xA3, 0x07, 0x04, 0x02, 'c', 'n', 0x04, 0x01, 'a', 0x87, 0x04, 'm', 'a', 'i', 'l'),
+            BERUtils.encodeValuesReturnFilter("(cn=a)", "(mail=*)"));
+        try
+        {
+            BERUtils.encodeValuesReturnFilter("(|(cn=a)(cn=b))");
+            fail("OR is not a simple filter item");
+        }
+        catch (InvalidSearchFilterException e)
+        {
+            // expected
+        }
+    }
+
+    public void testDecodeEntry() throws Exception
+    {
+        // SearchResultEntry ::= [APPLICATION 4] SEQUENCE { objectName LDAPDN, attributes PartialAttributeList }
+        byte[] value = BERUtils.encodeConstructed(BERUtils.TAG_SEARCH_RESULT_ENTRY, BERUtils.encodeOctetString("cn=a,dc=example"),
+            BERUtils.encodeSequence(
+                BERUtils.encodeSequence(BERUtils.encodeOctetString("entryUUID"),
+                    BERUtils.encodeConstructed(BERUtils.TAG_SET, BERUtils.encodeOctetString("1234"))),
+                BERUtils.encodeSequence(BERUtils.encodeOctetString("mail"),
+                    BERUtils.encodeConstructed(BERUtils.TAG_SET, BERUtils.encodeOctetString("a@example"), BERUtils.encodeOctetString("\u00fc@example"))),
+                BERUtils.encodeSequence(BERUtils.encodeOctetString("description"),
+                    BERUtils.encodeConstructed(BERUtils.TAG_SET, BERUtils.encodeOctetString(new String(new char[200]).replace('\0', 'x'))))));
+        Attributes attrs = BERUtils.decodeEntry(value);
+        assertEquals(3, attrs.size());
+        assertEquals("1234", attrs.get("ENTRYUUID").get());
+        assertEquals(2, attrs.get("mail").size());
+        assertEquals("\u00fc@example", attrs.get("mail").get(1));
+        assertEquals(200, ((String) attrs.get("description").get()).length());
+    }
+
+    public void testDecodeEntryWithoutAttributes() throws Exception
+    {
+        byte[] value = BERUtils.encodeConstructed(BERUtils.TAG_SEARCH_RESULT_ENTRY, BERUtils.encodeOctetString("cn=a"), BERUtils.encodeSequence());
+        assertEquals(0, BERUtils.decodeEntry(value).size());
+    }
+
+    public void testDecodeInvalidEntry()
+    {
+        byte[] entry = BERUtils.encodeConstructed(BERUtils.TAG_SEARCH_RESULT_ENTRY, BERUtils.encodeOctetString("cn=a"), BERUtils.encodeSequence(
+            BERUtils.encodeSequence(BERUtils.encodeOctetString("cn"), BERUtils.encodeConstructed(BERUtils.TAG_SET, BERUtils.encodeOctetString("a")))));
+        byte[][] invalidValues = {
+            // wrong tag
+            BERUtils.encodeSequence(BERUtils.encodeOctetString("cn=a"), BERUtils.encodeSequence()),
+            // truncated
+            Arrays.copyOf(entry, entry.length - 1),
+            // length exceeding the value
+            bytes(0x64, 0x84, 0x7F, 0xFF, 0xFF, 0xFF),
+            new byte[0]};
+        for (byte[] invalidValue : invalidValues)
+        {
+            try
+            {
+                BERUtils.decodeEntry(invalidValue);
+                fail("Value should be invalid : " + Arrays.toString(invalidValue));
+            }
+            catch (NamingException e)
+            {
+                // expected
+            }
+        }
+    }
+}
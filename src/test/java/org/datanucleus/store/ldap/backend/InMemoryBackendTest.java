@@ -0,0 +1,438 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.ContextNotEmptyException;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.AttributeInUseException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.NoSuchAttributeException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the in-memory directory backend.
+ */
+public class InMemoryBackendTest extends TestCase
+{
+    private InMemoryBackend backend;
+
+    protected void setUp() throws Exception
+    {
+        backend = new InMemoryBackend();
+        backend.bind("cn=Bob Smith,ou=people,dc=example,dc=com", person("Bob Smith", "Smith", 42));
+        backend.bind("cn=Ann Jones,ou=people,dc=example,dc=com", person("Ann Jones", "Jones", 7));
+        backend.bind("cn=Joe Smithers,ou=people,dc=example,dc=com", person("Joe Smithers", "Smithers", 100));
+    }
+
+    private static Attributes person(String cn, String sn, int age)
+    {
+        Attributes attrs = new BasicAttributes(true);
+        attrs.put("objectClass", "person");
+        attrs.put("cn", cn);
+        attrs.put("sn", sn);
+        attrs.put("age", String.valueOf(age));
+        return attrs;
+    }
+
+    private List<String> search(String base, String filter, int scope) throws Exception
+    {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(scope);
+        controls.setReturningAttributes(new String[]{"1.1"});
+        List<String> dns = new ArrayList<String>();
+        NamingEnumeration<SearchResult> results = backend.search(base, filter, controls);
+        while (results.hasMore())
+        {
+            dns.add(results.next().getNameInNamespace());
+        }
+        return dns;
+    }
+
+    private List<String> searchPeople(String filter) throws Exception
+    {
+        return search("ou=people,dc=example,dc=com", filter, SearchControls.ONELEVEL_SCOPE);
+    }
+
+    public void testBindCreatesParents() throws Exception
+    {
+        // 3 entries, plus ou=people, dc=example and dc=com
+        assertEquals(6, backend.size());
+        Attributes parent = backend.getAttributes("ou=people,dc=example,dc=com", null);
+        assertEquals("top", parent.get("objectClass").get());
+        assertEquals("people", parent.get("ou").get());
+    }
+
+    public void testBindAddsRdnValue() throws Exception
+    {
+        Attributes attrs = new BasicAttributes(true);
+        attrs.put("objectClass", "person");
+        backend.bind("cn=No Name,ou=people,dc=example,dc=com", attrs);
+        assertEquals("No Name", backend.getAttributes("cn=No Name,ou=people,dc=example,dc=com", null).get("cn").get());
+    }
+
+    public void testBindExisting() throws Exception
+    {
+        try
+        {
+            backend.bind("CN=bob smith,ou=People,dc=example,dc=com", person("Bob Smith", "Smith", 1));
+            fail("Entry should already exist");
+        }
+        catch (NameAlreadyBoundException e)
+        {
+            // expected
+        }
+    }
+
+    public void testGetAttributes() throws Exception
+    {
+        Attributes attrs = backend.getAttributes("cn=Bob Smith,ou=people,dc=example,dc=com", new String[]{"SN", "missing"});
+        assertEquals(1, attrs.size());
+        assertEquals("Smith", attrs.get("sn").get());
+
+        attrs = backend.getAttributes("cn=Bob Smith,ou=people,dc=example,dc=com", new String[]{"*"});
+        assertEquals(4, attrs.size());
+
+        try
+        {
+            backend.getAttributes("cn=Nobody,ou=people,dc=example,dc=com", null);
+            fail("Entry should not exist");
+        }
+        catch (NameNotFoundException e)
+        {
+            // expected
+        }
+    }
+
+    public void testSearchFilters() throws Exception
+    {
+        assertEquals(3, searchPeople("(objectClass=person)").size());
+        assertEquals(1, searchPeople("(sn=SMITH)").size());
+        assertEquals(2, searchPeople("(sn=smith*)").size());
+        assertEquals(1, searchPeople("(cn=*s*th*rs)").size());
+        assertEquals(2, searchPeople("(|(sn=Jones)(sn=Smith))").size());
+        assertEquals(1, searchPeople("(&(sn=Smith*)(!(sn=Smithers)))").size());
+        assertEquals(3, searchPeople("(age=*)").size());
+        assertEquals(0, searchPeople("(mail=*)").size());
+    }
+
+    public void testSearchOrderingIsNumeric() throws Exception
+    {
+        // "7" <= "42" <= "100" numerically, not as strings
+        assertEquals(2, searchPeople("(age>=42)").size());
+        assertEquals(2, searchPeople("(age<=42)").size());
+        assertEquals(1, searchPeople("(&(age>=8)(age<=99))").size());
+    }
+
+    public void testSearchEscapedValue() throws Exception
+    {
+        backend.bind("cn=a*b,ou=people,dc=example,dc=com", person("a*b", "Star", 1));
+        assertEquals(1, searchPeople("(cn=a\\2ab)").size());
+        assertEquals(2, searchPeople("(cn=a*)").size());
+    }
+
+    public void testSearchScopes() throws Exception
+    {
+        assertEquals(1, search("cn=Bob Smith,ou=people,dc=example,dc=com", "(objectClass=*)", SearchControls.OBJECT_SCOPE).size());
+        assertEquals(1, search("dc=example,dc=com", "(objectClass=*)", SearchControls.ONELEVEL_SCOPE).size());
+        assertEquals(3, search("dc=example,dc=com", "(objectClass=person)", SearchControls.SUBTREE_SCOPE).size());
+        assertEquals(5, search("dc=example,dc=com", "(objectClass=*)", SearchControls.SUBTREE_SCOPE).size());
+    }
+
+    public void testSearchCountLimit() throws Exception
+    {
+        SearchControls controls = new SearchControls();
+        controls.setCountLimit(2);
+        assertEquals(2, backend.searchPaged("ou=people,dc=example,dc=com", "(objectClass=person)", controls, 1).size());
+    }
+
+    public void testSearchPagedByPage() throws Exception
+    {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+        final List<Integer> pageSizes = new ArrayList<Integer>();
+        backend.searchPaged("ou=people,dc=example,dc=com", "(objectClass=person)", controls, 2, results ->
+        {
+            pageSizes.add(results.size());
+
+            // The entries of a page can be written before the next page is read
+            for (SearchResult result : results)
+            {
+                backend.unbind(result.getNameInNamespace());
+            }
+        });
+        assertEquals(2, pageSizes.size());
+        assertEquals(Integer.valueOf(2), pageSizes.get(0));
+        assertEquals(Integer.valueOf(1), pageSizes.get(1));
+        assertTrue(searchPeople("(objectClass=person)").isEmpty());
+    }
+
+    public void testSearchMatchedValues() throws Exception
+    {
+        String dn = "cn=Team,ou=groups,dc=example,dc=com";
+        Attributes attrs = new BasicAttributes(true);
+        attrs.put("objectClass", "groupOfNames");
+        BasicAttribute member = new BasicAttribute("member");
+        member.add("cn=Bob Smith,ou=people,dc=example,dc=com");
+        member.add("cn=Ann Jones,ou=people,dc=example,dc=com");
+        attrs.put(member);
+        attrs.put("owner", "cn=Joe Smithers,ou=people,dc=example,dc=com");
+        backend.bind(dn, attrs);
+
+        // Only the matching values are returned, and attributes without any are omitted
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+        controls.setReturningAttributes(new String[]{"member", "owner"});
+        String[] valueFilters = {"(member=cn=Ann Jones,ou=people,dc=example,dc=com)", "(owner=cn=Ann Jones,ou=people,dc=example,dc=com)"};
+        NamingEnumeration<SearchResult> results = backend.search("ou=groups,dc=example,dc=com",
+            "(|(member=cn=Ann Jones,ou=people,dc=example,dc=com)(owner=cn=Ann Jones,ou=people,dc=example,dc=com))", controls, valueFilters);
+        assertTrue(results.hasMore());
+        Attributes resultAttrs = results.next().getAttributes();
+        assertFalse(results.hasMore());
+        assertEquals(1, resultAttrs.size());
+        assertEquals(1, resultAttrs.get("member").size());
+        assertEquals("cn=Ann Jones,ou=people,dc=example,dc=com", resultAttrs.get("member").get());
+        assertEquals(2, backend.getAttributes(dn, null).get("member").size());
+    }
+
+    public void testModifyAttributes() throws Exception
+    {
+        String dn = "cn=Bob Smith,ou=people,dc=example,dc=com";
+        backend.modifyAttributes(dn, new ModificationItem[]{
+            new ModificationItem(DirContext.ADD_ATTRIBUTE, new BasicAttribute("mail", "bob@example.com")),
+            new ModificationItem(DirContext.REPLACE_ATTRIBUTE, new BasicAttribute("age", "43")),
+            new ModificationItem(DirContext.REMOVE_ATTRIBUTE, new BasicAttribute("sn"))});
+        Attributes attrs = backend.getAttributes(dn, null);
+        assertEquals("bob@example.com", attrs.get("mail").get());
+        assertEquals("43", attrs.get("age").get());
+        assertNull(attrs.get("sn"));
+
+        backend.modifyAttributes(dn, DirContext.ADD_ATTRIBUTE, new BasicAttributes("mail", "smith@example.com", true));
+        assertEquals(2, backend.getAttributes(dn, null).get("mail").size());
+        backend.modifyAttributes(dn, DirContext.REMOVE_ATTRIBUTE, new BasicAttributes("mail", "BOB@example.com", true));
+        attrs = backend.getAttributes(dn, null);
+        assertEquals(1, attrs.get("mail").size());
+        assertEquals("smith@example.com", attrs.get("mail").get());
+    }
+
+    public void testModifyAttributesIsAtomic() throws Exception
+    {
+        String dn = "cn=Bob Smith,ou=people,dc=example,dc=com";
+        try
+        {
+            backend.modifyAttributes(dn, new ModificationItem[]{
+                new ModificationItem(DirContext.REPLACE_ATTRIBUTE, new BasicAttribute("age", "43")),
+                new ModificationItem(DirContext.REMOVE_ATTRIBUTE, new BasicAttribute("mail"))});
+            fail("Removing a missing attribute should fail");
+        }
+        catch (NoSuchAttributeException e)
+        {
+            // expected
+        }
+        assertEquals("42", backend.getAttributes(dn, null).get("age").get());
+
+        try
+        {
+            backend.modifyAttributes(dn, DirContext.ADD_ATTRIBUTE, new BasicAttributes("sn", "smith", true));
+            fail("Adding an existing value should fail");
+        }
+        catch (AttributeInUseException e)
+        {
+            // expected
+        }
+    }
+
+    public void testRename() throws Exception
+    {
+        backend.bind("cn=child,cn=Bob Smith,ou=people,dc=example,dc=com", new BasicAttributes("objectClass", "top", true));
+        backend.bind("ou=staff,dc=example,dc=com", new BasicAttributes("objectClass", "organizationalUnit", true));
+        backend.rename("cn=Bob Smith,ou=people,dc=example,dc=com", "cn=Robert Smith,ou=staff,dc=example,dc=com");
+
+        Attributes attrs = backend.getAttributes("cn=Robert Smith,ou=staff,dc=example,dc=com", null);
+        assertEquals(1, attrs.get("cn").size());
+        assertEquals("Robert Smith", attrs.get("cn").get());
+        assertEquals(1, search("cn=Robert Smith,ou=staff,dc=example,dc=com", "(objectClass=*)", SearchControls.ONELEVEL_SCOPE).size());
+        assertEquals(2, searchPeople("(objectClass=*)").size());
+        try
+        {
+            backend.getAttributes("cn=child,cn=Bob Smith,ou=people,dc=example,dc=com", null);
+            fail("Subtree should have moved");
+        }
+        catch (NameNotFoundException e)
+        {
+            // expected
+        }
+    }
+
+    public void testRenameToExisting() throws Exception
+    {
+        try
+        {
+            backend.rename("cn=Bob Smith,ou=people,dc=example,dc=com", "cn=Ann Jones,ou=people,dc=example,dc=com");
+            fail("Target should already exist");
+        }
+        catch (NameAlreadyBoundException e)
+        {
+            // expected
+        }
+    }
+
+    public void testUnbind() throws Exception
+    {
+        backend.unbind("cn=Bob Smith,ou=people,dc=example,dc=com");
+        assertEquals(2, searchPeople("(objectClass=person)").size());
+
+        // like JNDI, unbinding a missing entry succeeds
+        backend.unbind("cn=Bob Smith,ou=people,dc=example,dc=com");
+
+        try
+        {
+            backend.unbind("ou=people,dc=example,dc=com");
+            fail("Entry with children should not be deleted");
+        }
+        catch (ContextNotEmptyException e)
+        {
+            // expected
+        }
+    }
+
+    public void testTreeDelete() throws Exception
+    {
+        backend.bind("cn=child,cn=Bob Smith,ou=people,dc=example,dc=com", new BasicAttributes("objectClass", "top", true));
+        WriteControls controls = new WriteControls(null);
+        controls.setTreeDelete(true);
+        backend.unbind("ou=people,dc=example,dc=com", controls);
+        // only dc=example and dc=com remain
+        assertEquals(2, backend.size());
+        assertEquals(0, search("dc=example,dc=com", "(objectClass=*)", SearchControls.ONELEVEL_SCOPE).size());
+    }
+
+    public void testImmediateWrites() throws Exception
+    {
+        // Writes are never deferred, so the results the fallbacks depend on are those of each write
+        backend.requireImmediateWrites();
+        String dn = "cn=Bob Smith,ou=people,dc=example,dc=com";
+        try
+        {
+            backend.modifyAttributes(dn, new ModificationItem[]{new ModificationItem(DirContext.ADD_ATTRIBUTE, new BasicAttribute("sn", "Smith"))});
+            fail("Value is already present");
+        }
+        catch (AttributeInUseException e)
+        {
+            // expected
+        }
+        try
+        {
+            backend.modifyAttributes(dn, new ModificationItem[]{new ModificationItem(DirContext.REMOVE_ATTRIBUTE, new BasicAttribute("sn", "Jones"))});
+            fail("Value is not present");
+        }
+        catch (NoSuchAttributeException e)
+        {
+            // expected
+        }
+        try
+        {
+            backend.unbind("ou=people,dc=example,dc=com");
+            fail("Entry has children");
+        }
+        catch (ContextNotEmptyException e)
+        {
+            // expected
+        }
+
+        // and searches see the entries just written
+        backend.bind("cn=Ann Smith,ou=people,dc=example,dc=com", person("Ann Smith", "Smith", 30));
+        assertEquals(4, searchPeople("(objectClass=person)").size());
+    }
+
+    public void testAssertion() throws Exception
+    {
+        String dn = "cn=Bob Smith,ou=people,dc=example,dc=com";
+        ModificationItem[] mods = {new ModificationItem(DirContext.REPLACE_ATTRIBUTE, new BasicAttribute("age", "43"))};
+        backend.modifyAttributes(dn, mods, new WriteControls("(&(objectClass=person)(age=42))"));
+        assertEquals("43", backend.getAttributes(dn, null).get("age").get());
+
+        mods = new ModificationItem[]{new ModificationItem(DirContext.REPLACE_ATTRIBUTE, new BasicAttribute("age", "44"))};
+        try
+        {
+            backend.modifyAttributes(dn, mods, new WriteControls("(age=42)"));
+            fail("Assertion should fail");
+        }
+        catch (AssertionFailedException e)
+        {
+            // expected
+        }
+        assertEquals("43", backend.getAttributes(dn, null).get("age").get());
+
+        try
+        {
+            backend.unbind(dn, new WriteControls("(age=42)"));
+            fail("Assertion should fail");
+        }
+        catch (AssertionFailedException e)
+        {
+            // expected
+        }
+        backend.unbind(dn, new WriteControls("(age=43)"));
+        assertEquals(2, searchPeople("(objectClass=person)").size());
+    }
+
+    public void testReadEntry() throws Exception
+    {
+        String dn = "cn=Ann Smith,ou=people,dc=example,dc=com";
+        WriteControls controls = new WriteControls(null);
+        controls.setPostReadAttributes(new String[]{"cn", "age"});
+        backend.bind(dn, person("Ann Smith", "Smith", 30), controls);
+        assertNull(controls.getPreReadEntry());
+        assertEquals(2, controls.getPostReadEntry().size());
+        assertEquals("30", controls.getPostReadEntry().get("age").get());
+
+        controls = new WriteControls(null);
+        controls.setPreReadAttributes(new String[]{"age"});
+        controls.setPostReadAttributes(new String[]{"age"});
+        backend.modifyAttributes(dn, new ModificationItem[]{new ModificationItem(DirContext.REPLACE_ATTRIBUTE, new BasicAttribute("age", "31"))},
+            controls);
+        assertEquals("30", controls.getPreReadEntry().get("age").get());
+        assertEquals("31", controls.getPostReadEntry().get("age").get());
+
+        controls = new WriteControls(null);
+        controls.setPreReadAttributes(new String[]{"*"});
+        backend.unbind(dn, controls);
+        assertEquals(4, controls.getPreReadEntry().size());
+        assertNull(controls.getPostReadEntry());
+    }
+
+    public void testClear() throws Exception
+    {
+        backend.clear();
+        assertEquals(0, backend.size());
+        backend.bind("cn=Bob Smith,ou=people,dc=example,dc=com", person("Bob Smith", "Smith", 42));
+        assertEquals(1, searchPeople("(objectClass=*)").size());
+    }
+}
@@ -0,0 +1,119 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.backend;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.ldap.Control;
+import javax.naming.ldap.ExtendedRequest;
+import javax.naming.ldap.LdapContext;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for LDAP transactions, with a context that records the extended operations rather than connecting to a server.
+ */
+public class LDAPTransactionTest extends TestCase
+{
+    private static final byte[] TXN_ID = {0x01, 0x02};
+
+    /** OIDs of the extended operations sent. */
+    private final List<String> operations = new ArrayList<String>();
+
+    private LdapContext ctx;
+
+    protected void setUp() throws Exception
+    {
+        ctx = (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{LdapContext.class}, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("extendedOperation"))
+                {
+                    ExtendedRequest request = (ExtendedRequest) args[0];
+                    operations.add(request.getID());
+                    byte[] value = LDAPTransaction.START_TRANSACTION_OID.equals(request.getID()) ? TXN_ID : new byte[0];
+                    return request.createExtendedResponse(request.getID(), value, 0, value.length);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    public void testStartedByFirstWrite() throws Exception
+    {
+        LDAPTransaction txn = new LDAPTransaction(ctx);
+        assertFalse(txn.isStarted());
+        assertTrue(operations.isEmpty());
+
+        Control control = txn.getControl(ctx);
+        assertTrue(txn.isStarted());
+        assertEquals(LDAPTransaction.TRANSACTION_SPECIFICATION_OID, control.getID());
+        assertTrue(control.isCritical());
+        assertSame(control, txn.getControl(ctx));
+        assertEquals(1, operations.size());
+        assertEquals(LDAPTransaction.START_TRANSACTION_OID, operations.get(0));
+
+        txn.end(true);
+        assertFalse(txn.isStarted());
+        assertEquals(2, operations.size());
+        assertEquals(LDAPTransaction.END_TRANSACTION_OID, operations.get(1));
+    }
+
+    public void testEndNotStarted() throws Exception
+    {
+        new LDAPTransaction(ctx).end(true);
+        assertTrue(operations.isEmpty());
+    }
+
+    public void testStopBeforeWrites() throws Exception
+    {
+        LDAPTransaction txn = new LDAPTransaction(ctx);
+        txn.stop();
+        assertTrue(txn.isStopped());
+
+        // Writes are applied individually, so no transaction is started or ended
+        assertNull(txn.getControl(ctx));
+        txn.end(true);
+        assertTrue(operations.isEmpty());
+    }
+
+    public void testStopCommitsWrites() throws Exception
+    {
+        LDAPTransaction txn = new LDAPTransaction(ctx);
+        txn.getControl(ctx);
+        txn.getControl(ctx);
+
+        // The writes so far are committed, so they are applied before the following (individual) writes
+        txn.stop();
+        assertTrue(txn.isStopped());
+        assertFalse(txn.isStarted());
+        assertEquals(2, operations.size());
+        assertEquals(LDAPTransaction.END_TRANSACTION_OID, operations.get(1));
+        assertNull(txn.getControl(ctx));
+
+        // Ending the (DataNucleus) transaction has nothing left to end
+        txn.stop();
+        txn.end(true);
+        assertEquals(2, operations.size());
+    }
+}
@@ -0,0 +1,279 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.fieldmanager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+
+import junit.framework.TestCase;
+
+import org.datanucleus.metadata.FieldMetaData;
+import org.datanucleus.state.DNStateManager;
+import org.datanucleus.store.ldap.backend.InMemoryBackend;
+
+/**
+ * Tests for the writing of multi-valued attributes by mapping strategies, as only the changes since the values snapshot
+ * (the "LDAPVALUES" associated value of the StateManager) or as all values, applying the modifications to an in-memory directory.
+ */
+public class AbstractMappingStrategyTest extends TestCase
+{
+    private static final String DN = "cn=admins,ou=groups,dc=example,dc=com";
+
+    private static final String BOB = "cn=Bob Smith,ou=people,dc=example,dc=com";
+
+    private static final String ANN = "cn=Ann Jones,ou=people,dc=example,dc=com";
+
+    private static final String JOE = "cn=Joe Smithers,ou=people,dc=example,dc=com";
+
+    private static final String EMPTY = "cn=nobody";
+
+    private InMemoryBackend backend;
+
+    /** Values associated with the StateManager. */
+    private Map<Object, Object> associatedValues;
+
+    private DNStateManager sm;
+
+    protected void setUp() throws Exception
+    {
+        backend = new InMemoryBackend();
+        associatedValues = new HashMap<Object, Object>();
+        sm = (DNStateManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DNStateManager.class}, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("getAssociatedValue"))
+                {
+                    return associatedValues.get(args[0]);
+                }
+                else if (method.getName().equals("setAssociatedValue"))
+                {
+                    associatedValues.put(args[0], args[1]);
+                    return null;
+                }
+                else if (method.getName().equals("getExecutionContext"))
+                {
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Strategy for a multi-valued attribute "member", as used by the relation strategies.
+     */
+    private static class MemberStrategy extends AbstractMappingStrategy
+    {
+        MemberStrategy(DNStateManager sm, Attributes attributes)
+        {
+            super(sm, new FieldMetaData(null, "member"), attributes);
+        }
+
+        public void insert(Object value)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void update(Object value)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public Object fetch()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<String> getAttributeNames()
+        {
+            return Collections.singletonList(name);
+        }
+    }
+
+    private void bindGroup(String... members) throws Exception
+    {
+        BasicAttributes attrs = new BasicAttributes(true);
+        attrs.put("objectClass", "groupOfNames");
+        BasicAttribute member = new BasicAttribute("member");
+        for (String value : members)
+        {
+            member.add(value);
+        }
+        attrs.put(member);
+        backend.bind(DN, attrs);
+    }
+
+    private List<String> getMembers() throws Exception
+    {
+        List<String> values = new ArrayList<String>();
+        Attribute member = backend.getAttributes(DN, null).get("member");
+        for (int i = 0; member != null && i < member.size(); i++)
+        {
+            values.add((String) member.get(i));
+        }
+        Collections.sort(values);
+        return values;
+    }
+
+    private static List<String> sorted(String... values)
+    {
+        List<String> list = new ArrayList<String>(Arrays.asList(values));
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * Writes the values as on update: value-level modifications when there is a snapshot, else a REPLACE of all values.
+     * @return The removed values, or null if all values were written
+     */
+    private List<String> update(String emptyValue, boolean dnValues, String... values) throws Exception
+    {
+        Attributes attrs = new BasicAttributes();
+        List<ModificationItem> mods = new ArrayList<ModificationItem>();
+        Attributes replacements = new BasicAttributes();
+        MemberStrategy strategy = new MemberStrategy(sm, attrs);
+        strategy.setModifications(mods, replacements);
+        List<String> removedValues = strategy.putValues("member", Arrays.asList(values), emptyValue, dnValues);
+        if (removedValues == null)
+        {
+            assertTrue(mods.isEmpty());
+            backend.modifyAttributes(DN, DirContext.REPLACE_ATTRIBUTE, attrs);
+        }
+        else
+        {
+            assertEquals(0, attrs.size());
+            if (!mods.isEmpty())
+            {
+                backend.modifyAttributes(DN, mods.toArray(new ModificationItem[mods.size()]));
+            }
+
+            // the replacements hold all the values, for when the modifications are rejected
+            List<String> replaced = new ArrayList<String>();
+            Attribute all = replacements.get("member");
+            for (int i = 0; i < all.size(); i++)
+            {
+                replaced.add((String) all.get(i));
+            }
+            Collections.sort(replaced);
+            assertEquals(getMembers(), replaced);
+        }
+        return removedValues;
+    }
+
+    public void testInsertWritesAllValues() throws Exception
+    {
+        Attributes attrs = new BasicAttributes();
+        new MemberStrategy(sm, attrs).putValues("member", Arrays.asList(BOB, ANN), EMPTY, true);
+        assertEquals(2, attrs.get("member").size());
+
+        new MemberStrategy(sm, attrs).putValues("member", Collections.<String>emptyList(), EMPTY, true);
+        assertEquals(1, attrs.get("member").size());
+        assertEquals(EMPTY, attrs.get("member").get());
+
+        // and the values written are the snapshot
+        assertEquals(Collections.emptyList(), new MemberStrategy(sm, attrs).getValuesSnapshot());
+    }
+
+    public void testMissingSnapshotReplacesValues() throws Exception
+    {
+        bindGroup(BOB, ANN);
+        assertNull(update(EMPTY, true, ANN, JOE));
+        assertEquals(sorted(ANN, JOE), getMembers());
+        assertEquals(Arrays.asList(ANN, JOE), new MemberStrategy(sm, new BasicAttributes()).getValuesSnapshot());
+
+        // having written the values, they are now known
+        assertEquals(Arrays.asList(ANN), update(EMPTY, true, JOE));
+        assertEquals(sorted(JOE), getMembers());
+    }
+
+    public void testAddAndRemoveValues() throws Exception
+    {
+        bindGroup(BOB, ANN);
+        new MemberStrategy(sm, new BasicAttributes()).setValuesSnapshot(Arrays.asList(BOB, ANN));
+
+        assertEquals(Arrays.asList(BOB), update(null, true, ANN, JOE));
+        assertEquals(sorted(ANN, JOE), getMembers());
+
+        // no changes, so no modifications
+        assertEquals(Collections.emptyList(), update(null, true, ANN, JOE));
+        assertEquals(sorted(ANN, JOE), getMembers());
+
+        // the last value is removed, and without a placeholder so is the attribute
+        assertEquals(Arrays.asList(ANN, JOE), update(null, true));
+        assertEquals(Collections.emptyList(), getMembers());
+    }
+
+    public void testDnValuesCompareAsDns() throws Exception
+    {
+        // the same DN, differently formatted, is no change
+        new MemberStrategy(sm, new BasicAttributes()).setValuesSnapshot(Arrays.asList(BOB));
+        List<ModificationItem> mods = new ArrayList<ModificationItem>();
+        MemberStrategy strategy = new MemberStrategy(sm, new BasicAttributes());
+        strategy.setModifications(mods, null);
+        assertEquals(Collections.emptyList(), strategy.putValues("member", Arrays.asList("CN=bob smith, OU=People,dc=example,dc=com"), null, true));
+        assertTrue(mods.isEmpty());
+
+        // whereas other values are compared as strings
+        new MemberStrategy(sm, new BasicAttributes()).setValuesSnapshot(Arrays.asList("Smith"));
+        strategy = new MemberStrategy(sm, new BasicAttributes());
+        strategy.setModifications(mods, null);
+        assertEquals(Arrays.asList("Smith"), strategy.putValues("member", Arrays.asList("SMITH"), null, false));
+        assertEquals(2, mods.size());
+        assertEquals(DirContext.ADD_ATTRIBUTE, mods.get(0).getModificationOp());
+        assertEquals(DirContext.REMOVE_ATTRIBUTE, mods.get(1).getModificationOp());
+    }
+
+    public void testEmptyValuePlaceholder() throws Exception
+    {
+        bindGroup(EMPTY);
+        new MemberStrategy(sm, new BasicAttributes()).setValuesSnapshot(Collections.emptyList());
+
+        // the first value replaces the placeholder
+        assertEquals(Collections.emptyList(), update(EMPTY, true, BOB));
+        assertEquals(sorted(BOB), getMembers());
+
+        assertEquals(Collections.emptyList(), update(EMPTY, true, BOB, ANN));
+        assertEquals(sorted(BOB, ANN), getMembers());
+
+        // and is put back when the last value is removed, added before the values are removed so the attribute is never empty
+        List<ModificationItem> mods = new ArrayList<ModificationItem>();
+        MemberStrategy strategy = new MemberStrategy(sm, new BasicAttributes());
+        strategy.setModifications(mods, new BasicAttributes());
+        assertEquals(Arrays.asList(BOB, ANN), strategy.putValues("member", Collections.<String>emptyList(), EMPTY, true));
+        assertEquals(2, mods.size());
+        assertEquals(DirContext.ADD_ATTRIBUTE, mods.get(0).getModificationOp());
+        assertEquals(EMPTY, mods.get(0).getAttribute().get());
+        backend.modifyAttributes(DN, mods.toArray(new ModificationItem[mods.size()]));
+        assertEquals(sorted(EMPTY), getMembers());
+    }
+}
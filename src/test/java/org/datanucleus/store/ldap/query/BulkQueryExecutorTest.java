@@ -0,0 +1,94 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.query;
+
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+import junit.framework.TestCase;
+
+import org.datanucleus.store.ldap.query.filter.FilterParser;
+
+/**
+ * Tests for the exact re-check of the entries selected by a native bulk query.
+ */
+public class BulkQueryExecutorTest extends TestCase
+{
+    private Attributes attrs;
+
+    protected void setUp() throws Exception
+    {
+        attrs = new BasicAttributes(true);
+        attrs.put("sn", "Smith");
+        attrs.put("age", "42");
+        BasicAttribute mail = new BasicAttribute("mail");
+        mail.add("Bob@example.com");
+        mail.add("bob.smith@example.com");
+        attrs.put(mail);
+    }
+
+    private boolean matches(String filter) throws Exception
+    {
+        return BulkQueryExecutor.matchesExactly(FilterParser.parse(filter), attrs);
+    }
+
+    public void testEqualityIsCaseExact() throws Exception
+    {
+        assertTrue(matches("(sn=Smith)"));
+        assertFalse(matches("(sn=SMITH)"));
+        assertFalse(matches("(sn=smith)"));
+        assertTrue(matches("(age=42)"));
+        assertTrue(matches("(mail=bob.smith@example.com)"));
+        assertFalse(matches("(mail=bob@example.com)"));
+        assertFalse(matches("(missing=Smith)"));
+    }
+
+    public void testEqualityUnescapesValue() throws Exception
+    {
+        attrs.put("cn", "a*(b)");
+        assertTrue(matches("(cn=a\\2a\\28b\\29)"));
+    }
+
+    public void testSubstringIsCaseExact() throws Exception
+    {
+        assertTrue(matches("(sn=Smi*)"));
+        assertFalse(matches("(sn=smi*)"));
+        assertTrue(matches("(sn=*ith)"));
+        assertFalse(matches("(sn=*ITH)"));
+        assertTrue(matches("(mail=Bob*)"));
+        assertFalse(matches("(sn=Smith*th)"));
+    }
+
+    public void testPresence() throws Exception
+    {
+        assertTrue(matches("(sn=*)"));
+        assertFalse(matches("(missing=*)"));
+        assertTrue(matches("(!(missing=*))"));
+    }
+
+    public void testBranches() throws Exception
+    {
+        assertTrue(matches("(&(sn=Smith)(age=42))"));
+        assertFalse(matches("(&(sn=Smith)(age=43))"));
+        assertTrue(matches("(|(sn=SMITH)(age=42))"));
+        assertFalse(matches("(|(sn=SMITH)(age=43))"));
+        assertTrue(matches("(!(sn=Jones))"));
+        assertFalse(matches("(!(sn=Smith))"));
+    }
+}
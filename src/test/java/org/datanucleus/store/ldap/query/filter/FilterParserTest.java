@@ -0,0 +1,140 @@
+/**********************************************************************
+Copyright (c) 2026 agent and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+    ...
+ **********************************************************************/
+package org.datanucleus.store.ldap.query.filter;
+
+import javax.naming.directory.InvalidSearchFilterException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the parsing of RFC 4515 filter strings.
+ */
+public class FilterParserTest extends TestCase
+{
+    public void testEquality() throws Exception
+    {
+        Filter filter = FilterParser.parse("(cn=Bob Smith)");
+        assertTrue(filter instanceof EqualityFilter);
+        assertEquals("cn", ((EqualityFilter) filter).getAttribute());
+        assertEquals("Bob Smith", ((EqualityFilter) filter).getValue());
+    }
+
+    public void testWithoutParentheses() throws Exception
+    {
+        Filter filter = FilterParser.parse("objectClass=person");
+        assertTrue(filter instanceof EqualityFilter);
+        assertEquals("(objectClass=person)", filter.toString());
+    }
+
+    public void testPresence() throws Exception
+    {
+        Filter filter = FilterParser.parse("(mail=*)");
+        assertTrue(filter instanceof PresenceFilter);
+        assertEquals("mail", ((PresenceFilter) filter).getAttribute());
+    }
+
+    public void testSubstring() throws Exception
+    {
+        SubstringFilter filter = (SubstringFilter) FilterParser.parse("(cn=ab*cd*ef*gh)");
+        assertEquals("ab", filter.getInitialPattern());
+        assertEquals(2, filter.getAnyPatterns().size());
+        assertEquals("cd", filter.getAnyPatterns().get(0));
+        assertEquals("ef", filter.getAnyPatterns().get(1));
+        assertEquals("gh", filter.getFinalPattern());
+
+        filter = (SubstringFilter) FilterParser.parse("(cn=*gh)");
+        assertNull(filter.getInitialPattern());
+        assertTrue(filter.getAnyPatterns().isEmpty());
+        assertEquals("gh", filter.getFinalPattern());
+
+        filter = (SubstringFilter) FilterParser.parse("(cn=ab*)");
+        assertEquals("ab", filter.getInitialPattern());
+        assertNull(filter.getFinalPattern());
+    }
+
+    public void testOrdering() throws Exception
+    {
+        Filter filter = FilterParser.parse("(age>=21)");
+        assertTrue(filter instanceof GreaterEqFilter);
+        assertEquals("21", ((GreaterEqFilter) filter).getValue());
+
+        filter = FilterParser.parse("(age<=65)");
+        assertTrue(filter instanceof LessEqFilter);
+        assertEquals("65", ((LessEqFilter) filter).getValue());
+    }
+
+    public void testApproximateAsEquality() throws Exception
+    {
+        Filter filter = FilterParser.parse("(cn~=smith)");
+        assertTrue(filter instanceof EqualityFilter);
+        assertEquals("smith", ((EqualityFilter) filter).getValue());
+    }
+
+    public void testBranches() throws Exception
+    {
+        Filter filter = FilterParser.parse("(&(objectClass=person)(|(cn=a*)(!(sn=b))))");
+        assertTrue(filter instanceof AndFilter);
+        AndFilter and = (AndFilter) filter;
+        assertEquals(2, and.getChildren().size());
+        assertTrue(and.getChildren().get(0) instanceof EqualityFilter);
+
+        OrFilter or = (OrFilter) and.getChildren().get(1);
+        assertEquals(2, or.getChildren().size());
+        assertTrue(or.getChildren().get(0) instanceof SubstringFilter);
+        NotFilter not = (NotFilter) or.getChildren().get(1);
+        assertEquals("(sn=b)", not.getChildren().get(0).toString());
+
+        assertEquals("(&(objectClass=person)(|(cn=a*)(!(sn=b))))", filter.toString());
+    }
+
+    public void testEscapedValuesKept() throws Exception
+    {
+        EqualityFilter filter = (EqualityFilter) FilterParser.parse("(cn=a\\2ab\\28c\\29)");
+        assertEquals("a\\2ab\\28c\\29", filter.getValue());
+        assertEquals("a*b(c)", FilterParser.unescape(filter.getValue()));
+    }
+
+    public void testUnescape()
+    {
+        assertNull(FilterParser.unescape(null));
+        assertEquals("plain", FilterParser.unescape("plain"));
+        assertEquals("a\\b", FilterParser.unescape("a\\5cb"));
+        assertEquals("nul\u0000", FilterParser.unescape("nul\\00"));
+        // escaped UTF-8 bytes, upper and lower case hex digits
+        assertEquals("L\u00fccke", FilterParser.unescape("L\\C3\\bccke"));
+        // unescaped non-ASCII characters are kept
+        assertEquals("L\u00fccke", FilterParser.unescape("L\u00fccke"));
+    }
+
+    public void testInvalidFilters()
+    {
+        String[] invalidFilters = {"(cn=a", "(=a)", "(cn)", "(&(cn=a)", "(cn=a))", "(cn:dn:=a)"};
+        for (String invalidFilter : invalidFilters)
+        {
+            try
+            {
+                FilterParser.parse(invalidFilter);
+                fail("Filter should be invalid : " + invalidFilter);
+            }
+            catch (InvalidSearchFilterException e)
+            {
+                // expected
+            }
+        }
+    }
+}